@@ -0,0 +1,98 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.benchmarks;
+
+import it.iit.genomics.cru.structures.model.AAPosition;
+import it.iit.genomics.cru.structures.model.AAPositionManager;
+import it.iit.genomics.cru.structures.model.MIGene;
+import it.iit.genomics.cru.structures.model.Range;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Projection of genomic positions on the protein of a gene of 20 exons, on
+ * the reverse strand. The positions are single bases drawn over the whole
+ * gene, introns included.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AAPositionManagerBenchmark {
+
+    private static final String QUERY_ID = "benchmark";
+
+    @Param({"10000", "100000", "1000000"})
+    public int positions;
+
+    private MIGene gene;
+
+    private Collection<Range> ranges;
+
+    private int[] sortedPositions;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(positions);
+        gene = Fixtures.createGene(random, 20, 90, 1000, false);
+
+        // the alignment between the transcript and Uniprot is computed once
+        // for the gene, it is not part of the projection
+        gene.getTranscriptAlignment();
+
+        sortedPositions = new int[positions];
+        ranges = new ArrayList<>(positions);
+        int span = gene.getMax() - gene.getMin() + 1;
+        for (int i = 0; i < positions; i++) {
+            int position = gene.getMin() + random.nextInt(span);
+            sortedPositions[i] = position;
+            ranges.add(new Range(position, position));
+        }
+        Arrays.sort(sortedPositions);
+    }
+
+    @Benchmark
+    public Collection<AAPosition> getAAPositions() {
+        try {
+            return AAPositionManager.getAAPositionManager(QUERY_ID).getAAPositions(gene, ranges);
+        } finally {
+            AAPositionManager.removeManager(QUERY_ID);
+        }
+    }
+
+    @Benchmark
+    public int[] getUniprotAAPositions() {
+        return gene.getUniprotAAPositions(sortedPositions);
+    }
+}
@@ -0,0 +1,78 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.benchmarks;
+
+import com.google.common.collect.HashMultimap;
+import it.iit.genomics.cru.structures.business.Accessibility;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.biojava.nbio.structure.Structure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Interface residues from the change of accessible surface area, between the
+ * two chains of the dimer fixture and between chain A and its ligand.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccessibilityBenchmark {
+
+    private static final List<String[]> CHAIN_PAIRS = Collections.singletonList(new String[]{"A", "B"});
+
+    private static final List<String[]> LIGAND_PAIRS = Collections.singletonList(new String[]{"A", "LIG"});
+
+    private Structure structure;
+
+    @Setup
+    public void setUp() throws IOException {
+        structure = Fixtures.readStructure(Fixtures.DIMER_PDB);
+    }
+
+    @Benchmark
+    public HashMultimap<String, String> contactChains() throws IOException {
+        return Accessibility.getFasterContactChains(structure, CHAIN_PAIRS);
+    }
+
+    @Benchmark
+    public HashMultimap<String, String> interfaceContactChains() {
+        Map<String, Map<String, Double>> singleChainAccessibilities = new HashMap<>();
+        return Accessibility.getInterfaceContactChains(structure, CHAIN_PAIRS, singleChainAccessibilities);
+    }
+
+    @Benchmark
+    public HashMultimap<String, String> contactHETATMS() throws IOException {
+        return Accessibility.getFasterContactHETATMS(structure, LIGAND_PAIRS);
+    }
+}
@@ -0,0 +1,126 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.benchmarks;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Write the synthetic PDB file used by the benchmarks
+ * (src/main/resources/fixtures/pdb/dimer.pdb). Each chain is a bundle of
+ * helices, the two bundles are in contact, and a ligand of 24 atoms lies on
+ * the surface of chain A. The file is generated from a fixed seed, so that
+ * it can be generated again if the layout has to change.
+ *
+ * Usage: FixtureGenerator output.pdb [residuesPerChain]
+ */
+public class FixtureGenerator {
+
+    private static final String[] AMINO_ACIDS = {"ALA", "ARG", "ASN", "ASP", "CYS", "GLN", "GLU", "GLY", "HIS", "ILE",
+        "LEU", "LYS", "MET", "PHE", "PRO", "SER", "THR", "TRP", "TYR", "VAL"};
+
+    private static final int HELIX_LENGTH = 25;
+
+    private static final long SEED = 42;
+
+    private final PrintWriter out;
+
+    private final Random random = new Random(SEED);
+
+    private int serial = 1;
+
+    private FixtureGenerator(PrintWriter out) {
+        this.out = out;
+    }
+
+    private void atom(String record, String name, String residue, char chain, int residueNumber,
+            double x, double y, double z, String element) {
+        out.println(String.format(Locale.US, "%-6s%5d  %-3s %3s %c%4d    %8.3f%8.3f%8.3f%6.2f%6.2f          %2s",
+                record, serial++, name, residue, chain, residueNumber, x, y, z, 1.0, 20.0, element));
+    }
+
+    /**
+     * Helices parallel to z, placed on a hexagonal grid around (cx, cy),
+     * consecutive helices go in opposite directions.
+     */
+    private void chain(char chain, int numResidues, double cx, double cy) {
+        double[][] axes = {{0, 0}, {10, 0}, {5, 8.66}, {-5, 8.66}, {-10, 0}, {-5, -8.66}, {5, -8.66}};
+
+        for (int r = 0; r < numResidues; r++) {
+            int helix = r / HELIX_LENGTH;
+            int position = r % HELIX_LENGTH;
+
+            double[] axis = axes[helix % axes.length];
+            double level = 10.0 * (helix / axes.length);
+            double z = level + (helix % 2 == 0 ? position : HELIX_LENGTH - 1 - position) * 1.5;
+            double angle = Math.toRadians(100 * r);
+
+            double x = cx + axis[0] + 2.3 * Math.cos(angle);
+            double y = cy + axis[1] + 2.3 * Math.sin(angle);
+
+            String residue = AMINO_ACIDS[random.nextInt(AMINO_ACIDS.length)];
+            int residueNumber = r + 1;
+
+            atom("ATOM", "N", residue, chain, residueNumber, x - 0.5, y - 1.2, z - 0.4, "N");
+            atom("ATOM", "CA", residue, chain, residueNumber, x, y, z, "C");
+            atom("ATOM", "C", residue, chain, residueNumber, x + 1.2, y + 0.4, z + 0.6, "C");
+            atom("ATOM", "O", residue, chain, residueNumber, x + 1.4, y + 1.5, z + 1.0, "O");
+            if (false == "GLY".equals(residue)) {
+                // side chain points away from the axis of the helix
+                atom("ATOM", "CB", residue, chain, residueNumber,
+                        x + 1.5 * Math.cos(angle), y + 1.5 * Math.sin(angle), z, "C");
+            }
+        }
+        out.println("TER");
+    }
+
+    private void ligand(char chain, int residueNumber, double cx, double cy, double cz) {
+        for (int ring = 0; ring < 4; ring++) {
+            for (int a = 0; a < 6; a++) {
+                double angle = Math.toRadians(60 * a);
+                atom("HETATM", "C" + (ring * 6 + a + 1), "LIG", chain, residueNumber,
+                        cx + 3.0 * ring + 1.4 * Math.cos(angle), cy + 1.4 * Math.sin(angle), cz, "C");
+            }
+        }
+    }
+
+    /**
+     *
+     * @param args output file and number of residues per chain (150 by
+     * default)
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        int numResidues = args.length > 1 ? Integer.parseInt(args[1]) : 150;
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(args[0]), StandardCharsets.UTF_8))) {
+            out.println("HEADER    SYNTHETIC DIMER FOR BENCHMARKS");
+            FixtureGenerator generator = new FixtureGenerator(out);
+            generator.chain('A', numResidues, 0, 0);
+            generator.chain('B', numResidues, 26, 0);
+            generator.ligand('A', numResidues + 1, -10, -16, 10);
+            out.println("END");
+        }
+    }
+
+}
@@ -0,0 +1,191 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.benchmarks;
+
+import it.iit.genomics.cru.structures.model.MIExon;
+import it.iit.genomics.cru.structures.model.MIGene;
+import it.iit.genomics.cru.structures.model.MoleculeEntry;
+import it.iit.genomics.cru.structures.model.sequence.TranscriptSequence;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import org.biojava.nbio.structure.Structure;
+import org.biojava.nbio.structure.io.FileParsingParameters;
+import org.biojava.nbio.structure.io.PDBFileParser;
+import org.biojava.nbio.structure.io.mmcif.ChemCompGroupFactory;
+import org.biojava.nbio.structure.io.mmcif.ReducedChemCompProvider;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Data shared by the benchmarks. Files are read from the classpath
+ * (src/main/resources/fixtures), everything else is generated from fixed
+ * seeds, so that the benchmarks run offline and always on the same input.
+ */
+public class Fixtures {
+
+    /**
+     * Two chains in contact (A, B) and a ligand (LIG) bound to chain A.
+     */
+    public static final String DIMER_PDB = "/fixtures/pdb/dimer.pdb";
+
+    public static final String UNIPROT_ENTRIES = "/fixtures/uniprot/entries.xml";
+
+    private static final String AMINO_ACIDS = "ACDEFGHIKLMNPQRSTVWY";
+
+    private Fixtures() {
+    }
+
+    /**
+     *
+     * @param resource
+     * @return the content of a resource of the classpath
+     * @throws IOException
+     */
+    public static byte[] read(String resource) throws IOException {
+        try (InputStream is = Fixtures.class.getResourceAsStream(resource)) {
+            if (is == null) {
+                throw new IOException("Missing fixture: " + resource);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Parse a PDB file of the classpath. Chemical components are not
+     * downloaded, the reduced provider is used instead.
+     *
+     * @param resource
+     * @return
+     * @throws IOException
+     */
+    public static Structure readStructure(String resource) throws IOException {
+        ChemCompGroupFactory.setChemCompProvider(new ReducedChemCompProvider());
+
+        FileParsingParameters params = new FileParsingParameters();
+        params.setAlignSeqRes(false);
+
+        PDBFileParser parser = new PDBFileParser();
+        parser.setFileParsingParameters(params);
+
+        try (InputStream is = Fixtures.class.getResourceAsStream(resource)) {
+            if (is == null) {
+                throw new IOException("Missing fixture: " + resource);
+            }
+            return parser.parsePDBFile(is);
+        }
+    }
+
+    /**
+     *
+     * @param random
+     * @param length
+     * @return a random protein sequence
+     */
+    public static String randomProtein(Random random, int length) {
+        StringBuilder sequence = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sequence.append(AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length())));
+        }
+        return sequence.toString();
+    }
+
+    /**
+     * Copy of a sequence with substitutions, insertions and deletions, each
+     * residue being changed with the given rate.
+     *
+     * @param random
+     * @param sequence
+     * @param rate
+     * @return
+     */
+    public static String mutate(Random random, String sequence, double rate) {
+        StringBuilder mutated = new StringBuilder(sequence.length());
+        for (int i = 0; i < sequence.length(); i++) {
+            if (random.nextDouble() >= rate) {
+                mutated.append(sequence.charAt(i));
+                continue;
+            }
+            switch (random.nextInt(3)) {
+                case 0:
+                    mutated.append(AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length())));
+                    break;
+                case 1:
+                    mutated.append(sequence.charAt(i));
+                    mutated.append(AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length())));
+                    break;
+                default:
+                    // deletion
+                    break;
+            }
+        }
+        return mutated.toString();
+    }
+
+    /**
+     * Gene of numExons coding exons of exonLength bases (a multiple of 3),
+     * separated by introns of intronLength bases. The transcript and the
+     * Uniprot sequence are the same random protein, so that the projection
+     * covers the whole gene.
+     *
+     * @param random
+     * @param numExons
+     * @param exonLength
+     * @param intronLength
+     * @param forward
+     * @return
+     */
+    public static MIGene createGene(Random random, int numExons, int exonLength, int intronLength, boolean forward) {
+        int residuesPerExon = exonLength / 3;
+        String protein = randomProtein(random, numExons * residuesPerExon);
+
+        int min = 1000;
+        int max = min + numExons * exonLength + (numExons - 1) * intronLength - 1;
+
+        MIGene gene = forward
+                ? new MIGene("BENCH.1", "BENCH", "chr1", min, max, true)
+                : new MIGene("BENCH.1", "BENCH", "chr1", max, min, false);
+
+        for (int e = 0; e < numExons; e++) {
+            int i = forward ? e : numExons - 1 - e;
+            int exonMin = min + i * (exonLength + intronLength);
+            int exonMax = exonMin + exonLength - 1;
+            MIExon exon = forward ? new MIExon(exonMin, exonMax) : new MIExon(exonMax, exonMin);
+            exon.setProteinStart(1 + e * residuesPerExon);
+            exon.setProteinEnd(1 + (e + 1) * residuesPerExon);
+            exon.setNumberOfOverlappingBases(0);
+            gene.getExons().add(exon);
+        }
+
+        gene.setCodingStart(forward ? min : max);
+        gene.setCodingEnd(forward ? max : min);
+        gene.setTranscriptSequence(new TranscriptSequence(protein));
+
+        MoleculeEntry entry = new MoleculeEntry("P99999");
+        entry.addSequence("P99999-1", protein);
+        entry.addXrefToVarSplice(gene.getID(), "P99999-1");
+        gene.setProtein(entry);
+
+        return gene;
+    }
+}
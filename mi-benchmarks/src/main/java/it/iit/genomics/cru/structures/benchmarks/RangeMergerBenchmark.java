@@ -0,0 +1,105 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.benchmarks;
+
+import it.iit.genomics.cru.structures.model.Range;
+import it.iit.genomics.cru.structures.model.RangeMerger;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Merge of overlapping ranges spread over a few chromosomes, as selected in
+ * the browser, and lookup of the ranges within a window.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RangeMergerBenchmark {
+
+    private static final String[] SEQUENCES = {"chr1", "chr2", "chr3", "chrX"};
+
+    private static final int CHROMOSOME_LENGTH = 50000000;
+
+    private static final int WINDOW = 1000000;
+
+    @Param({"1000", "10000", "100000"})
+    public int ranges;
+
+    private String[] sequences;
+
+    private Range[] toAdd;
+
+    private RangeMerger merger;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(ranges);
+        sequences = new String[ranges];
+        toAdd = new Range[ranges];
+        for (int i = 0; i < ranges; i++) {
+            sequences[i] = SEQUENCES[random.nextInt(SEQUENCES.length)];
+            int start = random.nextInt(CHROMOSOME_LENGTH);
+            toAdd[i] = new Range(start, start + random.nextInt(5000));
+        }
+        merger = merge();
+    }
+
+    private RangeMerger merge() {
+        RangeMerger rangeMerger = new RangeMerger();
+        for (int i = 0; i < toAdd.length; i++) {
+            rangeMerger.addRange(sequences[i], toAdd[i]);
+        }
+        return rangeMerger;
+    }
+
+    @Benchmark
+    public int addRanges() {
+        RangeMerger rangeMerger = merge();
+        int numberOfRanges = 0;
+        for (String sequence : rangeMerger.getSequences()) {
+            numberOfRanges += rangeMerger.getRanges(sequence).size();
+        }
+        return numberOfRanges;
+    }
+
+    @Benchmark
+    public void getRangesWithin(Blackhole blackhole) {
+        for (String sequence : SEQUENCES) {
+            for (int min = 0; min < CHROMOSOME_LENGTH; min += WINDOW) {
+                Collection<Range> within = merger.getRangesWithin(sequence, min, min + WINDOW - 1);
+                blackhole.consume(within);
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.benchmarks;
+
+import it.iit.genomics.cru.structures.business.ResidueResidueContacts;
+import it.iit.genomics.cru.structures.model.Contact;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import org.biojava.nbio.structure.Structure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Residue-residue contacts between all the chains of the dimer fixture,
+ * with the atom grid and with the comparison of all atom pairs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResidueResidueContactsBenchmark {
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private Structure structure;
+
+    private ResidueResidueContacts contacts;
+
+    @Setup
+    public void setUp() throws IOException {
+        structure = Fixtures.readStructure(Fixtures.DIMER_PDB);
+        contacts = new ResidueResidueContacts(null, threads);
+    }
+
+    @Benchmark
+    public Collection<Contact> getContacts() throws Exception {
+        return contacts.getContacts(structure);
+    }
+
+    @Benchmark
+    public Collection<Contact> getContactsAllAtomPairs() {
+        return contacts.getContactsAllAtomPairs(structure);
+    }
+}
@@ -0,0 +1,94 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.benchmarks;
+
+import it.iit.genomics.cru.structures.alignment.SequenceAligner;
+import it.iit.genomics.cru.structures.alignment.SequenceAlignment;
+import it.iit.genomics.cru.structures.alignment.SmithWaterman;
+import it.iit.genomics.cru.structures.alignment.SmithWatermanItuDK;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Local alignment of a protein against a mutated copy (10% of the residues
+ * substituted, inserted or deleted), as done between transcripts and Uniprot
+ * sequences, or between Uniprot sequences and PDB chains, with the full
+ * matrix of SmithWatermanItuDK, with the linear space SmithWaterman and with
+ * SequenceAligner (banded alignment around shared k-mers).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SmithWatermanBenchmark {
+
+    @Param({"100", "500", "1000", "2000"})
+    public int length;
+
+    private String sequenceA;
+
+    private String sequenceB;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(length);
+        sequenceA = Fixtures.randomProtein(random, length);
+        sequenceB = Fixtures.mutate(random, sequenceA, 0.1);
+    }
+
+    @Benchmark
+    public void alignItuDK(Blackhole blackhole) {
+        SmithWatermanItuDK alignment = new SmithWatermanItuDK(sequenceA, sequenceB);
+        blackhole.consume(alignment.getAlignmentSeqA());
+        blackhole.consume(alignment.getAlignmentSeqB());
+        blackhole.consume(alignment.getStartAlignmentA());
+        blackhole.consume(alignment.getStartAlignmentB());
+    }
+
+    @Benchmark
+    public void align(Blackhole blackhole) {
+        SmithWaterman alignment = new SmithWaterman(sequenceA, sequenceB);
+        blackhole.consume(alignment.getAlignmentSeqA());
+        blackhole.consume(alignment.getAlignmentSeqB());
+        blackhole.consume(alignment.getStartAlignmentA());
+        blackhole.consume(alignment.getStartAlignmentB());
+    }
+
+    @Benchmark
+    public void alignSequenceAligner(Blackhole blackhole) {
+        SequenceAlignment alignment = SequenceAligner.getInstance().align(sequenceA, sequenceB);
+        blackhole.consume(alignment.getAlignmentSeqA());
+        blackhole.consume(alignment.getAlignmentSeqB());
+        blackhole.consume(alignment.getStartAlignmentA());
+        blackhole.consume(alignment.getStartAlignmentB());
+    }
+}
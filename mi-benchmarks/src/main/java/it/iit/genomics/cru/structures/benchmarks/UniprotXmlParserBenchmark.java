@@ -0,0 +1,85 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.benchmarks;
+
+import it.iit.genomics.cru.structures.bridges.uniprot.UniprotXmlParser;
+import it.iit.genomics.cru.structures.model.MoleculeEntry;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLStreamException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Parsing of a Uniprot XML document, made of copies of the entries of the
+ * fixture, as returned by a batch query to the Uniprot web service.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UniprotXmlParserBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int copies;
+
+    private byte[] document;
+
+    @Setup
+    public void setUp() throws IOException {
+        String xml = new String(Fixtures.read(Fixtures.UNIPROT_ENTRIES), StandardCharsets.UTF_8);
+
+        int firstEntry = xml.indexOf("<entry");
+        int endOfEntries = xml.lastIndexOf("</entry>") + "</entry>".length();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(xml.substring(0, firstEntry).getBytes(StandardCharsets.UTF_8));
+        byte[] entries = xml.substring(firstEntry, endOfEntries).getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < copies; i++) {
+            out.write(entries);
+        }
+        out.write(xml.substring(endOfEntries).getBytes(StandardCharsets.UTF_8));
+
+        document = out.toByteArray();
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) throws XMLStreamException {
+        try (UniprotXmlParser parser = new UniprotXmlParser(new ByteArrayInputStream(document))) {
+            MoleculeEntry entry;
+            while ((entry = parser.next()) != null) {
+                blackhole.consume(entry);
+            }
+        }
+    }
+}
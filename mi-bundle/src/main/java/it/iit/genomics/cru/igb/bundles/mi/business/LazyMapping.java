@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.igb.bundles.mi.business;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Run the mapping of a result once, either in background or in the first
+ * thread that needs it. The event dispatch thread never runs it: ensureMapped()
+ * schedules the mapping and returns, the listeners are notified in the event
+ * dispatch thread when it is done.
+ *
+ */
+class LazyMapping {
+
+    private final Runnable task;
+
+    private final Executor executor;
+
+    private final Object lock = new Object();
+
+    private volatile boolean mapped = false;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private final CopyOnWriteArrayList<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     *
+     * @param task the mapping
+     * @param executor runs the mapping in background
+     */
+    LazyMapping(Runnable task, Executor executor) {
+        this.task = task;
+        this.executor = executor;
+    }
+
+    /**
+     * Run the mapping in this thread, nothing is done if it has already been
+     * done.
+     */
+    void map() {
+        synchronized (lock) {
+            if (mapped) {
+                return;
+            }
+
+            task.run();
+
+            mapped = true;
+        }
+
+        for (Runnable listener : listeners) {
+            SwingUtilities.invokeLater(listener);
+        }
+    }
+
+    /**
+     * Run the mapping in background, if it is not already done.
+     */
+    void schedule() {
+        if (mapped || false == scheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                map();
+            }
+        });
+    }
+
+    /**
+     * Outside of the event dispatch thread, map and return true. In the event
+     * dispatch thread, only schedule the mapping.
+     *
+     * @return true if the mapping is done
+     */
+    boolean ensureMapped() {
+        if (mapped) {
+            return true;
+        }
+
+        if (SwingUtilities.isEventDispatchThread()) {
+            schedule();
+            return false;
+        }
+
+        map();
+        return true;
+    }
+
+    boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * Run in the event dispatch thread when the mapping is done. A listener
+     * added after the mapping is not run.
+     *
+     * @param listener
+     */
+    void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+}
@@ -32,7 +32,6 @@ import it.iit.genomics.cru.igb.bundles.mi.query.MIQuery;
 import it.iit.genomics.cru.structures.model.MoleculeEntry;
 import it.iit.genomics.cru.structures.bridges.userData.UserStructuresManager;
 import it.iit.genomics.cru.structures.business.StructureMapper;
-import it.iit.genomics.cru.structures.business.StructureMapper.MappingType;
 import it.iit.genomics.cru.structures.model.AAPosition;
 import it.iit.genomics.cru.structures.model.AAPositionManager;
 import it.iit.genomics.cru.structures.model.InteractionStructure;
@@ -45,6 +44,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.lang.StringUtils;
 
@@ -55,12 +55,11 @@ import it.iit.genomics.cru.structures.bridges.dsysmap.DSysMapStructureMapper;
 import it.iit.genomics.cru.structures.bridges.eppic.EPPICStructureMapper;
 import it.iit.genomics.cru.structures.bridges.psicquic.Interaction;
 
+import it.iit.genomics.cru.structures.business.InteractionMapping;
 import it.iit.genomics.cru.structures.business.Interactome3DUtils;
 import it.iit.genomics.cru.structures.business.PDBUtils;
-import it.iit.genomics.cru.structures.model.MIGene;
-import it.iit.genomics.cru.structures.model.ModifiedResidue;
 import it.iit.genomics.cru.structures.model.Range;
-import it.iit.genomics.cru.structures.model.position.UniprotPosition;
+import it.iit.genomics.cru.structures.model.RangeMerger;
 import java.awt.Color;
 import java.io.File;
 
@@ -70,6 +69,14 @@ import java.io.File;
  * Structure for a result, e.g. an interaction. This class stores information
  * about the interaction and do the mapping of residues to the structures.
  *
+ * The constructor only gets the interactors, the evidences and the list of
+ * structures. The residues and interfaces are searched on the structures by
+ * mapStructures(), either in background (scheduleMapping()) or when they are
+ * needed. The event dispatch thread does not wait for the mapping: the
+ * getters only schedule it and return empty values, and the mapping listeners
+ * are notified when it is done. Use MappingWorker.whenMapped() before
+ * reading the residues or the interfaces in the event dispatch thread.
+ *
  */
 public class MIResult {
 
@@ -111,6 +118,8 @@ public class MIResult {
 
     private StructureMapper structureMapper;
 
+    private InteractionMapping mapping;
+
     public final static int maxInteractome3DStructures = 1000;
 
     private StructureSource structureSource;
@@ -118,6 +127,22 @@ public class MIResult {
     //private GeneManager geneManager;
     private boolean hasTrack = false;
 
+    /**
+     * Pool shared by all the queries to map the results on their structures
+     */
+    private final static ForkJoinPool mappingPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private final LazyMapping lazyMapping;
+
+    /**
+     * Notified in the event dispatch thread when the structures of a result
+     * have been mapped.
+     */
+    public interface MappingListener {
+
+        void mappingDone(MIResult result);
+    }
+
     public MIResult(String trackGroup, MISymContainer container1,
             MISymContainer container2, Interaction interaction, MIQuery query,
             MISymManager symManager) {
@@ -175,82 +200,62 @@ public class MIResult {
                     .getEntry()));
         }
 
-        // We have the structures, get the residues and interfaces
-        for (InteractionStructure interactionStructure : structuresInteraction) {
-            try {
-                structureMapper.searchStructureResidues(
-                        MappingType.INTERACTION_PROTEINA, container1.getEntry(),
-                        interactionStructure, queryResiduesA);
-
-                structureMapper.searchInterfaces(MappingType.INTERACTION_PROTEINA, container1.getEntry(),
-                        container2.getEntry(), interactionStructure,
-                        queryResiduesA);
-
-                if (false == homodimer && container2.getEntry().isProtein()) {
-                    structureMapper.searchStructureResidues(
-                            MappingType.INTERACTION_PROTEINB, container2.getEntry(),
-                            interactionStructure, queryResiduesB);
-
-                    structureMapper.searchInterfaces(MappingType.INTERACTION_PROTEINB, container2.getEntry(),
-                            container1.getEntry(), interactionStructure,
-                            queryResiduesB);
-                }
-            } catch (Exception e) {
-                igbLogger.getLogger().severe("Cannot get PDB structures ");
-            }
-        }
+        mapping = new InteractionMapping(container1.getEntry(), queryResiduesA,
+                container2.getEntry(), queryResiduesB,
+                structureSource, structureMapper, structuresInteraction);
 
-        // get modified residues
-        merger = new RangeMerger();
-        mergerA = new RangeMerger();
-        mergerB = new RangeMerger();
-        // Get pdbResidues
-        for (AAPosition aa : structureMapper.getInterfaceAAPositionsA()) {
-            //  igbLogger.info("Check residue " + aa);
-
-            for (String pos : aa.getGenomicPositions(container2.getEntry())) {
-                String[] posSplit = pos.split(":");
-                String seq = posSplit[0];
-                Range range = new Range(Integer.parseInt(posSplit[1].split("-")[0]), Integer.parseInt(posSplit[1].split("-")[1]));
-                merger.addRange(seq, range);
-                mergerA.addRange(seq, range);
+        lazyMapping = new LazyMapping(new Runnable() {
+            @Override
+            public void run() {
+                mapping.map();
             }
-        }
-        for (AAPosition aa : structureMapper.getInterfaceAAPositionsB()) {
-            for (String pos : aa.getGenomicPositions(container1.getEntry())) {
-                String[] posSplit = pos.split(":");
-                String seq = posSplit[0];
-                Range range = new Range(Integer.parseInt(posSplit[1].split("-")[0]), Integer.parseInt(posSplit[1].split("-")[1]));
-                merger.addRange(seq, range);
-                mergerB.addRange(seq, range);
-            }
-        }
+        }, mappingPool);
+    }
 
-        /**
-         * Do I need to do it also for residuesB? No: modification is only
-         * molecule B, i.e. the partner of molecule A
-         */
-        for (AAPosition aa : getResiduesA()) {
-            if (MoleculeEntry.TAXID_MODIFICATION.equals(container2.getEntry().getTaxid())) {
-                for (ModifiedResidue mod : container1.getEntry().getModifications()) {
-
-                    if (mod.getDescription().equals(container2.getEntry().getGeneName())) {
-                        for (UniprotPosition position : mod.getPositions()) {
-                            if (aa.getStart() <= position.getPosition() && aa.getEnd() >= position.getPosition()) {
-                                for (String pos : aa.getGenomicPositions(position)) {
-                                    String[] posSplit = pos.split(":");
-                                    String seq = posSplit[0];
-                                    Range range = new Range(Integer.parseInt(posSplit[1].split("-")[0]), Integer.parseInt(posSplit[1].split("-")[1]));
-                                    merger.addRange(seq, range);
-                                    mergerA.addRange(seq, range);
-                                }
-                            }
-                        }
-                    }
-                }
+    /**
+     * Search the query residues and the interfaces on the structures of the
+     * interaction, nothing is done if it has already been done. The results
+     * are mapped in parallel: the structure source and the positions shared
+     * by the results only lock their own caches.
+     */
+    public void mapStructures() {
+        lazyMapping.map();
+    }
+
+    /**
+     * Map the structures in background, if it is not already done.
+     */
+    public void scheduleMapping() {
+        lazyMapping.schedule();
+    }
+
+    public boolean isMapped() {
+        return lazyMapping.isMapped();
+    }
+
+    public void addMappingListener(final MappingListener listener) {
+        lazyMapping.addListener(new Runnable() {
+            @Override
+            public void run() {
+                listener.mappingDone(MIResult.this);
             }
-        }
+        });
+    }
 
+    /**
+     * In the event dispatch thread, the mapping is only scheduled.
+     *
+     * @return true if the structures are mapped
+     */
+    private boolean ensureMapped() {
+        return lazyMapping.ensureMapped();
+    }
+
+    /**
+     * The structures of the source are added by a single result at a time.
+     */
+    private Object getSourceLock() {
+        return structureSource == null ? mappingPool : structureSource;
     }
 
     /**
@@ -302,21 +307,27 @@ public class MIResult {
                             null,
                             MIBundleConfiguration.getInstance().getCachePath());
             
-            structuresInteraction.addAll(Interactome3DUtils.getStructures(container1.getEntry(), container2.getEntry(), client, structureSource));
+            synchronized (getSourceLock()) {
+                structuresInteraction.addAll(Interactome3DUtils.getStructures(container1.getEntry(), container2.getEntry(), client, structureSource));
+            }
         } // Structures from PDB
         else if (query.searchPDBLocal()) {
             structureSource = StructureManager.getInstance()
                     .getStructureSource(StructureSourceType.PDB,
                             query.getPdbMirrorPath(),
                             MIBundleConfiguration.getInstance().getCachePath());
-            structuresInteraction.addAll(PDBUtils.getStructures(container1.getEntry(), container2.getEntry(), structureSource));
+            synchronized (getSourceLock()) {
+                structuresInteraction.addAll(PDBUtils.getStructures(container1.getEntry(), container2.getEntry(), structureSource));
+            }
         } // Structures from PDB
         else if (query.searchPDB() || query.searchEPPIC()) {
             structureSource = StructureManager.getInstance()
                     .getStructureSource(StructureSourceType.PDB,
                             query.getPdbURL(),
                             MIBundleConfiguration.getInstance().getCachePath());
-            structuresInteraction.addAll(PDBUtils.getStructures(container1.getEntry(), container2.getEntry(), structureSource));
+            synchronized (getSourceLock()) {
+                structuresInteraction.addAll(PDBUtils.getStructures(container1.getEntry(), container2.getEntry(), structureSource));
+            }
         }
 
         if (query.searchDSysMap()) {
@@ -340,114 +351,43 @@ public class MIResult {
         }
     }
 
-    private float score = -1;
-
+    /**
+     *
+     * @return 0 in the event dispatch thread if the structures are not mapped
+     * yet
+     */
     public float getScore() {
-
-        if (score > -1) {
-            return score;
-        }
-
-        HashSet<AAPosition> residuesOnProteins = new HashSet<>();
-        HashSet<AAPosition> residuesOnContacts = new HashSet<>();
-
-        residuesOnProteins.addAll(queryResiduesA);
-        residuesOnProteins.addAll(queryResiduesB);
-
-        residuesOnContacts.addAll(structureMapper.getInterfaceAAPositionsA());
-        residuesOnContacts.addAll(structureMapper.getInterfaceAAPositionsB());
-
-        if (residuesOnProteins.isEmpty()) {
+        if (false == ensureMapped()) {
             return 0;
         }
-
-        float residueScore = ((float) residuesOnContacts.size())
-                / residuesOnProteins.size();
-
-        this.score = residueScore;
-
-        return residueScore;
+        return mapping.getScore();
     }
 
+    /**
+     *
+     * @return the line of the result, without the interfaces in the event
+     * dispatch thread if the structures are not mapped yet
+     */
     public String toTab() {
-
-        String uniprotA = this.container1.getEntry().getUniprotAc();
-        String geneA = this.container1.getEntry().getGeneName();
-
-        String uniprotB = this.container2.getEntry().getUniprotAc();
-        String geneB = this.container2.getEntry().getGeneName();
-
-        HashSet<String> selectedSymsAtInterfaceA = new HashSet<>();
-        HashSet<String> selectedProteinResiduesAtInterfaceA = new HashSet<>();
-
-        HashSet<String> selectedSymsAtInterfaceB = new HashSet<>();
-        HashSet<String> selectedProteinResiduesAtInterfaceB = new HashSet<>();
-
-        for (String sequence : mergerA.getSequences()) {
-            for (Range range : mergerA.getRanges(sequence)) {
-                selectedSymsAtInterfaceA.add(sequence + ":" + range.getMin() + "-" + range.getMax());
-                for (MIGene gene : container1.getMiGenes()) {
-                    int lastAA = -1;
-                    for (int i = range.getMin(); i < range.getMax(); i++) {
-                        UniprotPosition aa = gene.getUniprotAAPosition(i);
-                        if (aa == null) {
-                            continue;
-                        }
-
-                        if (aa.getPosition() > lastAA) {
-                            try {
-                                selectedProteinResiduesAtInterfaceA.add(gene.getID() + "," + container1.getEntry().getVarSpliceAC(gene.getID()) + ":" + container1.getEntry().getSequence(gene.getID()).getSequence().substring(aa.getPosition() - 1, aa.getPosition()) + aa.getPosition());
-                            } catch (Exception e) {
-                                igbLogger.getLogger().severe("Pb when assigning AA"); // : {0}, {1}, {2}, {3}", new Object[]{aa, gene.getID(), container1.getEntry().getVarSpliceAC(gene.getID()), container1.getEntry().getSequence(gene.getID())});
-                            }
-                        }
-                    }
-                }
-            }
-        }
-
-        if (container2.getEntry().isProtein()) {
-            for (String sequence : mergerB.getSequences()) {
-                for (Range range : mergerB.getRanges(sequence)) {
-                    selectedSymsAtInterfaceB.add(sequence + ":" + range.getMin() + "-" + range.getMax());
-                    for (MIGene gene : container2.getMiGenes()) {
-                        int lastAA = -1;
-                        for (int i = range.getMin(); i < range.getMax(); i++) {
-                            UniprotPosition aa = gene.getUniprotAAPosition(i);
-                            if (aa == null) {
-                                continue;
-                            }
-                            if (aa.getPosition() > lastAA) {
-                                try {
-                                    selectedProteinResiduesAtInterfaceB.add(gene.getID() + "," + container2.getEntry().getVarSpliceAC(gene.getID()) + ":" + gene.getUniprotSequence().getSequence().substring(aa.getPosition() - 1, aa.getPosition()) + aa.getPosition());
-                                } catch (Exception e) {
-                                    System.err.println(e);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
+        if (false == ensureMapped()) {
+            return container1.getEntry().getUniprotAc() + "\t" + container1.getEntry().getGeneName() + "\t"
+                    + "\t" + container2.getEntry().getUniprotAc() + "\t" + container2.getEntry().getGeneName()
+                    + "\t\t\t\t";
         }
-
-        return uniprotA + "\t" + geneA + "\t"
-                + "\t" + uniprotB + "\t" + geneB
-                + "\t"
-                + StringUtils.join(selectedSymsAtInterfaceA, "|") + "\t"
-                + StringUtils.join(selectedSymsAtInterfaceB, "|") + "\t"
-                + StringUtils.join(selectedProteinResiduesAtInterfaceA, "|") + "\t"
-                + StringUtils.join(selectedProteinResiduesAtInterfaceB, "|");
+        return mapping.toTab(container1.getMiGenes(), container2.getMiGenes());
     }
 
     public String toXgmml() {
 
+        boolean structuresMapped = ensureMapped();
+
         int idA = this.container1.getId();
         int idB = this.container2.getId();
 
         String type;
         String graphics = "";
 
-        if (hasInterfaceOnStructure()) {
+        if (structuresMapped && hasInterfaceOnStructure()) {
             type = "interface";
         } else if (false == this.structuresInteraction.isEmpty()) {
             type = "wt-structure";
@@ -477,23 +417,26 @@ public class MIResult {
         String structureTypeAttr = "<att name=\"structuretype\" type=\"string\" value=\""
                 + strutureType + "\"/>";
 
+        // no interface in the event dispatch thread if not mapped yet
+        int interfaceSizeA = structuresMapped ? structureMapper.getInterfaceAAPositionsA().size() : 0;
+        int interfaceSizeB = structuresMapped ? structureMapper.getInterfaceAAPositionsB().size() : 0;
+
         String edges = "";
 
-        if (false == structureMapper.getInterfaceAAPositionsA().isEmpty()
-                || structureMapper.getInterfaceAAPositionsB().isEmpty()) {
+        if (interfaceSizeA > 0 || interfaceSizeB == 0) {
             edges += "<edge source=\"" + idA + "\" target=\"" + idB
                     + "\" label=\"" + idA + "-" + idB + "\">" + graphics
                     + "<att name=\"positions\" type=\"float\" value=\""
-                    + structureMapper.getInterfaceAAPositionsA().size()
+                    + interfaceSizeA
                     + "\"/><att type=\"string\" name=\"interaction\" value=\""
                     + type + "\"/>" + structureTypeAttr + "</edge>\n";
         }
 
-        if (false == structureMapper.getInterfaceAAPositionsB().isEmpty()) {
+        if (interfaceSizeB > 0) {
             edges += "<edge source=\"" + idB + "\" target=\"" + idA
                     + "\" label=\"" + idB + "-" + idA + "\">" + graphics
                     + "<att name=\"positions\" type=\"float\" value=\""
-                    + structureMapper.getInterfaceAAPositionsB().size()
+                    + interfaceSizeB
                     + "\"/><att type=\"string\" name=\"interaction\" value=\""
                     + type + "\"/>" + structureTypeAttr + "</edge>\n";
         }
@@ -561,18 +504,30 @@ public class MIResult {
     }
 
     public boolean hasResiduesOnStructureA() {
+        if (false == ensureMapped()) {
+            return false;
+        }
         return structureMapper.proteinAHasResiduesOnStructure(); // hasInterfaceWithQueryResiduesB;
     }
 
     public Collection<String> getResiduesOnStructureA(String structureId) {
+        if (false == ensureMapped()) {
+            return Collections.emptyList();
+        }
         return structureMapper.getStructuresResiduesA(structureId); // hasInterfaceWithQueryResiduesB;
     }
 
     public boolean hasInterfaceOnStructureA() {
+        if (false == ensureMapped()) {
+            return false;
+        }
         return structureMapper.proteinAHasInterfaceOnStructure(); // hasInterfaceWithQueryResiduesB;
     }
 
     public boolean hasInterfaceOnStructureB() {
+        if (false == ensureMapped()) {
+            return false;
+        }
         if (homodimer) {
             return structureMapper.proteinAHasInterfaceOnStructure();
         }
@@ -580,6 +535,9 @@ public class MIResult {
     }
 
     public boolean hasResiduesOnStructureB() {
+        if (false == ensureMapped()) {
+            return false;
+        }
         if (homodimer) {
             return structureMapper.proteinAHasResiduesOnStructure(); // hasInterfaceWithQueryResiduesB;
         }
@@ -587,6 +545,9 @@ public class MIResult {
     }
 
     public Collection<String> getResiduesOnStructureB(String structureId) {
+        if (false == ensureMapped()) {
+            return Collections.emptyList();
+        }
         if (homodimer) {
             return structureMapper.getStructuresResiduesA(structureId); // hasInterfaceWithQueryResiduesB;
         }
@@ -594,10 +555,16 @@ public class MIResult {
     }
 
     public boolean hasResiduesOnStructure() {
+        if (false == ensureMapped()) {
+            return false;
+        }
         return structureMapper.hasResiduesOnStructure();
     }
 
     public boolean hasInterfaceOnStructure() {
+        if (false == ensureMapped()) {
+            return false;
+        }
         return structureMapper.hasInterfaceOnStructure();
     }
 
@@ -650,14 +617,23 @@ public class MIResult {
     }
 
     public Collection<String> getStructuresWithQueryResiduesAtInterface() {
+        if (false == ensureMapped()) {
+            return Collections.emptyList();
+        }
         return structureMapper.getStructuresQueryResiduesAtInterfaces();
     }
 
     public Collection<String> getStructuresWithQueryResidues() {
+        if (false == ensureMapped()) {
+            return Collections.emptyList();
+        }
         return structureMapper.getStructuresWithQueryResidues();
     }
 
     public Collection<String> getStructuresResiduesAtInterfaces(String pdbId) {
+        if (false == ensureMapped()) {
+            return Collections.emptyList();
+        }
         if (structureMapper.getStructuresQueryResiduesAtInterfaces().contains(
                 pdbId)) {
             return structureMapper.getStructuresResiduesAtInterfaces(pdbId);
@@ -667,6 +643,9 @@ public class MIResult {
     }
 
     public Collection<String> getStructuresResidues(String pdbId) {
+        if (false == ensureMapped()) {
+            return Collections.emptyList();
+        }
         if (structureMapper.getStructuresWithQueryResidues().contains(pdbId)) {
             return structureMapper.getStructuresResidues(pdbId);
         } else {
@@ -718,7 +697,22 @@ public class MIResult {
 
     }
 
+    /**
+     * Does not wait for the mapping: if the structures are not mapped yet, the
+     * mapping is scheduled and the summary only tells which structures are
+     * available.
+     *
+     * @return
+     */
     public StructureSummary getStructureSummary() {
+        if (false == isMapped()) {
+            scheduleMapping();
+            return new StructureSummary(
+                    false == structuresProteinA.isEmpty(), false, false,
+                    false == structuresProteinB.isEmpty(), false, false,
+                    false == getInteractionStructures().isEmpty(), false, false);
+        }
+
         return new StructureSummary(
                 false == structuresProteinA.isEmpty(),
                 hasResiduesOnStructureA(),
@@ -832,17 +826,21 @@ public class MIResult {
         return homodimer;
     }
 
-    private final RangeMerger merger;
-
-    private final RangeMerger mergerA;
-
-    private final RangeMerger mergerB;
-
     public RangeMerger getRangeMerger() {
-        return this.merger;
+        if (false == ensureMapped()) {
+            return new RangeMerger();
+        }
+        return mapping.getRangeMerger();
     }
 
+    /**
+     * In the event dispatch thread, use MappingWorker.whenMapped() first,
+     * otherwise the track has no interface.
+     *
+     * @return
+     */
     public TypeContainerAnnot createTrack() {
+        RangeMerger merger = getRangeMerger();
 
         // create track       
         TypeContainerAnnot interactorTrack = new TypeContainerAnnot(
@@ -884,14 +882,10 @@ public class MIResult {
             ArrayList<Integer> emins = new ArrayList<>();
             ArrayList<Integer> emaxs = new ArrayList<>();
 
-            if (merger.getRanges(sequence.getId()) != null) {
-                for (Range range : merger.getRanges(sequence.getId())) {
-                    if (range.getMin() >= span.getMin() && range.getMax() < span.getMax()) {
-                        emins.add(range.getMin());
-                        // from 0-based inclusive to 0-based exclusive
-                        emaxs.add(range.getMax() + 1);
-                    }
-                }
+            for (Range range : merger.getRangesWithin(sequence.getId(), span.getMin(), span.getMax() - 1)) {
+                emins.add(range.getMin());
+                // from 0-based inclusive to 0-based exclusive
+                emaxs.add(range.getMax() + 1);
             }
 
             int[] eminsA = new int[emaxs.size()];
@@ -923,10 +917,16 @@ public class MIResult {
     }
 
     public HashSet<AAPosition> getInterfaceAAPositionsA() {
+        if (false == ensureMapped()) {
+            return new HashSet<>();
+        }
         return structureMapper.getInterfaceAAPositionsA();
     }
 
     public HashSet<AAPosition> getInterfaceAAPositionsB() {
+        if (false == ensureMapped()) {
+            return new HashSet<>();
+        }
         return structureMapper.getInterfaceAAPositionsB();
     }
 
@@ -42,6 +42,7 @@ import it.iit.genomics.cru.igb.bundles.mi.model.ProgressManager;
 import it.iit.genomics.cru.igb.bundles.mi.query.AbstractMIQuery.QueryType;
 import it.iit.genomics.cru.igb.bundles.mi.query.MIQuery;
 import it.iit.genomics.cru.igb.bundles.mi.view.MIResultPanel;
+import it.iit.genomics.cru.structures.alignment.SequenceAligner;
 import it.iit.genomics.cru.structures.bridges.commons.BridgesRemoteAccessException;
 import it.iit.genomics.cru.structures.bridges.pdb.PDBWSClient;
 import it.iit.genomics.cru.structures.bridges.pdb.model.Chain;
@@ -55,6 +56,7 @@ import it.iit.genomics.cru.structures.bridges.psicquic.InteractionManager;
 import it.iit.genomics.cru.structures.bridges.psicquic.PsicquicUtils;
 import it.iit.genomics.cru.structures.bridges.uniprot.UniprotkbUtils;
 import it.iit.genomics.cru.structures.bridges.userData.UserStructuresManager;
+import it.iit.genomics.cru.structures.business.ProteinLookupTask;
 import it.iit.genomics.cru.structures.model.AAPosition;
 import it.iit.genomics.cru.structures.model.AAPositionManager;
 import it.iit.genomics.cru.structures.model.ChainMapping;
@@ -62,6 +64,7 @@ import it.iit.genomics.cru.structures.model.MIGene;
 import it.iit.genomics.cru.structures.model.ModifiedResidue;
 import it.iit.genomics.cru.structures.model.MoleculeEntry;
 import it.iit.genomics.cru.structures.model.Range;
+import it.iit.genomics.cru.structures.model.RangeMerger;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
@@ -73,7 +76,11 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
 import javax.swing.JComponent;
@@ -83,6 +90,7 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JProgressBar;
 import javax.swing.JTabbedPane;
+import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
 import javax.swing.plaf.basic.BasicButtonUI;
 import org.apache.commons.lang.StringUtils;
@@ -126,6 +134,52 @@ public class MIWorker extends SwingWorker<ArrayList<MIResult>, String> {
 	// symmetries (e.g. mutations)
 	HashMultimap<MIGene, SeqSymmetry> miGene2selectedSyms = HashMultimap.create();
 
+	// Remote queries (Uniprot, PSICQUIC, PDB) are sent concurrently
+	private ExecutorService executor;
+
+	// Result tab, only accessed from the event dispatch thread
+	private MIResultPanel resultPanel;
+
+	// Alignments done before this query
+	private final SequenceAligner.Counts alignmentCountsAtStart = SequenceAligner.getInstance().getCounts();
+
+	/**
+	 * Set when a PSICQUIC server did not answer: the query goes on without
+	 * it, and the summary warns that the interactions may be incomplete.
+	 */
+	private volatile boolean psicquicPartial = false;
+
+	// Track of the query, completed when the results are mapped in lazy
+	// mode. Only accessed from the event dispatch thread.
+	private TypeContainerAnnot interactorTrack;
+
+	private boolean trackUpdateScheduled = false;
+
+	/**
+	 * Add the interfaces of the results mapped after the track was created.
+	 * The results mapped together are added to the track at once.
+	 */
+	private final MIResult.MappingListener trackUpdater = new MIResult.MappingListener() {
+		@Override
+		public void mappingDone(MIResult result) {
+			if (trackUpdateScheduled) {
+				return;
+			}
+
+			trackUpdateScheduled = true;
+
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					trackUpdateScheduled = false;
+					interactorTrack.removeChildren();
+					addTrackChildren();
+					service.getSeqMapView().updatePanel();
+				}
+			});
+		}
+	};
+
 	public MIWorker(List<MIResult> results, IgbService service, MIQuery query, JProgressBar progressBar) {
 
 		this.service = service;
@@ -185,13 +239,41 @@ public class MIWorker extends SwingWorker<ArrayList<MIResult>, String> {
 			list.addSymmetry(querySym);
 		}
 
+		executor = Executors.newFixedThreadPool(MIBundleConfiguration.getInstance().getNumberOfThreads());
+
+		// Genes are read from the genome loaded in IGB on this thread, only
+		// the Uniprot queries of each chromosome are sent to the executor.
+		ArrayList<HashMultimap<SeqSymmetry, MIGene>> chrCandidates = new ArrayList<>();
+		ArrayList<ProteinLookupTask> chrLookups = new ArrayList<>();
+		ArrayList<Future<HashMultimap<String, MoleculeEntry>>> chrProteins = new ArrayList<>();
+
 		for (BioSeq chr : list.getSequences()) {
 			ArrayList<SeqSymmetry> querySyms = list.getSymmetries(chr);
-			getGenes(querySyms, chr, true);
-			// for (MIGene gene : getGenes(querySyms, chr, true)) {
-			// // load exons (we only need this for the selected ones)
-			// miGene2selectedSyms.add(gene, querySym);
-			// }
+			HashMultimap<SeqSymmetry, MIGene> candidates = geneManager.getBySymList(chr, querySyms);
+			chrCandidates.add(candidates);
+			ProteinLookupTask lookup = new ProteinLookupTask(query.getTaxid(), candidates.values());
+			chrLookups.add(lookup);
+			chrProteins.add(executor.submit(lookup));
+		}
+
+		for (int i = 0; i < chrCandidates.size(); i++) {
+			HashMultimap<String, MoleculeEntry> proteins;
+			try {
+				proteins = chrProteins.get(i).get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return resultsInBackground;
+			} catch (ExecutionException e) {
+				igbLogger.severe("Cannot get proteins", e.getCause());
+				continue;
+			}
+
+			// the proteins found before the failure are still used
+			if (chrLookups.get(i).hasFailed()) {
+				igbLogger.severe("Cannot access Uniprot!");
+			}
+
+			setProteins(chrCandidates.get(i), proteins);
 			progressManager.nextStep();
 			setProgress(progressManager.getProgress());
 		}
@@ -233,61 +315,117 @@ public class MIWorker extends SwingWorker<ArrayList<MIResult>, String> {
 
 		InteractionManager interactors = new InteractionManager();
 
-		for (String ac : queryUniprotAcs) {
+		// Interactions from Interactome3D are read from a local file: get (and
+		// download if needed) the repository once for all the proteins.
+		Interactome3DLocalRepository i3dRepository = null;
 
-			logAndPublish("Get interactions for " + ac);
+		if (query.searchInteractome3D() || query.searchDSysMap()) {
+			// get it from local repository?
+			if (null != MIBundleConfiguration.getInstance().getI3DStructuresDirectory()) {
+				i3dRepository = UserStructuresManager.getInstance()
+						.getUserRepository(MIBundleConfiguration.getInstance().getI3DStructuresDirectory());
+			} else {
+				I3DDownload download = new I3DDownload(MIBundleConfiguration.getInstance().getCachePath());
 
+				if (false == download.isDatDownloaded(query.getTaxid())) {
+					logAndPublish("download interactions from Interactome3D");
+					download.downloadDat(query.getTaxid());
+				}
+
+				// get interactions
+				i3dRepository = UserStructuresManager.getInstance()
+						.getUserRepository(download.getI3DdatPath(query.getTaxid()));
+			}
+		}
+
+		// Send the remote queries (PSICQUIC, PDB) of all proteins to the
+		// executor, then merge the answers in the order of submission so that
+		// the result does not depend on the response times.
+		ArrayList<Future<InteractorLookup>> lookups = new ArrayList<>();
+
+		// PSICQUIC is queried for several proteins at once
+		HashMap<String, Future<HashMap<String, InteractionManager>>> psicquicLookups = new HashMap<>();
+
+		if (false == PsicquicInitWorker.nullServer.equals(query.getPsiquicServer())
+				&& null != query.getPsiquicServer()) {
+			ArrayList<String> batch = new ArrayList<>();
+
+			for (String ac : queryUniprotAcs) {
+				if (ac == null) {
+					continue;
+				}
+
+				batch.add(ac);
+
+				if (batch.size() == PsicquicUtils.BATCH_SIZE) {
+					submitPsicquicLookup(batch, psicquicLookups);
+					batch = new ArrayList<>();
+				}
+			}
+
+			if (false == batch.isEmpty()) {
+				submitPsicquicLookup(batch, psicquicLookups);
+			}
+		}
+
+		for (String ac : queryUniprotAcs) {
 			if (ac == null) {
 				continue;
 			}
 
+			List<String> pdbs = new ArrayList<>();
+
+			if (query.searchPDB() || query.searchPDBLocal() || query.searchEPPIC()) {
+				pdbs.addAll(symManager.getByProteinAc(ac).getEntry().getPdbs());
+			}
+
+			lookups.add(executor.submit(new InteractorLookupTask(ac, pdbs)));
+		}
+
+		for (Future<InteractorLookup> future : lookups) {
+
+			InteractorLookup lookup;
+
 			try {
-				if (false == PsicquicInitWorker.nullServer.equals(query.getPsiquicServer())
-						&& null != query.getPsiquicServer()) {
-					for (Interaction interaction : PsicquicUtils.getInstance().getInteractors(query.getPsiquicServer(),
-							ac)) {
-						interactors.merge(interaction);
-					}
-				}
-			} catch (BridgesRemoteAccessException be) {
-				igbLogger.severe("Cannot access PSICQUIC server!");
-				break;
+				lookup = future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return resultsInBackground;
+			} catch (ExecutionException e) {
+				igbLogger.severe("Cannot get interactions", e.getCause());
+				progressManager.nextStep();
+				setProgress(progressManager.getProgress());
+				continue;
 			}
 
-//			// Add interactors from User structures?
-//			if (null != query.getUserStructuresPath() && query.searchUserStructures()) {
-//				Interactome3DLocalRepository userStructures = UserStructuresManager.getInstance()
-//						.getUserRepository(query.getUserStructuresPath());
-//				for (String interactorAc : userStructures.getInteractors(ac)) {
-//					interactors.getOrCreateInteraction(ac, interactorAc).addType(INTERACTION_TYPE_I3D);
-//					uniprotNeedMapping.add(interactorAc);
-//				}
-//			}
+			String ac = lookup.ac;
 
-			// Add interactors from I3D?
-			if (query.searchInteractome3D() || query.searchDSysMap()) {
-				// Check or download I3D interaction file
-				
-				// get it from local repository?
-				Interactome3DLocalRepository userStructures;
-//				System.out.println("I3D cache: " +  MIBundleConfiguration.getInstance().getI3DStructuresDirectory());
-				if (null != MIBundleConfiguration.getInstance().getI3DStructuresDirectory() ) {
-					userStructures = UserStructuresManager.getInstance()
-							.getUserRepository(MIBundleConfiguration.getInstance().getI3DStructuresDirectory());
-				} else {				
-					I3DDownload download = new I3DDownload(MIBundleConfiguration.getInstance().getCachePath());
-
-					if (false == download.isDatDownloaded(query.getTaxid())) {
-						logAndPublish("download interactions from Interactome3D");
-						download.downloadDat(query.getTaxid());
-					}
+			logAndPublish("Get interactions for " + ac);
 
-					// get interactions
-					userStructures = UserStructuresManager.getInstance()
-						.getUserRepository(download.getI3DdatPath(query.getTaxid()));
+			if (psicquicLookups.containsKey(ac)) {
+				try {
+					lookup.interactions.addAll(psicquicLookups.get(ac).get().get(ac).getInteractions());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return resultsInBackground;
+				} catch (ExecutionException e) {
+					lookup.psicquicFailed = true;
 				}
-				
-				for (String interactorAc : userStructures.getInteractors(ac)) {
+			}
+
+			if (lookup.psicquicFailed) {
+				// the other servers and the PDB lookups go on
+				igbLogger.warning("Cannot get the PSICQUIC interactions of " + ac);
+				psicquicPartial = true;
+			}
+
+			for (Interaction interaction : lookup.interactions) {
+				interactors.merge(interaction);
+			}
+
+			// Add interactors from I3D?
+			if (null != i3dRepository) {
+				for (String interactorAc : i3dRepository.getInteractors(ac)) {
 					interactors.getOrCreateInteraction(ac, interactorAc).addType("direct interaction (Interactome3D)");
 					uniprotNeedMapping.add(interactorAc);
 				}
@@ -297,177 +435,153 @@ public class MIWorker extends SwingWorker<ArrayList<MIResult>, String> {
 			if (query.searchPDB() || query.searchPDBLocal() || query.searchEPPIC()) {
 				MoleculeEntry entry = symManager.getByProteinAc(ac).getEntry();
 
-				PDBWSClient client = new PDBWSClient();
-				// Do only 10 by 10
-				List<String> pdbs = new ArrayList<>();
-				pdbs.addAll(entry.getPdbs());
-
-				while (false == pdbs.isEmpty()) {
-					List<String> subset = pdbs.subList(0, Math.min(10, pdbs.size()));
-					pdbs = pdbs.subList(Math.min(10, pdbs.size()), pdbs.size());
-
-					if (query.searchPPI() || query.searchNucleicAcid()) {
+				for (MoleculeDescription molDesc : lookup.descriptions) {
+					for (StructureID structureId : molDesc.getStructureId()) {
 
-						MoleculeDescription molDesc;
-						try {
-							molDesc = client.getDescription(subset);
-						} catch (BridgesRemoteAccessException be) {
-							igbLogger.severe("Cannot access PDB!");
-							break;
-						}
-
-						if (molDesc != null) {
-							for (StructureID structureId : molDesc.getStructureId()) {
+						for (Polymer polymer : structureId.getPolymers()) {
+							if (polymer.getPolymerDescription() == null) {
+								igbLogger.severe("No description for " + structureId.getId());
+							}
+							if (null != polymer.getType()) {
+								switch (polymer.getType()) {
+								case "protein":
+									if (query.searchPPI() && null != polymer.getMacromolecule()) {
+										String proteinAc = polymer.getMacromolecule().getAccession().get(0);
 
-								for (Polymer polymer : structureId.getPolymers()) {
-									if (polymer.getPolymerDescription() == null) {
-										igbLogger.severe("No description for " + structureId.getId());
-									}
-									if (null != polymer.getType()) {
-										switch (polymer.getType()) {
-										case "protein":
-											if (query.searchPPI() && null != polymer.getMacromolecule()) {
-												String proteinAc = polymer.getMacromolecule().getAccession().get(0);
-
-												if (false == proteinAc.equals(entry.getUniprotAc())
-														|| polymer.getChains().size() > 1) {
-
-													interactors.getOrCreateInteraction(ac, proteinAc)
-															.addType(INTERACTION_TYPE_PDB);
-													uniprotNeedMapping.add(ac);
-												}
-											}
-											break;
-										case "dna":
-											if (false == query.searchNucleicAcid()) {
-												break;
-											}
-											// Merge all DNA entries, use "DNA
-											// as name rather that the
-											// desciption
-											MISymContainer dnaSym = symManager.getByProteinAc(MoleculeEntry.TAXID_DNA);
-											uniprotNeedMapping.add(ac);
+										if (false == proteinAc.equals(entry.getUniprotAc())
+												|| polymer.getChains().size() > 1) {
 
-											interactors.getOrCreateInteraction(ac, MoleculeEntry.TAXID_DNA)
+											interactors.getOrCreateInteraction(ac, proteinAc)
 													.addType(INTERACTION_TYPE_PDB);
+											uniprotNeedMapping.add(ac);
+										}
+									}
+									break;
+								case "dna":
+									if (false == query.searchNucleicAcid()) {
+										break;
+									}
+									// Merge all DNA entries, use "DNA
+									// as name rather that the
+									// desciption
+									MISymContainer dnaSym = symManager.getByProteinAc(MoleculeEntry.TAXID_DNA);
+									uniprotNeedMapping.add(ac);
 
-											if (dnaSym == null) {
-												MoleculeEntry dnaEntry = new MoleculeEntry(MoleculeEntry.TAXID_DNA);
-												dnaEntry.setSequence("");
-												dnaEntry.setTaxid(MoleculeEntry.TAXID_DNA);
+									interactors.getOrCreateInteraction(ac, MoleculeEntry.TAXID_DNA)
+											.addType(INTERACTION_TYPE_PDB);
 
-												targetUniprotEntries.put(MoleculeEntry.TAXID_DNA, dnaEntry);
-												dnaEntry.addGeneName(MoleculeEntry.TAXID_DNA);
+									if (dnaSym == null) {
+										MoleculeEntry dnaEntry = new MoleculeEntry(MoleculeEntry.TAXID_DNA);
+										dnaEntry.setSequence("");
+										dnaEntry.setTaxid(MoleculeEntry.TAXID_DNA);
 
-												dnaSym = symManager.getByProtein(dnaEntry);
-											}
+										targetUniprotEntries.put(MoleculeEntry.TAXID_DNA, dnaEntry);
+										dnaEntry.addGeneName(MoleculeEntry.TAXID_DNA);
 
-											MoleculeEntry dnaEntry = dnaSym.getEntry();
+										dnaSym = symManager.getByProtein(dnaEntry);
+									}
 
-											for (Chain chain : polymer.getChains()) {
-												ChainMapping chainMapping = new ChainMapping(structureId.getId(),
-														chain.getId(), 0, 0);
-												dnaEntry.addChain(structureId.getId(), chainMapping, "unspecified");
-											}
+									MoleculeEntry dnaEntry = dnaSym.getEntry();
 
-											break;
+									for (Chain chain : polymer.getChains()) {
+										ChainMapping chainMapping = new ChainMapping(structureId.getId(),
+												chain.getId(), 0, 0);
+										dnaEntry.addChain(structureId.getId(), chainMapping, "unspecified");
+									}
 
-										case "rna":
-											if (false == query.searchNucleicAcid()) {
-												break;
-											}
-											uniprotNeedMapping.add(ac);
-											// Merge all RNA entries, use "RNA
-											// as name rather that the
-											// desciption
-											MISymContainer rnaSym = symManager.getByProteinAc(MoleculeEntry.TAXID_RNA);
+									break;
 
-											interactors.getOrCreateInteraction(ac, MoleculeEntry.TAXID_RNA)
-													.addType(INTERACTION_TYPE_PDB);
+								case "rna":
+									if (false == query.searchNucleicAcid()) {
+										break;
+									}
+									uniprotNeedMapping.add(ac);
+									// Merge all RNA entries, use "RNA
+									// as name rather that the
+									// desciption
+									MISymContainer rnaSym = symManager.getByProteinAc(MoleculeEntry.TAXID_RNA);
 
-											if (rnaSym == null) {
-												MoleculeEntry rnaEntry = new MoleculeEntry(MoleculeEntry.TAXID_RNA);
-												rnaEntry.setSequence("");
-												rnaEntry.setTaxid(MoleculeEntry.TAXID_RNA);
+									interactors.getOrCreateInteraction(ac, MoleculeEntry.TAXID_RNA)
+											.addType(INTERACTION_TYPE_PDB);
 
-												targetUniprotEntries.put(MoleculeEntry.TAXID_RNA, rnaEntry);
-												rnaEntry.addGeneName(MoleculeEntry.TAXID_RNA);
+									if (rnaSym == null) {
+										MoleculeEntry rnaEntry = new MoleculeEntry(MoleculeEntry.TAXID_RNA);
+										rnaEntry.setSequence("");
+										rnaEntry.setTaxid(MoleculeEntry.TAXID_RNA);
 
-												rnaSym = symManager.getByProtein(rnaEntry);
-											}
+										targetUniprotEntries.put(MoleculeEntry.TAXID_RNA, rnaEntry);
+										rnaEntry.addGeneName(MoleculeEntry.TAXID_RNA);
 
-											MoleculeEntry rnaEntry = rnaSym.getEntry();
+										rnaSym = symManager.getByProtein(rnaEntry);
+									}
 
-											for (Chain chain : polymer.getChains()) {
-												ChainMapping chainMapping = new ChainMapping(structureId.getId(),
-														chain.getId(), 0, 0);
-												rnaEntry.addChain(structureId.getId(), chainMapping, "unspecified");
-											}
+									MoleculeEntry rnaEntry = rnaSym.getEntry();
 
-											break;
-										}
+									for (Chain chain : polymer.getChains()) {
+										ChainMapping chainMapping = new ChainMapping(structureId.getId(),
+												chain.getId(), 0, 0);
+										rnaEntry.addChain(structureId.getId(), chainMapping, "unspecified");
 									}
+
+									break;
 								}
 							}
 						}
 					}
-					if (query.searchLigands() && false == query.searchEPPIC()) {
-						try {
-							for (Ligand ligand : client.getLigands(subset)) {
-
-								/**
-								 * Only non polymer ligands
-								 */
-								if (false == ligand.isNonPolymer()) {
-									continue;
-								}
-
-								int numAtoms = 0;
+				}
 
-								for (String atom : ligand.getFormula().split(" ")) {
+				for (Ligand ligand : lookup.ligands) {
 
-									String num = atom.replaceAll("\\D+", "").trim();
-									if ("".equals(num)) {
-										numAtoms++;
-									} else {
-										numAtoms += Integer.parseInt(num);
-									}
-								}
+					/**
+					 * Only non polymer ligands
+					 */
+					if (false == ligand.isNonPolymer()) {
+						continue;
+					}
 
-								if (numAtoms <= 10) {
-									igbLogger.info("Skip ligand: " + ligand.getFormula());
-									continue;
-								}
-								uniprotNeedMapping.add(ac);
-								MISymContainer misym = symManager.getByProteinAc(ligand.getChemicalName());
+					int numAtoms = 0;
 
-								interactors.getOrCreateInteraction(ac, ligand.getChemicalName())
-										.addType(INTERACTION_TYPE_PDB);
+					for (String atom : ligand.getFormula().split(" ")) {
 
-								if (misym == null) {
-									MoleculeEntry ligandEntry = new MoleculeEntry(ligand.getChemicalName());
-									ligandEntry.setSequence("");
-									ligandEntry.setTaxid(MoleculeEntry.TAXID_LIGAND);
+						String num = atom.replaceAll("\\D+", "").trim();
+						if ("".equals(num)) {
+							numAtoms++;
+						} else {
+							numAtoms += Integer.parseInt(num);
+						}
+					}
 
-									ligandEntry.addGeneName(ligand.getChemicalId());
-									targetUniprotEntries.put(ligand.getChemicalName(), ligandEntry);
+					if (numAtoms <= 10) {
+						igbLogger.info("Skip ligand: " + ligand.getFormula());
+						continue;
+					}
+					uniprotNeedMapping.add(ac);
+					MISymContainer misym = symManager.getByProteinAc(ligand.getChemicalName());
 
-									misym = symManager.getByProtein(ligandEntry);
-								}
+					interactors.getOrCreateInteraction(ac, ligand.getChemicalName())
+							.addType(INTERACTION_TYPE_PDB);
 
-								MoleculeEntry ligandEntry = misym.getEntry();
+					if (misym == null) {
+						MoleculeEntry ligandEntry = new MoleculeEntry(ligand.getChemicalName());
+						ligandEntry.setSequence("");
+						ligandEntry.setTaxid(MoleculeEntry.TAXID_LIGAND);
 
-								ChainMapping chainMapping = new ChainMapping(ligand.getStructureId(), "ligand", 0, 0);
-								ligandEntry.addChain(ligand.getStructureId(), chainMapping, "unspecified");
+						ligandEntry.addGeneName(ligand.getChemicalId());
+						targetUniprotEntries.put(ligand.getChemicalName(), ligandEntry);
 
-							}
-						} catch (BridgesRemoteAccessException be) {
-							igbLogger.severe("Cannot access PDB!");
-							break;
-						}
+						misym = symManager.getByProtein(ligandEntry);
 					}
+
+					MoleculeEntry ligandEntry = misym.getEntry();
+
+					ChainMapping chainMapping = new ChainMapping(ligand.getStructureId(), "ligand", 0, 0);
+					ligandEntry.addChain(ligand.getStructureId(), chainMapping, "unspecified");
+
 				}
 
+				if (lookup.pdbFailed) {
+					igbLogger.severe("Cannot access PDB!");
+				}
 			}
 
 			if (query.searchModifications()) {
@@ -518,6 +632,8 @@ public class MIWorker extends SwingWorker<ArrayList<MIResult>, String> {
 			setProgress(progressManager.getProgress());
 		}
 
+		executor.shutdown();
+
 		// Only look for uniprot Acs for which we don't have an entry yet
 		HashSet<String> uniprotAcToSearch = new HashSet<>();
 
@@ -665,26 +781,40 @@ public class MIWorker extends SwingWorker<ArrayList<MIResult>, String> {
 				if (false == miGene2selectedSyms.containsKey(gene)) {
 					continue;
 				}
-				for (SeqSymmetry selectedSym : miGene2selectedSyms.get(gene)) {
-					logAndPublish("Load residues for " + gene.getID());
-					geneManager.loadTranscriptSequence(selectedSym.getSpanSeq(0), gene);
-
-					// Maybe the protein was already assigned to the gene.
-					// In order to be sure we are working on the right one,
-					// Don't use the protein variable, but get it fromthe gene
-					ArrayList<AAPosition> aaPositions = new ArrayList<>();
-
-					// symmetry are 0-based exclusive,
-					// use max -1 to have inclusive coordinates
-					Collection<AAPosition> positions = AAPositionManager.getAAPositionManager(query.getLabel())
-							.getAAPositions(gene, selectedSym.getSpan(0).getMin(), selectedSym.getSpan(0).getMax() - 1);
-					aaPositions.addAll(positions);
-
-					for (AAPosition aa : aaPositions) {
-						gene2pos.put(gene, aa);
-					}
-					symManager.addSelectedResidues(gene.getProtein(), aaPositions);
+				Collection<SeqSymmetry> geneSyms = miGene2selectedSyms.get(gene);
+
+				if (geneSyms.isEmpty()) {
+					continue;
 				}
+
+				logAndPublish("Load residues for " + gene.getID());
+				// All the selected symmetries of a gene are on the same
+				// sequence: load the transcript once, the alignment to the
+				// protein is then shared by all the ranges.
+				geneManager.loadTranscriptSequence(geneSyms.iterator().next().getSpanSeq(0), gene);
+
+				if (null == gene.getTranscriptAlignment()) {
+					igbLogger.warning("Cannot align the transcript of " + gene.getID() + " to " + ac);
+					continue;
+				}
+
+				// symmetry are 0-based exclusive,
+				// use max -1 to have inclusive coordinates
+				ArrayList<Range> ranges = new ArrayList<>();
+				for (SeqSymmetry selectedSym : geneSyms) {
+					ranges.add(new Range(selectedSym.getSpan(0).getMin(), selectedSym.getSpan(0).getMax() - 1));
+				}
+
+				// Maybe the protein was already assigned to the gene.
+				// In order to be sure we are working on the right one,
+				// Don't use the protein variable, but get it fromthe gene
+				ArrayList<AAPosition> aaPositions = new ArrayList<>(AAPositionManager
+						.getAAPositionManager(query.getLabel()).getAAPositions(gene, ranges));
+
+				for (AAPosition aa : aaPositions) {
+					gene2pos.put(gene, aa);
+				}
+				symManager.addSelectedResidues(gene.getProtein(), aaPositions);
 			}
 		}
 
@@ -692,8 +822,16 @@ public class MIWorker extends SwingWorker<ArrayList<MIResult>, String> {
 		// don't add twice the same interaction
 		HashSet<String> interactionsDone = new HashSet<>();
 
+		// Open the result tab now, the interactions are added as soon as
+		// they are ready.
+		showResultTab(getQuerySummary(false) + " <i>running...</i>");
+
 		progressManager.nextMajorStep(symManager.getQueryContainers().size());
 
+		// The interactions are displayed first, their structures are mapped
+		// in background, or only when they are displayed.
+		boolean lazyMapping = MIBundleConfiguration.getInstance().isLazyStructureMapping();
+
 		for (MISymContainer container : symManager.getQueryContainers()) {
 
 			logAndPublish(container.getEntry().getGeneName());
@@ -751,6 +889,11 @@ public class MIWorker extends SwingWorker<ArrayList<MIResult>, String> {
 
 				resultsInBackground.add(result);
 				miSymmetries.add(targetContainer.getResultSym());
+				publishResult(result);
+
+				if (false == lazyMapping) {
+					result.scheduleMapping();
+				}
 			}
 
 			progressManager.nextStep();
@@ -758,6 +901,18 @@ public class MIWorker extends SwingWorker<ArrayList<MIResult>, String> {
 			setProgress(progressManager.getProgress());
 		}
 
+		// Wait for the structures, the results not started yet are mapped
+		// in this thread.
+		if (false == lazyMapping) {
+			for (MIResult result : resultsInBackground) {
+				if (false == result.isMapped()) {
+					logAndPublish("structures " + result.getInteractor1().getGeneName() + "-"
+							+ result.getInteractor2().getGeneName());
+					result.mapStructures();
+				}
+			}
+		}
+
 		AAPositionManager.removeManager(query.getLabel());
 
 		return resultsInBackground;
@@ -773,76 +928,24 @@ public class MIWorker extends SwingWorker<ArrayList<MIResult>, String> {
 	}
 
 	/**
-	 * Get the symmetries at the same position on the main sequence, i.e. get
-	 * the gene corresponding to a selected Symmetry.
+	 * Associate the genes at the same position of the selected symmetries to
+	 * their best protein.
 	 *
-	 * @param selectedSymmetry
-	 * @return
+	 * @param candidates
+	 *            genes found for each selected symmetry
+	 * @param proteins
+	 *            proteins found for each gene ID
 	 */
-	private void getGenes(ArrayList<SeqSymmetry> selectedSymmetries, BioSeq seq, boolean ignoreIfNoProtein) {
-
-		// Don't map residues if they cover a full gene
-		boolean skipSearchResidues = false;
-
-		HashMultimap<String, MoleculeEntry> proteins = HashMultimap.create();
-
-		HashSet<String> searchGeneNames = new HashSet<>();
-		HashSet<String> searchRefSeq = new HashSet<>();
-		HashSet<String> searchEnsembl = new HashSet<>();
-
-		HashMultimap<SeqSymmetry, MIGene> candidates = geneManager.getBySymList(seq, selectedSymmetries);
+	private void setProteins(HashMultimap<SeqSymmetry, MIGene> candidates, HashMultimap<String, MoleculeEntry> proteins) {
 
 		/**
 		 * TODO : may be more than one!!!
 		 */
 		for (SeqSymmetry sym : candidates.keySet()) {
 			logAndPublish("map " + sym.getID());
-			for (MIGene gene : candidates.get(sym)) {
-
-				String refseqPattern = "[A-Z]{2}\\_[0-9\\.]+";
-				if (gene.getID().matches(refseqPattern)) {
-					searchRefSeq.add(gene.getID());
-				} else if (gene.getID().startsWith("ENS")) {
-					searchEnsembl.add(gene.getID());
-				} else {
-					searchGeneNames.add(gene.getID());
-				}
-			}
-
-			try {
-				if (false == searchRefSeq.isEmpty()) {
-					proteins.putAll(
-							UniprotkbUtils.getInstance(query.getTaxid()).getUniprotEntriesFromRefSeqs(searchRefSeq));
-
-				}
-
-				if (false == searchEnsembl.isEmpty()) {
-					proteins.putAll(
-							UniprotkbUtils.getInstance(query.getTaxid()).getUniprotEntriesFromEnsembl(searchEnsembl));
-				}
-
-				if (false == searchGeneNames.isEmpty()) {
-					proteins.putAll(
-							UniprotkbUtils.getInstance(query.getTaxid()).getUniprotEntriesFromGenes(searchGeneNames));
-				}
-			} catch (BridgesRemoteAccessException be) {
-				igbLogger.severe("Cannot access Uniprot!");
-			}
 
 			for (MIGene gene : candidates.get(sym)) {
-				// Try to find the best protein,
-				// e.g. Swissprot rather than Trembl
-				MoleculeEntry protein = null;
-
-				for (MoleculeEntry uniprotProtein : proteins.get(gene.getID())) {
-					if (protein == null) {
-						protein = uniprotProtein;
-					} else {
-						if (false == protein.isSwissprot() && uniprotProtein.isSwissprot()) {
-							protein = uniprotProtein;
-						}
-					}
-				}
+				MoleculeEntry protein = ProteinLookupTask.getBestProtein(proteins.get(gene.getID()));
 
 				if (protein == null) {
 					igbLogger.warning("No protein for gene " + gene.getID());
@@ -864,14 +967,36 @@ public class MIWorker extends SwingWorker<ArrayList<MIResult>, String> {
 
 		boolean failed = false;
 
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+
 		try {
 			results.addAll(get());
-		} catch (InterruptedException | ExecutionException ignore) {
-			igbLogger.getLogger().severe("Fail to analyze the selected regions");
-			ignore.printStackTrace();
+		} catch (InterruptedException | ExecutionException e) {
+			igbLogger.severe("Fail to analyze the selected regions", e);
 			failed = true;
 		}
 
+		String querySummary = getQuerySummary(failed);
+
+		if (resultPanel == null) {
+			resultPanel = addResultTab(querySummary, results, query.getLabel(), query);
+		} else {
+			resultPanel.setSummary(querySummary);
+		}
+
+		MIView.getInstance().getMiConfigurationPanel().updateCacheLabel();
+
+		createTrack();
+		setProgress(100);
+		logAndPublish("done");
+
+		igbLogger.info("Alignments: " + SequenceAligner.getInstance().getCounts().since(alignmentCountsAtStart));
+		igbLogger.info("Query over.");
+	}
+
+	private String getQuerySummary(boolean failed) {
 		HashSet<String> querySummaryParts = new HashSet<>();
 		HashSet<String> queryChromosomes = new HashSet<>();
 
@@ -930,18 +1055,48 @@ public class MIWorker extends SwingWorker<ArrayList<MIResult>, String> {
 			querySummary += " <font color=\"red\">Some errors happend, please check the log for more informations.</font>";
 		}
 
-		addResultTab(querySummary, results, query.getLabel(), query);
+		if (psicquicPartial) {
+			querySummary += " <font color=\"red\">Some PSICQUIC servers did not answer, the interactions may be incomplete.</font>";
+		}
 
-		MIView.getInstance().getMiConfigurationPanel().updateCacheLabel();
+		return querySummary;
+	}
 
-		createTrack();
-		setProgress(100);
-		logAndPublish("done");
+	/**
+	 * Open the result tab before the end of the query. Called from the
+	 * background thread.
+	 *
+	 * @param summary
+	 */
+	private void showResultTab(final String summary) {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				if (resultPanel == null) {
+					resultPanel = addResultTab(summary, new ArrayList<MIResult>(), query.getLabel(), query);
+				}
+			}
+		});
+	}
 
-		igbLogger.info("Query over.");
+	/**
+	 * Add a single interaction to the result tab. Called from the background
+	 * thread.
+	 *
+	 * @param result
+	 */
+	private void publishResult(final MIResult result) {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				if (resultPanel != null) {
+					resultPanel.addResult(result);
+				}
+			}
+		});
 	}
 
-	public void addResultTab(String summary, List<MIResult> results, String label, MIQuery query) {
+	public MIResultPanel addResultTab(String summary, List<MIResult> results, String label, MIQuery query) {
 
 		JTabbedPane resultsTabbedPan = MIView.getInstance().getResultsTabbedPan();
 
@@ -951,6 +1106,7 @@ public class MIWorker extends SwingWorker<ArrayList<MIResult>, String> {
 		// select the new (last) tab
 		resultsTabbedPan.setSelectedIndex(resultsTabbedPan.getTabCount() - 1);
 
+		return resultPane;
 	}
 
 	/**
@@ -1023,6 +1179,9 @@ public class MIWorker extends SwingWorker<ArrayList<MIResult>, String> {
 				if (JOptionPane.showConfirmDialog(new JFrame(),
 						"Are you sure you want to remove this tab? All results will be lost!", "Remove tab",
 						JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
+					if (c instanceof MIResultPanel) {
+						((MIResultPanel) c).releaseStructures();
+					}
 					tabbedPane.remove(c);
 				}
 			}
@@ -1035,19 +1194,64 @@ public class MIWorker extends SwingWorker<ArrayList<MIResult>, String> {
 	}
 
 	/**
-	 * Create a single track with each gene found and each contact
+	 * Create a single track with each gene found and each contact. In lazy
+	 * mode, the contacts of the results not mapped yet are added when they
+	 * are mapped.
 	 */
 	private void createTrack() {
-		TypeContainerAnnot interactorTrack = new TypeContainerAnnot(trackId);
+		interactorTrack = new TypeContainerAnnot(trackId);
 		interactorTrack.setID(trackId);
 		interactorTrack.setProperty(TrackLineParser.ITEM_RGB, Color.PINK);
 
+		for (MIResult result : results) {
+			if (false == result.isMapped()) {
+				result.addMappingListener(trackUpdater);
+			}
+		}
+
+		addTrackChildren();
+
+		service.addTrack(interactorTrack, trackId);
+
+		service.getSeqMapView().updatePanel();
+
+		for (TierGlyph t : service.getAllTierGlyphs()) {
+
+			if (TierGlyph.TierType.ANNOTATION.equals(t.getTierType())
+					&& (t.getAnnotStyle().getTrackName().equals(trackId))) {
+
+				SimpleTrackStyle style = new SimpleTrackStyle(trackId, false) {
+
+					@Override
+					public boolean drawCollapseControl() {
+						return false;
+					}
+				};
+
+				t.getAnnotStyle().copyPropertiesFrom(style);
+				t.getAnnotStyle().setColorProvider(new RGB());
+				interactorTrack.setProperty(TrackLineParser.ITEM_RGB, "on");
+			}
+		}
+
+		service.getSeqMapView().updatePanel();
+
+	}
+
+	/**
+	 * Add the genes found to the track, with the contacts of the results
+	 * mapped so far.
+	 */
+	private void addTrackChildren() {
 		BioSeq aseq = GenometryModel.getInstance().getSelectedSeq().get();
 
 		RangeMerger merger = new RangeMerger();
 
 		for (MIResult result : results) {
-			merger.merge(result.getRangeMerger());
+			// do not force the mapping of interactions never displayed
+			if (result.isMapped()) {
+				merger.merge(result.getRangeMerger());
+			}
 		}
 
 		for (SeqSymmetry symFound : miSymmetries) {
@@ -1074,13 +1278,9 @@ public class MIWorker extends SwingWorker<ArrayList<MIResult>, String> {
 			ArrayList<Integer> emins = new ArrayList<>();
 			ArrayList<Integer> emaxs = new ArrayList<>();
 
-			if (merger.getRanges(sequence.getId()) != null) {
-				for (Range range : merger.getRanges(sequence.getId())) {
-					if (range.getMin() >= span.getMin() && range.getMax() <= span.getMax()) {
-						emins.add(range.getMin());
-						emaxs.add(range.getMax() + 1);
-					}
-				}
+			for (Range range : merger.getRangesWithin(sequence.getId(), span.getMin(), span.getMax())) {
+				emins.add(range.getMin());
+				emaxs.add(range.getMax() + 1);
 			}
 			int[] eminsA = new int[emaxs.size()];
 			int[] emaxsA = new int[emaxs.size()];
@@ -1102,32 +1302,6 @@ public class MIWorker extends SwingWorker<ArrayList<MIResult>, String> {
 
 			interactorTrack.addChild(geneSym);
 		}
-
-		service.addTrack(interactorTrack, trackId);
-
-		service.getSeqMapView().updatePanel();
-
-		for (TierGlyph t : service.getAllTierGlyphs()) {
-
-			if (TierGlyph.TierType.ANNOTATION.equals(t.getTierType())
-					&& (t.getAnnotStyle().getTrackName().equals(trackId))) {
-
-				SimpleTrackStyle style = new SimpleTrackStyle(trackId, false) {
-
-					@Override
-					public boolean drawCollapseControl() {
-						return false;
-					}
-				};
-
-				t.getAnnotStyle().copyPropertiesFrom(style);
-				t.getAnnotStyle().setColorProvider(new RGB());
-				interactorTrack.setProperty(TrackLineParser.ITEM_RGB, "on");
-			}
-		}
-
-		service.getSeqMapView().updatePanel();
-
 	}
 
 	private void logAndPublish(String message) {
@@ -1174,4 +1348,128 @@ public class MIWorker extends SwingWorker<ArrayList<MIResult>, String> {
 
 	}
 
+	/**
+	 * Answers of the remote services for a single protein.
+	 */
+	private static class InteractorLookup {
+
+		final String ac;
+
+		final ArrayList<Interaction> interactions = new ArrayList<>();
+
+		final ArrayList<MoleculeDescription> descriptions = new ArrayList<>();
+
+		final ArrayList<Ligand> ligands = new ArrayList<>();
+
+		boolean psicquicFailed = false;
+
+		boolean pdbFailed = false;
+
+		InteractorLookup(String ac) {
+			this.ac = ac;
+		}
+	}
+
+	private void submitPsicquicLookup(List<String> acs,
+			HashMap<String, Future<HashMap<String, InteractionManager>>> psicquicLookups) {
+		Future<HashMap<String, InteractionManager>> future = executor.submit(new PsicquicLookupTask(acs));
+		for (String ac : acs) {
+			psicquicLookups.put(ac, future);
+		}
+	}
+
+	/**
+	 * Query PSICQUIC for several proteins. The interactions of each protein are
+	 * merged in its own InteractionManager. If all servers are selected, they
+	 * are queried in parallel and the ones that fail are ignored.
+	 */
+	private class PsicquicLookupTask implements Callable<HashMap<String, InteractionManager>> {
+
+		private final List<String> acs;
+
+		PsicquicLookupTask(List<String> acs) {
+			this.acs = acs;
+		}
+
+		@Override
+		public HashMap<String, InteractionManager> call() throws BridgesRemoteAccessException {
+			HashMap<String, InteractionManager> interactions = new HashMap<>();
+
+			for (String ac : acs) {
+				interactions.put(ac, new InteractionManager());
+			}
+
+			if (PsicquicInitWorker.allServers.equals(query.getPsiquicServer())) {
+				MIBundleConfiguration configuration = MIBundleConfiguration.getInstance();
+
+				ArrayList<String> urls = new ArrayList<>();
+				for (String url : PsicquicUtils.getInstance().getRemoteUrls()) {
+					if (false == configuration.isDisabledPsicquicServer(url)) {
+						urls.add(url);
+					}
+				}
+
+				List<String> answered = PsicquicUtils.getInstance().getInteractors(urls, interactions,
+						configuration.getPsicquicTimeout() * 1000L);
+
+				if (answered.size() < urls.size()) {
+					ArrayList<String> skipped = new ArrayList<>(urls);
+					skipped.removeAll(answered);
+					igbLogger.warning("No answer from PSICQUIC server(s): " + StringUtils.join(skipped, ", "));
+					psicquicPartial = true;
+				}
+			} else {
+				PsicquicUtils.getInstance().getInteractors(query.getPsiquicServer(), interactions);
+			}
+
+			return interactions;
+		}
+	}
+
+	/**
+	 * Query PDB for a single protein. The shared objects (symmetry
+	 * manager, interactions) are only updated by the worker thread, once the
+	 * answers are available.
+	 */
+	private class InteractorLookupTask implements Callable<InteractorLookup> {
+
+		private final String ac;
+
+		private final List<String> pdbs;
+
+		InteractorLookupTask(String ac, List<String> pdbs) {
+			this.ac = ac;
+			this.pdbs = pdbs;
+		}
+
+		@Override
+		public InteractorLookup call() {
+			InteractorLookup lookup = new InteractorLookup(ac);
+
+			PDBWSClient client = new PDBWSClient();
+
+			boolean withDescription = query.searchPPI() || query.searchNucleicAcid();
+			boolean withLigands = query.searchLigands() && false == query.searchEPPIC();
+
+			if (pdbs.isEmpty() || (false == withDescription && false == withLigands)) {
+				return lookup;
+			}
+
+			// the client splits the PDB IDs in batches
+			try {
+				PDBWSClient.PDBLookup pdbLookup = client.lookup(pdbs, withDescription, withLigands);
+
+				if (pdbLookup.getDescription() != null) {
+					lookup.descriptions.add(pdbLookup.getDescription());
+				}
+
+				lookup.ligands.addAll(pdbLookup.getLigands());
+			} catch (BridgesRemoteAccessException be) {
+				lookup.pdbFailed = true;
+			}
+
+			return lookup;
+		}
+	}
+
 }
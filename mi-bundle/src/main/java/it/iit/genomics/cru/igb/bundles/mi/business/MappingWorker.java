@@ -0,0 +1,143 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.igb.bundles.mi.business;
+
+import it.iit.genomics.cru.igb.bundles.commons.business.IGBLogger;
+import it.iit.genomics.cru.igb.bundles.mi.view.ProgressPanel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.JProgressBar;
+import javax.swing.SwingWorker;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Map the structures of a set of results outside of the event dispatch
+ * thread, then run an action that reads them (export, network, track) in the
+ * event dispatch thread.
+ *
+ */
+public class MappingWorker extends SwingWorker<Void, String> {
+
+    private final String label;
+
+    private final ArrayList<MIResult> results = new ArrayList<>();
+
+    private final Runnable action;
+
+    private final IGBLogger igbLogger;
+
+    private final JProgressBar progressBar;
+
+    private MappingWorker(String label, Collection<MIResult> results, Runnable action) {
+        this.label = label;
+        this.results.addAll(results);
+        this.action = action;
+        this.igbLogger = IGBLogger.getInstance(label);
+
+        progressBar = new JProgressBar();
+        progressBar.setMinimum(0);
+        progressBar.setMaximum(100);
+        progressBar.setStringPainted(true);
+        progressBar.setString(label + ": map structures");
+
+        ProgressPanel.getInstance().addBar(progressBar);
+    }
+
+    /**
+     * Run the action in the event dispatch thread once all the results are
+     * mapped. If they are already mapped, the action is run immediately.
+     * Must be called in the event dispatch thread.
+     *
+     * @param label label of the query, for the progress bar
+     * @param results
+     * @param action
+     */
+    public static void whenMapped(String label, Collection<MIResult> results, Runnable action) {
+        for (MIResult result : results) {
+            if (false == result.isMapped()) {
+                new MappingWorker(label, results, action).execute();
+                return;
+            }
+        }
+
+        action.run();
+    }
+
+    @Override
+    protected Void doInBackground() throws Exception {
+        setProgress(0);
+
+        // the results are mapped in parallel on the pool, the ones not
+        // started yet are mapped in this thread
+        for (MIResult result : results) {
+            result.scheduleMapping();
+        }
+
+        int done = 0;
+
+        for (MIResult result : results) {
+            if (isCancelled()) {
+                return null;
+            }
+
+            if (false == result.isMapped()) {
+                publish(result.getInteractor1().getGeneName() + "-"
+                        + result.getInteractor2().getGeneName());
+                result.mapStructures();
+            }
+
+            done++;
+            setProgress(100 * done / results.size());
+        }
+
+        return null;
+    }
+
+    @Override
+    protected void process(List<String> chunks) {
+        for (String message : chunks) {
+            progressBar.setValue(getProgress());
+            progressBar.setString(label + ": map structures " + message);
+        }
+    }
+
+    @Override
+    protected void done() {
+        progressBar.setValue(100);
+
+        if (isCancelled()) {
+            progressBar.setString(label + ": cancelled");
+            return;
+        }
+
+        try {
+            get();
+        } catch (InterruptedException | ExecutionException e) {
+            igbLogger.severe("Fail to map the structures", e);
+            progressBar.setString(label + ": failed to map the structures");
+            return;
+        }
+
+        progressBar.setString(label + ": structures mapped");
+
+        action.run();
+    }
+}
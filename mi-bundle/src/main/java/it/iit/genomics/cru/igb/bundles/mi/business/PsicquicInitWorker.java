@@ -16,13 +16,17 @@
 package it.iit.genomics.cru.igb.bundles.mi.business;
 
 import it.iit.genomics.cru.igb.bundles.commons.business.IGBLogger;
+import it.iit.genomics.cru.igb.bundles.mi.business.mitab.LocalMitabIndex;
+import it.iit.genomics.cru.igb.bundles.mi.commons.MIBundleConfiguration;
 import it.iit.genomics.cru.igb.bundles.mi.commons.MIView;
 import it.iit.genomics.cru.igb.bundles.mi.view.ProgressPanel;
 import it.iit.genomics.cru.structures.bridges.commons.BridgesRemoteAccessException;
 import it.iit.genomics.cru.structures.bridges.psicquic.PsicquicService;
 import it.iit.genomics.cru.structures.bridges.psicquic.PsicquicUtils;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
@@ -32,8 +36,9 @@ import javax.swing.SwingWorker;
 /**
  * @author Arnaud Ceol
  *
- * Initialize PSICQUIC information: 1. get the list of available databases from
- * the registry 2. do a query to get the ones with Uniprot references.
+ * Initialize PSICQUIC information: 1. index the local MITAB files 2. get the
+ * list of available databases from the registry 3. do a query to get the ones
+ * with Uniprot references.
  *
  */
 public class PsicquicInitWorker extends SwingWorker<List<Integer>, String> {
@@ -42,6 +47,15 @@ public class PsicquicInitWorker extends SwingWorker<List<Integer>, String> {
 
     public final static String nullServer = "== none ==";
 
+    /**
+     * Query all the PSICQUIC servers with Uniprot references at once
+     */
+    public final static String allServers = "== all servers ==";
+
+    public final static String localPrefix = "Local: ";
+
+    private final static String mitabIndexDirectory = "mitab-index-v" + LocalMitabIndex.VERSION;
+
     private final IGBLogger igbLogger;
 
     public PsicquicInitWorker() {
@@ -64,7 +78,12 @@ public class PsicquicInitWorker extends SwingWorker<List<Integer>, String> {
         ProgressPanel.getInstance().addBar(progressBar);
 
         PsicquicUtils psiquic = PsicquicUtils.getInstance();
-        
+
+        psiquic.addUrl(nullServer, nullServer);
+
+        // Local files first, they are available even without network access
+        addLocalMitabFiles(psiquic);
+
         Collection<PsicquicService> activeServices;
                  
         try {
@@ -84,8 +103,6 @@ public class PsicquicInitWorker extends SwingWorker<List<Integer>, String> {
 
         setProgress(progress);
 
-        psiquic.addUrl(nullServer, nullServer);
-
         for (PsicquicService service : activeServices) {
 
             publish(service.getName());
@@ -114,12 +131,68 @@ public class PsicquicInitWorker extends SwingWorker<List<Integer>, String> {
 
         }
 
+        if (psiquic.getRemoteUrls().size() > 1) {
+            psiquic.addUrl(allServers, allServers);
+        }
+
         publish("done");
         setProgress(100);
 
         return null;
     }
 
+    private void addLocalMitabFiles(PsicquicUtils psiquic) {
+        MIBundleConfiguration configuration = MIBundleConfiguration.getInstance();
+
+        if (configuration.getMitabDirectory() == null) {
+            return;
+        }
+
+        File[] mitabFiles = new File(configuration.getMitabDirectory()).listFiles();
+
+        if (mitabFiles == null) {
+            igbLogger.warning("Cannot read local MITAB directory " + configuration.getMitabDirectory());
+            return;
+        }
+
+        Arrays.sort(mitabFiles);
+
+        for (File mitabFile : mitabFiles) {
+            if (false == isMitabFile(mitabFile)) {
+                continue;
+            }
+
+            File indexDirectory = new File(configuration.getCachePath() + File.separator + mitabIndexDirectory, mitabFile.getName());
+
+            LocalMitabIndex index = new LocalMitabIndex(mitabFile, indexDirectory);
+
+            try {
+                if (false == index.isUpToDate()) {
+                    publish("Index " + mitabFile.getName());
+                    index.importMitab();
+                }
+                psiquic.addLocalSource(localPrefix + mitabFile.getName(), index);
+            } catch (IOException e) {
+                igbLogger.warning("Cannot index local MITAB file " + mitabFile.getName() + ": " + e.getMessage());
+                publish("Cannot index local MITAB file " + mitabFile.getName());
+            }
+        }
+    }
+
+    private static boolean isMitabFile(File file) {
+        if (false == file.isFile()) {
+            return false;
+        }
+
+        String name = file.getName().toLowerCase();
+
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+
+        return name.endsWith(".txt") || name.endsWith(".tsv") || name.endsWith(".mitab");
+    }
+
     @Override
     protected void process(List<String> chunks) {
         for (String message : chunks) {
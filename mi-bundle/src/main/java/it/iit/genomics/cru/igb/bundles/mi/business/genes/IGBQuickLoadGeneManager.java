@@ -28,15 +28,18 @@ import com.affymetrix.genometry.symmetry.impl.TypeContainerAnnot;
 import com.google.common.collect.HashMultimap;
 
 import it.iit.genomics.cru.igb.bundles.commons.business.IGBLogger;
+import it.iit.genomics.cru.structures.model.GeneIntervalIndex;
 import it.iit.genomics.cru.structures.model.MIExon;
 import it.iit.genomics.cru.structures.model.MIGene;
 import it.iit.genomics.cru.structures.model.sequence.TranscriptSequence;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 import org.biojava.nbio.core.exceptions.CompoundNotFoundException;
@@ -109,6 +112,212 @@ public class IGBQuickLoadGeneManager extends GeneManager {
     HashMultimap<String, MIGene> genesByGeneId = HashMultimap.create();
     HashMultimap<String, MIGene> genesBySymId = HashMultimap.create();
 
+    private final static Pattern CYTOBAND_TIER_REGEX = Pattern.compile(".*"
+            + CytobandParser.CYTOBAND_TIER_NAME);
+
+    /**
+     * Genes of each chromosome, key: chromosome
+     */
+    private final HashMap<BioSeq, ChromosomeGenes> chromosomeGenes = new HashMap<>();
+
+    /**
+     * Gene symmetries of the genome version, key: ID or name of the gene.
+     */
+    private final HashMultimap<String, SeqSymmetry> genomeGenesById = HashMultimap.create();
+
+    /**
+     * Properties of the gene symmetries that can contain the gene name.
+     */
+    private final static String[] GENE_NAME_PROPERTIES = {"name", "gene name"};
+
+    private Object indexedGenomeVersion = null;
+
+    private int indexedGenomeSignature = 0;
+
+    /**
+     * Index of the genes of a chromosome, valid as long as the annotation
+     * containers do not change. A transcript present in several tracks (e.g.
+     * the same RefSeq track loaded twice) is only indexed once, from the first
+     * track.
+     */
+    private static class ChromosomeGenes {
+
+        private final List<SeqSymmetry> containers;
+
+        private final int[] numGenes;
+
+        private final GeneIntervalIndex<SymWithProps> index;
+
+        ChromosomeGenes(List<SeqSymmetry> containers) {
+            this.containers = containers;
+            this.numGenes = new int[containers.size()];
+
+            int totalGenes = 0;
+            for (int c = 0; c < containers.size(); c++) {
+                numGenes[c] = containers.get(c).getChildCount();
+                totalGenes += numGenes[c];
+            }
+
+            int[] starts = new int[totalGenes];
+            int[] ends = new int[totalGenes];
+            ArrayList<SymWithProps> genes = new ArrayList<>(totalGenes);
+
+            HashSet<String> transcriptIds = new HashSet<>();
+
+            for (int c = 0; c < containers.size(); c++) {
+                SeqSymmetry container = containers.get(c);
+                for (int i = 0; i < numGenes[c]; i++) {
+                    SymWithProps geneSym = (SymWithProps) container.getChild(i);
+                    if (geneSym.getID() != null && false == transcriptIds.add(geneSym.getID())) {
+                        continue;
+                    }
+                    SeqSpan span = geneSym.getSpan(0);
+                    starts[genes.size()] = span.getMin();
+                    ends[genes.size()] = span.getMax();
+                    genes.add(geneSym);
+                }
+            }
+
+            this.index = new GeneIntervalIndex<>(Arrays.copyOf(starts, genes.size()),
+                    Arrays.copyOf(ends, genes.size()), genes);
+        }
+
+        boolean isValid(List<SeqSymmetry> currentContainers) {
+            if (containers.size() != currentContainers.size()) {
+                return false;
+            }
+
+            for (int c = 0; c < containers.size(); c++) {
+                if (containers.get(c) != currentContainers.get(c)
+                        || numGenes[c] != currentContainers.get(c).getChildCount()) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * The annotation containers with the genes of a chromosome, i.e. all the
+     * ones that are not the cytobands.
+     *
+     * @param chromosomeSeq
+     * @return
+     */
+    private static List<SeqSymmetry> getGeneContainers(BioSeq chromosomeSeq) {
+        ArrayList<SeqSymmetry> containers = new ArrayList<>();
+
+        for (int a = 0; a < chromosomeSeq.getAnnotationCount(); a++) {
+            SeqSymmetry annotSym = chromosomeSeq.getAnnotation(a);
+            if (annotSym instanceof TypeContainerAnnot) {
+                TypeContainerAnnot tca = (TypeContainerAnnot) annotSym;
+                if (false == CYTOBAND_TIER_REGEX.matcher(tca.getType())
+                        .matches()) {
+                    containers.add(annotSym);
+                }
+            }
+        }
+
+        return containers;
+    }
+
+    /**
+     * Index of the genes of a chromosome, built once and again only if the
+     * annotation tracks change.
+     *
+     * @param chromosomeSeq
+     * @return null if there is no annotation track
+     */
+    private synchronized GeneIntervalIndex<SymWithProps> getChromosomeIndex(BioSeq chromosomeSeq) {
+        List<SeqSymmetry> containers = getGeneContainers(chromosomeSeq);
+
+        if (containers.isEmpty()) {
+            chromosomeGenes.remove(chromosomeSeq);
+            return null;
+        }
+
+        ChromosomeGenes genes = chromosomeGenes.get(chromosomeSeq);
+
+        if (genes == null || false == genes.isValid(containers)) {
+            genes = new ChromosomeGenes(containers);
+            chromosomeGenes.put(chromosomeSeq, genes);
+        }
+
+        return genes.index;
+    }
+
+    /**
+     * Index the genes of the selected genome version by ID and name, if the
+     * genome version or one of its annotation tracks changed.
+     */
+    private synchronized void updateGenomeIndex() {
+        Object genomeVersion = GenometryModel.getInstance().getSelectedGenomeVersion();
+
+        ArrayList<SeqSymmetry> containers = new ArrayList<>();
+        int signature = 1;
+
+        for (BioSeq seq : GenometryModel.getInstance().getSelectedGenomeVersion().getSeqList()) {
+            for (SeqSymmetry container : getGeneContainers(seq)) {
+                containers.add(container);
+                signature = 31 * signature + System.identityHashCode(container);
+                signature = 31 * signature + container.getChildCount();
+            }
+        }
+
+        if (genomeVersion == indexedGenomeVersion && signature == indexedGenomeSignature) {
+            return;
+        }
+
+        genomeGenesById.clear();
+
+        // a transcript of several tracks is only indexed once
+        HashSet<String> transcriptIds = new HashSet<>();
+
+        for (SeqSymmetry container : containers) {
+            for (int i = 0; i < container.getChildCount(); i++) {
+                SeqSymmetry geneSym = container.getChild(i);
+                if (geneSym.getID() != null && false == transcriptIds.add(geneSym.getID())) {
+                    continue;
+                }
+                for (String key : getGeneKeys(geneSym)) {
+                    genomeGenesById.put(key, geneSym);
+                }
+            }
+        }
+
+        indexedGenomeVersion = genomeVersion;
+        indexedGenomeSignature = signature;
+    }
+
+    /**
+     * ID of the gene, with and without version (e.g. NM_000546.5 and
+     * NM_000546), and name of the gene if it is available.
+     */
+    private static Collection<String> getGeneKeys(SeqSymmetry geneSym) {
+        HashSet<String> keys = new HashSet<>();
+
+        String id = geneSym.getID();
+        if (id != null) {
+            keys.add(id);
+            int version = id.lastIndexOf('.');
+            if (version > 0) {
+                keys.add(id.substring(0, version));
+            }
+        }
+
+        if (geneSym instanceof SymWithProps) {
+            for (String property : GENE_NAME_PROPERTIES) {
+                Object name = ((SymWithProps) geneSym).getProperty(property);
+                if (name instanceof String) {
+                    keys.add((String) name);
+                }
+            }
+        }
+
+        return keys;
+    }
+
     @Override
     public Collection<MIGene> getByID(String geneId) {
 
@@ -118,15 +327,13 @@ public class IGBQuickLoadGeneManager extends GeneManager {
 
         ArrayList<MIGene> genes = new ArrayList<>();
 
-        Set<SeqSymmetry> symmetries = new HashSet<>();
-        Pattern pattern = Pattern.compile(geneId);
+        updateGenomeIndex();
 
-        
-        for (BioSeq seq : GenometryModel.getInstance().getSelectedGenomeVersion().getSeqList()) {
-             seq.search(symmetries, pattern, -1);
+        Set<SeqSymmetry> symmetries;
+
+        synchronized (this) {
+            symmetries = new HashSet<>(genomeGenesById.get(geneId));
         }
-//        GenometryModel.getInstance().
-//                .getSelectedSeqGroup().search(symmetries, pattern, -1);
 
         for (SeqSymmetry symmetry : symmetries) {
             /**
@@ -313,73 +520,40 @@ public class IGBQuickLoadGeneManager extends GeneManager {
         return new MIGene(id, name, span.getBioSeq().getId(), start, end);
     }
 
+    /**
+     * Genes overlapping the selected symmetries of a chromosome.
+     *
+     * @param chromosomeSeq
+     * @param syms
+     * @return
+     */
     public HashMultimap<SeqSymmetry, MIGene> getBySymList(BioSeq chromosomeSeq, ArrayList<SeqSymmetry> syms) {
 
         HashMultimap<SeqSymmetry, MIGene> genes = HashMultimap.create();
 
-        Pattern CYTOBAND_TIER_REGEX = Pattern.compile(".*"
-                + CytobandParser.CYTOBAND_TIER_NAME);
-
-        SeqSymmetry chromosomeSym = null;
-
-        for (int a = 0; a < chromosomeSeq.getAnnotationCount(); a++) {
-            SeqSymmetry annotSym = chromosomeSeq.getAnnotation(a);
-            if (annotSym instanceof TypeContainerAnnot) {
-                TypeContainerAnnot tca = (TypeContainerAnnot) annotSym;
-                if (false == CYTOBAND_TIER_REGEX.matcher(tca.getType())
-                        .matches()) {
-                    chromosomeSym = annotSym;
-                    break;
-                }
-            }
-        }
+        GeneIntervalIndex<SymWithProps> index = getChromosomeIndex(chromosomeSeq);
 
-        if (chromosomeSym == null) {
+        if (index == null) {
             igbLogger.warning(
                     "No chromosome found for " + chromosomeSeq.getId());
             return genes;
         }
 
-        int countChildren = chromosomeSym.getChildCount();
+        for (SeqSymmetry sym : syms) {
 
-        for (int j = 0; j < countChildren; j++) {
-            SymWithProps geneSym = (SymWithProps) chromosomeSym.getChild(j);
+            int min = sym.getSpan(0).getMin();
+            int max = sym.getSpan(0).getMax();
 
-            SeqSpan geneSeqSpan = geneSym.getSpan(0);
+            for (SymWithProps geneSym : index.getOverlapping(min, max)) {
 
-            for (int idxSym = 0; idxSym < syms.size(); idxSym++) {
+                MIGene gene = spanToMIGene(geneSym.getID(), geneSym.getID(), geneSym.getSpan(chromosomeSeq));
 
-                int min = syms.get(idxSym).getSpan(0).getMin();
-                int max = syms.get(idxSym).getSpan(0).getMax();
+                genes.put(sym, gene);
 
-                if (min >= geneSeqSpan.getMax()) {
-                    // remove  all the syms up to this one excluded
-                    if (idxSym > 0) {
-                        ArrayList<SeqSymmetry> newList = new ArrayList<>();
-                        newList.addAll(syms.subList(idxSym, syms.size()));
-                        syms = newList;
-                    }
-                    break;
-                }
-
-                if ((geneSeqSpan.getMin() >= min && geneSeqSpan.getMin() < max)
-                        || (geneSeqSpan.getMax() > min && geneSeqSpan.getMax() <= max)
-                        || (min >= geneSeqSpan.getMin() && min < geneSeqSpan
-                        .getMax())
-                        || (max > geneSeqSpan.getMin() && max <= geneSeqSpan
-                        .getMax())) {
-
-                    MIGene gene = spanToMIGene(geneSym.getID(), geneSym.getID(), geneSym.getSpan(chromosomeSeq));
-
-                    genes.put(syms.get(idxSym), gene);
-
-                    genesBySymId.put(geneSym.getID(), gene);
-
-                    getExons(chromosomeSeq, geneSym, gene);
-                }
+                genesBySymId.put(geneSym.getID(), gene);
 
+                getExons(chromosomeSeq, geneSym, gene);
             }
-
         }
 
         return genes;
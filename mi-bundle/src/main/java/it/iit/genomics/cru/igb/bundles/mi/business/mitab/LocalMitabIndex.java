@@ -0,0 +1,329 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.igb.bundles.mi.business.mitab;
+
+import it.iit.genomics.cru.structures.bridges.commons.BridgesRemoteAccessException;
+import it.iit.genomics.cru.structures.bridges.psicquic.Interaction;
+import it.iit.genomics.cru.structures.bridges.psicquic.InteractionManager;
+import it.iit.genomics.cru.structures.bridges.psicquic.InteractionSource;
+import it.iit.genomics.cru.structures.bridges.psicquic.PsicquicUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SimpleCollector;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import psidev.psi.mi.tab.PsimiTabException;
+import psidev.psi.mi.tab.PsimiTabReader;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * Local index of a MITAB file (2.5 to 2.7, e.g. a dump of IntAct or BioGRID),
+ * used instead of a PSICQUIC server. There is one document per MITAB line,
+ * indexed by the Uniprot ACs of the two interactors and storing the
+ * interaction types, detection methods and PMIDs.
+ *
+ * The MITAB file is read line by line, so that large files can be imported
+ * with little memory. The index is created again if the MITAB file changes.
+ */
+public class LocalMitabIndex implements InteractionSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalMitabIndex.class);
+
+    /**
+     * Version of the index, change it if the fields change.
+     */
+    public static final String VERSION = "1";
+
+    private static final String FIELD_AC = "ac";
+
+    private static final String FIELD_AC1 = "ac1";
+
+    private static final String FIELD_AC2 = "ac2";
+
+    private static final String FIELD_TYPES = "types";
+
+    private static final String FIELD_METHODS = "methods";
+
+    private static final String FIELD_PMIDS = "pmids";
+
+    private static final String COMMIT_VERSION = "version";
+
+    private static final String COMMIT_SOURCE = "source";
+
+    private static final String SEPARATOR = "\t";
+
+    private static final double RAM_BUFFER_MB = 64;
+
+    private final File mitabFile;
+
+    private final File indexDirectory;
+
+    private DirectoryReader reader = null;
+
+    private IndexSearcher searcher = null;
+
+    /**
+     *
+     * @param mitabFile MITAB file, may be compressed (.gz)
+     * @param indexDirectory
+     */
+    public LocalMitabIndex(File mitabFile, File indexDirectory) {
+        this.mitabFile = mitabFile;
+        this.indexDirectory = indexDirectory;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public File getMitabFile() {
+        return mitabFile;
+    }
+
+    /**
+     * Description of the MITAB file, to detect changes
+     */
+    private String getSource() {
+        return mitabFile.getAbsolutePath() + "#" + mitabFile.length() + "#" + mitabFile.lastModified();
+    }
+
+    /**
+     *
+     * @return true if the index exists and corresponds to the MITAB file
+     */
+    public synchronized boolean isUpToDate() {
+        if (false == indexDirectory.exists()) {
+            return false;
+        }
+
+        try (Directory directory = FSDirectory.open(indexDirectory.toPath())) {
+            if (false == DirectoryReader.indexExists(directory)) {
+                return false;
+            }
+            try (DirectoryReader indexReader = DirectoryReader.open(directory)) {
+                Map<String, String> commitData = indexReader.getIndexCommit().getUserData();
+                return VERSION.equals(commitData.get(COMMIT_VERSION))
+                        && getSource().equals(commitData.get(COMMIT_SOURCE));
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot read MITAB index " + indexDirectory, e);
+            return false;
+        }
+    }
+
+    /**
+     * Create the index from the MITAB file.
+     *
+     * @return number of interactions indexed
+     * @throws IOException
+     */
+    public synchronized int importMitab() throws IOException {
+        close();
+
+        IndexWriterConfig config = new IndexWriterConfig(new KeywordAnalyzer());
+        config.setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+        config.setRAMBufferSizeMB(RAM_BUFFER_MB);
+
+        PsimiTabReader mitabReader = new PsimiTabReader();
+
+        int numberOfInteractions = 0;
+        int numberOfLines = 0;
+
+        try (Directory directory = FSDirectory.open(indexDirectory.toPath());
+                IndexWriter writer = new IndexWriter(directory, config);
+                BufferedReader mitab = new BufferedReader(new InputStreamReader(openMitab(), StandardCharsets.UTF_8))) {
+
+            String line;
+            while ((line = mitab.readLine()) != null) {
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                numberOfLines++;
+
+                Interaction interaction;
+                try {
+                    interaction = PsicquicUtils.getInteraction(mitabReader.readLine(line));
+                } catch (PsimiTabException | RuntimeException e) {
+                    logger.warn("Skip MITAB line " + numberOfLines + " in " + mitabFile);
+                    continue;
+                }
+
+                if (interaction == null) {
+                    continue;
+                }
+
+                writer.addDocument(getDocument(interaction));
+                numberOfInteractions++;
+            }
+
+            HashMap<String, String> commitData = new HashMap<>();
+            commitData.put(COMMIT_VERSION, VERSION);
+            commitData.put(COMMIT_SOURCE, getSource());
+            writer.setLiveCommitData(commitData.entrySet());
+
+            writer.forceMerge(1);
+            writer.commit();
+        }
+
+        logger.info("Imported " + numberOfInteractions + " interactions from " + mitabFile);
+
+        return numberOfInteractions;
+    }
+
+    private InputStream openMitab() throws IOException {
+        InputStream is = new FileInputStream(mitabFile);
+        if (mitabFile.getName().endsWith(".gz")) {
+            return new GZIPInputStream(is, 1 << 16);
+        }
+        return is;
+    }
+
+    private static Document getDocument(Interaction interaction) {
+        Document document = new Document();
+
+        document.add(new StringField(FIELD_AC, interaction.getAc1(), Field.Store.NO));
+        if (false == interaction.isHomodimer()) {
+            document.add(new StringField(FIELD_AC, interaction.getAc2(), Field.Store.NO));
+        }
+
+        document.add(new StoredField(FIELD_AC1, interaction.getAc1()));
+        document.add(new StoredField(FIELD_AC2, interaction.getAc2()));
+        document.add(new StoredField(FIELD_TYPES, StringUtils.join(interaction.getInteractionTypes(), SEPARATOR)));
+        document.add(new StoredField(FIELD_METHODS, StringUtils.join(interaction.getMethods(), SEPARATOR)));
+        document.add(new StoredField(FIELD_PMIDS, StringUtils.join(interaction.getBibRefs(), SEPARATOR)));
+
+        return document;
+    }
+
+    private static Interaction getInteraction(Document document) {
+        Interaction interaction = new Interaction(document.get(FIELD_AC1), document.get(FIELD_AC2));
+
+        interaction.addTypes(split(document.get(FIELD_TYPES)));
+        interaction.addMethods(split(document.get(FIELD_METHODS)));
+        interaction.addBibRefs(split(document.get(FIELD_PMIDS)));
+
+        return interaction;
+    }
+
+    private static ArrayList<String> split(String value) {
+        ArrayList<String> values = new ArrayList<>();
+        if (value != null && false == value.isEmpty()) {
+            values.addAll(Arrays.asList(value.split(SEPARATOR)));
+        }
+        return values;
+    }
+
+    private synchronized IndexSearcher getSearcher() throws IOException {
+        if (searcher == null) {
+            reader = DirectoryReader.open(FSDirectory.open(indexDirectory.toPath()));
+            searcher = new IndexSearcher(reader);
+        }
+        return searcher;
+    }
+
+    @Override
+    public void getInteractors(Map<String, InteractionManager> interactions) throws BridgesRemoteAccessException {
+        if (interactions.isEmpty()) {
+            return;
+        }
+
+        ArrayList<BytesRef> terms = new ArrayList<>();
+        for (String ac : interactions.keySet()) {
+            terms.add(new BytesRef(ac));
+        }
+
+        try {
+            final IndexSearcher indexSearcher = getSearcher();
+            final ArrayList<Integer> documents = new ArrayList<>();
+
+            indexSearcher.search(new TermInSetQuery(FIELD_AC, terms), new SimpleCollector() {
+
+                private int docBase;
+
+                @Override
+                protected void doSetNextReader(LeafReaderContext context) throws IOException {
+                    docBase = context.docBase;
+                }
+
+                @Override
+                public void collect(int doc) throws IOException {
+                    documents.add(docBase + doc);
+                }
+
+                @Override
+                public boolean needsScores() {
+                    return false;
+                }
+            });
+
+            for (int document : documents) {
+                PsicquicUtils.merge(getInteraction(indexSearcher.doc(document)), interactions);
+            }
+        } catch (IOException e) {
+            logger.error("Cannot read MITAB index " + indexDirectory, e);
+            throw new BridgesRemoteAccessException("Cannot read local interactions from " + mitabFile.getName());
+        }
+    }
+
+    /**
+     * Close the index.
+     */
+    public synchronized void close() {
+        if (reader != null) {
+            try {
+                Directory directory = reader.directory();
+                reader.close();
+                directory.close();
+            } catch (IOException e) {
+                logger.warn("Cannot close MITAB index " + indexDirectory, e);
+            }
+            reader = null;
+            searcher = null;
+        }
+    }
+
+}
@@ -17,6 +17,10 @@ package it.iit.genomics.cru.igb.bundles.mi.commons;
 
 import it.iit.genomics.cru.igb.bundles.commons.business.IGBLogger;
 import it.iit.genomics.cru.structures.bridges.pdb.PDBUtils;
+import it.iit.genomics.cru.structures.bridges.pdb.PDBWSClient;
+import it.iit.genomics.cru.structures.bridges.psicquic.PsicquicUtils;
+import it.iit.genomics.cru.structures.bridges.uniprot.UniprotFastaStore;
+import it.iit.genomics.cru.structures.bridges.uniprot.UniprotkbUtils;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -81,6 +85,8 @@ public final class MIBundleConfiguration {
     public void setCachePath(String tempPath) {
         this.cachePath = tempPath;
         createTempDirectoryIfNeeded();
+        UniprotkbUtils.setCacheDir(tempPath);
+        PDBWSClient.setCacheDir(tempPath);
     }
 
     /**
@@ -161,6 +167,16 @@ public final class MIBundleConfiguration {
 
     private static final String exportFolderProperty = "export directory";
 
+    private static final String uniprotFastaProperty = "Uniprot local FASTA";
+
+    private static final String mitabDirProperty = "Local MITAB directory";
+
+    private static final String numberOfThreadsProperty = "Number of threads";
+
+    private static final String psicquicTimeoutProperty = "PSICQUIC timeout (s)";
+
+    private static final String lazyMappingProperty = "Map structures of displayed interactions only";
+
     private Properties properties;
 
     public void loadProperties() {
@@ -205,6 +221,34 @@ public final class MIBundleConfiguration {
                 setI3DStructuresDirectory(properties.getProperty(i3dStructuresDirProperty));
             }
 
+            if (properties.getProperty(uniprotFastaProperty) != null) {
+                setUniprotFastaPath(properties.getProperty(uniprotFastaProperty));
+            }
+
+            if (properties.getProperty(mitabDirProperty) != null) {
+                setMitabDirectory(properties.getProperty(mitabDirProperty));
+            }
+
+            if (properties.getProperty(numberOfThreadsProperty) != null) {
+                try {
+                    setNumberOfThreads(Integer.parseInt(properties.getProperty(numberOfThreadsProperty)));
+                } catch (NumberFormatException e) {
+                    igbLogger.warning("Invalid number of threads: " + properties.getProperty(numberOfThreadsProperty));
+                }
+            }
+
+            if (properties.getProperty(psicquicTimeoutProperty) != null) {
+                try {
+                    setPsicquicTimeout(Integer.parseInt(properties.getProperty(psicquicTimeoutProperty)));
+                } catch (NumberFormatException e) {
+                    igbLogger.warning("Invalid PSICQUIC timeout: " + properties.getProperty(psicquicTimeoutProperty));
+                }
+            }
+
+            if (properties.getProperty(lazyMappingProperty) != null) {
+                setLazyStructureMapping(Boolean.parseBoolean(properties.getProperty(lazyMappingProperty)));
+            }
+
             in.close();
 
         } catch (FileNotFoundException e) {
@@ -259,6 +303,12 @@ public final class MIBundleConfiguration {
         if (this.disabledPsicquicServers.contains(psicquicServer)) {
             this.disabledPsicquicServers.remove(psicquicServer);
         }
+        // give it a new chance, even if it failed recently
+        PsicquicUtils.getInstance().getServerStats(psicquicServer).reset();
+    }
+
+    public boolean isDisabledPsicquicServer(String psicquicServer) {
+        return this.disabledPsicquicServers.contains(psicquicServer);
     }
 
     /* PDB */
@@ -272,6 +322,35 @@ public final class MIBundleConfiguration {
 
     protected String exportFolder = null;
 
+    /**
+     * FASTA file or directory with the Uniprot sequences, including isoforms.
+     */
+    protected String uniprotFastaPath = null;
+
+    /**
+     * Directory with MITAB files (.txt, .tsv, .mitab, optionally gzipped),
+     * each one is indexed and can be selected instead of a PSICQUIC server.
+     */
+    protected String mitabDir = null;
+
+    /**
+     * Maximum number of concurrent remote requests (PSICQUIC, PDB, Uniprot)
+     * sent by a query.
+     */
+    protected int numberOfThreads = 4;
+
+    /**
+     * Time to wait for each server when all the PSICQUIC servers are
+     * queried (s).
+     */
+    protected int psicquicTimeout = 60;
+
+    /**
+     * If true, the residues and interfaces of an interaction are searched on
+     * its structures only when the interaction is displayed or used.
+     */
+    protected boolean lazyStructureMapping = false;
+
     public void setPdbUrl(String pdbUrl) {
         this.pdbUrl = pdbUrl;
         properties.setProperty(pdbURLProperty, pdbUrl);
@@ -334,4 +413,64 @@ public final class MIBundleConfiguration {
         saveProperties();
     }
 
+    public String getUniprotFastaPath() {
+        return uniprotFastaPath;
+    }
+
+    public void setUniprotFastaPath(String uniprotFastaPath) {
+        this.uniprotFastaPath = uniprotFastaPath;
+        if (uniprotFastaPath == null) {
+            properties.remove(uniprotFastaProperty);
+            UniprotkbUtils.setFastaStore(null);
+        } else {
+            properties.setProperty(uniprotFastaProperty, uniprotFastaPath);
+            UniprotkbUtils.setFastaStore(new UniprotFastaStore(uniprotFastaPath));
+        }
+        saveProperties();
+    }
+
+    public String getMitabDirectory() {
+        return mitabDir;
+    }
+
+    public void setMitabDirectory(String mitabDir) {
+        this.mitabDir = mitabDir;
+        if (mitabDir == null) {
+            properties.remove(mitabDirProperty);
+        } else {
+            properties.setProperty(mitabDirProperty, mitabDir);
+        }
+        saveProperties();
+    }
+
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+        properties.setProperty(numberOfThreadsProperty, String.valueOf(this.numberOfThreads));
+        saveProperties();
+    }
+
+    public int getPsicquicTimeout() {
+        return psicquicTimeout;
+    }
+
+    public void setPsicquicTimeout(int psicquicTimeout) {
+        this.psicquicTimeout = Math.max(1, psicquicTimeout);
+        properties.setProperty(psicquicTimeoutProperty, String.valueOf(this.psicquicTimeout));
+        saveProperties();
+    }
+
+    public boolean isLazyStructureMapping() {
+        return lazyStructureMapping;
+    }
+
+    public void setLazyStructureMapping(boolean lazyStructureMapping) {
+        this.lazyStructureMapping = lazyStructureMapping;
+        properties.setProperty(lazyMappingProperty, String.valueOf(lazyStructureMapping));
+        saveProperties();
+    }
+
 }
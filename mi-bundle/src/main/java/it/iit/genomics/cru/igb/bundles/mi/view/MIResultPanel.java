@@ -84,10 +84,12 @@ import edu.uci.ics.jung.visualization.renderers.Renderer;
 import it.iit.genomics.cru.igb.bundles.commons.business.IGBLogger;
 import it.iit.genomics.cru.igb.bundles.commons.view.LogPanel;
 import it.iit.genomics.cru.igb.bundles.mi.business.MIResult;
+import it.iit.genomics.cru.igb.bundles.mi.business.MappingWorker;
 import it.iit.genomics.cru.igb.bundles.mi.commons.MIBundleConfiguration;
 import it.iit.genomics.cru.igb.bundles.mi.commons.MICommons;
 import it.iit.genomics.cru.igb.bundles.mi.model.TaxonColorer;
 import it.iit.genomics.cru.igb.bundles.mi.query.MIQuery;
+import it.iit.genomics.cru.structures.bridges.psicquic.PsicquicUtils;
 import it.iit.genomics.cru.structures.model.MoleculeEntry;
 
 /**
@@ -112,6 +114,10 @@ public class MIResultPanel extends JPanel {
 
     private TaxonColorer colorer;
 
+    private final JTextPane querySummary;
+
+    private final JButton log;
+
     private final static String HTML_CHECKBOX_STRUCTURE = "<html><font color=\"green\"><b>S</b></font>ructure/model</html>";
     private final static String HTML_CHECKBOX_PHYSICAL = "<html><font color=\"red\"><b>P</b></font>hysical</html>";
     private final static String HTML_CHECKBOX_ASSOCIATION = "<html><font color=\"orange\"><b>A</b></font>ssociation</html>";
@@ -139,7 +145,7 @@ public class MIResultPanel extends JPanel {
 
         buttonBox.add(buttonBox3);
 
-        JTextPane querySummary = new JTextPane();
+        querySummary = new JTextPane();
         querySummary.setContentType("text/html");
         querySummary.setEditable(false);
         querySummary.setText(summary);
@@ -157,7 +163,7 @@ public class MIResultPanel extends JPanel {
 
         logFrame.add(new LogPanel(igbLogger));
 
-        JButton log = new JButton();
+        log = new JButton();
 
         if (igbLogger.hasError()) {
             log.setBackground(Color.red);
@@ -298,6 +304,50 @@ public class MIResultPanel extends JPanel {
 
     }
 
+    /**
+     * Add a result to the table, e.g. while the query is still running. Must
+     * be called from the event dispatch thread.
+     *
+     * @param result
+     */
+    public void addResult(MIResult result) {
+        ((MITableModel) miTable.getModel()).addResult(result);
+    }
+
+    /**
+     * Update the summary, e.g. once the query is over. Must be called from
+     * the event dispatch thread.
+     *
+     * @param summary
+     */
+    public void setSummary(String summary) {
+        querySummary.setText(summary);
+
+        if (igbLogger.hasError()) {
+            log.setBackground(Color.red);
+        }
+    }
+
+    /**
+     * Release the structures kept in memory for this panel, e.g. when the tab
+     * is closed.
+     */
+    public void releaseStructures() {
+        structures.setCurrentInteraction(null);
+    }
+
+    /**
+     * Results in the order of the table, without the filtered rows
+     */
+    private List<MIResult> getDisplayedResults() {
+        ArrayList<MIResult> results = new ArrayList<>();
+        for (int tableRow = 0; tableRow < miTable.getRowCount(); tableRow++) {
+            int modelRow = miTable.convertRowIndexToModel(tableRow);
+            results.add(((MITableModel) miTable.getModel()).getResult(modelRow));
+        }
+        return results;
+    }
+
     public class PsicquicLinkActionListener implements ActionListener {
 
         PsicquicLinkActionListener() {
@@ -319,6 +369,12 @@ public class MIResultPanel extends JPanel {
                 MIResult miResult = ((MITableModel) miTable.getModel())
                         .getResult(modelRow);
 
+                if (false == PsicquicUtils.isRemoteUrl(miResult.getPsicquicUrl())) {
+                    JOptionPane.showMessageDialog(null,
+                            "The interactions do not come from a single PSICQUIC server.");
+                    return;
+                }
+
                 String query;
 
                 String idA = miResult.getInteractor1().getUniprotAc();
@@ -362,7 +418,7 @@ public class MIResultPanel extends JPanel {
             igbLogger.info(
                     "Generate tab delimited code for query " + label);
 
-            String header = "uniprot A\tgene A\tGenome Positions A\tResidues A"
+            final String header = "uniprot A\tgene A\tGenome Positions A\tResidues A"
                     + "\tuniprot B\tgene B\tGenome Positions B\tResidues B"
                     + "\tSelected regions A\tSelected regions B"
                     + "\tSelected contact regions A\tSelected contact regions B"
@@ -376,8 +432,7 @@ public class MIResultPanel extends JPanel {
             fileChooser.setAcceptAllFileFilterUsed(false);
 
             if (fileChooser.showSaveDialog(null) == JFileChooser.APPROVE_OPTION) {
-                File file = fileChooser.getSelectedFile();
-                String fileName = file.getPath();
+                final File file = fileChooser.getSelectedFile();
 
                 String folder = file.getParentFile().getAbsolutePath();
                 if (false == folder.equals(MIBundleConfiguration.getInstance()
@@ -385,26 +440,35 @@ public class MIResultPanel extends JPanel {
                     MIBundleConfiguration.getInstance().setExportFolder(folder);
                 }
 
-                try {
-                    try (FileWriter out = new FileWriter(file)) {
-                        out.append(header);
-                        for (int tableRow = 0; tableRow < miTable.getRowCount(); tableRow++) {
-                            int modelRow = miTable.convertRowIndexToModel(tableRow);
-                            MIResult miResult = ((MITableModel) miTable.getModel())
-                                    .getResult(modelRow);
-                            out.append("\n" + miResult.toTab());
-                        }
-                        out.flush();
-                    }
-                } catch (IOException e1) {
-                    JOptionPane.showMessageDialog(new JFrame(),
-                            "Fail to save the results in " + fileName,
-                            "Export error", JOptionPane.ERROR_MESSAGE);
-                }
+                final List<MIResult> results = getDisplayedResults();
 
+                MappingWorker.whenMapped(label, results, new Runnable() {
+                    @Override
+                    public void run() {
+                        export(file, header, results);
+                    }
+                });
             }
 
         }
+
+        private void export(File file, String header, List<MIResult> results) {
+            String fileName = file.getPath();
+
+            try {
+                try (FileWriter out = new FileWriter(file)) {
+                    out.append(header);
+                    for (MIResult miResult : results) {
+                        out.append("\n" + miResult.toTab());
+                    }
+                    out.flush();
+                }
+            } catch (IOException e1) {
+                JOptionPane.showMessageDialog(new JFrame(),
+                        "Fail to save the results in " + fileName,
+                        "Export error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
     }
 
     public class DisplayNetworkActionListener implements ActionListener {
@@ -447,13 +511,21 @@ public class MIResultPanel extends JPanel {
         @Override
         public void actionPerformed(ActionEvent e) {
 
-            Graph<MoleculeEntry, EdgeInteraction> graph = new SparseMultigraph<>();
+            final List<MIResult> results = getDisplayedResults();
 
-            for (int tableRow = 0; tableRow < miTable.getRowCount(); tableRow++) {
-                int modelRow = miTable.convertRowIndexToModel(tableRow);
-                MIResult miResult = ((MITableModel) miTable.getModel())
-                        .getResult(modelRow);
+            MappingWorker.whenMapped(label, results, new Runnable() {
+                @Override
+                public void run() {
+                    display(results);
+                }
+            });
+        }
+
+        private void display(List<MIResult> results) {
+
+            Graph<MoleculeEntry, EdgeInteraction> graph = new SparseMultigraph<>();
 
+            for (MIResult miResult : results) {
                 EdgeInteraction edge = new EdgeInteraction(false == miResult.getInteractionStructures().isEmpty(), miResult.hasInterfaceOnStructureA(), miResult.hasInterfaceOnStructureB(), miResult.getTrackId());
                 graph.addEdge(edge, miResult.getInteractor1(), miResult.getInteractor2(), EdgeType.UNDIRECTED);
 
@@ -578,7 +650,7 @@ public class MIResultPanel extends JPanel {
             fileChooser.setAcceptAllFileFilterUsed(false);
 
             if (fileChooser.showSaveDialog(null) == JFileChooser.APPROVE_OPTION) {
-                File file = fileChooser.getSelectedFile();
+                final File file = fileChooser.getSelectedFile();
 
                 String folder = file.getParentFile().getAbsolutePath();
                 if (false == folder.equals(MIBundleConfiguration.getInstance()
@@ -586,76 +658,84 @@ public class MIResultPanel extends JPanel {
                     MIBundleConfiguration.getInstance().setExportFolder(folder);
                 }
 
-                String export = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
-                        + "\n<graph label=\""
-                        + label
-                        + "\""
-                        + "\nxmlns:dc=\"http://purl.org/dc/elements/1.1/\""
-                        + "\nxmlns:xlink=\"http://www.w3.org/1999/xlink\""
-                        + "\nxmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\""
-                        + "\nxmlns:cy=\"http://www.cytoscape.org\""
-                        + "\nxmlns=\"http://www.cs.rpi.edu/XGMML\""
-                        + "\ndirected=\"0\">";
-
-                String xgmmlEdges = "";
-
-                ArrayList<String> interactors = new ArrayList<>();
-
-                for (int tableRow = 0; tableRow < miTable.getRowCount(); tableRow++) {
-                    int modelRow = miTable.convertRowIndexToModel(tableRow);
-                    MIResult miResult = ((MITableModel) miTable.getModel())
-                            .getResult(modelRow);
-                    xgmmlEdges += "\n" + miResult.toXgmml();
-
-                    if (false == interactors.contains(miResult
-                            .getContainerId1())) {
-                        interactors.add(miResult.getContainerId1());
-                        export += "\n"
-                                + "<node id=\""
-                                + miResult.getContainerId1()
-                                + "\" label=\""
-                                + miResult.getInteractor1().getGeneName()
-                                + "\"><att type=\"string\" name=\"uniprotAcc\" value=\""
-                                + miResult.getInteractor1().getUniprotAc()
-                                + "\"/><att type=\"integer\" name=\"numRegions\" value=\""
-                                + miResult.getResiduesA().size()
-                                + "\"/><att type=\"string\" name=\"species\" value=\""
-                                + miResult.getInteractor1().getOrganism()
-                                + "\"/></node>";
-                    }
+                final List<MIResult> results = getDisplayedResults();
 
-                    if (false == interactors.contains(miResult
-                            .getContainerId2())) {
-                        interactors.add(miResult.getContainerId1());
-                        export += "\n"
-                                + "<node id=\""
-                                + miResult.getContainerId2()
-                                + "\" label=\""
-                                + miResult.getInteractor2().getGeneName()
-                                + "\"><att type=\"string\"  name=\"uniprotAcc\" value=\""
-                                + miResult.getInteractor2().getUniprotAc()
-                                + "\"/><att type=\"integer\" name=\"numRegions\" value=\""
-                                + miResult.getResiduesB().size()
-                                + "\"/><att type=\"string\" name=\"species\" value=\""
-                                + miResult.getInteractor2().getOrganism()
-                                + "\"/></node>";
+                MappingWorker.whenMapped(label, results, new Runnable() {
+                    @Override
+                    public void run() {
+                        export(file, results);
                     }
+                });
+            }
+        }
+
+        private void export(File file, List<MIResult> results) {
+            String export = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+                    + "\n<graph label=\""
+                    + label
+                    + "\""
+                    + "\nxmlns:dc=\"http://purl.org/dc/elements/1.1/\""
+                    + "\nxmlns:xlink=\"http://www.w3.org/1999/xlink\""
+                    + "\nxmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\""
+                    + "\nxmlns:cy=\"http://www.cytoscape.org\""
+                    + "\nxmlns=\"http://www.cs.rpi.edu/XGMML\""
+                    + "\ndirected=\"0\">";
+
+            String xgmmlEdges = "";
+
+            ArrayList<String> interactors = new ArrayList<>();
+
+            for (MIResult miResult : results) {
+                xgmmlEdges += "\n" + miResult.toXgmml();
+
+                if (false == interactors.contains(miResult
+                        .getContainerId1())) {
+                    interactors.add(miResult.getContainerId1());
+                    export += "\n"
+                            + "<node id=\""
+                            + miResult.getContainerId1()
+                            + "\" label=\""
+                            + miResult.getInteractor1().getGeneName()
+                            + "\"><att type=\"string\" name=\"uniprotAcc\" value=\""
+                            + miResult.getInteractor1().getUniprotAc()
+                            + "\"/><att type=\"integer\" name=\"numRegions\" value=\""
+                            + miResult.getResiduesA().size()
+                            + "\"/><att type=\"string\" name=\"species\" value=\""
+                            + miResult.getInteractor1().getOrganism()
+                            + "\"/></node>";
                 }
 
-                export += xgmmlEdges;
-                export += "\n</graph>";
+                if (false == interactors.contains(miResult
+                        .getContainerId2())) {
+                    interactors.add(miResult.getContainerId1());
+                    export += "\n"
+                            + "<node id=\""
+                            + miResult.getContainerId2()
+                            + "\" label=\""
+                            + miResult.getInteractor2().getGeneName()
+                            + "\"><att type=\"string\"  name=\"uniprotAcc\" value=\""
+                            + miResult.getInteractor2().getUniprotAc()
+                            + "\"/><att type=\"integer\" name=\"numRegions\" value=\""
+                            + miResult.getResiduesB().size()
+                            + "\"/><att type=\"string\" name=\"species\" value=\""
+                            + miResult.getInteractor2().getOrganism()
+                            + "\"/></node>";
+                }
+            }
 
-                String fileName = file.getPath();
-                try {
-                    try (FileWriter out = new FileWriter(file)) {
-                        out.append(export);
-                        out.flush();
-                    }
-                } catch (IOException e1) {
-                    JOptionPane.showMessageDialog(new JFrame(),
-                            "Fail to save the results in " + fileName,
-                            "Export error", JOptionPane.ERROR_MESSAGE);
+            export += xgmmlEdges;
+            export += "\n</graph>";
+
+            String fileName = file.getPath();
+            try {
+                try (FileWriter out = new FileWriter(file)) {
+                    out.append(export);
+                    out.flush();
                 }
+            } catch (IOException e1) {
+                JOptionPane.showMessageDialog(new JFrame(),
+                        "Fail to save the results in " + fileName,
+                        "Export error", JOptionPane.ERROR_MESSAGE);
             }
         }
     }
@@ -32,6 +32,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 
 import javax.swing.BoxLayout;
@@ -70,10 +71,12 @@ import it.iit.genomics.cru.igb.bundles.commons.business.IGBLogger;
 import it.iit.genomics.cru.igb.bundles.mi.business.DrugBankMapper;
 import it.iit.genomics.cru.igb.bundles.mi.business.MIResult;
 import it.iit.genomics.cru.igb.bundles.mi.business.MIResult.StructureSummary;
+import it.iit.genomics.cru.igb.bundles.mi.business.MappingWorker;
 import it.iit.genomics.cru.igb.bundles.mi.commons.Utils;
 import it.iit.genomics.cru.igb.bundles.mi.model.TaxonColorer;
 import it.iit.genomics.cru.igb.bundles.mi.query.MIQuery;
 import it.iit.genomics.cru.structures.bridges.psicquic.Interaction;
+import it.iit.genomics.cru.structures.bridges.psicquic.PsicquicUtils;
 import it.iit.genomics.cru.structures.model.MoleculeEntry;
 
 /**
@@ -192,39 +195,47 @@ public class MITable extends JTable {
                             Object value = table.getValueAt(table.getSelectedRow(), column);
                                                         
                             if (value instanceof JButton) {
-                                MIResult result = ((MITableModel) table.getModel())
+                                final MIResult result = ((MITableModel) table.getModel())
                                         .getResult(modelRow);
 
-                                TypeContainerAnnot interactorTrack = result.createTrack();
+                                final JButton trackButton = (JButton) value;
 
-                                igbService.addTrack(interactorTrack, interactorTrack.getID());
+                                // the interfaces are mapped before creating the track
+                                MappingWorker.whenMapped(query.getLabel(), Collections.singletonList(result), new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        TypeContainerAnnot interactorTrack = result.createTrack();
 
-                                igbService.getSeqMapView().updatePanel();
+                                        igbService.addTrack(interactorTrack, interactorTrack.getID());
 
-                                for (TierGlyph t : igbService.getAllTierGlyphs()) {
+                                        igbService.getSeqMapView().updatePanel();
 
-                                    if (TierGlyph.TierType.ANNOTATION.equals(t.getTierType()) && (t.getAnnotStyle().getTrackName().equals(interactorTrack.getID()))) {
+                                        for (TierGlyph t : igbService.getAllTierGlyphs()) {
 
-                                        SimpleTrackStyle style = new SimpleTrackStyle(interactorTrack.getID(), false) {
+                                            if (TierGlyph.TierType.ANNOTATION.equals(t.getTierType()) && (t.getAnnotStyle().getTrackName().equals(interactorTrack.getID()))) {
 
-                                            @Override
-                                            public boolean drawCollapseControl() {
-                                                return false;
-                                            }
-                                        };
+                                                SimpleTrackStyle style = new SimpleTrackStyle(interactorTrack.getID(), false) {
 
-                                        t.getAnnotStyle().copyPropertiesFrom(style);
-                                        t.getAnnotStyle().setColorProvider(new RGB());
-                                        interactorTrack.setProperty(TrackLineParser.ITEM_RGB, "on");
-                                    }
-                                }
+                                                    @Override
+                                                    public boolean drawCollapseControl() {
+                                                        return false;
+                                                    }
+                                                };
 
-                                igbService.getSeqMapView().updatePanel();
+                                                t.getAnnotStyle().copyPropertiesFrom(style);
+                                                t.getAnnotStyle().setColorProvider(new RGB());
+                                                interactorTrack.setProperty(TrackLineParser.ITEM_RGB, "on");
+                                            }
+                                        }
+
+                                        igbService.getSeqMapView().updatePanel();
 
-                                ((JButton) value).setText(interactorTrack.getID());
-                                ((JButton) value).setEnabled(false);
+                                        trackButton.setText(interactorTrack.getID());
+                                        trackButton.setEnabled(false);
 
-                                updateUI();
+                                        updateUI();
+                                    }
+                                });
                             }
                         }
                     } else {
@@ -322,7 +333,7 @@ public class MITable extends JTable {
                             String idA = miResult.getInteractor1().getUniprotAc();
                             String idB = miResult.getInteractor2().getUniprotAc();
 
-                            if (null == miResult.getPsicquicUrl()) {
+                            if (false == PsicquicUtils.isRemoteUrl(miResult.getPsicquicUrl())) {
                                 // from the structure database
                                 if (query.searchDSysMap()) {
                                     queryURL = "http://http://dsysmap.irbbarcelona.org/results.php?type=proteins&neigh=2&value=" + idA + "," + idB;
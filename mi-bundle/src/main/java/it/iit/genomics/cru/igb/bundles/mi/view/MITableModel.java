@@ -69,14 +69,36 @@ public class MITableModel extends AbstractTableModel {
     public static final int STRUCTURES_COLUMN = 7;
     public static final int SCORE_COLUMN = 8;
 
+    /**
+     * Refresh the row of a result when its structures are mapped
+     */
+    private final MIResult.MappingListener mappingListener = new MIResult.MappingListener() {
+        @Override
+        public void mappingDone(MIResult result) {
+            int row = tableRows.indexOf(result);
+            if (row >= 0) {
+                fireTableRowsUpdated(row, row);
+            }
+        }
+    };
+
     public MITableModel(List<MIResult> results) {
         super();
 
         if (results != null) {
             tableRows.addAll(results);
+            for (MIResult result : results) {
+                result.addMappingListener(mappingListener);
+            }
         }
     }
 
+    public void addResult(MIResult result) {
+        tableRows.add(result);
+        result.addMappingListener(mappingListener);
+        fireTableRowsInserted(tableRows.size() - 1, tableRows.size() - 1);
+    }
+
     @Override
     public Object getValueAt(int row, int col) {
 
@@ -118,6 +140,7 @@ public class MITableModel extends AbstractTableModel {
                 value = miResult.getDiseasesHtml();
                 break;
             case STRUCTURES_COLUMN:
+                // only the rows displayed or sorted are mapped on demand
                 value = miResult.getStructureSummary();
                 break;
             default:
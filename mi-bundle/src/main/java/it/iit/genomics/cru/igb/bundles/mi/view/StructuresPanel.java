@@ -195,7 +195,30 @@ public class StructuresPanel extends IgbTabPanel {
         structureList.removeAll();
     }
 
+    /**
+     * Pin or unpin the structures of the interaction in the structure cache,
+     * so that they are not read again when displayed in Jmol.
+     *
+     * @param interaction
+     * @param pin
+     */
+    private void pinStructures(MIResult interaction, boolean pin) {
+        if (interaction == null || interaction.getStructureSource() == null) {
+            return;
+        }
+
+        for (String structureId : miStructures) {
+            if (pin) {
+                interaction.getStructureSource().pinStructure(structureId);
+            } else {
+                interaction.getStructureSource().unpinStructure(structureId);
+            }
+        }
+    }
+
     public void setCurrentInteraction(MIResult currentInteraction) {
+        pinStructures(this.currentInteraction, false);
+
         this.currentInteraction = currentInteraction;
         miStructures.clear();
 
@@ -230,6 +253,8 @@ public class StructuresPanel extends IgbTabPanel {
                     .getSourceType(), type));
         }
 
+        pinStructures(currentInteraction, true);
+
         Collections.sort(pdbVector);
 
         int numRows = structureList.getModel().getRowCount();
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.igb.bundles.mi.business;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Arnaud Ceol
+ */
+public class LazyMappingTest {
+
+    private ExecutorService executor;
+
+    private final AtomicInteger runs = new AtomicInteger();
+
+    private final AtomicBoolean runInEventDispatchThread = new AtomicBoolean(false);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final Runnable task = new Runnable() {
+        @Override
+        public void run() {
+            runs.incrementAndGet();
+            if (SwingUtilities.isEventDispatchThread()) {
+                runInEventDispatchThread.set(true);
+            }
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    };
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The event dispatch thread does not wait: the mapping is done in
+     * background and the listener is notified in the event dispatch thread.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEnsureMappedInEventDispatchThread() throws Exception {
+        final LazyMapping mapping = new LazyMapping(task, executor);
+
+        final CountDownLatch notified = new CountDownLatch(1);
+        final AtomicBoolean notifiedInEventDispatchThread = new AtomicBoolean(false);
+
+        mapping.addListener(new Runnable() {
+            @Override
+            public void run() {
+                notifiedInEventDispatchThread.set(SwingUtilities.isEventDispatchThread());
+                notified.countDown();
+            }
+        });
+
+        final AtomicBoolean mappedInEventDispatchThread = new AtomicBoolean(true);
+
+        SwingUtilities.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+                mappedInEventDispatchThread.set(mapping.ensureMapped());
+            }
+        });
+
+        // the task is still waiting, the event dispatch thread did not
+        assertFalse(mappedInEventDispatchThread.get());
+        assertFalse(mapping.isMapped());
+
+        release.countDown();
+
+        assertTrue(notified.await(10, TimeUnit.SECONDS));
+        assertTrue(notifiedInEventDispatchThread.get());
+        assertTrue(mapping.isMapped());
+        assertFalse(runInEventDispatchThread.get());
+        assertEquals(1, runs.get());
+    }
+
+    /**
+     * Outside of the event dispatch thread, the mapping is done before
+     * returning, and only once.
+     */
+    @Test
+    public void testEnsureMapped() {
+        release.countDown();
+
+        LazyMapping mapping = new LazyMapping(task, executor);
+
+        assertTrue(mapping.ensureMapped());
+        assertTrue(mapping.isMapped());
+        assertTrue(mapping.ensureMapped());
+
+        mapping.schedule();
+        mapping.map();
+
+        assertEquals(1, runs.get());
+    }
+
+    /**
+     * A result scheduled several times is mapped once.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSchedule() throws Exception {
+        LazyMapping mapping = new LazyMapping(task, executor);
+
+        mapping.schedule();
+        mapping.schedule();
+
+        release.countDown();
+
+        // waits for the scheduled mapping
+        mapping.map();
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertTrue(mapping.isMapped());
+        assertEquals(1, runs.get());
+    }
+
+}
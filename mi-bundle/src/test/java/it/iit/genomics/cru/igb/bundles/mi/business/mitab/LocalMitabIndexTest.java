@@ -0,0 +1,162 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.igb.bundles.mi.business.mitab;
+
+import it.iit.genomics.cru.structures.bridges.psicquic.Interaction;
+import it.iit.genomics.cru.structures.bridges.psicquic.InteractionManager;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Arnaud Ceol
+ */
+public class LocalMitabIndexTest {
+
+    private File directory;
+
+    private File mitabFile;
+
+    private LocalMitabIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("mitab").toFile();
+        mitabFile = new File(directory, "interactions.mitab");
+
+        try (InputStream is = getClass().getResourceAsStream("/mitab/interactions.mitab")) {
+            Files.copy(is, mitabFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        index = new LocalMitabIndex(mitabFile, new File(directory, "index"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        index.close();
+        delete(directory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private HashMap<String, InteractionManager> lookup(String... acs) throws Exception {
+        HashMap<String, InteractionManager> interactions = new HashMap<>();
+        for (String ac : acs) {
+            interactions.put(ac, new InteractionManager());
+        }
+        index.getInteractors(interactions);
+        return interactions;
+    }
+
+    private static Interaction getInteraction(InteractionManager manager, String ac1, String ac2) {
+        String key = new Interaction(ac1, ac2).getKey();
+        for (Interaction interaction : manager.getInteractions()) {
+            if (interaction.getKey().equals(key)) {
+                return interaction;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lines without a Uniprot AC for both interactors are not indexed.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testImport() throws Exception {
+        assertFalse(index.isUpToDate());
+
+        assertEquals(4, index.importMitab());
+
+        assertTrue(index.isUpToDate());
+        // another instance reuses the index
+        assertTrue(new LocalMitabIndex(mitabFile, new File(directory, "index")).isUpToDate());
+    }
+
+    /**
+     * Interactions of several proteins, the lines of the same pair of
+     * proteins are merged.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLookup() throws Exception {
+        index.importMitab();
+
+        HashMap<String, InteractionManager> interactions = lookup("P04637", "O15151", "P12345");
+
+        InteractionManager p53 = interactions.get("P04637");
+        // Q00987, itself and O15151 (isoform)
+        assertEquals(3, p53.getInteractions().size());
+        assertEquals(new HashSet<>(Arrays.asList("P04637", "Q00987", "O15151")), new HashSet<>(p53.getInteractors()));
+
+        Interaction cdk = getInteraction(p53, "P04637", "Q00987");
+        assertEquals(new HashSet<>(Arrays.asList("physical association", "direct interaction")),
+                new HashSet<>(cdk.getInteractionTypes()));
+        assertEquals(new HashSet<>(Arrays.asList("1001", "1002")), new HashSet<>(cdk.getBibRefs()));
+
+        assertEquals(1, interactions.get("O15151").getInteractions().size());
+        assertTrue(interactions.get("P12345").getInteractions().isEmpty());
+    }
+
+    /**
+     * The index is created again when the MITAB file changes.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRebuild() throws Exception {
+        index.importMitab();
+        assertTrue(lookup("P12345").get("P12345").getInteractions().isEmpty());
+
+        String line = "uniprotkb:P12345\tuniprotkb:Q00987\t-\t-\t-\t-\tpsi-mi:\"MI:0018\"(two hybrid)\t-\tpubmed:1005\t"
+                + "taxid:9606\ttaxid:9606\tpsi-mi:\"MI:0915\"(physical association)\tpsi-mi:\"MI:0469\"(IntAct)\tintact:EBI-1005\t-\n";
+        Files.write(mitabFile.toPath(), line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        mitabFile.setLastModified(mitabFile.lastModified() + 2000);
+
+        assertFalse(index.isUpToDate());
+
+        assertEquals(5, index.importMitab());
+
+        assertTrue(index.isUpToDate());
+        assertEquals(1, lookup("P12345").get("P12345").getInteractions().size());
+        assertEquals(3, lookup("P04637").get("P04637").getInteractions().size());
+    }
+
+}
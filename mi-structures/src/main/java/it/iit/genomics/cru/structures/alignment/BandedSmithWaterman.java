@@ -0,0 +1,197 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.alignment;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * Local alignment restricted to the cells between two diagonals of the
+ * matrix (diagonal: i - j, 0-based positions in seq1 and seq2). The best
+ * cell and the traceback follow the same rules as SmithWatermanItuDK.
+ *
+ * If the alignment touches one of the two diagonals, a better alignment may
+ * exist outside of the band: see isOnBorder.
+ */
+class BandedSmithWaterman implements SequenceAlignment {
+
+    private static final byte STOP = 0;
+
+    private static final byte DIAGONAL = 1;
+
+    private static final byte UP = 2;
+
+    private static final byte LEFT = 3;
+
+    private static final int NEG_INF = Integer.MIN_VALUE / 2;
+
+    private final int score;
+
+    private final int startA;
+
+    private final int startB;
+
+    private final String alignedA;
+
+    private final String alignedB;
+
+    private final boolean onBorder;
+
+    /**
+     *
+     * @param seq1 sequence without characters other than residues
+     * @param seq2 sequence without characters other than residues
+     * @param codes1 residue indexes of seq1
+     * @param codes2 residue indexes of seq2
+     * @param minDiagonal
+     * @param maxDiagonal
+     */
+    BandedSmithWaterman(String seq1, String seq2, byte[] codes1, byte[] codes2, int minDiagonal, int maxDiagonal) {
+        int n = codes1.length;
+        int m = codes2.length;
+
+        int lo = Math.max(minDiagonal, -(m - 1));
+        int hi = Math.min(maxDiagonal, n - 1);
+        int width = hi - lo + 1;
+
+        // band of row i (1-based): j from i - hi to i - lo, cell j at
+        // offset j - (i - hi). The diagonal of the cell above is on the
+        // next offset, the one of the cell on the left on the previous one.
+        int[] previous = new int[width + 1];
+        int[] current = new int[width + 1];
+        byte[][] traceback = new byte[n + 1][width];
+
+        int best = 0;
+        int bestI = 0;
+        int bestJ = 0;
+
+        for (int i = 1; i <= n; i++) {
+            int[] scores = SmithWaterman.SCORES[codes1[i - 1]];
+            int first = i - hi;
+            for (int k = 0; k < width; k++) {
+                int j = first + k;
+                if (j < 1 || j > m) {
+                    current[k] = j == 0 ? 0 : NEG_INF;
+                    continue;
+                }
+                int diagonal = (i == 1 || j == 1) ? 0 : previous[k];
+                int up = i == 1 ? 0 : previous[k + 1];
+                int left = k == 0 ? NEG_INF : current[k - 1];
+
+                int d = diagonal + scores[codes2[j - 1]];
+                int u = up - SmithWaterman.GAP;
+                int l = left - SmithWaterman.GAP;
+                int h = Math.max(0, Math.max(d, Math.max(u, l)));
+
+                current[k] = h;
+                if (h == 0) {
+                    traceback[i][k] = STOP;
+                } else if (h == d) {
+                    traceback[i][k] = DIAGONAL;
+                } else if (h == u) {
+                    traceback[i][k] = UP;
+                } else {
+                    traceback[i][k] = LEFT;
+                }
+
+                if (h > best) {
+                    best = h;
+                    bestI = i;
+                    bestJ = j;
+                }
+            }
+            current[width] = NEG_INF;
+
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        score = best;
+
+        StringBuilder reversedA = new StringBuilder();
+        StringBuilder reversedB = new StringBuilder();
+
+        boolean border = false;
+        int i = bestI;
+        int j = bestJ;
+        while (i > 0 && j > 0) {
+            int k = j - (i - hi);
+            byte move = traceback[i][k];
+            if (move == STOP) {
+                break;
+            }
+            int diagonal = i - j;
+            if ((diagonal == hi && hi < n - 1) || (diagonal == lo && lo > -(m - 1))) {
+                border = true;
+            }
+            if (move == DIAGONAL) {
+                reversedA.append(seq1.charAt(i - 1));
+                reversedB.append(seq2.charAt(j - 1));
+                i--;
+                j--;
+            } else if (move == UP) {
+                reversedA.append(seq1.charAt(i - 1));
+                reversedB.append('-');
+                i--;
+            } else {
+                reversedA.append('-');
+                reversedB.append(seq2.charAt(j - 1));
+                j--;
+            }
+        }
+
+        startA = i;
+        startB = j;
+        alignedA = reversedA.reverse().toString();
+        alignedB = reversedB.reverse().toString();
+        onBorder = border;
+    }
+
+    /**
+     *
+     * @return true if the alignment goes through a diagonal at the border of
+     * the band that is not the border of the matrix.
+     */
+    boolean isOnBorder() {
+        return onBorder;
+    }
+
+    @Override
+    public String getAlignmentSeqA() {
+        return alignedA;
+    }
+
+    @Override
+    public String getAlignmentSeqB() {
+        return alignedB;
+    }
+
+    @Override
+    public int getStartAlignmentA() {
+        return startA;
+    }
+
+    @Override
+    public int getStartAlignmentB() {
+        return startB;
+    }
+
+    @Override
+    public int getScore() {
+        return score;
+    }
+}
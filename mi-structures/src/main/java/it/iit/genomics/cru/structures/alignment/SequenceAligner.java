@@ -0,0 +1,316 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.alignment;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * Local alignment of protein sequences, with shortcuts for the frequent
+ * cases: the translation of a transcript is most of the time the Uniprot
+ * isoform, and the atom sequence of a chain a region of the Uniprot
+ * sequence, with a few gaps.
+ *
+ * 1. EXACT: identical sequences,
+ *
+ * 2. SUBSTRING: one sequence contains the other one,
+ *
+ * 3. BANDED: the k-mers shared by the two sequences are on neighbouring
+ * diagonals, the alignment is computed in a band around them. The result is
+ * kept if the alignment does not reach the border of the band,
+ *
+ * 4. FULL: SmithWaterman on the whole matrix.
+ *
+ * The number of alignments done by each path is kept, see getCount.
+ */
+public class SequenceAligner {
+
+    /**
+     * Way an alignment was computed.
+     */
+    public enum Path {
+
+        EXACT, SUBSTRING, BANDED, FULL
+    }
+
+    /**
+     * Length of the seeds
+     */
+    private static final int K = 6;
+
+    /**
+     * Seeds found more often in the first sequence are ignored
+     * (repeats, low complexity regions)
+     */
+    private static final int MAX_OCCURRENCES = 4;
+
+    /**
+     * Diagonals added on each side of the seeds
+     */
+    private static final int MARGIN = 16;
+
+    /**
+     * Minimal fraction of the k-mers of the shortest sequence found in the
+     * other one
+     */
+    private static final double MIN_SEED_FRACTION = 0.25;
+
+    /**
+     * The band is used if it is at most this fraction of the length of the
+     * shortest sequence
+     */
+    private static final double MAX_BAND_FRACTION = 0.25;
+
+    private static final SequenceAligner instance = new SequenceAligner();
+
+    private final AtomicLongArray counts = new AtomicLongArray(Path.values().length);
+
+    /**
+     *
+     * @return the aligner shared by AAPositionManager and StructureMapper
+     */
+    public static SequenceAligner getInstance() {
+        return instance;
+    }
+
+    /**
+     * Same alignment as new SmithWaterman(sq1, sq2), up to alignments of
+     * same score.
+     *
+     * @param sq1
+     * @param sq2
+     * @return
+     */
+    public SequenceAlignment align(String sq1, String sq2) {
+        String seq1 = SmithWaterman.strip(sq1);
+        String seq2 = SmithWaterman.strip(sq2);
+
+        if (false == seq1.isEmpty() && false == seq2.isEmpty()) {
+            if (seq1.equals(seq2)) {
+                counts.incrementAndGet(Path.EXACT.ordinal());
+                return new UngappedAlignment(seq1, seq2, 0, 0);
+            }
+
+            int index = seq1.indexOf(seq2);
+            if (index >= 0) {
+                counts.incrementAndGet(Path.SUBSTRING.ordinal());
+                return new UngappedAlignment(seq2, seq2, index, 0);
+            }
+
+            index = seq2.indexOf(seq1);
+            if (index >= 0) {
+                counts.incrementAndGet(Path.SUBSTRING.ordinal());
+                return new UngappedAlignment(seq1, seq1, 0, index);
+            }
+
+            BandedSmithWaterman banded = alignBanded(seq1, seq2);
+            if (banded != null) {
+                counts.incrementAndGet(Path.BANDED.ordinal());
+                return banded;
+            }
+        }
+
+        counts.incrementAndGet(Path.FULL.ordinal());
+        return new SmithWaterman(seq1, seq2);
+    }
+
+    /**
+     *
+     * @return the banded alignment, or null if there are too few seeds, if
+     * they are spread on too many diagonals or if the alignment reaches the
+     * border of the band.
+     */
+    private static BandedSmithWaterman alignBanded(String seq1, String seq2) {
+        byte[] codes1 = SmithWaterman.encode(seq1);
+        byte[] codes2 = SmithWaterman.encode(seq2);
+
+        int numKmers = Math.min(codes1.length, codes2.length) - K + 1;
+        if (numKmers < K) {
+            return null;
+        }
+
+        int[] diagonals = seedDiagonals(codes1, codes2);
+        if (diagonals.length < MIN_SEED_FRACTION * numKmers) {
+            return null;
+        }
+
+        // the band covers all the seeds, so that no region of similarity
+        // is left out of it
+        int minDiagonal = Integer.MAX_VALUE;
+        int maxDiagonal = Integer.MIN_VALUE;
+        for (int diagonal : diagonals) {
+            minDiagonal = Math.min(minDiagonal, diagonal);
+            maxDiagonal = Math.max(maxDiagonal, diagonal);
+        }
+
+        int width = maxDiagonal - minDiagonal + 1 + 2 * MARGIN;
+        if (width > MAX_BAND_FRACTION * Math.min(codes1.length, codes2.length)) {
+            return null;
+        }
+
+        BandedSmithWaterman banded = new BandedSmithWaterman(seq1, seq2, codes1, codes2,
+                minDiagonal - MARGIN, maxDiagonal + MARGIN);
+
+        if (banded.getScore() == 0 || banded.isOnBorder()) {
+            return null;
+        }
+
+        return banded;
+    }
+
+    /**
+     *
+     * @return the diagonal (i - j) of each k-mer of seq2 found at position i
+     * of seq1 and j of seq2
+     */
+    private static int[] seedDiagonals(byte[] codes1, byte[] codes2) {
+        // k-mers of seq1, sorted: code in the high bits, position in the
+        // low bits
+        long[] kmers = new long[codes1.length - K + 1];
+        for (int i = 0; i < kmers.length; i++) {
+            kmers[i] = ((long) kmer(codes1, i) << 32) | i;
+        }
+        Arrays.sort(kmers);
+
+        int[] diagonals = new int[codes2.length];
+        int numDiagonals = 0;
+
+        for (int j = 0; j + K <= codes2.length; j++) {
+            long code = (long) kmer(codes2, j) << 32;
+            int first = lowerBound(kmers, code);
+            int last = lowerBound(kmers, code + (1L << 32));
+            if (last - first > MAX_OCCURRENCES) {
+                continue;
+            }
+            for (int h = first; h < last; h++) {
+                if (numDiagonals == diagonals.length) {
+                    diagonals = Arrays.copyOf(diagonals, diagonals.length * 2);
+                }
+                diagonals[numDiagonals++] = (int) kmers[h] - j;
+            }
+        }
+
+        return Arrays.copyOf(diagonals, numDiagonals);
+    }
+
+    private static int kmer(byte[] codes, int start) {
+        int code = 0;
+        for (int i = start; i < start + K; i++) {
+            code = code * 20 + codes[i];
+        }
+        return code;
+    }
+
+    private static int lowerBound(long[] values, long value) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     *
+     * @param path
+     * @return the number of alignments done by this path
+     */
+    public long getCount(Path path) {
+        return counts.get(path.ordinal());
+    }
+
+    /**
+     *
+     */
+    public void resetCounts() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    /**
+     * The counts of the shared instance are kept since startup: take a
+     * snapshot at the start of a query and log the difference at the end.
+     *
+     * @return a snapshot of the number of alignments done by each path
+     */
+    public Counts getCounts() {
+        long[] values = new long[counts.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = counts.get(i);
+        }
+        return new Counts(values);
+    }
+
+    @Override
+    public String toString() {
+        return getCounts().toString();
+    }
+
+    /**
+     * Number of alignments done by each path.
+     */
+    public static class Counts {
+
+        private final long[] values;
+
+        private Counts(long[] values) {
+            this.values = values;
+        }
+
+        /**
+         *
+         * @param path
+         * @return
+         */
+        public long get(Path path) {
+            return values[path.ordinal()];
+        }
+
+        /**
+         *
+         * @param before an earlier snapshot
+         * @return the alignments done since the earlier snapshot
+         */
+        public Counts since(Counts before) {
+            long[] difference = new long[values.length];
+            for (int i = 0; i < values.length; i++) {
+                difference[i] = values[i] - before.values[i];
+            }
+            return new Counts(difference);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder summary = new StringBuilder();
+            for (Path path : Path.values()) {
+                if (summary.length() > 0) {
+                    summary.append(", ");
+                }
+                summary.append(path.name().toLowerCase()).append(": ").append(get(path));
+            }
+            return summary.toString();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.alignment;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * Local alignment of two sequences. Positions are 0-based, on the sequences
+ * without the characters that are not residues.
+ */
+public interface SequenceAlignment {
+
+    /**
+     *
+     * @return the aligned region of the first sequence, with gaps
+     */
+    String getAlignmentSeqA();
+
+    /**
+     *
+     * @return the aligned region of the second sequence, with gaps
+     */
+    String getAlignmentSeqB();
+
+    /**
+     *
+     * @return position of the first aligned residue of the first sequence
+     */
+    int getStartAlignmentA();
+
+    /**
+     *
+     * @return position of the first aligned residue of the second sequence
+     */
+    int getStartAlignmentB();
+
+    /**
+     *
+     * @return the score of the alignment
+     */
+    int getScore();
+}
@@ -15,11 +15,96 @@
  */
 package it.iit.genomics.cru.structures.alignment;
 
+import java.util.Arrays;
+
 /**
  *
  * @author Arnaud Ceol
+ *
+ * Local alignment with BLOSUM50 and a linear gap cost of 8, as
+ * SmithWatermanItuDK, in linear space.
+ *
+ * 1. the score and the end of the alignment are computed with a striped
+ * query profile (Farrar, Bioinformatics 2007): the query is split in LANES
+ * segments processed side by side, so that the inner loop has no dependency
+ * between lanes. Gaps crossing two segments are added afterwards by the
+ * "lazy F" loop.
+ *
+ * 2. the start of the alignment is found by aligning backwards from its end,
+ * until the score of the alignment is reached.
+ *
+ * 3. the two aligned regions are aligned globally with the algorithm of
+ * Hirschberg, that only keeps two rows of scores.
+ *
+ * When several alignments have the best score:
+ *
+ * - the score and the end are the same as the ones of SmithWatermanItuDK: the
+ * end is the first cell with the best score, for the positions of seq1 then
+ * of seq2.
+ *
+ * - the start is the latest one, in seq1 then in seq2, from which an
+ * alignment reaches the best score at this end. SmithWatermanItuDK starts
+ * where its traceback, that prefers substitutions to gaps, reaches a score
+ * of 0: this may be earlier, e.g. for low complexity sequences.
+ *
+ * - the gaps between the start and the end may be placed differently.
  */
-public class SmithWaterman extends SmithWatermanItuDK {
+public class SmithWaterman implements SequenceAlignment {
+
+    /**
+     * Gap cost
+     */
+    static final int GAP = 8;
+
+    /**
+     * Number of segments of the striped profile
+     */
+    private static final int LANES = 8;
+
+    /**
+     * Below this number of cells, regions are aligned with a full matrix.
+     */
+    private static final int MAX_FULL_MATRIX = 1 << 12;
+
+    private static final String RESIDUES = new Blosum50().getResidues();
+
+    /**
+     * Substitution scores between residue indexes (see RESIDUES).
+     */
+    static final int[][] SCORES = createScores();
+
+    /**
+     * Residue index of each character, -1 for characters not in RESIDUES.
+     */
+    private static final byte[] CODES = createCodes();
+
+    private static final byte DIAGONAL = 0;
+
+    private static final byte UP = 1;
+
+    private static final byte LEFT = 2;
+
+    private final String seq1;
+
+    private final String seq2;
+
+    private final byte[] codes1;
+
+    private final byte[] codes2;
+
+    private int score;
+
+    private int startA;
+
+    private int startB;
+
+    private int endA;
+
+    private int endB;
+
+    private String alignedA;
+
+    private String alignedB;
 
     /**
      *
@@ -27,8 +112,475 @@ public class SmithWaterman extends SmithWatermanItuDK {
      * @param sq2
      */
     public SmithWaterman(String sq1, String sq2) {
-        super(sq1, sq2);
+        this.seq1 = strip(sq1);
+        this.seq2 = strip(sq2);
+        this.codes1 = encode(seq1);
+        this.codes2 = encode(seq2);
+
+        int n = codes1.length;
+        int m = codes2.length;
+
+        if (n == 0 || m == 0) {
+            startA = endA = n;
+            startB = endB = m;
+            score = 0;
+            alignedA = alignedB = "";
+            return;
+        }
+
+        findEnd();
+
+        if (score == 0) {
+            // no positive alignment: empty alignment at the first cell
+            startA = endA = 1;
+            startB = endB = 1;
+            alignedA = alignedB = "";
+            return;
+        }
+
+        findStart();
+
+        StringBuilder a = new StringBuilder(endA - startA + endB - startB);
+        StringBuilder b = new StringBuilder(endA - startA + endB - startB);
+        align(startA, endA, startB, endB, a, b);
+
+        alignedA = a.toString();
+        alignedB = b.toString();
     }
 
-}
+    private static int[][] createScores() {
+        int[][] substitution = new Blosum50().score;
+        int[][] scores = new int[RESIDUES.length()][RESIDUES.length()];
+        for (int i = 0; i < RESIDUES.length(); i++) {
+            for (int j = 0; j < RESIDUES.length(); j++) {
+                scores[i][j] = substitution[RESIDUES.charAt(i)][RESIDUES.charAt(j)];
+            }
+        }
+        return scores;
+    }
+
+    private static byte[] createCodes() {
+        byte[] codes = new byte[128];
+        Arrays.fill(codes, (byte) -1);
+        for (int i = 0; i < RESIDUES.length(); i++) {
+            char c = RESIDUES.charAt(i);
+            codes[Character.toUpperCase(c)] = (byte) i;
+            codes[Character.toLowerCase(c)] = (byte) i;
+        }
+        return codes;
+    }
+
+    private static boolean isResidue(char c) {
+        return c < CODES.length && CODES[c] >= 0;
+    }
+
+    /**
+     * Remove the characters that are not residues, as Align.strip.
+     */
+    static String strip(String s) {
+        StringBuilder res = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            if (isResidue(s.charAt(i))) {
+                res.append(s.charAt(i));
+            }
+        }
+        return res.toString();
+    }
+
+    static byte[] encode(String s) {
+        byte[] codes = new byte[s.length()];
+        for (int i = 0; i < s.length(); i++) {
+            codes[i] = CODES[s.charAt(i)];
+        }
+        return codes;
+    }
+
+    /**
+     * Striped pass over the whole matrix: sets score, endA and endB. The end
+     * is the first cell with the best score, columns (seq1) first, as in
+     * SmithWatermanItuDK.
+     */
+    private void findEnd() {
+        int n = codes1.length;
+        int m = codes2.length;
+        int segLen = (m + LANES - 1) / LANES;
+        int size = segLen * LANES;
+
+        // query profile: profile[r][k * LANES + l] is the score of residue r
+        // against seq2[l * segLen + k]
+        int[][] profile = new int[RESIDUES.length()][size];
+        for (int r = 0; r < RESIDUES.length(); r++) {
+            int[] row = profile[r];
+            for (int k = 0; k < segLen; k++) {
+                for (int l = 0; l < LANES; l++) {
+                    int j = l * segLen + k;
+                    row[k * LANES + l] = j < m ? SCORES[r][codes2[j]] : -GAP * size;
+                }
+            }
+        }
+
+        int[] hPrevious = new int[size];
+        int[] hCurrent = new int[size];
+        int[] diagonal = new int[LANES];
+        int[] f = new int[LANES];
+        int[] max = new int[LANES];
+
+        int best = -1;
+
+        for (int i = 0; i < n; i++) {
+            int[] row = profile[codes1[i]];
+
+            // diagonal of the first segment: last segment of the previous
+            // lane in the previous column
+            diagonal[0] = 0;
+            for (int l = 1; l < LANES; l++) {
+                diagonal[l] = hPrevious[(segLen - 1) * LANES + l - 1];
+            }
+            Arrays.fill(f, 0);
+            Arrays.fill(max, 0);
+
+            for (int k = 0; k < segLen; k++) {
+                int offset = k * LANES;
+                for (int l = 0; l < LANES; l++) {
+                    int h = diagonal[l] + row[offset + l];
+                    h = Math.max(h, hPrevious[offset + l] - GAP);
+                    h = Math.max(h, f[l]);
+                    h = Math.max(h, 0);
+                    diagonal[l] = hPrevious[offset + l];
+                    hCurrent[offset + l] = h;
+                    f[l] = h - GAP;
+                    max[l] = Math.max(max[l], h);
+                }
+            }
+
+            // lazy F: gaps from the end of a lane to the start of the next
+            // one
+            boolean changed = true;
+            while (changed) {
+                for (int l = LANES - 1; l > 0; l--) {
+                    f[l] = f[l - 1];
+                }
+                f[0] = 0;
+                changed = false;
+                for (int k = 0; k < segLen; k++) {
+                    int offset = k * LANES;
+                    boolean improved = false;
+                    for (int l = 0; l < LANES; l++) {
+                        int h = hCurrent[offset + l];
+                        if (f[l] > h) {
+                            h = f[l];
+                            hCurrent[offset + l] = h;
+                            max[l] = Math.max(max[l], h);
+                            improved = true;
+                        }
+                        f[l] = h - GAP;
+                    }
+                    if (false == improved) {
+                        break;
+                    }
+                    changed = k == segLen - 1;
+                }
+            }
+
+            int columnMax = 0;
+            for (int l = 0; l < LANES; l++) {
+                columnMax = Math.max(columnMax, max[l]);
+            }
+
+            if (columnMax > best) {
+                best = columnMax;
+                for (int j = 0; j < m; j++) {
+                    if (hCurrent[(j % segLen) * LANES + j / segLen] == columnMax) {
+                        endA = i + 1;
+                        endB = j + 1;
+                        break;
+                    }
+                }
+            }
+
+            int[] swap = hPrevious;
+            hPrevious = hCurrent;
+            hCurrent = swap;
+        }
+
+        score = best;
+    }
 
+    /**
+     * Align backwards from the end of the alignment, the start is the
+     * closest cell to the end where the score of the alignment is reached.
+     */
+    private void findStart() {
+        int[] previous = new int[endB + 1];
+        int[] current = new int[endB + 1];
+
+        // previous[j]: score of seq1[i + 1, endA) with seq2[j, endB)
+        for (int j = endB; j >= 0; j--) {
+            previous[j] = -GAP * (endB - j);
+        }
+
+        for (int i = endA - 1; i >= 0; i--) {
+            int[] scores = SCORES[codes1[i]];
+            current[endB] = -GAP * (endA - i);
+            for (int j = endB - 1; j >= 0; j--) {
+                int h = previous[j + 1] + scores[codes2[j]];
+                h = Math.max(h, previous[j] - GAP);
+                h = Math.max(h, current[j + 1] - GAP);
+                current[j] = h;
+            }
+            for (int j = endB - 1; j >= 0; j--) {
+                if (current[j] == score) {
+                    startA = i;
+                    startB = j;
+                    return;
+                }
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        throw new IllegalStateException("Start of the alignment not found");
+    }
+
+    /**
+     * Global alignment of seq1[a0, a1) and seq2[b0, b1) (Hirschberg).
+     */
+    private void align(int a0, int a1, int b0, int b1, StringBuilder a, StringBuilder b) {
+        int lengthA = a1 - a0;
+        int lengthB = b1 - b0;
+
+        if (lengthA == 0) {
+            for (int j = b0; j < b1; j++) {
+                a.append('-');
+                b.append(seq2.charAt(j));
+            }
+            return;
+        }
+
+        if (lengthB == 0) {
+            for (int i = a0; i < a1; i++) {
+                a.append(seq1.charAt(i));
+                b.append('-');
+            }
+            return;
+        }
+
+        if (lengthA == 1 || lengthB == 1 || (lengthA + 1) * (lengthB + 1) <= MAX_FULL_MATRIX) {
+            alignFullMatrix(a0, a1, b0, b1, a, b);
+            return;
+        }
+
+        int middle = a0 + lengthA / 2;
+
+        int[] forward = forwardScores(a0, middle, b0, b1);
+        int[] backward = backwardScores(middle, a1, b0, b1);
+
+        int split = 0;
+        int best = Integer.MIN_VALUE;
+        for (int k = 0; k <= lengthB; k++) {
+            int s = forward[k] + backward[k];
+            if (s > best) {
+                best = s;
+                split = k;
+            }
+        }
+
+        align(a0, middle, b0, b0 + split, a, b);
+        align(middle, a1, b0 + split, b1, a, b);
+    }
+
+    /**
+     *
+     * @return scores[k]: score of seq1[a0, a1) with seq2[b0, b0 + k)
+     */
+    private int[] forwardScores(int a0, int a1, int b0, int b1) {
+        int lengthB = b1 - b0;
+        int[] scores = new int[lengthB + 1];
+        for (int k = 0; k <= lengthB; k++) {
+            scores[k] = -GAP * k;
+        }
+        for (int i = a0; i < a1; i++) {
+            int[] substitution = SCORES[codes1[i]];
+            int diagonal = scores[0];
+            scores[0] = -GAP * (i - a0 + 1);
+            for (int k = 1; k <= lengthB; k++) {
+                int h = diagonal + substitution[codes2[b0 + k - 1]];
+                h = Math.max(h, scores[k] - GAP);
+                h = Math.max(h, scores[k - 1] - GAP);
+                diagonal = scores[k];
+                scores[k] = h;
+            }
+        }
+        return scores;
+    }
+
+    /**
+     *
+     * @return scores[k]: score of seq1[a0, a1) with seq2[b0 + k, b1)
+     */
+    private int[] backwardScores(int a0, int a1, int b0, int b1) {
+        int lengthB = b1 - b0;
+        int[] scores = new int[lengthB + 1];
+        for (int k = lengthB; k >= 0; k--) {
+            scores[k] = -GAP * (lengthB - k);
+        }
+        for (int i = a1 - 1; i >= a0; i--) {
+            int[] substitution = SCORES[codes1[i]];
+            int diagonal = scores[lengthB];
+            scores[lengthB] = -GAP * (a1 - i);
+            for (int k = lengthB - 1; k >= 0; k--) {
+                int h = diagonal + substitution[codes2[b0 + k]];
+                h = Math.max(h, scores[k] - GAP);
+                h = Math.max(h, scores[k + 1] - GAP);
+                diagonal = scores[k];
+                scores[k] = h;
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Global alignment of small regions, with a traceback matrix. Ties are
+     * broken as in NW: diagonal, then gap in seq2, then gap in seq1.
+     */
+    private void alignFullMatrix(int a0, int a1, int b0, int b1, StringBuilder a, StringBuilder b) {
+        int lengthA = a1 - a0;
+        int lengthB = b1 - b0;
+        int width = lengthB + 1;
+
+        int[] scores = new int[(lengthA + 1) * width];
+        byte[] traceback = new byte[(lengthA + 1) * width];
+
+        for (int i = 1; i <= lengthA; i++) {
+            scores[i * width] = -GAP * i;
+            traceback[i * width] = UP;
+        }
+        for (int j = 1; j <= lengthB; j++) {
+            scores[j] = -GAP * j;
+            traceback[j] = LEFT;
+        }
+
+        for (int i = 1; i <= lengthA; i++) {
+            int[] substitution = SCORES[codes1[a0 + i - 1]];
+            for (int j = 1; j <= lengthB; j++) {
+                int diagonal = scores[(i - 1) * width + j - 1] + substitution[codes2[b0 + j - 1]];
+                int up = scores[(i - 1) * width + j] - GAP;
+                int left = scores[i * width + j - 1] - GAP;
+                if (diagonal >= up && diagonal >= left) {
+                    scores[i * width + j] = diagonal;
+                    traceback[i * width + j] = DIAGONAL;
+                } else if (up >= left) {
+                    scores[i * width + j] = up;
+                    traceback[i * width + j] = UP;
+                } else {
+                    scores[i * width + j] = left;
+                    traceback[i * width + j] = LEFT;
+                }
+            }
+        }
+
+        StringBuilder reversedA = new StringBuilder(lengthA + lengthB);
+        StringBuilder reversedB = new StringBuilder(lengthA + lengthB);
+        int i = lengthA;
+        int j = lengthB;
+        while (i > 0 || j > 0) {
+            switch (traceback[i * width + j]) {
+                case DIAGONAL:
+                    reversedA.append(seq1.charAt(a0 + i - 1));
+                    reversedB.append(seq2.charAt(b0 + j - 1));
+                    i--;
+                    j--;
+                    break;
+                case UP:
+                    reversedA.append(seq1.charAt(a0 + i - 1));
+                    reversedB.append('-');
+                    i--;
+                    break;
+                default:
+                    reversedA.append('-');
+                    reversedB.append(seq2.charAt(b0 + j - 1));
+                    j--;
+                    break;
+            }
+        }
+
+        a.append(reversedA.reverse());
+        b.append(reversedB.reverse());
+    }
+
+    /**
+     *
+     * @return the aligned region of the first sequence, with gaps
+     */
+    @Override
+    public String getAlignmentSeqA() {
+        return alignedA;
+    }
+
+    /**
+     *
+     * @return the aligned region of the second sequence, with gaps
+     */
+    @Override
+    public String getAlignmentSeqB() {
+        return alignedB;
+    }
+
+    /**
+     *
+     * @return the first sequence preceded by gaps for the unaligned start of
+     * the second sequence, up to the end of the alignment
+     */
+    public String getGlobalAlignmentSeqA() {
+        StringBuilder global = new StringBuilder();
+        for (int k = 0; k < startB; k++) {
+            global.append('-');
+        }
+        return global.append(seq1, 0, startA).append(alignedA).toString();
+    }
+
+    /**
+     *
+     * @return the unaligned start of the second sequence, followed by gaps
+     * for the unaligned start of the first sequence, up to the end of the
+     * alignment
+     */
+    public String getGlobalAlignmentSeqB() {
+        StringBuilder global = new StringBuilder(seq2.substring(0, startB));
+        for (int k = 0; k < startA; k++) {
+            global.append('-');
+        }
+        return global.append(alignedB).toString();
+    }
+
+    /**
+     *
+     * @return 0-based position of the first aligned residue of the first
+     * sequence
+     */
+    @Override
+    public int getStartAlignmentA() {
+        return startA;
+    }
+
+    /**
+     *
+     * @return 0-based position of the first aligned residue of the second
+     * sequence
+     */
+    @Override
+    public int getStartAlignmentB() {
+        return startB;
+    }
+
+    /**
+     *
+     * @return the score of the alignment
+     */
+    @Override
+    public int getScore() {
+        return score;
+    }
+
+}
@@ -0,0 +1,76 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.alignment;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * Alignment without gaps of a region of both sequences, for identical
+ * sequences and sequences contained in the other one.
+ */
+class UngappedAlignment implements SequenceAlignment {
+
+    private final String alignedA;
+
+    private final String alignedB;
+
+    private final int startA;
+
+    private final int startB;
+
+    private final int score;
+
+    UngappedAlignment(String alignedA, String alignedB, int startA, int startB) {
+        this.alignedA = alignedA;
+        this.alignedB = alignedB;
+        this.startA = startA;
+        this.startB = startB;
+
+        int s = 0;
+        byte[] codesA = SmithWaterman.encode(alignedA);
+        byte[] codesB = SmithWaterman.encode(alignedB);
+        for (int i = 0; i < codesA.length; i++) {
+            s += SmithWaterman.SCORES[codesA[i]][codesB[i]];
+        }
+        this.score = s;
+    }
+
+    @Override
+    public String getAlignmentSeqA() {
+        return alignedA;
+    }
+
+    @Override
+    public String getAlignmentSeqB() {
+        return alignedB;
+    }
+
+    @Override
+    public int getStartAlignmentA() {
+        return startA;
+    }
+
+    @Override
+    public int getStartAlignmentB() {
+        return startB;
+    }
+
+    @Override
+    public int getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,238 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.batch;
+
+import com.google.common.collect.HashMultimap;
+import it.iit.genomics.cru.structures.model.GeneIntervalIndex;
+import it.iit.genomics.cru.structures.model.MIExon;
+import it.iit.genomics.cru.structures.model.MIGene;
+import it.iit.genomics.cru.structures.model.sequence.TranscriptSequence;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.biojava.nbio.core.exceptions.CompoundNotFoundException;
+import org.biojava.nbio.core.exceptions.TranslationException;
+import org.biojava.nbio.core.sequence.DNASequence;
+import org.biojava.nbio.core.sequence.ProteinSequence;
+import org.biojava.nbio.core.sequence.RNASequence;
+import org.biojava.nbio.core.sequence.compound.AminoAcidCompoundSet;
+import org.biojava.nbio.core.sequence.compound.DNACompoundSet;
+import org.biojava.nbio.core.sequence.compound.RNACompoundSet;
+import org.biojava.nbio.core.sequence.io.IUPACParser;
+import org.biojava.nbio.core.sequence.io.ProteinSequenceCreator;
+import org.biojava.nbio.core.sequence.io.RNASequenceCreator;
+import org.biojava.nbio.core.sequence.template.CompoundSet;
+import org.biojava.nbio.core.sequence.transcription.DNAToRNATranslator;
+import org.biojava.nbio.core.sequence.transcription.Frame;
+import org.biojava.nbio.core.sequence.transcription.RNAToAminoAcidTranslator;
+import org.biojava.nbio.core.sequence.transcription.Table;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Gene models read from a UCSC genePred table, and their transcript sequences
+ * read from an indexed genome. It plays the role of the IGB gene managers for
+ * the batch runner.
+ *
+ * Genes are only read after the construction, it can be shared by several
+ * threads.
+ */
+public class BatchGeneManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchGeneManager.class);
+
+    private final static DNACompoundSet dna = DNACompoundSet.getDNACompoundSet();
+    private final static RNACompoundSet rna = RNACompoundSet.getRNACompoundSet();
+    private final static AminoAcidCompoundSet aa = AminoAcidCompoundSet
+            .getAminoAcidCompoundSet();
+
+    private final static DNAToRNATranslator dnaTranslator = new DNAToRNATranslator(
+            new RNASequenceCreator(rna), dna, rna, false);
+
+    private final static Table table = IUPACParser.getInstance().getTable(1);
+
+    private final static CompoundSet<Table.Codon> codons = table.getCodonCompoundSet(rna, aa);
+
+    private final static RNAToAminoAcidTranslator rnaTranslator = new RNAToAminoAcidTranslator(
+            new ProteinSequenceCreator(aa), rna, codons, aa, table, false,
+            false, false, false, false);
+
+    private final GenomeSequence genome;
+
+    private final HashMap<String, GeneIntervalIndex<MIGene>> genesByChromosome = new HashMap<>();
+
+    /**
+     * Genes by transcript ID, transcript ID without version and gene name
+     */
+    private final HashMultimap<String, MIGene> genesById = HashMultimap.create();
+
+    /**
+     *
+     * @param genes
+     * @param genome may be null if the transcript sequences are not needed
+     */
+    public BatchGeneManager(Collection<MIGene> genes, GenomeSequence genome) {
+        this.genome = genome;
+
+        HashMap<String, List<MIGene>> chromosomeGenes = new HashMap<>();
+
+        for (MIGene gene : genes) {
+            if (false == chromosomeGenes.containsKey(gene.getChromosomeName())) {
+                chromosomeGenes.put(gene.getChromosomeName(), new ArrayList<MIGene>());
+            }
+            chromosomeGenes.get(gene.getChromosomeName()).add(gene);
+
+            genesById.put(gene.getID(), gene);
+            if (gene.getID().lastIndexOf('.') > 0) {
+                genesById.put(gene.getID().substring(0, gene.getID().lastIndexOf('.')), gene);
+            }
+            if (null != gene.getName()) {
+                genesById.put(gene.getName(), gene);
+            }
+        }
+
+        for (Map.Entry<String, List<MIGene>> entry : chromosomeGenes.entrySet()) {
+            List<MIGene> chrGenes = entry.getValue();
+
+            int[] starts = new int[chrGenes.size()];
+            int[] ends = new int[chrGenes.size()];
+
+            for (int i = 0; i < chrGenes.size(); i++) {
+                starts[i] = chrGenes.get(i).getMin();
+                ends[i] = chrGenes.get(i).getMax() + 1;
+            }
+
+            genesByChromosome.put(entry.getKey(), new GeneIntervalIndex<>(starts, ends, chrGenes));
+        }
+    }
+
+    /**
+     *
+     * @param genePredFile genePred table, optionally gzipped
+     * @param genome may be null if the transcript sequences are not needed
+     * @return
+     * @throws IOException
+     */
+    public static BatchGeneManager read(File genePredFile, GenomeSequence genome) throws IOException {
+        try (BufferedReader reader = RegionReader.open(genePredFile)) {
+            return new BatchGeneManager(GenePredReader.read(reader), genome);
+        }
+    }
+
+    /**
+     *
+     * @return names of the chromosomes with at least one gene
+     */
+    public Collection<String> getChromosomes() {
+        return genesByChromosome.keySet();
+    }
+
+    /**
+     * Genes overlapping a region.
+     *
+     * @param region
+     * @return
+     */
+    public List<MIGene> getByRegion(GenomicRegion region) {
+        GeneIntervalIndex<MIGene> index = genesByChromosome.get(region.getChromosome());
+
+        if (index == null) {
+            index = genesByChromosome.get(GenomicRegion.getAlternativeName(region.getChromosome()));
+        }
+
+        if (index == null) {
+            return Collections.emptyList();
+        }
+
+        // a region of length 0 covers the base before it
+        return index.getOverlapping(region.getMin(), Math.max(region.getMin() + 1, region.getMax()));
+    }
+
+    /**
+     *
+     * @param id transcript ID, with or without version, or gene name
+     * @return
+     */
+    public Collection<MIGene> getByID(String id) {
+        return genesById.get(id);
+    }
+
+    /**
+     * Read the coding sequence of the gene and translate it, as
+     * IGBQuickLoadGeneManager does.
+     *
+     * @param gene
+     * @return false if the sequence is not available
+     */
+    public boolean loadTranscriptSequence(MIGene gene) {
+        if (genome == null) {
+            return false;
+        }
+
+        StringBuilder transcriptSeq = new StringBuilder();
+
+        try {
+            for (MIExon exon : gene.getExons()) {
+                // reverse complement if start > end
+                int exonStart = gene.isForward() ? exon.getStart() : exon.getStart() + 1;
+                int exonEnd = gene.isForward() ? exon.getEnd() + 1 : exon.getEnd();
+
+                String exonSeq = genome.getResidues(gene.getChromosomeName(), exonStart, exonEnd);
+
+                if (exonSeq == null) {
+                    logger.warn("Unavailable sequence: {}", gene.getChromosomeName());
+                    return false;
+                }
+
+                transcriptSeq.append(exonSeq);
+                exon.setSequence(exonSeq);
+            }
+        } catch (IOException e) {
+            logger.error("Cannot read the sequence of " + gene.getID(), e);
+            return false;
+        }
+
+        try {
+            DNASequence dnaSeq = new DNASequence(transcriptSeq.toString());
+
+            RNASequence rnaSequence = (RNASequence) dnaTranslator.createSequence(
+                    dnaSeq, Frame.ONE);
+            if (rnaSequence == null) {
+                logger.error("RNA Sequence null, transcription error: {}", gene.getID());
+                return false;
+            }
+
+            ProteinSequence exonProteinSequence = ((ProteinSequence) rnaTranslator
+                    .createSequence(rnaSequence));
+
+            gene.setTranscriptSequence(new TranscriptSequence(exonProteinSequence.getSequenceAsString()));
+        } catch (NullPointerException | CompoundNotFoundException | TranslationException te) {
+            logger.warn("Translation error: {}", gene.getID());
+            return false;
+        }
+
+        return true;
+    }
+
+}
@@ -0,0 +1,187 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.batch;
+
+import it.iit.genomics.cru.structures.bridges.pdb.PDBUtils;
+import java.io.File;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Parameters of a batch run, the equivalent of the MIQuery of the IGB
+ * bundle.
+ */
+public class BatchQuery {
+
+    /**
+     * Where the interactions and structures are searched
+     */
+    public enum StructureSearch {
+
+        /**
+         * Interactome3D repository, structures and models
+         */
+        INTERACTOME3D,
+        /**
+         * Remote PDB server
+         */
+        PDB,
+        /**
+         * Local mirror of the PDB
+         */
+        PDB_LOCAL,
+        /**
+         * PDB structures, interfaces from EPPIC
+         */
+        EPPIC
+    }
+
+    private String label = "batch";
+
+    private String taxid = "9606";
+
+    private String psicquicUrl = null;
+
+    private StructureSearch structureSearch = StructureSearch.PDB;
+
+    private String pdbUrl = PDBUtils.getUrl("PDBe (UK)");
+
+    private String pdbMirrorPath = null;
+
+    private String i3dStructuresDirectory = null;
+
+    private String cachePath = System.getProperty("java.io.tmpdir") + File.separator + "mibatch" + File.separator;
+
+    private int numberOfThreads = Runtime.getRuntime().availableProcessors();
+
+    private boolean intra = false;
+
+    /**
+     * Used to share the AAPositions of the run
+     *
+     * @return
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    public void setLabel(String label) {
+        this.label = label;
+    }
+
+    public String getTaxid() {
+        return taxid;
+    }
+
+    public void setTaxid(String taxid) {
+        this.taxid = taxid;
+    }
+
+    /**
+     *
+     * @return null if PSICQUIC is not queried
+     */
+    public String getPsicquicUrl() {
+        return psicquicUrl;
+    }
+
+    public void setPsicquicUrl(String psicquicUrl) {
+        this.psicquicUrl = psicquicUrl;
+    }
+
+    public StructureSearch getStructureSearch() {
+        return structureSearch;
+    }
+
+    public void setStructureSearch(StructureSearch structureSearch) {
+        this.structureSearch = structureSearch;
+    }
+
+    public boolean searchInteractome3D() {
+        return StructureSearch.INTERACTOME3D.equals(structureSearch);
+    }
+
+    public boolean searchPDB() {
+        return StructureSearch.PDB.equals(structureSearch);
+    }
+
+    public boolean searchPDBLocal() {
+        return StructureSearch.PDB_LOCAL.equals(structureSearch);
+    }
+
+    public boolean searchEPPIC() {
+        return StructureSearch.EPPIC.equals(structureSearch);
+    }
+
+    public String getPdbUrl() {
+        return pdbUrl;
+    }
+
+    public void setPdbUrl(String pdbUrl) {
+        this.pdbUrl = pdbUrl;
+    }
+
+    public String getPdbMirrorPath() {
+        return pdbMirrorPath;
+    }
+
+    public void setPdbMirrorPath(String pdbMirrorPath) {
+        this.pdbMirrorPath = pdbMirrorPath;
+    }
+
+    /**
+     *
+     * @return local Interactome3D repository, null to download it in the
+     * cache
+     */
+    public String getI3DStructuresDirectory() {
+        return i3dStructuresDirectory;
+    }
+
+    public void setI3DStructuresDirectory(String i3dStructuresDirectory) {
+        this.i3dStructuresDirectory = i3dStructuresDirectory;
+    }
+
+    public String getCachePath() {
+        return cachePath;
+    }
+
+    public void setCachePath(String cachePath) {
+        this.cachePath = cachePath;
+    }
+
+    public int getNumberOfThreads() {
+        return numberOfThreads;
+    }
+
+    public void setNumberOfThreads(int numberOfThreads) {
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+    }
+
+    /**
+     *
+     * @return true if only the interactions between selected genes are
+     * reported
+     */
+    public boolean isIntra() {
+        return intra;
+    }
+
+    public void setIntra(boolean intra) {
+        this.intra = intra;
+    }
+
+}
@@ -0,0 +1,124 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.batch;
+
+import it.iit.genomics.cru.structures.bridges.psicquic.Interaction;
+import it.iit.genomics.cru.structures.business.InteractionMapping;
+import it.iit.genomics.cru.structures.business.StructureMapper;
+import it.iit.genomics.cru.structures.model.AAPosition;
+import it.iit.genomics.cru.structures.model.InteractionStructure;
+import it.iit.genomics.cru.structures.model.MIGene;
+import it.iit.genomics.cru.structures.model.MoleculeEntry;
+import it.iit.genomics.cru.structures.sources.StructureSource;
+import java.util.Collection;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Interaction between a selected protein (A) and one of its partners (B),
+ * found by the batch runner. The structures are mapped by the same
+ * InteractionMapping as the MIResult of the IGB bundle, and toTab() returns
+ * the same columns.
+ */
+public class BatchResult {
+
+    private final MoleculeEntry entryA;
+
+    private final MoleculeEntry entryB;
+
+    private final Collection<MIGene> genesA;
+
+    private final Collection<MIGene> genesB;
+
+    private final Interaction interaction;
+
+    private final Collection<InteractionStructure> structuresInteraction;
+
+    private final InteractionMapping mapping;
+
+    private boolean mapped = false;
+
+    /**
+     *
+     * @param entryA selected protein
+     * @param genesA genes of the selected protein
+     * @param queryResiduesA residues of the selected protein covered by the
+     * selected regions
+     * @param entryB partner
+     * @param genesB genes of the partner
+     * @param queryResiduesB residues of the partner covered by the selected
+     * regions, if it was also selected
+     * @param interaction
+     * @param structureSource
+     * @param structureMapper a new mapper for each result
+     * @param structuresInteraction structures of the interaction
+     */
+    public BatchResult(MoleculeEntry entryA, Collection<MIGene> genesA, Collection<AAPosition> queryResiduesA,
+            MoleculeEntry entryB, Collection<MIGene> genesB, Collection<AAPosition> queryResiduesB,
+            Interaction interaction, StructureSource structureSource, StructureMapper structureMapper,
+            Collection<InteractionStructure> structuresInteraction) {
+        this.entryA = entryA;
+        this.genesA = genesA;
+        this.entryB = entryB;
+        this.genesB = genesB;
+        this.interaction = interaction;
+        this.structuresInteraction = structuresInteraction;
+        this.mapping = new InteractionMapping(entryA, queryResiduesA, entryB, queryResiduesB,
+                structureSource, structureMapper, structuresInteraction);
+    }
+
+    public MoleculeEntry getInteractor1() {
+        return entryA;
+    }
+
+    public MoleculeEntry getInteractor2() {
+        return entryB;
+    }
+
+    public Interaction getInteraction() {
+        return interaction;
+    }
+
+    public Collection<InteractionStructure> getStructures() {
+        return structuresInteraction;
+    }
+
+    /**
+     * Search the query residues and the interfaces on the structures of the
+     * interaction. The results are mapped in parallel: the structure source
+     * and the positions shared by the results only lock their own caches.
+     */
+    public synchronized void mapStructures() {
+        if (mapped) {
+            return;
+        }
+
+        mapping.map();
+
+        mapped = true;
+    }
+
+    /**
+     * Same columns as MIResult.toTab(), see InteractionMapping.TAB_HEADER.
+     *
+     * @return
+     */
+    public String toTab() {
+        mapStructures();
+        return mapping.toTab(genesA, genesB);
+    }
+
+}
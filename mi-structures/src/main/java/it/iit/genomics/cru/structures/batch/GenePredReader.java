@@ -0,0 +1,179 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.batch;
+
+import it.iit.genomics.cru.structures.model.MIExon;
+import it.iit.genomics.cru.structures.model.MIGene;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Read the coding transcripts of a UCSC genePred table (e.g. refGene.txt,
+ * with or without the bin column). Genes and exons are built as in
+ * IGBQuickLoadGeneManager, from the coding part of each transcript.
+ */
+public class GenePredReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(GenePredReader.class);
+
+    private GenePredReader() {
+
+    }
+
+    /**
+     * Read the coding transcripts of a genePred table. The columns are name,
+     * chrom, strand, txStart, txEnd, cdsStart, cdsEnd, exonCount, exonStarts,
+     * exonEnds and optionally score and name2 (the gene name), possibly
+     * preceded by the bin column.
+     *
+     * @param reader
+     * @return
+     * @throws IOException
+     */
+    public static List<MIGene> read(BufferedReader reader) throws IOException {
+        ArrayList<MIGene> genes = new ArrayList<>();
+
+        String line;
+        int lineNumber = 0;
+
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] fields = line.split("\t");
+
+            // bin column?
+            int first = fields.length > 3 && isStrand(fields[3]) && false == isStrand(fields[2]) ? 1 : 0;
+
+            if (fields.length < first + 10) {
+                logger.warn("Skip genePred line {}: less than 10 columns", lineNumber);
+                continue;
+            }
+
+            try {
+                MIGene gene = parseGenePred(fields, first);
+                if (gene != null) {
+                    genes.add(gene);
+                }
+            } catch (NumberFormatException e) {
+                logger.warn("Skip genePred line {}: {}", lineNumber, e.getMessage());
+            }
+        }
+
+        return genes;
+    }
+
+    private static boolean isStrand(String field) {
+        return "+".equals(field) || "-".equals(field);
+    }
+
+    /**
+     * genePred positions are 0-based, end exclusive, MIGenes and MIExons are
+     * 0-based inclusive and follow the strand.
+     */
+    private static MIGene parseGenePred(String[] fields, int first) {
+        String id = fields[first];
+        String chromosome = fields[first + 1];
+        boolean forward = "+".equals(fields[first + 2]);
+        int txStart = Integer.parseInt(fields[first + 3]);
+        int txEnd = Integer.parseInt(fields[first + 4]);
+        int cdsStart = Integer.parseInt(fields[first + 5]);
+        int cdsEnd = Integer.parseInt(fields[first + 6]);
+
+        // non coding
+        if (cdsStart >= cdsEnd) {
+            return null;
+        }
+
+        String name = fields.length > first + 11 && false == fields[first + 11].isEmpty() ? fields[first + 11] : id;
+
+        String[] exonStarts = fields[first + 8].split(",");
+        String[] exonEnds = fields[first + 9].split(",");
+
+        MIGene gene = forward
+                ? new MIGene(id, name, chromosome, txStart, txEnd - 1, true)
+                : new MIGene(id, name, chromosome, txEnd - 1, txStart, false);
+
+        // coding part of the exons, in the order of the transcript
+        ArrayList<int[]> exonSpans = new ArrayList<>();
+
+        for (int i = 0; i < Math.min(exonStarts.length, exonEnds.length); i++) {
+            if (exonStarts[i].isEmpty()) {
+                continue;
+            }
+
+            int exonStart = Integer.parseInt(exonStarts[i]);
+            int exonEnd = Integer.parseInt(exonEnds[i]);
+
+            // Skip if non coding
+            if (exonEnd <= cdsStart || exonStart >= cdsEnd) {
+                continue;
+            }
+
+            exonSpans.add(new int[]{Math.max(exonStart, cdsStart), Math.min(exonEnd, cdsEnd)});
+        }
+
+        Collections.sort(exonSpans, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] span1, int[] span2) {
+                return Integer.compare(span1[0], span2[0]);
+            }
+        });
+
+        if (false == forward) {
+            Collections.reverse(exonSpans);
+        }
+
+        int start = 0;
+
+        for (int[] span : exonSpans) {
+            int length = span[1] - span[0];
+
+            MIExon exon = forward ? new MIExon(span[0], span[1] - 1) : new MIExon(span[1] - 1, span[0]);
+
+            // how many bases started the current AA in previous exon
+            exon.setNumberOfOverlappingBases((3 - start % 3) % 3);
+
+            exon.setProteinStart(start / 3 + 1);
+            exon.setProteinEnd((start + length + 2) / 3);
+
+            gene.getExons().add(exon);
+
+            start += length;
+        }
+
+        if (gene.getExons().isEmpty()) {
+            return null;
+        }
+
+        gene.setCodingStart(gene.getExons().get(0).getStart());
+        gene.setCodingEnd(gene.getExons().get(gene.getExons().size() - 1).getEnd());
+
+        return gene;
+    }
+
+}
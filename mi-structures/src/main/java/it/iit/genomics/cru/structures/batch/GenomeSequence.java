@@ -0,0 +1,193 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.batch;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Genome sequence read from a FASTA file indexed with samtools faidx (a .fai
+ * file next to the FASTA file). Only the bases requested are read, the
+ * chromosomes are never loaded in memory.
+ */
+public class GenomeSequence implements Closeable {
+
+    private final RandomAccessFile fasta;
+
+    private final HashMap<String, Entry> entries = new HashMap<>();
+
+    /**
+     * A line of the .fai index
+     */
+    private static class Entry {
+
+        long length;
+
+        long offset;
+
+        int lineBases;
+
+        int lineWidth;
+    }
+
+    /**
+     *
+     * @param fastaFile the index is read from fastaFile.fai
+     * @throws IOException
+     */
+    public GenomeSequence(File fastaFile) throws IOException {
+        File indexFile = new File(fastaFile.getPath() + ".fai");
+
+        if (false == indexFile.exists()) {
+            throw new IOException("Missing FASTA index " + indexFile.getPath() + ", create it with samtools faidx");
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+
+                if (fields.length < 5) {
+                    continue;
+                }
+
+                Entry entry = new Entry();
+                entry.length = Long.parseLong(fields[1]);
+                entry.offset = Long.parseLong(fields[2]);
+                entry.lineBases = Integer.parseInt(fields[3]);
+                entry.lineWidth = Integer.parseInt(fields[4]);
+
+                entries.put(fields[0], entry);
+            }
+        }
+
+        fasta = new RandomAccessFile(fastaFile, "r");
+    }
+
+    /**
+     *
+     * @param chromosome
+     * @return true if the chromosome is in the index, with or without the
+     * "chr" prefix
+     */
+    public boolean hasSequence(String chromosome) {
+        return getEntry(chromosome) != null;
+    }
+
+    private Entry getEntry(String chromosome) {
+        Entry entry = entries.get(chromosome);
+
+        if (entry == null) {
+            entry = entries.get(GenomicRegion.getAlternativeName(chromosome));
+        }
+
+        return entry;
+    }
+
+    /**
+     * Bases of a region, upper case. As in IGB, if start is greater than end
+     * the reverse complement is returned.
+     *
+     * @param chromosome
+     * @param start 0-based
+     * @param end 0-based exclusive (or start if reverse)
+     * @return the bases, or null if the chromosome is not in the genome
+     * @throws IOException
+     */
+    public synchronized String getResidues(String chromosome, int start, int end) throws IOException {
+        Entry entry = getEntry(chromosome);
+
+        if (entry == null) {
+            return null;
+        }
+
+        int min = Math.max(0, Math.min(start, end));
+        int max = (int) Math.min(entry.length, Math.max(start, end));
+
+        if (min >= max) {
+            return "";
+        }
+
+        // position of the first base, the lines end with 1 or 2 characters
+        long first = entry.offset + (min / entry.lineBases) * (long) entry.lineWidth + min % entry.lineBases;
+        long last = entry.offset + ((max - 1) / entry.lineBases) * (long) entry.lineWidth + (max - 1) % entry.lineBases;
+
+        byte[] buffer = new byte[(int) (last - first + 1)];
+        fasta.seek(first);
+        fasta.readFully(buffer);
+
+        char[] bases = new char[max - min];
+        int length = 0;
+
+        for (byte b : buffer) {
+            if (b != '\n' && b != '\r') {
+                bases[length++] = Character.toUpperCase((char) b);
+            }
+        }
+
+        if (start > end) {
+            return reverseComplement(new String(bases, 0, length));
+        }
+
+        return new String(bases, 0, length);
+    }
+
+    /**
+     *
+     * @param sequence upper case bases
+     * @return
+     */
+    public static String reverseComplement(String sequence) {
+        char[] complement = new char[sequence.length()];
+
+        for (int i = 0; i < sequence.length(); i++) {
+            char base;
+            switch (sequence.charAt(sequence.length() - 1 - i)) {
+                case 'A':
+                    base = 'T';
+                    break;
+                case 'T':
+                    base = 'A';
+                    break;
+                case 'C':
+                    base = 'G';
+                    break;
+                case 'G':
+                    base = 'C';
+                    break;
+                default:
+                    base = 'N';
+            }
+            complement[i] = base;
+        }
+
+        return new String(complement);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        fasta.close();
+    }
+
+}
@@ -0,0 +1,111 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.batch;
+
+import it.iit.genomics.cru.structures.model.Range;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * A selected region of the genome, e.g. a BED feature or a VCF variant.
+ * Coordinates are 0-based, end exclusive (as BED features and IGB spans).
+ */
+public class GenomicRegion {
+
+    private final String id;
+
+    private final String chromosome;
+
+    private final int min;
+
+    private final int max;
+
+    /**
+     *
+     * @param id
+     * @param chromosome
+     * @param min 0-based
+     * @param max 0-based exclusive
+     */
+    public GenomicRegion(String id, String chromosome, int min, int max) {
+        this.id = id;
+        this.chromosome = chromosome;
+        this.min = Math.min(min, max);
+        this.max = Math.max(min, max);
+    }
+
+    /**
+     *
+     * @return
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public String getChromosome() {
+        return chromosome;
+    }
+
+    /**
+     *
+     * @return 0-based
+     */
+    public int getMin() {
+        return min;
+    }
+
+    /**
+     *
+     * @return 0-based exclusive
+     */
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * Range used by the AAPositionManager, a region of length 0 (e.g. an
+     * insertion) covers the base before it.
+     *
+     * @return 0-based inclusive range
+     */
+    public Range toRange() {
+        return new Range(min, Math.max(min, max - 1));
+    }
+
+    /**
+     * Gene models and genomes do not always use the same chromosome names,
+     * e.g. "chr1" in UCSC files and "1" in Ensembl files.
+     *
+     * @param chromosome
+     * @return the name with the "chr" prefix removed, or added if missing
+     */
+    public static String getAlternativeName(String chromosome) {
+        if (chromosome.startsWith("chr")) {
+            return chromosome.substring(3);
+        }
+        return "chr" + chromosome;
+    }
+
+    @Override
+    public String toString() {
+        return chromosome + ":" + min + "-" + max;
+    }
+
+}
@@ -0,0 +1,714 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.batch;
+
+import com.google.common.collect.HashMultimap;
+import it.iit.genomics.cru.bridges.interactome3d.local.I3DDownload;
+import it.iit.genomics.cru.bridges.interactome3d.local.Interactome3DLocalRepository;
+import it.iit.genomics.cru.structures.alignment.SequenceAligner;
+import it.iit.genomics.cru.structures.batch.BatchQuery.StructureSearch;
+import it.iit.genomics.cru.structures.bridges.commons.BridgesRemoteAccessException;
+import it.iit.genomics.cru.structures.bridges.eppic.EPPICStructureMapper;
+import it.iit.genomics.cru.structures.bridges.pdb.PDBWSClient;
+import it.iit.genomics.cru.structures.bridges.pdb.model.MoleculeDescription;
+import it.iit.genomics.cru.structures.bridges.pdb.model.Polymer;
+import it.iit.genomics.cru.structures.bridges.pdb.model.StructureID;
+import it.iit.genomics.cru.structures.bridges.psicquic.Interaction;
+import static it.iit.genomics.cru.structures.bridges.psicquic.Interaction.INTERACTION_TYPE_I3D;
+import static it.iit.genomics.cru.structures.bridges.psicquic.Interaction.INTERACTION_TYPE_PDB;
+import it.iit.genomics.cru.structures.bridges.psicquic.InteractionManager;
+import it.iit.genomics.cru.structures.bridges.psicquic.PsicquicUtils;
+import it.iit.genomics.cru.structures.bridges.uniprot.UniprotkbUtils;
+import it.iit.genomics.cru.structures.bridges.userData.UserStructuresManager;
+import it.iit.genomics.cru.structures.business.InteractionMapping;
+import it.iit.genomics.cru.structures.business.Interactome3DUtils;
+import it.iit.genomics.cru.structures.business.PDBUtils;
+import it.iit.genomics.cru.structures.business.ProteinLookupTask;
+import it.iit.genomics.cru.structures.business.StructureMapper;
+import it.iit.genomics.cru.structures.model.AAPosition;
+import it.iit.genomics.cru.structures.model.AAPositionManager;
+import it.iit.genomics.cru.structures.model.InteractionStructure;
+import it.iit.genomics.cru.structures.model.MIGene;
+import it.iit.genomics.cru.structures.model.MoleculeEntry;
+import it.iit.genomics.cru.structures.model.Range;
+import it.iit.genomics.cru.structures.sources.StructureManager;
+import it.iit.genomics.cru.structures.sources.StructureManager.StructureSourceType;
+import it.iit.genomics.cru.structures.sources.StructureSource;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Headless version of the MIWorker of the IGB bundle: the selected regions
+ * (BED or VCF) are mapped to the genes of a genePred table and to their
+ * proteins, the interactions of the proteins are searched, and the selected
+ * residues are mapped to the interfaces of the structures of each
+ * interaction. The output has the same columns as the tab export of the
+ * bundle.
+ *
+ * The remote queries and the structures are processed by a pool of threads,
+ * the shared objects (proteins, interactions, AA positions) are only updated
+ * by the thread calling run().
+ *
+ * Only protein partners are searched: ligands, nucleic acids and
+ * modifications are not reported.
+ */
+public class MIBatchRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(MIBatchRunner.class);
+
+    private final BatchQuery query;
+
+    private final BatchGeneManager geneManager;
+
+    private ExecutorService executor;
+
+    private Interactome3DLocalRepository i3dRepository = null;
+
+    private StructureSource structureSource = null;
+
+    // Uniprot entries, selected and partners
+    private final HashMap<String, MoleculeEntry> entries = new HashMap<>();
+
+    // Genes of each protein
+    private final HashMultimap<String, MIGene> proteinGenes = HashMultimap.create();
+
+    // Associate the genes to the selected regions they overlap
+    private final HashMultimap<MIGene, GenomicRegion> gene2regions = HashMultimap.create();
+
+    // Residues covered by the selected regions, for each protein
+    private final HashMultimap<String, AAPosition> queryResidues = HashMultimap.create();
+
+    /**
+     *
+     * @param query
+     * @param geneManager
+     */
+    public MIBatchRunner(BatchQuery query, BatchGeneManager geneManager) {
+        this.query = query;
+        this.geneManager = geneManager;
+
+        new File(query.getCachePath()).mkdirs();
+        UniprotkbUtils.setCacheDir(query.getCachePath());
+        PDBWSClient.setCacheDir(query.getCachePath());
+    }
+
+    /**
+     * Run the pipeline and write the results, one line per interaction.
+     *
+     * @param regions
+     * @param output
+     * @return number of results
+     * @throws IOException
+     * @throws BridgesRemoteAccessException if Uniprot cannot be accessed
+     * @throws InterruptedException
+     */
+    public int run(Collection<GenomicRegion> regions, Writer output) throws IOException, BridgesRemoteAccessException, InterruptedException {
+        List<BatchResult> results = run(regions);
+
+        output.write(InteractionMapping.TAB_HEADER);
+        for (BatchResult result : results) {
+            output.write("\n" + result.toTab());
+        }
+        output.write("\n");
+        output.flush();
+
+        return results.size();
+    }
+
+    /**
+     * Run the pipeline, the structures of the results are mapped.
+     *
+     * @param regions
+     * @return
+     * @throws BridgesRemoteAccessException if Uniprot cannot be accessed
+     * @throws InterruptedException
+     */
+    public List<BatchResult> run(Collection<GenomicRegion> regions) throws BridgesRemoteAccessException, InterruptedException {
+        executor = Executors.newFixedThreadPool(query.getNumberOfThreads());
+
+        try {
+            long startTime = System.currentTimeMillis();
+            SequenceAligner.Counts alignmentCountsAtStart = SequenceAligner.getInstance().getCounts();
+
+            Collection<String> queryUniprotAcs = mapRegionsToProteins(regions);
+            logger.info("{} regions, {} proteins, {} ms", regions.size(), queryUniprotAcs.size(), System.currentTimeMillis() - startTime);
+
+            HashMap<String, InteractionManager> interactions = getInteractions(queryUniprotAcs);
+            logger.info("Interactions of {} proteins, {} ms", interactions.size(), System.currentTimeMillis() - startTime);
+
+            getPartners(interactions);
+            mapQueryResidues();
+            logger.info("Residues of {} proteins, {} ms", queryResidues.keySet().size(), System.currentTimeMillis() - startTime);
+
+            List<BatchResult> results = getResults(queryUniprotAcs, interactions);
+            logger.info("{} interactions, {} ms", results.size(), System.currentTimeMillis() - startTime);
+            logger.info("Alignments: {}", SequenceAligner.getInstance().getCounts().since(alignmentCountsAtStart));
+
+            return results;
+        } finally {
+            executor.shutdownNow();
+            AAPositionManager.removeManager(query.getLabel());
+        }
+    }
+
+    /**
+     * Get the genes overlapping the regions and their proteins, the Uniprot
+     * queries of each chromosome are sent to the executor.
+     *
+     * @return Uniprot ACs of the selected proteins
+     */
+    private Collection<String> mapRegionsToProteins(Collection<GenomicRegion> regions) throws BridgesRemoteAccessException, InterruptedException {
+        LinkedHashMap<String, HashMultimap<GenomicRegion, MIGene>> chrCandidates = new LinkedHashMap<>();
+
+        for (GenomicRegion region : regions) {
+            if (false == chrCandidates.containsKey(region.getChromosome())) {
+                chrCandidates.put(region.getChromosome(), HashMultimap.<GenomicRegion, MIGene>create());
+            }
+            chrCandidates.get(region.getChromosome()).putAll(region, geneManager.getByRegion(region));
+        }
+
+        ArrayList<ProteinLookupTask> chrLookups = new ArrayList<>();
+        ArrayList<Future<HashMultimap<String, MoleculeEntry>>> chrProteins = new ArrayList<>();
+
+        for (HashMultimap<GenomicRegion, MIGene> candidates : chrCandidates.values()) {
+            ProteinLookupTask lookup = new ProteinLookupTask(query.getTaxid(), candidates.values());
+            chrLookups.add(lookup);
+            chrProteins.add(executor.submit(lookup));
+        }
+
+        LinkedHashSet<String> queryUniprotAcs = new LinkedHashSet<>();
+
+        int i = 0;
+        for (HashMultimap<GenomicRegion, MIGene> candidates : chrCandidates.values()) {
+            HashMultimap<String, MoleculeEntry> proteins = get(chrProteins.get(i));
+
+            // a batch does not go on with some of the proteins missing
+            if (chrLookups.get(i++).hasFailed()) {
+                throw new BridgesRemoteAccessException("Cannot access Uniprot");
+            }
+
+            if (proteins == null) {
+                continue;
+            }
+
+            for (GenomicRegion region : candidates.keySet()) {
+                for (MIGene gene : candidates.get(region)) {
+                    MoleculeEntry protein = gene.getProtein();
+
+                    if (protein == null) {
+                        protein = ProteinLookupTask.getBestProtein(proteins.get(gene.getID()));
+                    }
+
+                    if (protein == null) {
+                        logger.warn("No protein for gene {}", gene.getID());
+                        continue;
+                    }
+
+                    gene2regions.put(gene, region);
+
+                    gene.getUniprotAcs().add(protein.getUniprotAc());
+                    gene.setProtein(protein);
+
+                    if (false == entries.containsKey(protein.getUniprotAc())) {
+                        entries.put(protein.getUniprotAc(), protein);
+                    }
+                    proteinGenes.put(protein.getUniprotAc(), gene);
+                    queryUniprotAcs.add(protein.getUniprotAc());
+                }
+            }
+        }
+
+        return queryUniprotAcs;
+    }
+
+    /**
+     * Search the partners of the selected proteins in PSICQUIC,
+     * Interactome3D and the PDB.
+     *
+     * @return interactions of each selected protein
+     */
+    private HashMap<String, InteractionManager> getInteractions(Collection<String> queryUniprotAcs) throws InterruptedException {
+        // PSICQUIC is queried for several proteins at once
+        HashMap<String, Future<HashMap<String, InteractionManager>>> psicquicLookups = new HashMap<>();
+
+        if (null != query.getPsicquicUrl()) {
+            ArrayList<String> batch = new ArrayList<>();
+
+            for (String ac : queryUniprotAcs) {
+                batch.add(ac);
+
+                if (batch.size() == PsicquicUtils.BATCH_SIZE) {
+                    submitPsicquicLookup(batch, psicquicLookups);
+                    batch = new ArrayList<>();
+                }
+            }
+
+            if (false == batch.isEmpty()) {
+                submitPsicquicLookup(batch, psicquicLookups);
+            }
+        }
+
+        // Partners in the PDB structures of each protein
+        LinkedHashMap<String, Future<PDBWSClient.PDBLookup>> pdbLookups = new LinkedHashMap<>();
+
+        if (query.searchPDB() || query.searchPDBLocal() || query.searchEPPIC()) {
+            for (String ac : queryUniprotAcs) {
+                final Collection<String> pdbs = entries.get(ac).getPdbs();
+
+                if (false == pdbs.isEmpty()) {
+                    pdbLookups.put(ac, executor.submit(new Callable<PDBWSClient.PDBLookup>() {
+                        @Override
+                        public PDBWSClient.PDBLookup call() throws BridgesRemoteAccessException {
+                            return new PDBWSClient().lookup(pdbs, true, false);
+                        }
+                    }));
+                }
+            }
+        }
+
+        if (query.searchInteractome3D()) {
+            i3dRepository = getI3DRepository();
+        }
+
+        HashMap<String, InteractionManager> interactions = new HashMap<>();
+
+        for (String ac : queryUniprotAcs) {
+            InteractionManager interactors = new InteractionManager();
+            interactions.put(ac, interactors);
+
+            if (psicquicLookups.containsKey(ac)) {
+                try {
+                    HashMap<String, InteractionManager> psicquicInteractions = get(psicquicLookups.get(ac));
+                    if (psicquicInteractions != null) {
+                        for (Interaction interaction : psicquicInteractions.get(ac).getInteractions()) {
+                            interactors.merge(interaction);
+                        }
+                    }
+                } catch (BridgesRemoteAccessException e) {
+                    logger.error("Cannot access PSICQUIC server!", e);
+                }
+            }
+
+            if (null != i3dRepository) {
+                for (String interactorAc : i3dRepository.getInteractors(ac)) {
+                    interactors.getOrCreateInteraction(ac, interactorAc).addType(INTERACTION_TYPE_I3D);
+                }
+            }
+
+            if (pdbLookups.containsKey(ac)) {
+                try {
+                    PDBWSClient.PDBLookup pdbLookup = get(pdbLookups.get(ac));
+                    if (pdbLookup != null && pdbLookup.getDescription() != null) {
+                        addPDBInteractors(entries.get(ac), pdbLookup.getDescription(), interactors);
+                    }
+                } catch (BridgesRemoteAccessException e) {
+                    logger.error("Cannot access PDB!", e);
+                }
+            }
+        }
+
+        return interactions;
+    }
+
+    private void submitPsicquicLookup(final List<String> acs,
+            HashMap<String, Future<HashMap<String, InteractionManager>>> psicquicLookups) {
+        Future<HashMap<String, InteractionManager>> future = executor.submit(new Callable<HashMap<String, InteractionManager>>() {
+            @Override
+            public HashMap<String, InteractionManager> call() throws BridgesRemoteAccessException {
+                HashMap<String, InteractionManager> interactions = new HashMap<>();
+
+                for (String ac : acs) {
+                    interactions.put(ac, new InteractionManager());
+                }
+
+                PsicquicUtils.getInstance().getInteractors(query.getPsicquicUrl(), interactions);
+
+                return interactions;
+            }
+        });
+
+        for (String ac : acs) {
+            psicquicLookups.put(ac, future);
+        }
+    }
+
+    /**
+     * Proteins in the same structures, or homodimers
+     */
+    private static void addPDBInteractors(MoleculeEntry entry, MoleculeDescription description, InteractionManager interactors) {
+        for (StructureID structureId : description.getStructureId()) {
+            for (Polymer polymer : structureId.getPolymers()) {
+                if (false == "protein".equals(polymer.getType()) || null == polymer.getMacromolecule()) {
+                    continue;
+                }
+
+                String proteinAc = polymer.getMacromolecule().getAccession().get(0);
+
+                if (false == proteinAc.equals(entry.getUniprotAc())
+                        || polymer.getChains().size() > 1) {
+                    interactors.getOrCreateInteraction(entry.getUniprotAc(), proteinAc)
+                            .addType(INTERACTION_TYPE_PDB);
+                }
+            }
+        }
+    }
+
+    private Interactome3DLocalRepository getI3DRepository() {
+        if (null != query.getI3DStructuresDirectory()) {
+            return UserStructuresManager.getInstance()
+                    .getUserRepository(query.getI3DStructuresDirectory());
+        }
+
+        I3DDownload download = new I3DDownload(query.getCachePath());
+
+        if (false == download.isDatDownloaded(query.getTaxid())) {
+            logger.info("download interactions from Interactome3D");
+            download.downloadDat(query.getTaxid());
+        }
+
+        return UserStructuresManager.getInstance()
+                .getUserRepository(download.getI3DdatPath(query.getTaxid()));
+    }
+
+    /**
+     * Get the Uniprot entries of the partners, and associate the genes of all
+     * the proteins.
+     */
+    private void getPartners(HashMap<String, InteractionManager> interactions) throws BridgesRemoteAccessException {
+        HashSet<String> uniprotAcToSearch = new HashSet<>();
+
+        for (InteractionManager interactors : interactions.values()) {
+            uniprotAcToSearch.addAll(interactors.getInteractors());
+        }
+
+        uniprotAcToSearch.removeAll(entries.keySet());
+
+        // Allow proteins from other species
+        HashMap<String, MoleculeEntry> partners = UniprotkbUtils.getInstance(query.getTaxid())
+                .getUniprotEntriesFromUniprotAccessions(uniprotAcToSearch, false);
+
+        for (MoleculeEntry entry : partners.values()) {
+            if (false == entries.containsKey(entry.getUniprotAc())) {
+                entries.put(entry.getUniprotAc(), entry);
+            }
+        }
+
+        for (MoleculeEntry entry : entries.values()) {
+            HashSet<String> geneIds = new HashSet<>();
+            geneIds.addAll(entry.getGeneNames());
+            geneIds.addAll(entry.getRefseqs());
+            geneIds.addAll(entry.getEnsemblGenes());
+
+            for (String geneId : geneIds) {
+                Collection<MIGene> genes = geneManager.getByID(geneId);
+
+                for (MIGene gene : genes) {
+                    if (null != entry.getVarSpliceAC(gene.getID())) {
+                        gene.getUniprotAcs().add(entry.getUniprotAc());
+                        gene.setProtein(entry);
+                        proteinGenes.put(entry.getUniprotAc(), gene);
+                    }
+                }
+
+                if (false == genes.isEmpty()) {
+                    // we found it
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Map the selected regions to the residues of the proteins. The
+     * transcripts are read and aligned to the proteins by the executor, the
+     * AA positions are shared and computed by this thread.
+     */
+    private void mapQueryResidues() throws InterruptedException {
+        ArrayList<MIGene> genes = new ArrayList<>(gene2regions.keySet());
+        ArrayList<Future<Boolean>> loaded = new ArrayList<>();
+
+        for (final MIGene gene : genes) {
+            loaded.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return geneManager.loadTranscriptSequence(gene) && null != gene.getTranscriptAlignment();
+                }
+            }));
+        }
+
+        AAPositionManager aaPositionManager = AAPositionManager.getAAPositionManager(query.getLabel());
+
+        for (int i = 0; i < genes.size(); i++) {
+            MIGene gene = genes.get(i);
+
+            try {
+                if (false == loaded.get(i).get()) {
+                    logger.warn("No transcript alignment for gene {}", gene.getID());
+                    continue;
+                }
+            } catch (ExecutionException e) {
+                logger.error("Cannot align the transcript of " + gene.getID(), e.getCause());
+                continue;
+            }
+
+            // regions are 0-based exclusive,
+            // ranges are 0-based inclusive
+            ArrayList<Range> ranges = new ArrayList<>();
+            for (GenomicRegion region : gene2regions.get(gene)) {
+                ranges.add(region.toRange());
+            }
+
+            queryResidues.putAll(gene.getProtein().getUniprotAc(), aaPositionManager.getAAPositions(gene, ranges));
+        }
+    }
+
+    /**
+     * Create the results and map their structures with the executor.
+     */
+    private List<BatchResult> getResults(Collection<String> queryUniprotAcs, HashMap<String, InteractionManager> interactions) throws InterruptedException {
+        structureSource = getStructureSource();
+
+        final AAPositionManager aaPositionManager = AAPositionManager.getAAPositionManager(query.getLabel());
+
+        // don't add twice the same interaction
+        HashSet<String> interactionsDone = new HashSet<>();
+
+        ArrayList<Future<BatchResult>> futures = new ArrayList<>();
+
+        for (String queryUniprotAc : queryUniprotAcs) {
+            for (String targetUniprotAc : interactions.get(queryUniprotAc).getInteractors()) {
+
+                // Skip interaction if the type of query is INTRA (i.e. only
+                // interactions between selected genes)
+                if (query.isIntra() && false == queryUniprotAcs.contains(targetUniprotAc)) {
+                    continue;
+                }
+
+                // An interaction may be selected twice, as A-B and B-A,
+                // avoid this.
+                if (interactionsDone.contains(targetUniprotAc + "#" + queryUniprotAc)
+                        || interactionsDone.contains(queryUniprotAc + "#" + targetUniprotAc)) {
+                    continue;
+                }
+                interactionsDone.add(queryUniprotAc + "#" + targetUniprotAc);
+
+                if (false == entries.containsKey(targetUniprotAc)) {
+                    continue;
+                }
+
+                final MoleculeEntry entryA = entries.get(queryUniprotAc);
+                final MoleculeEntry entryB = entries.get(targetUniprotAc);
+                final Interaction interaction = interactions.get(queryUniprotAc).getOrCreateInteraction(queryUniprotAc, targetUniprotAc);
+
+                final ArrayList<MIGene> genesA = new ArrayList<>(proteinGenes.get(queryUniprotAc));
+                final ArrayList<MIGene> genesB = new ArrayList<>(proteinGenes.get(targetUniprotAc));
+                final ArrayList<AAPosition> residuesA = new ArrayList<>(queryResidues.get(queryUniprotAc));
+                final ArrayList<AAPosition> residuesB = new ArrayList<>(queryResidues.get(targetUniprotAc));
+
+                futures.add(executor.submit(new Callable<BatchResult>() {
+                    @Override
+                    public BatchResult call() {
+                        BatchResult result = new BatchResult(entryA, genesA, residuesA,
+                                entryB, genesB, residuesB, interaction,
+                                structureSource, getStructureMapper(aaPositionManager),
+                                getStructures(entryA, entryB));
+                        result.mapStructures();
+                        return result;
+                    }
+                }));
+            }
+        }
+
+        ArrayList<BatchResult> results = new ArrayList<>();
+
+        for (Future<BatchResult> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                logger.error("Cannot map the structures of an interaction", e.getCause());
+            }
+        }
+
+        return results;
+    }
+
+    private StructureSource getStructureSource() {
+        switch (query.getStructureSearch()) {
+            case INTERACTOME3D:
+                return StructureManager.getInstance()
+                        .getStructureSource(StructureSourceType.INTERACTOME3D, null, query.getCachePath());
+            case PDB_LOCAL:
+                return StructureManager.getInstance()
+                        .getStructureSource(StructureSourceType.PDB, query.getPdbMirrorPath(), query.getCachePath());
+            default:
+                return StructureManager.getInstance()
+                        .getStructureSource(StructureSourceType.PDB, query.getPdbUrl(), query.getCachePath());
+        }
+    }
+
+    private StructureMapper getStructureMapper(AAPositionManager aaPositionManager) {
+        if (query.searchEPPIC()) {
+            return new EPPICStructureMapper(structureSource, aaPositionManager,
+                    query.getCachePath() + File.separator + "EPPIC");
+        }
+        return new StructureMapper(structureSource, aaPositionManager);
+    }
+
+    /**
+     * The structure source is not thread safe, it is modified by a single
+     * result at a time.
+     */
+    private Collection<InteractionStructure> getStructures(MoleculeEntry entryA, MoleculeEntry entryB) {
+        synchronized (structureSource) {
+            if (StructureSearch.INTERACTOME3D.equals(query.getStructureSearch())) {
+                return new ArrayList<>(Interactome3DUtils.getStructures(entryA, entryB, i3dRepository, structureSource));
+            }
+            return new ArrayList<>(PDBUtils.getStructures(entryA, entryB, structureSource));
+        }
+    }
+
+    /**
+     * Wait for a task. A task that failed is logged and returns null, unless
+     * it failed to access a remote service.
+     */
+    private static <T> T get(Future<T> future) throws BridgesRemoteAccessException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BridgesRemoteAccessException) {
+                throw (BridgesRemoteAccessException) e.getCause();
+            }
+            logger.error("Task failed", e.getCause());
+            return null;
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: MIBatchRunner -regions <file.bed|file.vcf> -genes <genePred> -genome <genome.fa>"
+                + " [-output <file.tsv>] [-taxid 9606] [-psicquic <url|name>]"
+                + " [-structures PDB|PDB_LOCAL|INTERACTOME3D|EPPIC] [-pdb <url>] [-pdbMirror <path>]"
+                + " [-i3d <directory>] [-cache <directory>] [-threads <n>] [-intra]");
+    }
+
+    /**
+     *
+     * @param args
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        BatchQuery query = new BatchQuery();
+
+        String regionsPath = null;
+        String genesPath = null;
+        String genomePath = null;
+        String outputPath = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-regions":
+                        regionsPath = args[++i];
+                        break;
+                    case "-genes":
+                        genesPath = args[++i];
+                        break;
+                    case "-genome":
+                        genomePath = args[++i];
+                        break;
+                    case "-output":
+                        outputPath = args[++i];
+                        break;
+                    case "-taxid":
+                        query.setTaxid(args[++i]);
+                        break;
+                    case "-psicquic":
+                        String psicquic = args[++i];
+                        query.setPsicquicUrl(PsicquicUtils.isRemoteUrl(psicquic)
+                                ? psicquic : PsicquicUtils.getInstance().getUrl(psicquic));
+                        break;
+                    case "-structures":
+                        query.setStructureSearch(StructureSearch.valueOf(args[++i].toUpperCase()));
+                        break;
+                    case "-pdb":
+                        query.setPdbUrl(args[++i]);
+                        break;
+                    case "-pdbMirror":
+                        query.setPdbMirrorPath(args[++i]);
+                        break;
+                    case "-i3d":
+                        query.setI3DStructuresDirectory(args[++i]);
+                        break;
+                    case "-cache":
+                        query.setCachePath(args[++i]);
+                        break;
+                    case "-threads":
+                        query.setNumberOfThreads(Integer.parseInt(args[++i]));
+                        break;
+                    case "-intra":
+                        query.setIntra(true);
+                        break;
+                    default:
+                        usage();
+                        System.exit(1);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            usage();
+            System.exit(1);
+        }
+
+        if (regionsPath == null || genesPath == null || genomePath == null) {
+            usage();
+            System.exit(1);
+        }
+
+        List<GenomicRegion> regions = RegionReader.read(new File(regionsPath));
+
+        try (GenomeSequence genome = new GenomeSequence(new File(genomePath));
+                Writer output = outputPath == null
+                        ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                        : Files.newBufferedWriter(new File(outputPath).toPath(), StandardCharsets.UTF_8)) {
+
+            BatchGeneManager geneManager = BatchGeneManager.read(new File(genesPath), genome);
+
+            int numResults = new MIBatchRunner(query, geneManager).run(regions, output);
+
+            logger.info("{} interactions written", numResults);
+        }
+    }
+
+}
@@ -0,0 +1,173 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.batch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Read the selected regions from a BED or a VCF file (optionally gzipped),
+ * the format is chosen from the file name.
+ */
+public class RegionReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(RegionReader.class);
+
+    private RegionReader() {
+
+    }
+
+    /**
+     *
+     * @param file BED or VCF file, .gz for gzipped files
+     * @return
+     * @throws IOException
+     */
+    public static List<GenomicRegion> read(File file) throws IOException {
+        String name = file.getName().toLowerCase();
+
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+
+        try (BufferedReader reader = open(file)) {
+            if (name.endsWith(".vcf")) {
+                return readVcf(reader);
+            }
+            return readBed(reader);
+        }
+    }
+
+    /**
+     * Open a text file, gzipped or not.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    static BufferedReader open(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+
+        if (file.getName().toLowerCase().endsWith(".gz")) {
+            input = new GZIPInputStream(input);
+        }
+
+        return new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * BED positions are 0-based, end exclusive. The name of the feature is
+     * used as ID if present.
+     *
+     * @param reader
+     * @return
+     * @throws IOException
+     */
+    public static List<GenomicRegion> readBed(BufferedReader reader) throws IOException {
+        ArrayList<GenomicRegion> regions = new ArrayList<>();
+
+        String line;
+        int lineNumber = 0;
+
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+
+            if (line.isEmpty() || line.startsWith("#") || line.startsWith("track") || line.startsWith("browser")) {
+                continue;
+            }
+
+            String[] fields = line.split("\t");
+
+            if (fields.length < 3) {
+                logger.warn("Skip BED line {}: less than 3 columns", lineNumber);
+                continue;
+            }
+
+            try {
+                int min = Integer.parseInt(fields[1].trim());
+                int max = Integer.parseInt(fields[2].trim());
+
+                String id = fields.length > 3 && false == fields[3].isEmpty()
+                        ? fields[3]
+                        : fields[0] + ":" + min + "-" + max;
+
+                regions.add(new GenomicRegion(id, fields[0], min, max));
+            } catch (NumberFormatException e) {
+                logger.warn("Skip BED line {}: {}", lineNumber, e.getMessage());
+            }
+        }
+
+        return regions;
+    }
+
+    /**
+     * VCF positions are 1-based, a variant covers the bases of its reference
+     * allele. The ID column is used as ID if present.
+     *
+     * @param reader
+     * @return
+     * @throws IOException
+     */
+    public static List<GenomicRegion> readVcf(BufferedReader reader) throws IOException {
+        ArrayList<GenomicRegion> regions = new ArrayList<>();
+
+        String line;
+        int lineNumber = 0;
+
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] fields = line.split("\t");
+
+            if (fields.length < 5) {
+                logger.warn("Skip VCF line {}: less than 5 columns", lineNumber);
+                continue;
+            }
+
+            try {
+                int min = Integer.parseInt(fields[1].trim()) - 1;
+                int max = min + Math.max(1, fields[3].length());
+
+                String id = ".".equals(fields[2]) || fields[2].isEmpty()
+                        ? fields[0] + ":" + fields[1] + ":" + fields[3] + ">" + fields[4]
+                        : fields[2];
+
+                regions.add(new GenomicRegion(id, fields[0], min, max));
+            } catch (NumberFormatException e) {
+                logger.warn("Skip VCF line {}: {}", lineNumber, e.getMessage());
+            }
+        }
+
+        return regions;
+    }
+
+}
@@ -0,0 +1,106 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.bridges.commons;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * Number of requests, failures, retries and average latency of the requests
+ * sent to a host.
+ */
+public class HostMetrics {
+
+    private final String host;
+
+    private long numberOfRequests = 0;
+
+    private long numberOfFailures = 0;
+
+    private long numberOfRetries = 0;
+
+    private long totalLatency = 0;
+
+    /**
+     *
+     * @param host
+     */
+    public HostMetrics(String host) {
+        this.host = host;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public String getHost() {
+        return host;
+    }
+
+    synchronized void recordSuccess(long latency) {
+        numberOfRequests++;
+        totalLatency += latency;
+    }
+
+    synchronized void recordFailure() {
+        numberOfRequests++;
+        numberOfFailures++;
+    }
+
+    synchronized void recordRetry() {
+        numberOfRetries++;
+    }
+
+    /**
+     *
+     * @return number of requests, without the retries
+     */
+    public synchronized long getNumberOfRequests() {
+        return numberOfRequests;
+    }
+
+    /**
+     *
+     * @return number of requests that failed after all the retries
+     */
+    public synchronized long getNumberOfFailures() {
+        return numberOfFailures;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public synchronized long getNumberOfRetries() {
+        return numberOfRetries;
+    }
+
+    /**
+     *
+     * @return average time to get the headers of the successful requests (ms)
+     */
+    public synchronized double getAverageLatency() {
+        long successes = numberOfRequests - numberOfFailures;
+        return successes == 0 ? 0 : (double) totalLatency / successes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return host + ": " + numberOfRequests + " requests, " + numberOfFailures + " failures, "
+                + numberOfRetries + " retries, " + Math.round(getAverageLatency()) + " ms";
+    }
+
+}
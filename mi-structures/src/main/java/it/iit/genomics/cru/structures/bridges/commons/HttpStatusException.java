@@ -0,0 +1,50 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.bridges.commons;
+
+import java.io.IOException;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * The remote server answered with an HTTP error code.
+ */
+public class HttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
+    /**
+     *
+     * @param url
+     * @param statusCode
+     */
+    public HttpStatusException(String url, int statusCode) {
+        super("HTTP error code " + statusCode + ": " + url);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+}
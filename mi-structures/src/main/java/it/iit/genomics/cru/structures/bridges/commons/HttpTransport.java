@@ -0,0 +1,503 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.bridges.commons;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * HTTP access shared by all the bridges (Uniprot, PSICQUIC, PDB, EPPIC).
+ * Connections are pooled and kept alive, responses are compressed when the
+ * server supports it, the number of concurrent requests to each host is
+ * limited, and requests that fail because of the network or of a temporary
+ * server error (429, 5xx) are retried with an exponential backoff.
+ *
+ * The streams returned by get() must be closed: they hold a connection and
+ * one of the requests allowed for the host.
+ */
+public class HttpTransport {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpTransport.class);
+
+    /**
+     * Default timeout to open a connection (ms)
+     */
+    public final static int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+    /**
+     * Default timeout between two packets (ms)
+     */
+    public final static int DEFAULT_READ_TIMEOUT = 60000;
+
+    /**
+     * Default maximum number of concurrent requests to a host
+     */
+    public final static int DEFAULT_MAX_PER_HOST = 8;
+
+    /**
+     * Default number of retries after the first attempt
+     */
+    public final static int DEFAULT_MAX_RETRIES = 3;
+
+    /**
+     * Default time to wait before the first retry (ms), doubled at each retry
+     */
+    public final static long DEFAULT_BACKOFF = 1000;
+
+    private final static long MAX_BACKOFF = 60000;
+
+    private final static String USER_AGENT = "Mozilla/5.0";
+
+    private static HttpTransport instance;
+
+    private final CloseableHttpClient httpClient;
+
+    private final RequestConfig defaultConfig;
+
+    private final int maxPerHost;
+
+    private final int maxRetries;
+
+    private final long backoff;
+
+    private final ConcurrentHashMap<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, HostMetrics> hostMetrics = new ConcurrentHashMap<>();
+
+    /**
+     *
+     * @param connectTimeout (ms)
+     * @param readTimeout (ms)
+     * @param maxPerHost maximum number of concurrent requests to a host
+     * @param maxRetries number of retries after the first attempt
+     * @param backoff time to wait before the first retry (ms)
+     */
+    public HttpTransport(int connectTimeout, int readTimeout, int maxPerHost, int maxRetries, long backoff) {
+        this.maxPerHost = maxPerHost;
+        this.maxRetries = maxRetries;
+        this.backoff = backoff;
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setDefaultMaxPerRoute(maxPerHost);
+        connectionManager.setMaxTotal(4 * maxPerHost);
+
+        defaultConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .setCircularRedirectsAllowed(true)
+                .build();
+
+        // retries are done here, with a backoff. The client only resends
+        // at once a request sent on a kept-alive connection that the server
+        // had already closed.
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(defaultConfig)
+                .setUserAgent(USER_AGENT)
+                .setRetryHandler(new HttpRequestRetryHandler() {
+                    @Override
+                    public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
+                        return exception instanceof NoHttpResponseException && executionCount <= 1;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     *
+     * @return the transport used by all the bridges
+     */
+    public static synchronized HttpTransport getInstance() {
+        if (instance == null) {
+            instance = new HttpTransport(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT, DEFAULT_MAX_PER_HOST,
+                    DEFAULT_MAX_RETRIES, DEFAULT_BACKOFF);
+        }
+        return instance;
+    }
+
+    /**
+     * Replace the transport used by all the bridges, e.g. to change the
+     * timeouts. The requests in progress are not affected.
+     *
+     * @param transport
+     */
+    public static synchronized void setInstance(HttpTransport transport) {
+        instance = transport;
+    }
+
+    /**
+     *
+     * @param url
+     * @return the body of the response, to be closed
+     * @throws IOException
+     */
+    public InputStream get(String url) throws IOException {
+        return get(url, null, 0, null);
+    }
+
+    /**
+     *
+     * @param url
+     * @param accept value of the Accept header, null for any
+     * @return the body of the response, to be closed
+     * @throws IOException
+     */
+    public InputStream get(String url, String accept) throws IOException {
+        return get(url, accept, 0, null);
+    }
+
+    /**
+     *
+     * @param url
+     * @param accept value of the Accept header, null for any
+     * @param readTimeout (ms), 0 for the default
+     * @param proxy HTTP proxy, null for a direct connection
+     * @return the body of the response, to be closed
+     * @throws IOException
+     */
+    public InputStream get(String url, String accept, int readTimeout, Proxy proxy) throws IOException {
+        RequestConfig config = defaultConfig;
+
+        if (readTimeout > 0 || (proxy != null && proxy.type() == Proxy.Type.HTTP)) {
+            RequestConfig.Builder builder = RequestConfig.copy(defaultConfig);
+            if (readTimeout > 0) {
+                builder.setSocketTimeout(readTimeout);
+            }
+            if (proxy != null && proxy.type() == Proxy.Type.HTTP) {
+                InetSocketAddress address = (InetSocketAddress) proxy.address();
+                builder.setProxy(new HttpHost(address.getHostString(), address.getPort()));
+            }
+            config = builder.build();
+        }
+
+        return execute(url, accept, config);
+    }
+
+    /**
+     *
+     * @param url
+     * @param accept value of the Accept header, null for any
+     * @return the body of the response
+     * @throws IOException
+     */
+    public String getString(String url, String accept) throws IOException {
+        try (InputStream is = get(url, accept)) {
+            return IOUtils.toString(is, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Save the body of the response in a file. The file is written only once
+     * the download is complete.
+     *
+     * @param url
+     * @param file
+     * @throws IOException
+     */
+    public void download(String url, File file) throws IOException {
+        try (InputStream is = get(url)) {
+            save(is, file);
+        }
+    }
+
+    /**
+     * Save a stream in a file. The file is written only once the stream has
+     * been read completely. The stream is not closed.
+     *
+     * @param is
+     * @param file
+     * @throws IOException
+     */
+    public static void save(InputStream is, File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null) {
+            directory.mkdirs();
+        }
+
+        File tmpFile = new File(file.getPath() + ".tmp");
+
+        try {
+            Files.copy(is, tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmpFile.toPath());
+        }
+    }
+
+    /**
+     *
+     * @param url
+     * @return metrics of the host of the URL
+     */
+    public HostMetrics getMetrics(String url) {
+        return getHostMetrics(getHost(url));
+    }
+
+    /**
+     *
+     * @return key: host
+     */
+    public Map<String, HostMetrics> getMetrics() {
+        return new TreeMap<>(hostMetrics);
+    }
+
+    private InputStream execute(String url, String accept, RequestConfig config) throws IOException {
+        String host = getHost(url);
+
+        HostMetrics metrics = getHostMetrics(host);
+        Semaphore permits = getPermits(host);
+
+        // do not wait forever if the streams of the host are not closed
+        int timeout = config.getSocketTimeout() > 0 ? config.getSocketTimeout() : DEFAULT_READ_TIMEOUT;
+
+        // time to wait before the next attempt
+        long delay = 0;
+
+        for (int attempt = 0;; attempt++) {
+            // the permit of the host is not held while waiting to retry
+            if (delay > 0) {
+                sleep(delay);
+            }
+
+            try {
+                if (false == permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                    metrics.recordFailure();
+                    throw new SocketTimeoutException("Timeout while waiting for a connection to " + host);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for " + host);
+            }
+
+            boolean success = false;
+
+            try {
+                HttpGet request = new HttpGet(url);
+                request.setConfig(config);
+                if (accept != null) {
+                    request.addHeader("Accept", accept);
+                }
+
+                long start = System.currentTimeMillis();
+
+                CloseableHttpResponse response;
+                try {
+                    response = httpClient.execute(request);
+                } catch (IOException e) {
+                    if (attempt < maxRetries && isRetryable(e)) {
+                        logger.debug("Retry {} after {}", url, e.toString());
+                        metrics.recordRetry();
+                        delay = getBackoff(attempt, null);
+                        continue;
+                    }
+                    metrics.recordFailure();
+                    throw e;
+                }
+
+                int statusCode = response.getStatusLine().getStatusCode();
+
+                if (statusCode < 300) {
+                    InputStream content;
+                    try {
+                        content = new ResponseInputStream(response, permits);
+                    } catch (IOException e) {
+                        response.close();
+                        metrics.recordFailure();
+                        throw e;
+                    }
+                    metrics.recordSuccess(System.currentTimeMillis() - start);
+                    success = true;
+                    return content;
+                }
+
+                Header retryAfter = response.getFirstHeader("Retry-After");
+                EntityUtils.consumeQuietly(response.getEntity());
+                response.close();
+
+                if (attempt < maxRetries && isRetryable(statusCode)) {
+                    logger.debug("Retry {} after HTTP error code {}", url, statusCode);
+                    metrics.recordRetry();
+                    delay = getBackoff(attempt, retryAfter);
+                    continue;
+                }
+
+                metrics.recordFailure();
+                throw new HttpStatusException(url, statusCode);
+            } finally {
+                if (false == success) {
+                    permits.release();
+                }
+            }
+        }
+    }
+
+    private static boolean isRetryable(int statusCode) {
+        return statusCode == 429 || statusCode == 500 || statusCode == 502 || statusCode == 503
+                || statusCode == 504;
+    }
+
+    private static boolean isRetryable(IOException e) {
+        if (e instanceof UnknownHostException || e instanceof ConnectException) {
+            // the host does not exist or is down
+            return false;
+        }
+        if (e instanceof InterruptedIOException) {
+            // timeouts are interrupted IO exceptions too
+            return e instanceof SocketTimeoutException || e instanceof ConnectTimeoutException;
+        }
+        return true;
+    }
+
+    private long getBackoff(int attempt, Header retryAfter) {
+        long delay = Math.min(MAX_BACKOFF, backoff << Math.min(attempt, 16));
+
+        if (retryAfter != null) {
+            try {
+                delay = Math.max(delay, Math.min(MAX_BACKOFF, 1000 * Long.parseLong(retryAfter.getValue().trim())));
+            } catch (NumberFormatException e) {
+                // HTTP date, ignore it
+            }
+        }
+
+        return delay;
+    }
+
+    private static void sleep(long delay) throws InterruptedIOException {
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    private static String getHost(String url) {
+        URI uri = URI.create(url);
+        if (uri.getHost() == null) {
+            throw new IllegalArgumentException("No host in URL " + url);
+        }
+        return uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+    }
+
+    private Semaphore getPermits(String host) {
+        Semaphore permits = hostPermits.get(host);
+        if (permits == null) {
+            Semaphore newPermits = new Semaphore(maxPerHost, true);
+            permits = hostPermits.putIfAbsent(host, newPermits);
+            if (permits == null) {
+                permits = newPermits;
+            }
+        }
+        return permits;
+    }
+
+    private HostMetrics getHostMetrics(String host) {
+        HostMetrics metrics = hostMetrics.get(host);
+        if (metrics == null) {
+            HostMetrics newMetrics = new HostMetrics(host);
+            metrics = hostMetrics.putIfAbsent(host, newMetrics);
+            if (metrics == null) {
+                metrics = newMetrics;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Body of a response: closing it releases the connection and the request
+     * allowed for the host.
+     */
+    private static class ResponseInputStream extends FilterInputStream {
+
+        private final CloseableHttpResponse response;
+
+        private final Semaphore permits;
+
+        private boolean closed = false;
+
+        ResponseInputStream(CloseableHttpResponse response, Semaphore permits) throws IOException {
+            super(getContent(response));
+            this.response = response;
+            this.permits = permits;
+        }
+
+        private static InputStream getContent(CloseableHttpResponse response) throws IOException {
+            HttpEntity entity = response.getEntity();
+            if (entity == null) {
+                return new ByteArrayInputStream(new byte[0]);
+            }
+            return entity.getContent();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                try {
+                    response.close();
+                } finally {
+                    permits.release();
+                }
+            }
+        }
+    }
+
+}
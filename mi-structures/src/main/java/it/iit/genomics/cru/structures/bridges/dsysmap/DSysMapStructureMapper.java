@@ -22,7 +22,9 @@ import it.iit.genomics.cru.structures.model.MoleculeEntry;
 import it.iit.genomics.cru.structures.business.StructureMapper;
 import it.iit.genomics.cru.structures.model.AAPosition;
 import it.iit.genomics.cru.structures.model.AAPositionManager;
+import it.iit.genomics.cru.structures.model.ChainTable;
 import it.iit.genomics.cru.structures.model.InteractionStructure;
+import it.iit.genomics.cru.structures.model.ResidueSet;
 import it.iit.genomics.cru.structures.sources.StructureSource;
 import java.util.Collection;
 import java.util.HashMap;
@@ -77,7 +79,7 @@ public class DSysMapStructureMapper extends StructureMapper {
         String structureID = miStructure.getStructureID();
 
         // logger.log(Level.INFO, "DSysMap structure ID: {0} {1} {2}", new Object[]{proteinA.getUniprotAc(), proteinB.getUniprotAc(), miStructure.getStructureID()});
-        Collection<String> contacts;
+        ResidueSet contacts = new ResidueSet(ChainTable.getChainTable(structureID));
 
         if (false == proteinB.isProtein()) {
             logger.error("strange: protB is not a protein");
@@ -86,28 +88,20 @@ public class DSysMapStructureMapper extends StructureMapper {
             logger.error("strange: protA is not a protein");
             return;
         } else {
-            contacts = repo.getInterfaceResidues(proteinA.getUniprotAc(), proteinB.getUniprotAc(), miStructure.getStructureID());
+            for (String residue : repo.getInterfaceResidues(proteinA.getUniprotAc(), proteinB.getUniprotAc(), miStructure.getStructureID())) {
+                try {
+                    contacts.add(residue);
+                } catch (IllegalArgumentException e) {
+                    // not a residue of the structure, it cannot match
+                    logger.debug("Skip DSysMap residue: " + residue);
+                }
+            }
         }
         if (contacts.isEmpty()) {
             return;
         }
 
-        for (AAPosition search : residuesA) {
-            for (String pdbResidue : search.getPositions(structureID)) {
-                if (contacts.contains(pdbResidue)) {
-                    interactionStructuresQueryResiduesAtInterfaces.addResidue(
-                            structureID, pdbResidue);
-                    if (MappingType.INTERACTION_PROTEINA.equals(type)) {
-                        interfaceAAPositionsA.add(search);
-                    } else if (MappingType.INTERACTION_PROTEINB.equals(type)) {
-                        interfaceAAPositionsB.add(search);
-                    } else {
-                        logger.error("strange: mapping type = {0}", type);
-                    }
-                    search.addInterfaceStructurePosition(structureID, pdbResidue, proteinB);
-                }
-            }
-        }
+        addInterfaceResidues(type, proteinB, structureID, contacts, residuesA);
 
     }
 }
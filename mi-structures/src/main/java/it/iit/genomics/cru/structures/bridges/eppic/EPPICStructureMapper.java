@@ -18,23 +18,18 @@ package it.iit.genomics.cru.structures.bridges.eppic;
 import it.iit.genomics.cru.bridges.dsysmap.model.DSysMapResult;
 import it.iit.genomics.cru.structures.bridges.eppic.client.EppicJaxbClient;
 
-import it.iit.genomics.cru.structures.bridges.eppic.model.EppicAnalysis;
-import it.iit.genomics.cru.structures.bridges.eppic.model.EppicAnalysisList;
-import it.iit.genomics.cru.structures.bridges.eppic.model.Interface;
-import static it.iit.genomics.cru.structures.bridges.eppic.model.Interface.EPPIC_CLASSIFICATION_BIO;
-import it.iit.genomics.cru.structures.bridges.eppic.model.InterfaceCluster;
-import it.iit.genomics.cru.structures.bridges.eppic.model.Residue;
 import it.iit.genomics.cru.structures.model.MoleculeEntry;
 import it.iit.genomics.cru.structures.business.StructureMapper;
 import it.iit.genomics.cru.structures.model.AAPosition;
 import it.iit.genomics.cru.structures.model.AAPositionManager;
 import it.iit.genomics.cru.structures.model.ChainMapping;
+import it.iit.genomics.cru.structures.model.ChainTable;
 import it.iit.genomics.cru.structures.model.InteractionStructure;
+import it.iit.genomics.cru.structures.model.ResidueSet;
 import it.iit.genomics.cru.structures.sources.StructureSource;
 import java.io.File;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 
 import javax.swing.JOptionPane;
 import org.slf4j.Logger;
@@ -96,7 +91,7 @@ public class EPPICStructureMapper extends StructureMapper {
         // Get residues at interface
         String structureID = miStructure.getStructureID();
 
-        Collection<String> contacts = new HashSet<>();
+        ResidueSet contacts = new ResidueSet(ChainTable.getChainTable(structureID));
 
         if (false == proteinB.isProtein()) {
             logger.error("strange: protB is not a protein");
@@ -105,52 +100,45 @@ public class EPPICStructureMapper extends StructureMapper {
             logger.error("strange: protA is not a protein");
             return;
         } else {
-            EppicAnalysisList list = wsClient.retrievePDB(structureID);
-
-            for (EppicAnalysis analysis : list.getEppicAnalysis()) {
-                for (InterfaceCluster cluster : analysis.getInterfaceClusters()) {
-
-                    for (Interface eppicInterface : cluster.getInterfaces()) {
-
-                        if (eppicInterface.getChain1().equals(eppicInterface.getChain2())) {
-                            continue;
-                        }
-
-                        boolean hasProteinA = false;
-                        boolean hasProteinB = false;
-
-                        for (ChainMapping chain : proteinA.getChains(miStructure.getStructureID())) {
-                            if (chain.getChain().equals(eppicInterface.getChain1())) {
-                                hasProteinA = true;
-                            }
-                            if (chain.getChain().equals(eppicInterface.getChain2())) {
-                                hasProteinB = true;
-                            }
-                        }
-
-                        for (ChainMapping chain : proteinB.getChains(miStructure.getStructureID())) {
-                            if (chain.getChain().equals(eppicInterface.getChain1())) {
-                                hasProteinA = true;
-                            }
-                            if (chain.getChain().equals(eppicInterface.getChain2())) {
-                                hasProteinB = true;
-                            }
-                        }
-
-                        if (false == hasProteinA || false == hasProteinB) {
-                            continue;
-                        }
-
-                        if (EPPIC_CLASSIFICATION_BIO.equals(eppicInterface.getEppicClassification())) {
-                            for (Residue residue : eppicInterface.getResidues()) {
-                                if (residue.isCoreEvolutionaryGeometry()) {
-                                    String chain = residue.getSide() == 1 ? eppicInterface.getChain1() : eppicInterface.getChain2();
-                                    contacts.add(residue.getPdbResidueNumber() + ":" + chain);
-                                }
-                            }
-                        }
+            EppicInterfaceTable interfaces = wsClient.getInterfaceTable(structureID);
+
+            for (int i = 0; i < interfaces.size(); i++) {
+
+                String chain1 = interfaces.getChain1(i);
+                String chain2 = interfaces.getChain2(i);
+
+                if (chain1.equals(chain2)) {
+                    continue;
+                }
+
+                boolean hasProteinA = false;
+                boolean hasProteinB = false;
+
+                for (ChainMapping chain : proteinA.getChains(miStructure.getStructureID())) {
+                    if (chain.getChain().equals(chain1)) {
+                        hasProteinA = true;
+                    }
+                    if (chain.getChain().equals(chain2)) {
+                        hasProteinB = true;
                     }
                 }
+
+                for (ChainMapping chain : proteinB.getChains(miStructure.getStructureID())) {
+                    if (chain.getChain().equals(chain1)) {
+                        hasProteinA = true;
+                    }
+                    if (chain.getChain().equals(chain2)) {
+                        hasProteinB = true;
+                    }
+                }
+
+                if (false == hasProteinA || false == hasProteinB) {
+                    continue;
+                }
+
+                if (interfaces.isBio(i)) {
+                    interfaces.addCoreResidues(i, contacts);
+                }
             }
 
         }
@@ -158,22 +146,7 @@ public class EPPICStructureMapper extends StructureMapper {
             return;
         }
 
-        for (AAPosition search : residuesA) {
-            for (String pdbResidue : search.getPositions(structureID)) {
-                if (contacts.contains(pdbResidue)) {
-                    interactionStructuresQueryResiduesAtInterfaces.addResidue(
-                            structureID, pdbResidue);
-                    if (MappingType.INTERACTION_PROTEINA.equals(type)) {
-                        interfaceAAPositionsA.add(search);
-                    } else if (MappingType.INTERACTION_PROTEINB.equals(type)) {
-                        interfaceAAPositionsB.add(search);
-                    } else {
-                        logger.error("strange: mapping type = {0}", type);
-                    }
-                    search.addInterfaceStructurePosition(structureID, pdbResidue, proteinB);
-                }
-            }
-        }
+        addInterfaceResidues(type, proteinB, structureID, contacts, residuesA);
 
     }
 }
@@ -0,0 +1,323 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.bridges.eppic;
+
+import it.iit.genomics.cru.structures.bridges.eppic.model.EppicAnalysis;
+import it.iit.genomics.cru.structures.bridges.eppic.model.EppicAnalysisList;
+import it.iit.genomics.cru.structures.bridges.eppic.model.Interface;
+import it.iit.genomics.cru.structures.bridges.eppic.model.InterfaceCluster;
+import it.iit.genomics.cru.structures.bridges.eppic.model.Residue;
+import it.iit.genomics.cru.structures.model.ResidueSet;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * Interfaces of a structure computed by EPPIC, reduced to what the structure
+ * mapper needs: the pair of chains, the EPPIC call and the residues in the
+ * core of the interface. The residues of all interfaces are stored in a single
+ * array, interface i uses the positions residueStart[i] to
+ * residueStart[i + 1].
+ */
+public class EppicInterfaceTable {
+
+    /**
+     * Version of the file format
+     */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x4D494550;
+
+    /**
+     * No call by EPPIC
+     */
+    public static final byte CALL_NONE = 0;
+
+    /**
+     * Biological interface
+     */
+    public static final byte CALL_BIO = 1;
+
+    /**
+     * Crystal contact
+     */
+    public static final byte CALL_XTAL = 2;
+
+    private static final String EPPIC_CLASSIFICATION_XTAL = "xtal";
+
+    private final String[] chains1;
+
+    private final String[] chains2;
+
+    private final byte[] calls;
+
+    private final int[] residueStart;
+
+    private final int[] residueNumbers;
+
+    private final byte[] residueSides;
+
+    private EppicInterfaceTable(String[] chains1, String[] chains2, byte[] calls,
+            int[] residueStart, int[] residueNumbers, byte[] residueSides) {
+        this.chains1 = chains1;
+        this.chains2 = chains2;
+        this.calls = calls;
+        this.residueStart = residueStart;
+        this.residueNumbers = residueNumbers;
+        this.residueSides = residueSides;
+    }
+
+    /**
+     * Table without interfaces
+     *
+     * @return
+     */
+    public static EppicInterfaceTable empty() {
+        return new EppicInterfaceTable(new String[0], new String[0], new byte[0],
+                new int[1], new int[0], new byte[0]);
+    }
+
+    /**
+     * Keep the interfaces of all the analyses and the residues in the core of
+     * the interfaces (evolutionary and geometry).
+     *
+     * @param analysisList
+     * @return
+     */
+    public static EppicInterfaceTable create(EppicAnalysisList analysisList) {
+        ArrayList<Interface> interfaces = new ArrayList<>();
+
+        for (EppicAnalysis analysis : analysisList.getEppicAnalysis()) {
+            for (InterfaceCluster cluster : analysis.getInterfaceClusters()) {
+                interfaces.addAll(cluster.getInterfaces());
+            }
+        }
+
+        int numInterfaces = interfaces.size();
+
+        String[] chains1 = new String[numInterfaces];
+        String[] chains2 = new String[numInterfaces];
+        byte[] calls = new byte[numInterfaces];
+        int[] residueStart = new int[numInterfaces + 1];
+
+        int[] residueNumbers = new int[16];
+        byte[] residueSides = new byte[16];
+        int numResidues = 0;
+
+        for (int i = 0; i < numInterfaces; i++) {
+            Interface eppicInterface = interfaces.get(i);
+
+            chains1[i] = eppicInterface.getChain1() == null ? "" : eppicInterface.getChain1();
+            chains2[i] = eppicInterface.getChain2() == null ? "" : eppicInterface.getChain2();
+
+            String classification = eppicInterface.getEppicClassification();
+            if (Interface.EPPIC_CLASSIFICATION_BIO.equals(classification)) {
+                calls[i] = CALL_BIO;
+            } else if (EPPIC_CLASSIFICATION_XTAL.equals(classification)) {
+                calls[i] = CALL_XTAL;
+            } else {
+                calls[i] = CALL_NONE;
+            }
+
+            residueStart[i] = numResidues;
+
+            for (Residue residue : eppicInterface.getResidues()) {
+                if (false == residue.isCoreEvolutionaryGeometry()) {
+                    continue;
+                }
+                if (numResidues == residueNumbers.length) {
+                    residueNumbers = Arrays.copyOf(residueNumbers, numResidues * 2);
+                    residueSides = Arrays.copyOf(residueSides, numResidues * 2);
+                }
+                residueNumbers[numResidues] = residue.getPdbResidueNumber();
+                residueSides[numResidues] = (byte) residue.getSide();
+                numResidues++;
+            }
+        }
+
+        residueStart[numInterfaces] = numResidues;
+
+        return new EppicInterfaceTable(chains1, chains2, calls, residueStart,
+                Arrays.copyOf(residueNumbers, numResidues), Arrays.copyOf(residueSides, numResidues));
+    }
+
+    /**
+     *
+     * @return number of interfaces
+     */
+    public int size() {
+        return calls.length;
+    }
+
+    /**
+     *
+     * @param i
+     * @return
+     */
+    public String getChain1(int i) {
+        return chains1[i];
+    }
+
+    /**
+     *
+     * @param i
+     * @return
+     */
+    public String getChain2(int i) {
+        return chains2[i];
+    }
+
+    /**
+     *
+     * @param i
+     * @return CALL_BIO, CALL_XTAL or CALL_NONE
+     */
+    public byte getCall(int i) {
+        return calls[i];
+    }
+
+    /**
+     *
+     * @param i
+     * @return
+     */
+    public boolean isBio(int i) {
+        return calls[i] == CALL_BIO;
+    }
+
+    /**
+     * Residues in the core of an interface.
+     *
+     * @param i
+     * @return residues, format pos:Chain
+     */
+    public List<String> getCoreResidues(int i) {
+        ArrayList<String> residues = new ArrayList<>(residueStart[i + 1] - residueStart[i]);
+        for (int j = residueStart[i]; j < residueStart[i + 1]; j++) {
+            String chain = residueSides[j] == 1 ? chains1[i] : chains2[i];
+            residues.add(residueNumbers[j] + ":" + chain);
+        }
+        return residues;
+    }
+
+    /**
+     * Add the core residues of interface i to a residue set, without building
+     * the residue strings.
+     *
+     * @param i
+     * @param residues
+     */
+    public void addCoreResidues(int i, ResidueSet residues) {
+        for (int j = residueStart[i]; j < residueStart[i + 1]; j++) {
+            residues.add(residueNumbers[j], residueSides[j] == 1 ? chains1[i] : chains2[i]);
+        }
+    }
+
+    /**
+     * Write the table, through a temporary file.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+
+                out.writeInt(calls.length);
+                for (int i = 0; i < calls.length; i++) {
+                    out.writeUTF(chains1[i]);
+                    out.writeUTF(chains2[i]);
+                    out.writeByte(calls[i]);
+                    out.writeInt(residueStart[i + 1]);
+                }
+
+                for (int i = 0; i < residueNumbers.length; i++) {
+                    out.writeInt(residueNumbers[i]);
+                    out.writeByte(residueSides[i]);
+                }
+            }
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            if (tmpFile.exists()) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    /**
+     *
+     * @param file
+     * @return the table, or null if the file does not exist
+     * @throws IOException if the file is not a table of this version
+     */
+    public static EppicInterfaceTable read(File file) throws IOException {
+        if (false == file.exists()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unexpected EPPIC table version: " + file);
+            }
+
+            int numInterfaces = in.readInt();
+
+            String[] chains1 = new String[numInterfaces];
+            String[] chains2 = new String[numInterfaces];
+            byte[] calls = new byte[numInterfaces];
+            int[] residueStart = new int[numInterfaces + 1];
+
+            for (int i = 0; i < numInterfaces; i++) {
+                chains1[i] = in.readUTF();
+                chains2[i] = in.readUTF();
+                calls[i] = in.readByte();
+                residueStart[i + 1] = in.readInt();
+                if (residueStart[i + 1] < residueStart[i]) {
+                    throw new IOException("Invalid EPPIC table: " + file);
+                }
+            }
+
+            int numResidues = residueStart[numInterfaces];
+            int[] residueNumbers = new int[numResidues];
+            byte[] residueSides = new byte[numResidues];
+
+            for (int i = 0; i < numResidues; i++) {
+                residueNumbers[i] = in.readInt();
+                residueSides[i] = in.readByte();
+            }
+
+            return new EppicInterfaceTable(chains1, chains2, calls, residueStart, residueNumbers, residueSides);
+        }
+    }
+
+}
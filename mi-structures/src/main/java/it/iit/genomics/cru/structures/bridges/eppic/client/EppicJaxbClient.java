@@ -15,18 +15,20 @@
  */
 package it.iit.genomics.cru.structures.bridges.eppic.client;
 
+import it.iit.genomics.cru.structures.bridges.commons.HttpTransport;
+import it.iit.genomics.cru.structures.bridges.eppic.EppicInterfaceTable;
 import it.iit.genomics.cru.structures.bridges.eppic.model.EppicAnalysisList;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
-import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,6 +45,27 @@ public class EppicJaxbClient {
      */
     public final static String eppicUrl = "http://www.eppic-web.org/ewui/ewui/dataDownload?type=xml&id=";
 
+    /**
+     * Maximum number of interface tables kept in memory
+     */
+    public final static int MAX_CACHED_TABLES = 1000;
+
+    private static final String TABLE_EXTENSION = ".interfaces-v" + EppicInterfaceTable.VERSION;
+
+    private static JAXBContext jaxbContext = null;
+
+    /**
+     * key: local path + PDB ID, least recently used first
+     */
+    private static final LinkedHashMap<String, EppicInterfaceTable> tables = new LinkedHashMap<String, EppicInterfaceTable>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, EppicInterfaceTable> eldest) {
+            return size() > MAX_CACHED_TABLES;
+        }
+    };
+
     private final String localPath;
 
     /**
@@ -67,8 +90,7 @@ public class EppicJaxbClient {
             File file = new File(localName);
             if (false == file.exists()) {
                 // Download it
-                URL url = new URL(eppicUrl + pdbId);
-                FileUtils.copyURLToFile(url, file);
+                HttpTransport.getInstance().download(eppicUrl + pdbId, file);
             }
 
             return getPdbInterfaces(localName);
@@ -80,15 +102,73 @@ public class EppicJaxbClient {
 
     }
 
-    private EppicAnalysisList getPdbInterfaces(String fileName) {
+    /**
+     * Interfaces of a structure. The table is built once from the EPPIC
+     * analysis, then kept in memory and next to the XML file.
+     *
+     * @param pdbId
+     * @return the interfaces, empty if the EPPIC analysis is not available
+     */
+    public EppicInterfaceTable getInterfaceTable(String pdbId) {
+        String key = localPath + pdbId;
+
+        synchronized (tables) {
+            EppicInterfaceTable table = tables.get(key);
+            if (table != null) {
+                return table;
+            }
+        }
+
+        File tableFile = new File(key + TABLE_EXTENSION);
+
+        EppicInterfaceTable table = null;
+
         try {
+            table = EppicInterfaceTable.read(tableFile);
+        } catch (IOException e) {
+            logger.warn("Cannot read EPPIC interfaces " + tableFile, e);
+        }
+
+        if (table == null) {
+            EppicAnalysisList list = retrievePDB(pdbId);
+
+            // A missing or empty list may be a failed download: it is
+            // neither stored nor kept in memory, try again next time
+            if (list == null || list.getEppicAnalysis().isEmpty()) {
+                return EppicInterfaceTable.empty();
+            }
+
+            table = EppicInterfaceTable.create(list);
+
+            try {
+                table.write(tableFile);
+            } catch (IOException e) {
+                logger.warn("Cannot store EPPIC interfaces " + tableFile, e);
+            }
+        }
+
+        synchronized (tables) {
+            tables.put(key, table);
+        }
+
+        return table;
+    }
+
+    private static synchronized JAXBContext getJaxbContext() throws JAXBException {
+        if (jaxbContext == null) {
+            jaxbContext = JAXBContext.newInstance(EppicAnalysisList.class);
+        }
+        return jaxbContext;
+    }
+
+    private EppicAnalysisList getPdbInterfaces(String fileName) {
+        try (FileReader reader = new FileReader(fileName)) {
 
             XMLInputFactory xmlif = XMLInputFactory.newInstance();
-            XMLStreamReader xmler = xmlif.createXMLStreamReader(new FileReader(fileName));
+            XMLStreamReader xmler = xmlif.createXMLStreamReader(reader);
 
-            JAXBContext jaxbContext = JAXBContext.newInstance(
-                    EppicAnalysisList.class);
-            Unmarshaller jaxbUnmarshaller = jaxbContext.createUnmarshaller();
+            // The context is thread safe, not the unmarshaller
+            Unmarshaller jaxbUnmarshaller = getJaxbContext().createUnmarshaller();
 
             EppicAnalysisList result;
             result = (EppicAnalysisList) jaxbUnmarshaller
@@ -15,6 +15,7 @@
  */
 package it.iit.genomics.cru.structures.bridges.eppic.client;
 
+import it.iit.genomics.cru.structures.bridges.commons.HttpTransport;
 import it.iit.genomics.cru.structures.bridges.eppic.model.EppicAnalysis;
 import it.iit.genomics.cru.structures.bridges.eppic.model.EppicAnalysisList;
 import it.iit.genomics.cru.structures.bridges.eppic.model.Interface;
@@ -25,12 +26,10 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import org.apache.commons.io.FileUtils;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -81,9 +80,7 @@ public class EppicWSClient {
             File file = new File(localName);
             if (false == file.exists()) {
                 // Download it
-                URL url = new URL(eppicUrl + pdbId);
-
-                FileUtils.copyURLToFile(url, file);
+                HttpTransport.getInstance().download(eppicUrl + pdbId, file);
 
             }
 
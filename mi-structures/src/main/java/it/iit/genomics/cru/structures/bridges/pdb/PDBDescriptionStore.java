@@ -0,0 +1,219 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.bridges.pdb;
+
+import it.iit.genomics.cru.structures.bridges.pdb.model.Ligand;
+import it.iit.genomics.cru.structures.bridges.pdb.model.StructureID;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * Descriptions and ligands of PDB entries stored on disk, so that the same
+ * entry is never requested twice to the PDB web services. There is one file
+ * per PDB ID and per kind of information. PDB IDs without description are
+ * stored too, with a null description.
+ */
+public class PDBDescriptionStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(PDBDescriptionStore.class);
+
+    /**
+     * Version of the format, change it if the model classes change.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Default time to live of the files: 30 days
+     */
+    public static final long DEFAULT_TTL = TimeUnit.DAYS.toMillis(30);
+
+    private static final String DESCRIPTION_EXTENSION = ".description";
+
+    private static final String LIGANDS_EXTENSION = ".ligands";
+
+    private final File directory;
+
+    private final long ttl;
+
+    /**
+     * Value stored for a PDB ID, to distinguish a known missing description
+     * from a PDB ID not in the store.
+     */
+    public static class Stored<T> {
+
+        private final T value;
+
+        Stored(T value) {
+            this.value = value;
+        }
+
+        /**
+         *
+         * @return
+         */
+        public T getValue() {
+            return value;
+        }
+    }
+
+    /**
+     *
+     * @param cacheDir
+     */
+    public PDBDescriptionStore(String cacheDir) {
+        this(cacheDir, DEFAULT_TTL);
+    }
+
+    /**
+     *
+     * @param cacheDir
+     * @param ttl time to live of the files (ms)
+     */
+    public PDBDescriptionStore(String cacheDir, long ttl) {
+        this.directory = new File(cacheDir, "pdb-ws-v" + VERSION);
+        this.ttl = ttl;
+    }
+
+    /**
+     *
+     * @param pdbId
+     * @return null if the PDB ID is not in the store
+     */
+    public Stored<StructureID> getDescription(String pdbId) {
+        Object value = read(getFile(pdbId, DESCRIPTION_EXTENSION));
+        if (value == null) {
+            return null;
+        }
+        return new Stored<>(value instanceof StructureID ? (StructureID) value : null);
+    }
+
+    /**
+     *
+     * @param pdbId
+     * @param description null if the PDB does not describe the ID
+     */
+    public void putDescription(String pdbId, StructureID description) {
+        write(getFile(pdbId, DESCRIPTION_EXTENSION), description == null ? new Missing() : description);
+    }
+
+    /**
+     *
+     * @param pdbId
+     * @return null if the PDB ID is not in the store
+     */
+    @SuppressWarnings("unchecked")
+    public ArrayList<Ligand> getLigands(String pdbId) {
+        Object value = read(getFile(pdbId, LIGANDS_EXTENSION));
+        if (value instanceof ArrayList) {
+            return (ArrayList<Ligand>) value;
+        }
+        return null;
+    }
+
+    /**
+     *
+     * @param pdbId
+     * @param ligands
+     */
+    public void putLigands(String pdbId, ArrayList<Ligand> ligands) {
+        write(getFile(pdbId, LIGANDS_EXTENSION), ligands);
+    }
+
+    private File getFile(String pdbId, String extension) {
+        return new File(directory, pdbId.toUpperCase() + extension);
+    }
+
+    private Object read(File file) {
+        if (false == file.exists() || System.currentTimeMillis() - file.lastModified() > ttl) {
+            return null;
+        }
+
+        try (ObjectInputStream in = new ModelInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            logger.warn("Cannot read stored PDB description " + file, e);
+            return null;
+        }
+    }
+
+    private void write(File file, Serializable value) {
+        if (false == directory.exists() && false == directory.mkdirs()) {
+            logger.warn("Cannot create directory " + directory);
+            return;
+        }
+
+        File tmpFile = new File(file.getPath() + ".tmp" + Thread.currentThread().getId());
+
+        try {
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                out.writeObject(value);
+            }
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Cannot store PDB description " + file, e);
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Marker of a PDB ID without description
+     */
+    private static class Missing implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Resolve the classes with the class loader of the model, the default one
+     * may not see them when running as a bundle.
+     */
+    private static class ModelInputStream extends ObjectInputStream {
+
+        ModelInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return Class.forName(desc.getName(), false, StructureID.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+
+}
@@ -17,12 +17,11 @@ package it.iit.genomics.cru.structures.bridges.pdb;
 
 import it.iit.genomics.cru.structures.bridges.pdb.model.MoleculeDescription;
 
+import it.iit.genomics.cru.structures.bridges.commons.HttpTransport;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.StringReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
 
 
 import javax.xml.bind.JAXBContext;
@@ -50,19 +49,10 @@ public class PDBJaxbClient {
      * @return
      */
     public MoleculeDescription getDescription(String pdbId) {
-        try {
-            URL url = new URL(pdbUrl + "/describeMol?structureId=" + pdbId);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("Accept", "application/xml");
-
-            if (conn.getResponseCode() != 200) {
-                throw new RuntimeException("Failed : HTTP error code : "
-                        + conn.getResponseCode());
-            }
+        String url = pdbUrl + "/describeMol?structureId=" + pdbId;
 
-            BufferedReader br = new BufferedReader(new InputStreamReader(
-                    (conn.getInputStream())));
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                HttpTransport.getInstance().get(url, "application/xml"), "UTF-8"))) {
 
             br.readLine();
 
@@ -72,8 +62,6 @@ public class PDBJaxbClient {
                 xml = xml + apiOutput;
             }
 
-            conn.disconnect();
-
             JAXBContext jaxbContext = JAXBContext
                     .newInstance(it.iit.genomics.cru.structures.bridges.pdb.model.MoleculeDescription.class);
             Unmarshaller jaxbUnmarshaller = jaxbContext.createUnmarshaller();
@@ -16,6 +16,8 @@
 package it.iit.genomics.cru.structures.bridges.pdb;
 
 import it.iit.genomics.cru.structures.bridges.commons.BridgesRemoteAccessException;
+import it.iit.genomics.cru.structures.bridges.commons.HttpStatusException;
+import it.iit.genomics.cru.structures.bridges.commons.HttpTransport;
 import it.iit.genomics.cru.structures.bridges.pdb.model.Chain;
 import it.iit.genomics.cru.structures.bridges.pdb.model.Ligand;
 import it.iit.genomics.cru.structures.bridges.pdb.model.MacroMolecule;
@@ -27,28 +29,37 @@ import it.iit.genomics.cru.structures.bridges.pdb.model.Taxonomy;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.DOMException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 /**
  *
  * @author Arnaud Ceol
+ *
+ * Client of the PDB REST services describeMol and ligandInfo. The PDB IDs are
+ * sent in batches, concurrently, and the answers are parsed while they are
+ * read. The description and the ligands of each PDB ID are stored on disk if
+ * a cache directory is set.
  */
 public class PDBWSClient {
 
@@ -60,183 +71,441 @@ public class PDBWSClient {
     static final Logger logger = LoggerFactory.getLogger(PDBWSClient.class);
 
     /**
-     *
-     * @param pdbIds
-     * @return
-     * @throws BridgesRemoteAccessException
+     * Maximum number of PDB IDs sent in a single request
      */
-    public MoleculeDescription getDescription(Collection<String> pdbIds) throws BridgesRemoteAccessException {
-        try {
-            URL url = new URL(pdbUrl + "/describeMol?structureId="
-                    + StringUtils.join(pdbIds, ","));
+    public final static int MAX_BATCH_SIZE = 40;
 
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("Accept", "application/xml");
+    /**
+     * Below this size, the PDB IDs are not split between several requests
+     */
+    private final static int MIN_BATCH_SIZE = 5;
 
-            if (conn.getResponseCode() != 200) {
-                throw new BridgesRemoteAccessException("Failed : HTTP error code : "
-                        + conn.getResponseCode());
-            }
+    /**
+     * Increase of the batch size after each successful request of the current
+     * batch size, until it is back to MAX_BATCH_SIZE
+     */
+    private final static int BATCH_SIZE_INCREMENT = 5;
+
+    /**
+     * Maximum number of concurrent requests
+     */
+    private final static int PDB_THREADS = 4;
 
-            MoleculeDescription result = parseMoleculeDescription(conn
-                    .getInputStream());
+    /**
+     * Current maximum batch size, reduced if the PDB rejects a request as too
+     * large, and increased again by the requests that succeed
+     */
+    private static final AtomicInteger batchSize = new AtomicInteger(MAX_BATCH_SIZE);
 
-            conn.disconnect();
+    private static final XMLInputFactory FACTORY = createFactory();
 
-            return result;
-        } catch (IOException e) {
-            logger.error( "Fail to get PDB files for {0}", StringUtils.join(pdbIds, ", there may be a network problem."));
-            throw new BridgesRemoteAccessException("Failed access to PDB REST service");
+    private static final ExecutorService executor = Executors.newFixedThreadPool(PDB_THREADS, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "pdb-ws");
+            thread.setDaemon(true);
+            return thread;
         }
+    });
+
+    private static PDBDescriptionStore store = null;
+
+    private final String url;
+
+    /**
+     * Client of the RCSB PDB REST services
+     */
+    public PDBWSClient() {
+        this(pdbUrl);
     }
 
     /**
      *
-     * @param pdbIds
-     * @return
-     * @throws BridgesRemoteAccessException
+     * @param url base URL of the PDB REST services
      */
-    public Collection<Ligand> getLigands(Collection<String> pdbIds) throws BridgesRemoteAccessException{
-        try {
+    public PDBWSClient(String url) {
+        this.url = url;
+    }
 
-            // get ligands
-            URL urlLigand = new URL(pdbUrl + "ligandInfo?structureId="
-                    + StringUtils.join(pdbIds, ","));
+    /**
+     * Description and ligands of a set of PDB IDs
+     */
+    public static class PDBLookup {
 
-            HttpURLConnection connLigand = (HttpURLConnection) urlLigand
-                    .openConnection();
-            connLigand.setRequestMethod("GET");
-            connLigand.setRequestProperty("Accept", "application/xml");
+        private final MoleculeDescription description;
 
-            if (connLigand.getResponseCode() != 200) {
-                throw new BridgesRemoteAccessException("Failed : HTTP error code : "
-                        + connLigand.getResponseCode() + " " + urlLigand);
-            }
+        private final ArrayList<Ligand> ligands;
+
+        PDBLookup(MoleculeDescription description, ArrayList<Ligand> ligands) {
+            this.description = description;
+            this.ligands = ligands;
+        }
 
-            Collection<Ligand> ligands = parseLigands(connLigand
-                    .getInputStream());
+        /**
+         *
+         * @return null if the description was not requested
+         */
+        public MoleculeDescription getDescription() {
+            return description;
+        }
 
-            connLigand.disconnect();
+        /**
+         *
+         * @return empty if the ligands were not requested
+         */
+        public ArrayList<Ligand> getLigands() {
             return ligands;
-        } catch (IOException e) {
-            logger.error( "Fail to get ligands for " + StringUtils.join(pdbIds, ", "), e);
-            throw new BridgesRemoteAccessException("Failed access to PDB REST service");
         }
     }
 
     /**
      *
-     * @param is
+     * @return the current maximum number of PDB IDs sent in a single request
+     */
+    static int getBatchSize() {
+        return batchSize.get();
+    }
+
+    /**
+     * Restore the maximum batch size, e.g. after a change of server
+     */
+    static void resetBatchSize() {
+        batchSize.set(MAX_BATCH_SIZE);
+    }
+
+    /**
+     *
+     * @param cacheDir directory in which the descriptions are stored, null
+     * to not store them
+     */
+    public static synchronized void setCacheDir(String cacheDir) {
+        store = cacheDir == null ? null : new PDBDescriptionStore(cacheDir);
+    }
+
+    private static synchronized PDBDescriptionStore getStore() {
+        return store;
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     *
+     * @param pdbIds
      * @return
+     * @throws BridgesRemoteAccessException
      */
-    public MoleculeDescription parseMoleculeDescription(InputStream is) {
+    public MoleculeDescription getDescription(Collection<String> pdbIds) throws BridgesRemoteAccessException {
+        return lookup(pdbIds, true, false).getDescription();
+    }
 
-        MoleculeDescription result = new MoleculeDescription();
+    /**
+     *
+     * @param pdbIds
+     * @return
+     * @throws BridgesRemoteAccessException
+     */
+    public Collection<Ligand> getLigands(Collection<String> pdbIds) throws BridgesRemoteAccessException{
+        return lookup(pdbIds, false, true).getLigands();
+    }
+
+    /**
+     * Get the description and/or the ligands of PDB entries. The entries that
+     * are not stored yet are requested in batches, and the describeMol and
+     * ligandInfo requests are sent at the same time.
+     *
+     * @param pdbIds
+     * @param withDescription
+     * @param withLigands
+     * @return the descriptions and ligands, in the order of the PDB IDs
+     * @throws BridgesRemoteAccessException
+     */
+    public PDBLookup lookup(Collection<String> pdbIds, boolean withDescription, boolean withLigands) throws BridgesRemoteAccessException {
+        LinkedHashSet<String> ids = new LinkedHashSet<>();
+        for (String pdbId : pdbIds) {
+            ids.add(pdbId.toUpperCase());
+        }
+
+        PDBDescriptionStore pdbStore = getStore();
+
+        HashMap<String, StructureID> descriptions = new HashMap<>();
+        HashMap<String, ArrayList<Ligand>> ligands = new HashMap<>();
+
+        ArrayList<String> missingDescriptions = new ArrayList<>();
+        ArrayList<String> missingLigands = new ArrayList<>();
+
+        for (String pdbId : ids) {
+            if (withDescription) {
+                PDBDescriptionStore.Stored<StructureID> stored = pdbStore == null ? null : pdbStore.getDescription(pdbId);
+                if (stored == null) {
+                    missingDescriptions.add(pdbId);
+                } else {
+                    descriptions.put(pdbId, stored.getValue());
+                }
+            }
+
+            if (withLigands) {
+                ArrayList<Ligand> stored = pdbStore == null ? null : pdbStore.getLigands(pdbId);
+                if (stored == null) {
+                    missingLigands.add(pdbId);
+                } else {
+                    ligands.put(pdbId, stored);
+                }
+            }
+        }
+
+        ArrayList<Future<HashMap<String, StructureID>>> descriptionTasks = new ArrayList<>();
+        ArrayList<Future<HashMap<String, ArrayList<Ligand>>>> ligandTasks = new ArrayList<>();
+
+        for (List<String> batch : getBatches(missingDescriptions)) {
+            descriptionTasks.add(executor.submit(new DescriptionTask(url, batch, pdbStore)));
+        }
+
+        for (List<String> batch : getBatches(missingLigands)) {
+            ligandTasks.add(executor.submit(new LigandTask(url, batch, pdbStore)));
+        }
 
         try {
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory
-                    .newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(is);
+            for (Future<HashMap<String, StructureID>> task : descriptionTasks) {
+                descriptions.putAll(task.get());
+            }
+            for (Future<HashMap<String, ArrayList<Ligand>>> task : ligandTasks) {
+                ligands.putAll(task.get());
+            }
+        } catch (InterruptedException e) {
+            cancel(descriptionTasks, ligandTasks);
+            Thread.currentThread().interrupt();
+            throw new BridgesRemoteAccessException("Interrupted while accessing the PDB REST service");
+        } catch (ExecutionException e) {
+            cancel(descriptionTasks, ligandTasks);
+            logger.error("Fail to get PDB information for " + StringUtils.join(ids, ", ") + ", there may be a network problem.", e.getCause());
+            throw new BridgesRemoteAccessException("Failed access to PDB REST service");
+        }
 
-            // optional, but recommended
-            // read this -
-            // http://stackoverflow.com/questions/13786607/normalization-in-dom-parsing-with-java-how-does-it-work
-            doc.getDocumentElement().normalize();
+        MoleculeDescription description = null;
 
-            // interaction structure
-            NodeList structureIds = doc.getElementsByTagName("structureId");
+        if (withDescription) {
+            description = new MoleculeDescription();
+            for (String pdbId : ids) {
+                if (descriptions.get(pdbId) != null) {
+                    description.getStructureId().add(descriptions.get(pdbId));
+                }
+            }
+        }
 
-            for (int iStruct = 0; iStruct < structureIds.getLength(); iStruct++) {
-                Element structureIdNode = (Element) structureIds.item(iStruct);
+        ArrayList<Ligand> allLigands = new ArrayList<>();
 
-                StructureID structureId = new StructureID();
+        if (withLigands) {
+            for (String pdbId : ids) {
+                allLigands.addAll(ligands.get(pdbId));
+            }
+        }
 
-                structureId.setId(structureIdNode.getAttribute("id"));
+        return new PDBLookup(description, allLigands);
+    }
 
-                ArrayList<Polymer> polymers = new ArrayList<>();
+    private static void cancel(Collection<? extends Future<?>> tasks1, Collection<? extends Future<?>> tasks2) {
+        for (Future<?> task : tasks1) {
+            task.cancel(true);
+        }
+        for (Future<?> task : tasks2) {
+            task.cancel(true);
+        }
+    }
 
-                NodeList polymerList = structureIdNode.getElementsByTagName("polymer");
+    /**
+     * Split the PDB IDs so that the requests can be sent concurrently, with
+     * at least MIN_BATCH_SIZE IDs per request.
+     */
+    private static List<List<String>> getBatches(List<String> pdbIds) {
+        int size = (pdbIds.size() + PDB_THREADS - 1) / PDB_THREADS;
+        size = Math.max(MIN_BATCH_SIZE, Math.min(batchSize.get(), size));
 
-                for (int iPolymer = 0; iPolymer < polymerList.getLength(); iPolymer++) {
+        ArrayList<List<String>> batches = new ArrayList<>();
+        for (int i = 0; i < pdbIds.size(); i += size) {
+            batches.add(pdbIds.subList(i, Math.min(i + size, pdbIds.size())));
+        }
+        return batches;
+    }
 
-                    Element polymerElement = (Element) polymerList
-                            .item(iPolymer);
+    /**
+     * A request of the current batch size succeeded, try larger ones.
+     */
+    private static void growBatchSize(int size) {
+        for (;;) {
+            int current = batchSize.get();
+            if (size < current || current >= MAX_BATCH_SIZE) {
+                return;
+            }
+            if (batchSize.compareAndSet(current, Math.min(MAX_BATCH_SIZE, current + BATCH_SIZE_INCREMENT))) {
+                return;
+            }
+        }
+    }
 
-                    Polymer polymer = new Polymer();
+    private static int getStatusCode(IOException e) {
+        if (e instanceof HttpStatusException) {
+            return ((HttpStatusException) e).getStatusCode();
+        }
+        return -1;
+    }
 
-                    polymer.setEntityNr(Integer.parseInt(polymerElement
-                            .getAttribute("entityNr")));
-                    polymer.setLength(Integer.parseInt(polymerElement
-                            .getAttribute("length")));
-                    polymer.setType(polymerElement.getAttribute("type"));
-                    polymer.setWeight(Double.parseDouble(polymerElement
-                            .getAttribute("weight")));
+    /**
+     * Request that the PDB rejects because of its size
+     */
+    private static boolean isTooLarge(int statusCode) {
+        return statusCode == 413 || statusCode == 414;
+    }
 
-                    PolymerDescription description = new PolymerDescription();
-                    description
-                            .setDescription(((Element) polymerElement
-                                    .getElementsByTagName("polymerDescription")
-                                    .item(0)).getAttribute("description"));
+    /**
+     * Request a batch, and split it if the PDB rejects it. Only a request
+     * rejected as too large reduces the batch size of the next requests: a
+     * bad request (400) is usually caused by a single invalid PDB ID, which
+     * is isolated by splitting the batch and then skipped. The batch size
+     * grows back with the requests that succeed.
+     */
+    private abstract static class BatchTask<T> implements Callable<HashMap<String, T>> {
 
-                    polymer.setPolymerDescription(description);
+        protected final String url;
 
-                    Element taxonomyElement = (Element) polymerElement
-                            .getElementsByTagName("Taxonomy").item(0);
+        private final List<String> pdbIds;
 
-                    if (null != taxonomyElement) {
-                        Taxonomy taxonomy = new Taxonomy();
+        protected final PDBDescriptionStore pdbStore;
 
-                        taxonomy.setId(taxonomyElement.getAttribute("id"));
-                        taxonomy.setName(taxonomyElement.getAttribute("name"));
-                        polymer.setTaxonomy(taxonomy);
+        BatchTask(String url, List<String> pdbIds, PDBDescriptionStore pdbStore) {
+            this.url = url;
+            this.pdbIds = pdbIds;
+            this.pdbStore = pdbStore;
+        }
+
+        @Override
+        public HashMap<String, T> call() throws IOException, XMLStreamException {
+            return call(pdbIds);
+        }
+
+        private HashMap<String, T> call(List<String> ids) throws IOException, XMLStreamException {
+            try {
+                HashMap<String, T> values = fetch(ids);
+                growBatchSize(ids.size());
+                for (String pdbId : ids) {
+                    if (false == values.containsKey(pdbId)) {
+                        values.put(pdbId, getDefault());
+                    }
+                    if (pdbStore != null) {
+                        store(pdbId, values.get(pdbId));
                     }
+                }
+                return values;
+            } catch (IOException e) {
+                int statusCode = getStatusCode(e);
 
-                    NodeList chainsList = polymerElement
-                            .getElementsByTagName("chain");
-                    for (int iChain = 0; iChain < chainsList.getLength(); iChain++) {
+                if (false == isTooLarge(statusCode) && statusCode != 400) {
+                    throw e;
+                }
 
-                        Element chainElement = (Element) chainsList
-                                .item(iChain);
-                        Chain chain = new Chain();
-                        chain.setId(chainElement.getAttribute("id"));
-                        polymer.getChains().add(chain);
+                if (ids.size() == 1) {
+                    if (statusCode != 400) {
+                        throw e;
                     }
+                    // not stored, the PDB ID may be valid later
+                    logger.warn("PDB rejected the ID " + ids.get(0) + ", skip it");
+                    HashMap<String, T> values = new HashMap<>();
+                    values.put(ids.get(0), getDefault());
+                    return values;
+                }
 
-                    MacroMolecule macroMolecule = new MacroMolecule();
+                int half = ids.size() / 2;
+                if (isTooLarge(statusCode)) {
+                    batchSize.set(Math.max(MIN_BATCH_SIZE, Math.min(batchSize.get(), half)));
+                    logger.info("PDB request too large, split it in two: " + ids.size() + " IDs");
+                } else {
+                    logger.info("PDB rejected the request, split it in two: " + ids.size() + " IDs");
+                }
 
-                    NodeList macroMoleculeList = polymerElement
-                            .getElementsByTagName("macroMolecule");
+                HashMap<String, T> values = call(ids.subList(0, half));
+                values.putAll(call(ids.subList(half, ids.size())));
+                return values;
+            }
+        }
 
-                    if (macroMoleculeList.getLength() > 0) {
-                        Element mmElement = (Element) macroMoleculeList.item(0);
-                        macroMolecule.setName(pdbUrl);
+        protected abstract HashMap<String, T> fetch(List<String> ids) throws IOException, XMLStreamException;
 
-                        NodeList accList = mmElement
-                                .getElementsByTagName("accession");
-                        for (int iAcc = 0; iAcc < accList.getLength(); iAcc++) {
+        protected abstract T getDefault();
 
-                            Element accElement = (Element) accList
-                                    .item(iAcc);
-                            macroMolecule.getAccession().add(accElement.getAttribute("id"));
-                        }
+        protected abstract void store(String pdbId, T value);
+    }
 
-                        polymer.setMacromolecule(macroMolecule);
+    private static class DescriptionTask extends BatchTask<StructureID> {
 
-                    }
+        DescriptionTask(String url, List<String> pdbIds, PDBDescriptionStore pdbStore) {
+            super(url, pdbIds, pdbStore);
+        }
+
+        @Override
+        protected HashMap<String, StructureID> fetch(List<String> ids) throws IOException, XMLStreamException {
+            String urlDescription = url + "/describeMol?structureId=" + StringUtils.join(ids, ",");
 
-                    polymers.add(polymer);
+            HashMap<String, StructureID> descriptions = new HashMap<>();
+
+            try (InputStream is = HttpTransport.getInstance().get(urlDescription, "application/xml")) {
+                for (StructureID structureId : readMoleculeDescription(is).getStructureId()) {
+                    descriptions.put(structureId.getId().toUpperCase(), structureId);
                 }
+            }
+
+            return descriptions;
+        }
+
+        @Override
+        protected StructureID getDefault() {
+            return null;
+        }
+
+        @Override
+        protected void store(String pdbId, StructureID value) {
+            pdbStore.putDescription(pdbId, value);
+        }
+    }
+
+    private static class LigandTask extends BatchTask<ArrayList<Ligand>> {
+
+        LigandTask(String url, List<String> pdbIds, PDBDescriptionStore pdbStore) {
+            super(url, pdbIds, pdbStore);
+        }
 
-                structureId.setPolymers(polymers);
-                result.getStructureId().add(structureId);
+        @Override
+        protected HashMap<String, ArrayList<Ligand>> fetch(List<String> ids) throws IOException, XMLStreamException {
+            String urlLigand = url + "ligandInfo?structureId=" + StringUtils.join(ids, ",");
+
+            HashMap<String, ArrayList<Ligand>> ligands = new HashMap<>();
+
+            try (InputStream is = HttpTransport.getInstance().get(urlLigand, "application/xml")) {
+                for (Ligand ligand : readLigands(is)) {
+                    String pdbId = ligand.getStructureId().toUpperCase();
+                    if (false == ligands.containsKey(pdbId)) {
+                        ligands.put(pdbId, new ArrayList<Ligand>());
+                    }
+                    ligands.get(pdbId).add(ligand);
+                }
             }
-        } catch (ParserConfigurationException | SAXException | IOException | NumberFormatException e) {
-            logger.error( "Fail to parse Molecule", e);
+
+            return ligands;
         }
 
-        return result;
+        @Override
+        protected ArrayList<Ligand> getDefault() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        protected void store(String pdbId, ArrayList<Ligand> value) {
+            pdbStore.putLigands(pdbId, value);
+        }
     }
 
     /**
@@ -244,77 +513,222 @@ public class PDBWSClient {
      * @param is
      * @return
      */
-    public Collection<Ligand> parseLigands(InputStream is) {
-
-        ArrayList<Ligand> result = new ArrayList<>();
+    public MoleculeDescription parseMoleculeDescription(InputStream is) {
+        try {
+            return readMoleculeDescription(is);
+        } catch (XMLStreamException e) {
+            logger.error( "Fail to parse Molecule", e);
+            return new MoleculeDescription();
+        }
+    }
 
+    /**
+     *
+     * @param is
+     * @return
+     */
+    public Collection<Ligand> parseLigands(InputStream is) {
         try {
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory
-                    .newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(is);
+            return readLigands(is);
+        } catch (XMLStreamException e) {
+            logger.error( "Fail to parse ligand", e);
+            return new ArrayList<>();
+        }
+    }
 
-            // optional, but recommended
-            // read this -
-            // http://stackoverflow.com/questions/13786607/normalization-in-dom-parsing-with-java-how-does-it-work
-            doc.getDocumentElement().normalize();
+    private static MoleculeDescription readMoleculeDescription(InputStream is) throws XMLStreamException {
+        MoleculeDescription result = new MoleculeDescription();
 
-            NodeList ligandList = doc.getElementsByTagName("ligand");
+        XMLStreamReader reader = FACTORY.createXMLStreamReader(is);
 
-            for (int iLigand = 0; iLigand < ligandList.getLength(); iLigand++) {
+        try {
+            StructureID structureId = null;
+            Polymer polymer = null;
+            MacroMolecule macroMolecule = null;
+
+            while (reader.hasNext()) {
+                int event = reader.next();
+
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "structureId":
+                            if (structureId != null) {
+                                result.getStructureId().add(structureId);
+                            }
+                            structureId = null;
+                            break;
+                        case "polymer":
+                            if (structureId != null && polymer != null) {
+                                structureId.getPolymers().add(polymer);
+                            }
+                            polymer = null;
+                            break;
+                        case "macroMolecule":
+                            macroMolecule = null;
+                            break;
+                        default:
+                            break;
+                    }
+                    continue;
+                }
 
-                Element ligandElement = (Element) ligandList.item(iLigand);
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
+                }
 
-                Ligand ligand = new Ligand();
+                switch (reader.getLocalName()) {
+                    case "structureId":
+                        structureId = new StructureID();
+                        structureId.setId(getAttribute(reader, "id"));
+                        break;
+                    case "polymer":
+                        polymer = new Polymer();
+                        polymer.setEntityNr(parseInt(reader, "entityNr"));
+                        polymer.setLength(parseInt(reader, "length"));
+                        polymer.setType(getAttribute(reader, "type"));
+                        polymer.setWeight(parseDouble(reader, "weight"));
+                        break;
+                    case "chain":
+                        if (polymer != null) {
+                            Chain chain = new Chain();
+                            chain.setId(getAttribute(reader, "id"));
+                            polymer.getChains().add(chain);
+                        }
+                        break;
+                    case "Taxonomy":
+                        // only the first one
+                        if (polymer != null && polymer.getTaxonomy() == null) {
+                            Taxonomy taxonomy = new Taxonomy();
+                            taxonomy.setId(getAttribute(reader, "id"));
+                            taxonomy.setName(getAttribute(reader, "name"));
+                            polymer.setTaxonomy(taxonomy);
+                        }
+                        break;
+                    case "polymerDescription":
+                        if (polymer != null && polymer.getPolymerDescription() == null) {
+                            PolymerDescription description = new PolymerDescription();
+                            description.setDescription(getAttribute(reader, "description"));
+                            polymer.setPolymerDescription(description);
+                        }
+                        break;
+                    case "macroMolecule":
+                        // only the accessions of the first one
+                        if (polymer != null && polymer.getMacromolecule() == null) {
+                            macroMolecule = new MacroMolecule();
+                            macroMolecule.setName(pdbUrl);
+                            polymer.setMacromolecule(macroMolecule);
+                        }
+                        break;
+                    case "accession":
+                        if (macroMolecule != null) {
+                            macroMolecule.getAccession().add(getAttribute(reader, "id"));
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
 
-                ligand.setStructureId(ligandElement.getAttribute("structureId"));
-                ligand.setChemicalId(ligandElement.getAttribute("chemicalID"));
-                ligand.setType(ligandElement.getAttribute("type"));
-                ligand.setMolecularWeight(Double.parseDouble(ligandElement
-                        .getAttribute("molecularWeight")));
+        return result;
+    }
 
-                NodeList nodeList = ligandElement.getElementsByTagName("chemicalName");
+    private static ArrayList<Ligand> readLigands(InputStream is) throws XMLStreamException {
+        ArrayList<Ligand> result = new ArrayList<>();
 
-                if (null != nodeList && nodeList.getLength() > 0) {
-                    ligand.setChemicalName(((Element) nodeList.item(0))
-                            .getTextContent());
-                }
+        XMLStreamReader reader = FACTORY.createXMLStreamReader(is);
 
-                nodeList = ligandElement.getElementsByTagName("formula");
-                if (null != nodeList && nodeList.getLength() > 0) {
-                    ligand.setFormula(((Element) nodeList.item(0))
-                            .getTextContent());
-                }
+        try {
+            String structureId = null;
+            Ligand ligand = null;
 
-                nodeList = ligandElement.getElementsByTagName("InChI");
-                if (null != nodeList && nodeList.getLength() > 0) {
+            while (reader.hasNext()) {
+                int event = reader.next();
 
-                    ligand.setInChI(((Element) nodeList.item(0))
-                            .getTextContent());
+                if (event == XMLStreamConstants.END_ELEMENT && "ligand".equals(reader.getLocalName())) {
+                    result.add(ligand);
+                    ligand = null;
+                    continue;
                 }
 
-                nodeList = ligandElement.getElementsByTagName("InChIKey");
-                if (null != nodeList && nodeList.getLength() > 0) {
-
-                    ligand.setInChIKey(((Element) nodeList.item(0))
-                            .getTextContent());
+                if (event != XMLStreamConstants.START_ELEMENT) {
+                    continue;
                 }
 
-                nodeList = ligandElement.getElementsByTagName("smiles");
-                if (null != nodeList && nodeList.getLength() > 0) {
-
-                    ligand.setSmiles(((Element) nodeList.item(0))
-                            .getTextContent());
+                switch (reader.getLocalName()) {
+                    case "structureId":
+                        structureId = getAttribute(reader, "id");
+                        break;
+                    case "ligand":
+                        ligand = new Ligand();
+                        ligand.setStructureId(reader.getAttributeValue(null, "structureId") == null
+                                ? structureId : getAttribute(reader, "structureId"));
+                        ligand.setChemicalId(getAttribute(reader, "chemicalID"));
+                        ligand.setType(getAttribute(reader, "type"));
+                        ligand.setMolecularWeight(parseDouble(reader, "molecularWeight"));
+                        break;
+                    case "chemicalName":
+                        if (ligand != null && ligand.getChemicalName() == null) {
+                            ligand.setChemicalName(reader.getElementText());
+                        }
+                        break;
+                    case "formula":
+                        if (ligand != null && ligand.getFormula() == null) {
+                            ligand.setFormula(reader.getElementText());
+                        }
+                        break;
+                    case "InChI":
+                        if (ligand != null && ligand.getInChI() == null) {
+                            ligand.setInChI(reader.getElementText());
+                        }
+                        break;
+                    case "InChIKey":
+                        if (ligand != null && ligand.getInChIKey() == null) {
+                            ligand.setInChIKey(reader.getElementText());
+                        }
+                        break;
+                    case "smiles":
+                        if (ligand != null && ligand.getSmiles() == null) {
+                            ligand.setSmiles(reader.getElementText());
+                        }
+                        break;
+                    default:
+                        break;
                 }
-                result.add(ligand);
             }
-        } catch (ParserConfigurationException | SAXException | IOException | NumberFormatException | DOMException e) {
-            logger.error( "Fail to parse ligand", e);
+        } finally {
+            reader.close();
         }
 
         return result;
     }
 
+    /**
+     * Value of an attribute, empty if it is not set (as in DOM)
+     */
+    private static String getAttribute(XMLStreamReader reader, String name) {
+        String value = reader.getAttributeValue(null, name);
+        return value == null ? "" : value;
+    }
+
+    private static int parseInt(XMLStreamReader reader, String name) throws XMLStreamException {
+        try {
+            return Integer.parseInt(getAttribute(reader, name));
+        } catch (NumberFormatException e) {
+            throw new XMLStreamException("Invalid " + name + ": " + getAttribute(reader, name), reader.getLocation());
+        }
+    }
+
+    private static double parseDouble(XMLStreamReader reader, String name) throws XMLStreamException {
+        try {
+            return Double.parseDouble(getAttribute(reader, name));
+        } catch (NumberFormatException e) {
+            throw new XMLStreamException("Invalid " + name + ": " + getAttribute(reader, name), reader.getLocation());
+        }
+    }
+
     /**
      *
      * @param args
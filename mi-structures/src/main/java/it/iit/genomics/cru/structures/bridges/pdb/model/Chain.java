@@ -15,6 +15,8 @@
  */
 package it.iit.genomics.cru.structures.bridges.pdb.model;
 
+import java.io.Serializable;
+
 import javax.xml.bind.annotation.XmlAccessType;
 import javax.xml.bind.annotation.XmlAccessorType;
 import javax.xml.bind.annotation.XmlAttribute;
@@ -26,7 +28,9 @@ import javax.xml.bind.annotation.XmlRootElement;
  */
 @XmlRootElement(name = "chain")
 @XmlAccessorType(XmlAccessType.FIELD)
-public class Chain {
+public class Chain implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     @XmlAttribute(name = "id")
     String id;
@@ -15,11 +15,15 @@
  */
 package it.iit.genomics.cru.structures.bridges.pdb.model;
 
+import java.io.Serializable;
+
 /**
  *
  * @author Arnaud Ceol
  */
-public class Ligand {
+public class Ligand implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     /**
      *
@@ -15,6 +15,7 @@
  */
 package it.iit.genomics.cru.structures.bridges.pdb.model;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 import javax.xml.bind.annotation.XmlAccessType;
@@ -29,7 +30,9 @@ import javax.xml.bind.annotation.XmlRootElement;
  */
 @XmlRootElement(name = "macroMolecule")
 @XmlAccessorType(XmlAccessType.FIELD)
-public class MacroMolecule {
+public class MacroMolecule implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     @XmlAttribute
     String name;
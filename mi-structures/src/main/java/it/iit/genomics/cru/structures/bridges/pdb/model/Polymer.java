@@ -15,6 +15,7 @@
  */
 package it.iit.genomics.cru.structures.bridges.pdb.model;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -30,7 +31,9 @@ import javax.xml.bind.annotation.XmlRootElement;
  */
 @XmlRootElement(name = "structureId")
 @XmlAccessorType(XmlAccessType.FIELD)
-public class Polymer {
+public class Polymer implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     @XmlAttribute
     int entityNr;
@@ -15,6 +15,7 @@
  */
 package it.iit.genomics.cru.structures.bridges.pdb.model;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -31,7 +32,9 @@ import javax.xml.bind.annotation.XmlRootElement;
  */
 @XmlRootElement(name = "structureId")
 @XmlAccessorType(XmlAccessType.FIELD)
-public class StructureID {
+public class StructureID implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     @XmlAttribute(name = "id")
     String id;
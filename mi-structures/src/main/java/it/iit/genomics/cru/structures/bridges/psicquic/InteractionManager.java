@@ -77,5 +77,13 @@ public class InteractionManager {
     public Collection<String> getInteractors() {
         return this.interactors;
     }
+
+    /**
+     *
+     * @return
+     */
+    public Collection<Interaction> getInteractions() {
+        return this.interactions.values();
+    }
     
 }
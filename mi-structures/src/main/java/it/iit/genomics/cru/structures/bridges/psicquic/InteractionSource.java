@@ -0,0 +1,39 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.bridges.psicquic;
+
+import it.iit.genomics.cru.structures.bridges.commons.BridgesRemoteAccessException;
+import java.util.Map;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * Source of interactions that can be selected instead of a remote PSICQUIC
+ * server, e.g. a local index of a MITAB file.
+ */
+public interface InteractionSource {
+
+    /**
+     * Merge the interactions of each protein in its InteractionManager.
+     *
+     * @param interactions key: Uniprot AC, value: manager in which the
+     * interactions of the protein are merged
+     * @throws BridgesRemoteAccessException
+     */
+    void getInteractors(Map<String, InteractionManager> interactions) throws BridgesRemoteAccessException;
+
+}
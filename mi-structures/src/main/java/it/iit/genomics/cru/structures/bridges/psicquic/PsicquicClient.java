@@ -15,15 +15,13 @@
  */
 package it.iit.genomics.cru.structures.bridges.psicquic;
 
+import it.iit.genomics.cru.structures.bridges.commons.HttpTransport;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
 import java.net.Proxy;
-import java.net.URL;
 import java.net.URLEncoder;
 import java.util.Arrays;
 import java.util.List;
@@ -100,7 +98,6 @@ public class PsicquicClient {
     public static final String COUNT = "count";
 
     private String serviceRestUrl;
-    private final int connectionTimeout = 5000;
     private int readTimeout = 5000;
     private Proxy proxy;
 
@@ -265,28 +262,7 @@ public class PsicquicClient {
         String strUrl = serviceRestUrl + queryType;
         strUrl = strUrl.replaceAll("/" + queryType, queryType);
 
-        HttpURLConnection connection;
-        InputStream result;
-
-        URL url;
-        try {
-            url = new URL(strUrl);
-        } catch (MalformedURLException e) {
-            throw new IllegalArgumentException("Problem creating URL: " + strUrl, e);
-        }
-
-        if (this.proxy == null) {
-            connection = (HttpURLConnection) url.openConnection();
-        } else {
-            connection = (HttpURLConnection) url.openConnection(this.proxy);
-        }
-
-        connection.setConnectTimeout(connectionTimeout);
-        connection.setReadTimeout(readTimeout);
-
-        connection.connect();
-
-        result = connection.getInputStream();
+        InputStream result = HttpTransport.getInstance().get(strUrl, null, readTimeout, proxy);
 
         String formats = streamToString(result);
 
@@ -295,26 +271,11 @@ public class PsicquicClient {
     }
 
     private InputStream getBy(String queryType, String query, String format, int firstResult, int maxResults) throws IOException {
-        HttpURLConnection connection;
         final String encodedQuery = encodeQuery(query);
-        InputStream inputStream;
-
-        URL url = createUrl(queryType, encodedQuery, format, firstResult, maxResults);
-        if (this.proxy == null) {
-            connection = (HttpURLConnection) url.openConnection();
-        } else {
-            connection = (HttpURLConnection) url.openConnection(this.proxy);
-        }
-
-        connection.setRequestProperty("accept", "text/*");
-        connection.setConnectTimeout(connectionTimeout);
-        connection.setReadTimeout(readTimeout);
 
-        connection.connect();
+        String url = createUrl(queryType, encodedQuery, format, firstResult, maxResults);
 
-        inputStream = connection.getInputStream();
-
-        return inputStream;
+        return HttpTransport.getInstance().get(url, "text/*", readTimeout, proxy);
     }
 
     private long countBy(String queryType, String query) throws IOException {
@@ -338,17 +299,11 @@ public class PsicquicClient {
         return encodedQuery;
     }
 
-    private URL createUrl(String queryType, String encodedQuery, String format, int firstResult, int maxResults) {
+    private String createUrl(String queryType, String encodedQuery, String format, int firstResult, int maxResults) {
         String strUrl = serviceRestUrl + "/" + queryType + "/" + encodedQuery + "?format=" + format + "&firstResult=" + firstResult + "&maxResults=" + maxResults;
         strUrl = strUrl.replaceAll("//" + queryType, "/" + queryType);
 
-        URL url;
-        try {
-            url = new URL(strUrl);
-        } catch (MalformedURLException e) {
-            throw new IllegalArgumentException("Problem creating URL: " + strUrl, e);
-        }
-        return url;
+        return strUrl;
     }
 
     private String streamToString(InputStream is) throws IOException {
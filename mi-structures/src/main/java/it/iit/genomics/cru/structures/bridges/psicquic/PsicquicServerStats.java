@@ -0,0 +1,194 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.bridges.psicquic;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * Latency statistics and circuit breaker of a PSICQUIC server. After
+ * FAILURE_THRESHOLD consecutive failures (errors or timeouts) the server is
+ * not queried for OPEN_DURATION milliseconds. The next query is then a trial:
+ * if it succeeds the server is used again, otherwise it is skipped for
+ * another OPEN_DURATION.
+ */
+public class PsicquicServerStats {
+
+    /**
+     * Number of consecutive failures before skipping the server
+     */
+    public final static int FAILURE_THRESHOLD = 3;
+
+    /**
+     * Time during which a failing server is skipped (ms)
+     */
+    public final static long OPEN_DURATION = 5 * 60 * 1000;
+
+    /**
+     * Weight of the last query in the average latency
+     */
+    private final static double LATENCY_WEIGHT = 0.3;
+
+    private final String url;
+
+    private int numberOfQueries = 0;
+
+    private int numberOfFailures = 0;
+
+    private int consecutiveFailures = 0;
+
+    private double averageLatency = 0;
+
+    /**
+     * 0 if the circuit is closed
+     */
+    private long openUntil = 0;
+
+    private boolean trialInProgress = false;
+
+    /**
+     *
+     * @param url
+     */
+    public PsicquicServerStats(String url) {
+        this.url = url;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     *
+     * @return true if the server can be queried
+     */
+    public boolean allowRequest() {
+        return allowRequest(System.currentTimeMillis());
+    }
+
+    synchronized boolean allowRequest(long now) {
+        if (openUntil == 0) {
+            return true;
+        }
+
+        if (now < openUntil || trialInProgress) {
+            return false;
+        }
+
+        trialInProgress = true;
+        return true;
+    }
+
+    /**
+     *
+     * @param latency time to answer (ms)
+     */
+    public synchronized void recordSuccess(long latency) {
+        numberOfQueries++;
+        consecutiveFailures = 0;
+        openUntil = 0;
+        trialInProgress = false;
+
+        if (numberOfQueries - numberOfFailures == 1) {
+            averageLatency = latency;
+        } else {
+            averageLatency = LATENCY_WEIGHT * latency + (1 - LATENCY_WEIGHT) * averageLatency;
+        }
+    }
+
+    /**
+     * Record an error or a timeout.
+     *
+     * @return true if the server is now skipped
+     */
+    public boolean recordFailure() {
+        return recordFailure(System.currentTimeMillis());
+    }
+
+    synchronized boolean recordFailure(long now) {
+        numberOfQueries++;
+        numberOfFailures++;
+        consecutiveFailures++;
+
+        if (trialInProgress || consecutiveFailures >= FAILURE_THRESHOLD) {
+            trialInProgress = false;
+            openUntil = now + OPEN_DURATION;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Release the trial of a query cancelled before the server answered, the
+     * next query is a new trial.
+     */
+    public synchronized void cancelTrial() {
+        trialInProgress = false;
+    }
+
+    /**
+     *
+     * @return true if the server is currently skipped
+     */
+    public synchronized boolean isOpen() {
+        return openUntil != 0;
+    }
+
+    /**
+     * Close the circuit, e.g. when the user enables the server again.
+     */
+    public synchronized void reset() {
+        consecutiveFailures = 0;
+        openUntil = 0;
+        trialInProgress = false;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public synchronized int getNumberOfQueries() {
+        return numberOfQueries;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public synchronized int getNumberOfFailures() {
+        return numberOfFailures;
+    }
+
+    /**
+     *
+     * @return average time to answer of the successful queries (ms)
+     */
+    public synchronized double getAverageLatency() {
+        return averageLatency;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return url + ": " + numberOfQueries + " queries, " + numberOfFailures + " failures, "
+                + Math.round(averageLatency) + " ms" + (openUntil != 0 ? ", skipped" : "");
+    }
+
+}
@@ -22,21 +22,35 @@ package it.iit.genomics.cru.structures.bridges.psicquic;
  *
  */
 import it.iit.genomics.cru.structures.bridges.commons.BridgesRemoteAccessException;
+import it.iit.genomics.cru.structures.bridges.commons.HttpTransport;
 import it.iit.genomics.cru.structures.bridges.uniprot.UniprotkbUtils;
+import java.io.BufferedReader;
 import java.io.IOException;
 
 import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.DOMException;
@@ -50,6 +64,7 @@ import psidev.psi.mi.tab.PsimiTabException;
 import psidev.psi.mi.tab.PsimiTabReader;
 import psidev.psi.mi.tab.model.BinaryInteraction;
 import psidev.psi.mi.tab.model.CrossReference;
+import psidev.psi.mi.tab.model.Interactor;
 
 /**
  *
@@ -74,8 +89,48 @@ public class PsicquicUtils {
      */
     public final static String registryUrl = "http://www.ebi.ac.uk/Tools/webservices/psicquic/registry/registry?action=STATUS&format=xml"; //"http://37.34.38.126:8080/psicquic-registry/registry?action=STATUS&format=xml";// "http://www.ebi.ac.uk/Tools/webservices/psicquic/registry/registry?action=STATUS&format=xml";
 
+    /**
+     * Maximum number of proteins in a single query
+     */
+    public final static int BATCH_SIZE = 20;
+
+    /**
+     * Number of interactions retrieved by request
+     */
+    public final static int PAGE_SIZE = 2500;
+
+    /**
+     * Prefix of the URL of the local sources of interactions
+     */
+    public final static String LOCAL_PREFIX = "local:";
+
     private final HashMap<String, String> psicquicUrls = new HashMap<>();
 
+    /**
+     * key: URL
+     */
+    private final ConcurrentHashMap<String, InteractionSource> localSources = new ConcurrentHashMap<>();
+
+    /**
+     * key: URL
+     */
+    private final ConcurrentHashMap<String, PsicquicServerStats> serverStats = new ConcurrentHashMap<>();
+
+    /**
+     * Queries sent to several servers at once. The threads are daemons, so
+     * that a server that never answers does not prevent the JVM to stop.
+     */
+    private static final ExecutorService fanOutExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private int count = 0;
+
+        @Override
+        public synchronized Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "psicquic-fanout-" + (++count));
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     private static PsicquicUtils instance;
 
     private PsicquicUtils() {
@@ -86,7 +141,7 @@ public class PsicquicUtils {
      *
      * @return
      */
-    public static PsicquicUtils getInstance() {
+    public static synchronized PsicquicUtils getInstance() {
         if (instance == null) {
             instance = new PsicquicUtils();
         }
@@ -124,6 +179,59 @@ public class PsicquicUtils {
         psicquicUrls.put(name, url);
     }
 
+    /**
+     * Add a local source of interactions, that can be selected like a
+     * PSICQUIC server.
+     *
+     * @param name
+     * @param source
+     */
+    public void addLocalSource(String name, InteractionSource source) {
+        String url = LOCAL_PREFIX + name;
+        localSources.put(url, source);
+        addUrl(name, url);
+    }
+
+    /**
+     *
+     * @param url
+     * @return true if the URL is the one of a remote PSICQUIC server
+     */
+    public static boolean isRemoteUrl(String url) {
+        return url != null && (url.startsWith("http://") || url.startsWith("https://"));
+    }
+
+    /**
+     *
+     * @return URLs of all the remote PSICQUIC servers
+     */
+    public Collection<String> getRemoteUrls() {
+        ArrayList<String> urls = new ArrayList<>();
+        for (String url : psicquicUrls.values()) {
+            if (isRemoteUrl(url)) {
+                urls.add(url);
+            }
+        }
+        return urls;
+    }
+
+    /**
+     *
+     * @param url
+     * @return statistics and circuit breaker of the server
+     */
+    public PsicquicServerStats getServerStats(String url) {
+        PsicquicServerStats stats = serverStats.get(url);
+        if (stats == null) {
+            PsicquicServerStats newStats = new PsicquicServerStats(url);
+            stats = serverStats.putIfAbsent(url, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        return stats;
+    }
+
     /**
      *
      * @param url
@@ -146,125 +254,366 @@ public class PsicquicUtils {
      * @throws BridgesRemoteAccessException
      */
     public Collection<Interaction> getInteractors(String psicquicUrl, String id) throws BridgesRemoteAccessException {
+        HashMap<String, InteractionManager> interactions = new HashMap<>();
+        interactions.put(id, new InteractionManager());
+
+        getInteractors(psicquicUrl, interactions);
+
+        return interactions.get(id).getInteractions();
+    }
+
+    /**
+     * Get the interactions of several proteins, with one query for
+     * BATCH_SIZE proteins. The results are read by pages of PAGE_SIZE
+     * interactions, and each MITAB line is merged directly in the
+     * InteractionManager of the protein(s) it involves.
+     *
+     * @param psicquicUrl
+     * @param interactions key: Uniprot AC, value: manager in which the
+     * interactions of the protein are merged
+     * @throws BridgesRemoteAccessException
+     */
+    public void getInteractors(String psicquicUrl, Map<String, InteractionManager> interactions) throws BridgesRemoteAccessException {
+        InteractionSource localSource = localSources.get(psicquicUrl);
+
+        if (localSource != null) {
+            localSource.getInteractors(interactions);
+            return;
+        }
 
         PsicquicClient client = new PsicquicClient(psicquicUrl);
-        PsimiTabReader mitabReader = new PsimiTabReader();
 
-        // key = ac1#ac2
-        HashMap<String, Interaction> interactions = new HashMap<>();
+        ArrayList<String> ids = new ArrayList<>(interactions.keySet());
 
-        try {
-            if (client.countByInteractor(id) == 0) {
-                return interactions.values();
-            }
+        for (int i = 0; i < ids.size(); i += BATCH_SIZE) {
+            List<String> batch = ids.subList(i, Math.min(i + BATCH_SIZE, ids.size()));
+            getInteractors(client, psicquicUrl, batch, interactions);
+        }
+    }
 
-            InputStream searchResult = client.getByInteractor(id);
+    /**
+     * Query several servers in parallel and merge their answers. A server
+     * that fails or does not answer within the timeout is ignored for this
+     * query, and it is skipped for the next queries after
+     * PsicquicServerStats.FAILURE_THRESHOLD consecutive failures.
+     *
+     * @param psicquicUrls
+     * @param interactions key: Uniprot AC, value: manager in which the
+     * interactions of the protein are merged
+     * @param timeout maximum time to wait for the servers (ms)
+     * @return URLs of the servers that answered, empty if none did
+     * @throws BridgesRemoteAccessException if the query is interrupted
+     */
+    public List<String> getInteractors(Collection<String> psicquicUrls, Map<String, InteractionManager> interactions,
+            long timeout) throws BridgesRemoteAccessException {
+        long deadline = System.currentTimeMillis() + timeout;
 
-            Collection<BinaryInteraction> binaryInteractions = mitabReader
-                    .read(searchResult);
+        LinkedHashMap<String, Future<ServerAnswer>> answers = new LinkedHashMap<>();
 
-            for (BinaryInteraction interaction : binaryInteractions) {
+        for (String url : psicquicUrls) {
+            if (false == getServerStats(url).allowRequest()) {
+                logger.debug("Skip PSICQUIC server {}", url);
+                continue;
+            }
+            answers.put(url, fanOutExecutor.submit(new ServerQuery(url, interactions.keySet())));
+        }
 
-                String xref1 = null;
-                String xref2 = null;
+        ArrayList<String> answered = new ArrayList<>();
 
-                if (null == interaction.getInteractorA()) {
-                    continue;
-                }
+        // servers for which neither a success nor a failure is recorded
+        HashSet<String> pending = new HashSet<>(answers.keySet());
 
-                if (null == interaction.getInteractorB()) {
-                    continue;
+        for (Map.Entry<String, Future<ServerAnswer>> entry : answers.entrySet()) {
+            String url = entry.getKey();
+            PsicquicServerStats stats = getServerStats(url);
+
+            ServerAnswer answer;
+            try {
+                answer = entry.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                for (Future<ServerAnswer> future : answers.values()) {
+                    future.cancel(true);
+                }
+                // a cancelled query is not a failure of the server, but it
+                // must not keep its trial
+                for (String pendingUrl : pending) {
+                    getServerStats(pendingUrl).cancelTrial();
                 }
+                Thread.currentThread().interrupt();
+                throw new BridgesRemoteAccessException("PSICQUIC query interrupted");
+            } catch (TimeoutException | ExecutionException e) {
+                entry.getValue().cancel(true);
+                pending.remove(url);
+                if (stats.recordFailure()) {
+                    logger.warn("Skip PSICQUIC server {} for {} s: too many failures", url, PsicquicServerStats.OPEN_DURATION / 1000);
+                } else {
+                    logger.info("No answer from PSICQUIC server {}", url);
+                }
+                continue;
+            }
 
-                for (CrossReference xref : interaction.getInteractorA()
-                        .getIdentifiers()) {
-                    if (UniprotkbUtils.isUniprotAc(xref.getIdentifier())) {
-                        xref1 = xref.getIdentifier();
-                        break;
-                    }
+            stats.recordSuccess(answer.latency);
+            pending.remove(url);
+            answered.add(url);
+
+            for (Map.Entry<String, InteractionManager> serverInteractions : answer.interactions.entrySet()) {
+                InteractionManager manager = interactions.get(serverInteractions.getKey());
+                for (Interaction interaction : serverInteractions.getValue().getInteractions()) {
+                    manager.merge(interaction);
                 }
+            }
+        }
+
+        if (answered.isEmpty()) {
+            logger.warn("No PSICQUIC server answered: {}", StringUtils.join(interactions.keySet(), ", "));
+        }
+
+        return answered;
+    }
+
+    private static class ServerAnswer {
+
+        private final HashMap<String, InteractionManager> interactions;
 
-                for (CrossReference xref : interaction.getInteractorB()
-                        .getIdentifiers()) {
-                    if (UniprotkbUtils.isUniprotAc(xref.getIdentifier())) {
-                        xref2 = xref.getIdentifier();
-                        break;
+        private final long latency;
+
+        ServerAnswer(HashMap<String, InteractionManager> interactions, long latency) {
+            this.interactions = interactions;
+            this.latency = latency;
+        }
+    }
+
+    /**
+     * Query one server, in its own InteractionManagers.
+     */
+    private class ServerQuery implements Callable<ServerAnswer> {
+
+        private final String url;
+
+        private final ArrayList<String> acs;
+
+        ServerQuery(String url, Collection<String> acs) {
+            this.url = url;
+            this.acs = new ArrayList<>(acs);
+        }
+
+        @Override
+        public ServerAnswer call() throws BridgesRemoteAccessException {
+            long start = System.currentTimeMillis();
+
+            HashMap<String, InteractionManager> interactions = new HashMap<>();
+            for (String ac : acs) {
+                interactions.put(ac, new InteractionManager());
+            }
+
+            getInteractors(url, interactions);
+
+            return new ServerAnswer(interactions, System.currentTimeMillis() - start);
+        }
+    }
+
+    private void getInteractors(PsicquicClient client, String psicquicUrl, List<String> ids,
+            Map<String, InteractionManager> interactions) throws BridgesRemoteAccessException {
+
+        String query = "identifier:(" + StringUtils.join(ids, " OR ") + ")";
+
+        PsimiTabReader mitabReader = new PsimiTabReader();
+
+        HashSet<String> queriedIds = new HashSet<>(ids);
+
+        try {
+            int firstResult = 0;
+            int numberOfLines;
+
+            do {
+                numberOfLines = 0;
+
+                InputStream searchResult = client.getByQuery(query, PsicquicClient.MITAB25, firstResult, PAGE_SIZE);
+
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(searchResult, "UTF-8"))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.trim().isEmpty() || line.startsWith("#")) {
+                            continue;
+                        }
+
+                        numberOfLines++;
+
+                        BinaryInteraction binaryInteraction = mitabReader.readLine(line);
+                        Interaction interaction = getInteraction(binaryInteraction);
+
+                        if (interaction == null) {
+                            continue;
+                        }
+
+                        if (ids.size() == 1) {
+                            // the interaction may be with an alternative id
+                            interactions.get(ids.get(0)).merge(interaction);
+                            continue;
+                        }
+
+                        // the server may have matched a queried id that is
+                        // neither of the primary Uniprot ACs
+                        boolean first = true;
+                        for (String id : getQueriedIds(binaryInteraction, queriedIds)) {
+                            interactions.get(id).merge(first ? interaction : copy(interaction));
+                            first = false;
+                        }
                     }
                 }
 
-                if (xref1 == null || xref2 == null) {
+                firstResult += numberOfLines;
+
+            } while (numberOfLines == PAGE_SIZE);
+
+        } catch (IOException | PsimiTabException e) {
+            logger.error("Problem with psicquic server: {} : {}", psicquicUrl, query);
+            throw new BridgesRemoteAccessException("Problem with psicquic server: " + psicquicUrl + " : " + StringUtils.join(ids, ", "));
+        }
+    }
+
+    /**
+     * Queried ids found in the identifiers or alternative identifiers of the
+     * interactors, without isoform number.
+     *
+     * @param interaction
+     * @param ids
+     * @return
+     */
+    private static Collection<String> getQueriedIds(BinaryInteraction interaction, Collection<String> ids) {
+        HashSet<String> queriedIds = new HashSet<>();
+
+        for (Interactor interactor : Arrays.asList(interaction.getInteractorA(), interaction.getInteractorB())) {
+            ArrayList<CrossReference> xrefs = new ArrayList<>(interactor.getIdentifiers());
+            xrefs.addAll(interactor.getAlternativeIdentifiers());
+
+            for (CrossReference xref : xrefs) {
+                String id = xref.getIdentifier();
+
+                if (id == null) {
                     continue;
                 }
 
-                // Remove isoform number
-                if (xref1.matches(".*\\-[0-9]+")) {
-                    xref1 = xref1.split("-")[0];
+                if (id.matches(".*\\-[0-9]+")) {
+                    id = id.split("-")[0];
                 }
 
-                if (xref2.matches(".*\\-[0-9]+")) {
-                    xref2 = xref2.split("-")[0];
+                if (ids.contains(id)) {
+                    queriedIds.add(id);
                 }
+            }
+        }
 
-                String xref;
+        return queriedIds;
+    }
 
-                if (false == xref1.equals(id)) {
-                    xref = xref1;
-                } else if (false == xref2.equals(id)) {
-                    xref = xref2;
-                } else {
-                    // homodimer
-                    xref = xref2;
-                }
+    /**
+     * Interaction between the Uniprot ACs (without isoform) of the
+     * interactors.
+     *
+     * @param interaction
+     * @return null if one of the interactors has no Uniprot AC
+     */
+    public static Interaction getInteraction(BinaryInteraction interaction) {
+        String xref1 = null;
+        String xref2 = null;
 
-//				interactors.add(xref);
-                Interaction classifiedInteraction;
-                String key = xref1.compareTo(xref2) <= 0 ? xref1 + "#" + xref2 : xref2 + "#" + xref1;
+        if (null == interaction || null == interaction.getInteractorA()) {
+            return null;
+        }
 
-                if (interactions.containsKey(key)) {
-                    classifiedInteraction = interactions.get(key);
-                } else {
-                    classifiedInteraction = new Interaction(xref1, xref2);
-                    interactions.put(key, classifiedInteraction);
-                }
+        if (null == interaction.getInteractorB()) {
+            return null;
+        }
 
-                if (interaction.getInteractionTypes().isEmpty()) {
-                    String interactionType = UNSPECIFIED_TERM;
-                    classifiedInteraction.addType(interactionType);
-                } else {
-                    for (Object interactionTypeObject : interaction
-                            .getInteractionTypes()) {
+        for (CrossReference xref : interaction.getInteractorA()
+                .getIdentifiers()) {
+            if (UniprotkbUtils.isUniprotAc(xref.getIdentifier())) {
+                xref1 = xref.getIdentifier();
+                break;
+            }
+        }
 
-                        String interactionType = getNameFromObject(interactionTypeObject);
-                        classifiedInteraction.addType(interactionType);
-                    }
-                }
+        for (CrossReference xref : interaction.getInteractorB()
+                .getIdentifiers()) {
+            if (UniprotkbUtils.isUniprotAc(xref.getIdentifier())) {
+                xref2 = xref.getIdentifier();
+                break;
+            }
+        }
 
-                if (interaction.getDetectionMethods().isEmpty()) {
-                    String detectionMethod = UNSPECIFIED_TERM;
-                    classifiedInteraction.addMethod(detectionMethod);
-                } else {
-                    for (Object methodObject : interaction
-                            .getDetectionMethods()) {
-                        String detectionMethod = getNameFromObject(methodObject);
-                        classifiedInteraction.addMethod(detectionMethod);
-                    }
-                }
-                
-                
-                for (Object bibRef : interaction.getPublications()) {
-                    String pmid = getPmidsFromObject(bibRef);
-                    if (pmid != null) {
-                        classifiedInteraction.addBibRef(pmid);
-                    }
-                }
+        if (xref1 == null || xref2 == null) {
+            return null;
+        }
+
+        // Remove isoform number
+        if (xref1.matches(".*\\-[0-9]+")) {
+            xref1 = xref1.split("-")[0];
+        }
+
+        if (xref2.matches(".*\\-[0-9]+")) {
+            xref2 = xref2.split("-")[0];
+        }
+
+        Interaction classifiedInteraction = new Interaction(xref1, xref2);
 
+        if (interaction.getInteractionTypes().isEmpty()) {
+            String interactionType = UNSPECIFIED_TERM;
+            classifiedInteraction.addType(interactionType);
+        } else {
+            for (Object interactionTypeObject : interaction
+                    .getInteractionTypes()) {
+
+                String interactionType = getNameFromObject(interactionTypeObject);
+                classifiedInteraction.addType(interactionType);
+            }
+        }
+
+        if (interaction.getDetectionMethods().isEmpty()) {
+            String detectionMethod = UNSPECIFIED_TERM;
+            classifiedInteraction.addMethod(detectionMethod);
+        } else {
+            for (Object methodObject : interaction
+                    .getDetectionMethods()) {
+                String detectionMethod = getNameFromObject(methodObject);
+                classifiedInteraction.addMethod(detectionMethod);
             }
-        } catch (IOException | PsimiTabException e) {
-            logger.error("Problem with psicquic server: {0} : {1}", new Object[]{psicquicUrl, id});
-            throw new BridgesRemoteAccessException("Problem with psicquic server: " + psicquicUrl + " : " + id);
         }
 
-        return interactions.values();
+        for (Object bibRef : interaction.getPublications()) {
+            String pmid = getPmidsFromObject(bibRef);
+            if (pmid != null) {
+                classifiedInteraction.addBibRef(pmid);
+            }
+        }
+
+        return classifiedInteraction;
+    }
+
+    /**
+     * Merge an interaction in the InteractionManager of its interactors.
+     *
+     * @param interaction
+     * @param interactions key: Uniprot AC, value: manager in which the
+     * interactions of the protein are merged
+     */
+    public static void merge(Interaction interaction, Map<String, InteractionManager> interactions) {
+        if (interactions.containsKey(interaction.getAc1())) {
+            interactions.get(interaction.getAc1()).merge(interaction);
+            if (false == interaction.isHomodimer() && interactions.containsKey(interaction.getAc2())) {
+                interactions.get(interaction.getAc2()).merge(copy(interaction));
+            }
+        } else if (interactions.containsKey(interaction.getAc2())) {
+            interactions.get(interaction.getAc2()).merge(interaction);
+        }
+    }
+
+    private static Interaction copy(Interaction interaction) {
+        Interaction copy = new Interaction(interaction.getAc1(), interaction.getAc2());
+        copy.addTypes(interaction.getInteractionTypes());
+        copy.addMethods(interaction.getMethods());
+        copy.addBibRefs(interaction.getBibRefs());
+        return copy;
     }
 
     /**
@@ -276,22 +625,12 @@ public class PsicquicUtils {
 
         ArrayList<PsicquicService> services = new ArrayList<>();
 
-        try {
-            URL url = new URL(registryUrl);
-
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("Accept", "application/xml");
-
-            if (conn.getResponseCode() != 200) {
-                throw new BridgesRemoteAccessException("Failed : HTTP error code : "
-                        + conn.getResponseCode());
-            }
+        try (InputStream is = HttpTransport.getInstance().get(registryUrl, "application/xml")) {
 
             DocumentBuilderFactory dbFactory = DocumentBuilderFactory
                     .newInstance();
             DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(conn.getInputStream());
+            Document doc = dBuilder.parse(is);
 
             // optional, but recommended
             // read this -
@@ -0,0 +1,450 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.bridges.uniprot;
+
+import it.iit.genomics.cru.structures.model.MoleculeEntry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.HashMultimap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * Uniprot entries stored on disk, so that the identifiers already resolved in
+ * a previous session are not sent again to Uniprot.
+ *
+ * There is one file per taxid, in which the serialized entries are appended
+ * together with the identifiers (Uniprot AC, gene name, RefSeq, Ensembl gene)
+ * they can be retrieved by. Only the identifiers and the position of the
+ * entries are kept in memory. Entries older than the time to live are
+ * ignored, and the file is compacted when it contains mostly outdated
+ * entries.
+ */
+public class UniprotEntryStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(UniprotEntryStore.class);
+
+    /**
+     * Version of the file format, change it if the format or the model
+     * classes change.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Default time to live of the entries: 30 days
+     */
+    public static final long DEFAULT_TTL = TimeUnit.DAYS.toMillis(30);
+
+    private static final int MAGIC = 0x4D495550;
+
+    private static final int HEADER_LENGTH = 8;
+
+    private static final String EXTENSION = ".entries";
+
+    private final File file;
+
+    private final long ttl;
+
+    /**
+     * Identifier (upper case) to Uniprot ACs
+     */
+    private final HashMultimap<String, String> keys = HashMultimap.create();
+
+    /**
+     * Uniprot AC to the last record of the entry
+     */
+    private final HashMap<String, Record> records = new HashMap<>();
+
+    /**
+     * Number of records in the file that are outdated or replaced by a more
+     * recent one
+     */
+    private int deadRecords = 0;
+
+    private static class Record {
+
+        private final long offset;
+
+        private final long timestamp;
+
+        private final ArrayList<String> keys;
+
+        Record(long offset, long timestamp, ArrayList<String> keys) {
+            this.offset = offset;
+            this.timestamp = timestamp;
+            this.keys = keys;
+        }
+    }
+
+    /**
+     *
+     * @param cacheDir
+     * @param taxid
+     */
+    public UniprotEntryStore(String cacheDir, String taxid) {
+        this(cacheDir, taxid, DEFAULT_TTL);
+    }
+
+    /**
+     *
+     * @param cacheDir
+     * @param taxid
+     * @param ttl time to live of the entries in milliseconds
+     */
+    public UniprotEntryStore(String cacheDir, String taxid, long ttl) {
+        this.file = new File(new File(cacheDir, "uniprot-v" + VERSION), taxid + EXTENSION);
+        this.ttl = ttl;
+        load();
+    }
+
+    /**
+     *
+     * @return
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     *
+     * @param key identifier, upper case
+     * @return true if entries are stored for this identifier
+     */
+    public synchronized boolean contains(String key) {
+        for (String ac : keys.get(key)) {
+            if (isValid(records.get(ac))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     *
+     * @param key identifier, upper case
+     * @return the entries stored for this identifier, empty if none
+     */
+    public synchronized Collection<MoleculeEntry> get(String key) {
+        if (false == keys.containsKey(key)) {
+            return Collections.emptyList();
+        }
+
+        ArrayList<MoleculeEntry> entries = new ArrayList<>();
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            for (String ac : new ArrayList<>(keys.get(key))) {
+                Record record = records.get(ac);
+                if (false == isValid(record)) {
+                    continue;
+                }
+
+                MoleculeEntry entry = read(raf, record);
+                if (entry == null) {
+                    remove(ac);
+                } else {
+                    entries.add(entry);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot read Uniprot entries from " + file, e);
+            return Collections.emptyList();
+        }
+
+        return entries;
+    }
+
+    /**
+     * Store an entry, replacing the previous version.
+     *
+     * @param entry
+     * @param entryKeys identifiers of the entry, upper case
+     */
+    public synchronized void put(MoleculeEntry entry, Collection<String> entryKeys) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(payload)) {
+                out.writeObject(entry);
+            }
+
+            ArrayList<String> recordKeys = new ArrayList<>(entryKeys);
+            long timestamp = System.currentTimeMillis();
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeLong(timestamp);
+                out.writeUTF(entry.getUniprotAc());
+                out.writeInt(recordKeys.size());
+                for (String key : recordKeys) {
+                    out.writeUTF(key);
+                }
+                out.writeInt(payload.size());
+                payload.writeTo(out);
+            }
+
+            File directory = file.getParentFile();
+            if (false == directory.exists() && false == directory.mkdirs()) {
+                throw new IOException("Cannot create " + directory);
+            }
+
+            if (false == file.exists() || file.length() < HEADER_LENGTH) {
+                writeHeader(file);
+            }
+
+            long offset = file.length();
+
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+                out.writeInt(bytes.size());
+                bytes.writeTo(out);
+            }
+
+            add(entry.getUniprotAc(), new Record(offset, timestamp, recordKeys));
+        } catch (IOException e) {
+            logger.warn("Cannot store Uniprot entry " + entry.getUniprotAc(), e);
+        }
+    }
+
+    /**
+     *
+     * @return number of entries in the store
+     */
+    public synchronized int size() {
+        return records.size();
+    }
+
+    private boolean isValid(Record record) {
+        return record != null && System.currentTimeMillis() - record.timestamp < ttl;
+    }
+
+    private void add(String ac, Record record) {
+        if (records.containsKey(ac)) {
+            remove(ac);
+        }
+        records.put(ac, record);
+        for (String key : record.keys) {
+            keys.put(key, ac);
+        }
+    }
+
+    private void remove(String ac) {
+        Record record = records.remove(ac);
+        if (record != null) {
+            for (String key : record.keys) {
+                keys.remove(key, ac);
+            }
+            deadRecords++;
+        }
+    }
+
+    private void writeHeader(File headerFile) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(headerFile))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+    }
+
+    /**
+     * Read the identifiers of all records, skipping the entries.
+     */
+    private void load() {
+        if (false == file.exists()) {
+            return;
+        }
+
+        long validLength = HEADER_LENGTH;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < HEADER_LENGTH || raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+                logger.warn("Ignore Uniprot entries stored with another version: " + file);
+                raf.setLength(0);
+                return;
+            }
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(raf.getChannel().position(HEADER_LENGTH)), 1 << 16));
+
+            long offset = HEADER_LENGTH;
+            long length = raf.length();
+
+            while (offset + 4 <= length) {
+                int recordLength = in.readInt();
+
+                if (recordLength <= 0 || offset + 4 + recordLength > length) {
+                    // interrupted write
+                    break;
+                }
+
+                long timestamp = in.readLong();
+                String ac = in.readUTF();
+                int numberOfKeys = in.readInt();
+                ArrayList<String> recordKeys = new ArrayList<>(numberOfKeys);
+                for (int i = 0; i < numberOfKeys; i++) {
+                    recordKeys.add(in.readUTF());
+                }
+                int payloadLength = in.readInt();
+                skip(in, payloadLength);
+
+                Record record = new Record(offset, timestamp, recordKeys);
+                if (isValid(record)) {
+                    add(ac, record);
+                } else {
+                    deadRecords++;
+                }
+
+                offset += 4 + recordLength;
+                validLength = offset;
+            }
+
+            if (validLength < length) {
+                logger.warn("Truncate incomplete Uniprot entry in " + file);
+                raf.setLength(validLength);
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot read Uniprot entries from " + file, e);
+            keys.clear();
+            records.clear();
+            file.delete();
+            return;
+        }
+
+        if (deadRecords > records.size()) {
+            compact();
+        }
+    }
+
+    private static void skip(DataInputStream in, int n) throws IOException {
+        int skipped = 0;
+        while (skipped < n) {
+            int s = in.skipBytes(n - skipped);
+            if (s <= 0) {
+                throw new EOFException();
+            }
+            skipped += s;
+        }
+    }
+
+    /**
+     * Rewrite the file with the valid records only.
+     */
+    private void compact() {
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+
+        HashMap<String, Record> compacted = new HashMap<>();
+
+        try {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+
+                long offset = HEADER_LENGTH;
+                for (String ac : records.keySet()) {
+                    Record record = records.get(ac);
+                    raf.seek(record.offset);
+                    byte[] bytes = new byte[4 + raf.readInt()];
+                    raf.seek(record.offset);
+                    raf.readFully(bytes);
+                    out.write(bytes);
+
+                    compacted.put(ac, new Record(offset, record.timestamp, record.keys));
+                    offset += bytes.length;
+                }
+            }
+
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+            logger.info("Compacted Uniprot entries in " + file + ": " + deadRecords + " outdated records removed");
+
+            records.putAll(compacted);
+            deadRecords = 0;
+        } catch (IOException e) {
+            logger.warn("Cannot compact Uniprot entries in " + file, e);
+        } finally {
+            if (tmpFile.exists()) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    private MoleculeEntry read(RandomAccessFile raf, Record record) throws IOException {
+        raf.seek(record.offset);
+        byte[] bytes = new byte[raf.readInt()];
+        raf.readFully(bytes);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        in.readLong();
+        in.readUTF();
+        int numberOfKeys = in.readInt();
+        for (int i = 0; i < numberOfKeys; i++) {
+            in.readUTF();
+        }
+        in.readInt();
+
+        try (ObjectInputStream objectIn = new EntryInputStream(in)) {
+            return (MoleculeEntry) objectIn.readObject();
+        } catch (ClassNotFoundException | ClassCastException | IOException e) {
+            logger.warn("Cannot read stored Uniprot entry at " + record.offset + " in " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Resolve the classes with the class loader of the model, the default one
+     * may not see them when running as a bundle.
+     */
+    private static class EntryInputStream extends ObjectInputStream {
+
+        EntryInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            try {
+                return Class.forName(desc.getName(), false, MoleculeEntry.class.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,334 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.bridges.uniprot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * Local copy of the Uniprot FASTA files (e.g. uniprot_sprot.fasta and
+ * uniprot_sprot_varsplic.fasta), used instead of the Uniprot web service to
+ * get the sequences of the isoforms. Only the position of each sequence is
+ * kept in memory, the index is built by buildIndex(), or the first time a
+ * sequence is requested.
+ *
+ * The index is two sorted arrays of primitives: the hash of the accession of
+ * each entry (without isoform suffix), and the file and offset of its
+ * sequences, so that it stays compact for TrEMBL-sized files. The accession
+ * is checked when the sequence is read, the hash collisions are skipped.
+ * Only the build of the index is synchronized, the sequences are read
+ * concurrently.
+ */
+public class UniprotFastaStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(UniprotFastaStore.class);
+
+    /**
+     * Only the beginning of the header is needed to get the accession
+     */
+    private static final int MAX_HEADER_LENGTH = 64;
+
+    private final File[] files;
+
+    /**
+     * Bits of the offset in a location, the file is in the upper bits
+     */
+    private static final int OFFSET_BITS = 48;
+
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    /**
+     * Hash of the Uniprot AC of each entry (without isoform suffix), sorted
+     */
+    private long[] keys;
+
+    /**
+     * File and offset of the sequence of each key, sorted by file and offset
+     * for the same key
+     */
+    private long[] locations;
+
+    private int size = 0;
+
+    private volatile boolean indexed = false;
+
+    /**
+     *
+     * @param path a FASTA file, or a directory containing FASTA files
+     */
+    public UniprotFastaStore(String path) {
+        File file = new File(path);
+
+        if (file.isDirectory()) {
+            File[] fastaFiles = file.listFiles();
+            ArrayList<File> selected = new ArrayList<>();
+            if (fastaFiles != null) {
+                for (File fastaFile : fastaFiles) {
+                    String name = fastaFile.getName().toLowerCase();
+                    if (fastaFile.isFile() && (name.endsWith(".fasta") || name.endsWith(".fa"))) {
+                        selected.add(fastaFile);
+                    }
+                }
+            }
+            files = selected.toArray(new File[selected.size()]);
+            Arrays.sort(files);
+        } else {
+            files = new File[]{file};
+        }
+    }
+
+    /**
+     * Sequences of all the isoforms of an entry, in the order of the files.
+     *
+     * @param uniprotAc
+     * @return isoform accession to sequence, or null if the entry is not in
+     * the local files
+     */
+    public LinkedHashMap<String, String> getSequences(String uniprotAc) {
+        if (false == indexed) {
+            buildIndex();
+        }
+
+        long key = hash(uniprotAc);
+
+        // first location of the key
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        LinkedHashMap<String, String> sequences = new LinkedHashMap<>();
+
+        for (int i = low; i < size && keys[i] == key; i++) {
+            File file = files[(int) (locations[i] >>> OFFSET_BITS)];
+
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                raf.seek(locations[i] & OFFSET_MASK);
+                BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        Channels.newInputStream(raf.getChannel()), StandardCharsets.US_ASCII));
+
+                String id = getAccession(reader.readLine().substring(1));
+
+                if (false == uniprotAc.equals(getEntryAccession(id))) {
+                    // other entry with the same hash
+                    continue;
+                }
+
+                StringBuilder sequence = new StringBuilder();
+                String line;
+                while ((line = reader.readLine()) != null && false == line.startsWith(">")) {
+                    sequence.append(line.trim());
+                }
+
+                sequences.put(id, sequence.toString());
+            } catch (IOException e) {
+                logger.error("Cannot read the sequences of " + uniprotAc + " in " + file, e);
+                return null;
+            }
+        }
+
+        if (sequences.isEmpty()) {
+            return null;
+        }
+
+        return sequences;
+    }
+
+    /**
+     * Index the files, if it is not already done. Called by the first
+     * getSequences(), or before to open the store in background.
+     */
+    public synchronized void buildIndex() {
+        if (indexed) {
+            return;
+        }
+
+        keys = new long[1 << 16];
+        locations = new long[keys.length];
+
+        for (int i = 0; i < files.length; i++) {
+            try (InputStream is = new BufferedInputStream(new FileInputStream(files[i]), 1 << 16)) {
+                long offset = 0;
+                long headerOffset = 0;
+                boolean lineStart = true;
+                StringBuilder header = null;
+
+                int b;
+                while ((b = is.read()) != -1) {
+                    if (lineStart && b == '>') {
+                        header = new StringBuilder();
+                        headerOffset = offset;
+                    } else if (header != null) {
+                        if (b == '\n' || b == '\r') {
+                            addToIndex(header.toString(), i, headerOffset);
+                            header = null;
+                        } else if (header.length() < MAX_HEADER_LENGTH) {
+                            header.append((char) b);
+                        }
+                    }
+                    lineStart = b == '\n';
+                    offset++;
+                }
+
+                if (header != null) {
+                    addToIndex(header.toString(), i, headerOffset);
+                }
+            } catch (IOException e) {
+                logger.error("Cannot index FASTA file " + files[i], e);
+            }
+        }
+
+        sort(0, size - 1);
+
+        // the fields are published by the volatile write
+        indexed = true;
+
+        logger.info("Uniprot FASTA store: " + size + " sequences in " + files.length + " files");
+    }
+
+    private void addToIndex(String header, int file, long offset) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            locations = Arrays.copyOf(locations, size * 2);
+        }
+
+        keys[size] = hash(getEntryAccession(getAccession(header)));
+        locations[size] = ((long) file << OFFSET_BITS) | offset;
+        size++;
+    }
+
+    /**
+     * Sort the keys and locations by key then location (quicksort on the two
+     * arrays)
+     */
+    private void sort(int from, int to) {
+        while (from < to) {
+            if (to - from < 16) {
+                for (int i = from + 1; i <= to; i++) {
+                    for (int j = i; j > from && compare(j - 1, j) > 0; j--) {
+                        swap(j - 1, j);
+                    }
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            long pivotKey = keys[middle];
+            long pivotLocation = locations[middle];
+
+            int i = from;
+            int j = to;
+            while (i <= j) {
+                while (keys[i] < pivotKey || (keys[i] == pivotKey && locations[i] < pivotLocation)) {
+                    i++;
+                }
+                while (keys[j] > pivotKey || (keys[j] == pivotKey && locations[j] > pivotLocation)) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            // recurse on the smaller part
+            if (j - from < to - i) {
+                sort(from, j);
+                from = i;
+            } else {
+                sort(i, to);
+                to = j;
+            }
+        }
+    }
+
+    private int compare(int i, int j) {
+        if (keys[i] != keys[j]) {
+            return keys[i] < keys[j] ? -1 : 1;
+        }
+        return Long.compare(locations[i], locations[j]);
+    }
+
+    private void swap(int i, int j) {
+        long key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+
+        long location = locations[i];
+        locations[i] = locations[j];
+        locations[j] = location;
+    }
+
+    /**
+     * 64 bits FNV-1a hash of an accession
+     */
+    static long hash(String accession) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < accession.length(); i++) {
+            hash ^= accession.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Accession of the entry of an isoform, e.g. P04637 for P04637-2
+     */
+    private static String getEntryAccession(String accession) {
+        int isoform = accession.indexOf('-');
+        return isoform < 0 ? accession : accession.substring(0, isoform);
+    }
+
+    /**
+     * Accession from a Uniprot FASTA header (without '&gt;'), e.g.
+     * sp|P04637-2|P53_HUMAN Isoform 2 of Cellular tumor antigen p53
+     *
+     * @param header
+     * @return
+     */
+    static String getAccession(String header) {
+        String[] fields = header.split("\\|");
+        if (fields.length > 2) {
+            return fields[1];
+        }
+        return header.split("\\s")[0];
+    }
+
+}
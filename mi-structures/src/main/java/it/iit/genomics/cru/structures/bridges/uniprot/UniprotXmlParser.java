@@ -0,0 +1,483 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.bridges.uniprot;
+
+import it.iit.genomics.cru.structures.model.ChainMapping;
+import it.iit.genomics.cru.structures.model.ModifiedResidue;
+import it.iit.genomics.cru.structures.model.MoleculeEntry;
+import it.iit.genomics.cru.structures.model.position.UniprotPosition;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * Streaming parser of the Uniprot XML format: entries are returned one at a
+ * time while the stream is read, only the current entry is kept in memory.
+ *
+ * The elements of an entry are collected while reading it and added to the
+ * MoleculeEntry at the end of the entry, in the same order as the former DOM
+ * parser (e.g. the sequence is set after the PDB chains).
+ */
+public class UniprotXmlParser implements Closeable {
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private final XMLStreamReader reader;
+
+    /**
+     * Elements of the current entry
+     */
+    private static class EntryData {
+
+        private String dataset;
+
+        private String accession = null;
+
+        private final ArrayList<String[]> organismNames = new ArrayList<>();
+
+        private String taxid = null;
+
+        private final ArrayList<String> geneNames = new ArrayList<>();
+
+        /**
+         * Modified residues: description and position, a null position
+         * marks the start of a feature
+         */
+        private final ArrayList<Object[]> modifications = new ArrayList<>();
+
+        private final ArrayList<DbReference> dbReferences = new ArrayList<>();
+
+        private final ArrayList<String> sequences = new ArrayList<>();
+
+        private final ArrayList<String> diseases = new ArrayList<>();
+    }
+
+    /**
+     * dbReference directly in the entry
+     */
+    private static class DbReference {
+
+        private final String type;
+
+        private final String id;
+
+        /**
+         * type and value
+         */
+        private final ArrayList<String[]> properties = new ArrayList<>();
+
+        private final ArrayList<String> molecules = new ArrayList<>();
+
+        DbReference(String type, String id) {
+            this.type = type;
+            this.id = id;
+        }
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+
+    /**
+     *
+     * @param is
+     * @throws XMLStreamException
+     */
+    public UniprotXmlParser(InputStream is) throws XMLStreamException {
+        synchronized (FACTORY) {
+            reader = FACTORY.createXMLStreamReader(is);
+        }
+    }
+
+    /**
+     *
+     * @return the next entry, or null at the end of the stream
+     * @throws XMLStreamException
+     */
+    public MoleculeEntry next() throws XMLStreamException {
+        while (reader.hasNext()) {
+            if (reader.next() == XMLStreamConstants.START_ELEMENT
+                    && "entry".equals(reader.getLocalName())) {
+                return readEntry();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            // nothing to do
+        }
+    }
+
+    /**
+     * Empty string if the attribute is missing, as in the DOM.
+     */
+    private String getAttribute(String name) {
+        String value = reader.getAttributeValue(null, name);
+        return value == null ? "" : value;
+    }
+
+    private boolean hasAttribute(String name) {
+        return reader.getAttributeValue(null, name) != null;
+    }
+
+    private MoleculeEntry readEntry() throws XMLStreamException {
+        EntryData entry = new EntryData();
+        entry.dataset = getAttribute("dataset");
+
+        // depth relative to the entry: its children are at depth 1
+        int depth = 0;
+
+        boolean organismRead = false;
+        int organismDepth = -1;
+        int geneDepth = -1;
+        int diseaseDepth = -1;
+        int locationDepth = -1;
+        String modification = null;
+        DbReference dbReference = null;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                if (depth == 0) {
+                    // end of the entry
+                    return getMoleculeEntry(entry);
+                }
+
+                if (depth == organismDepth) {
+                    organismDepth = -1;
+                } else if (depth == geneDepth) {
+                    geneDepth = -1;
+                } else if (depth == diseaseDepth) {
+                    diseaseDepth = -1;
+                } else if (depth == locationDepth) {
+                    locationDepth = -1;
+                }
+
+                if (depth == 1) {
+                    modification = null;
+                    dbReference = null;
+                }
+
+                depth--;
+                continue;
+            }
+
+            if (event != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+
+            depth++;
+            String name = reader.getLocalName();
+
+            switch (name) {
+                case "accession":
+                    if (entry.accession == null) {
+                        entry.accession = readText(depth);
+                        depth--;
+                    }
+                    break;
+                case "organism":
+                    if (false == organismRead) {
+                        organismRead = true;
+                        organismDepth = depth;
+                    }
+                    break;
+                case "gene":
+                    if (geneDepth == -1) {
+                        geneDepth = depth;
+                    }
+                    break;
+                case "disease":
+                    if (diseaseDepth == -1) {
+                        diseaseDepth = depth;
+                    }
+                    break;
+                case "name":
+                    if (organismDepth != -1) {
+                        String type = getAttribute("type");
+                        entry.organismNames.add(new String[]{type, readText(depth)});
+                        depth--;
+                    } else if (geneDepth != -1) {
+                        entry.geneNames.add(readText(depth));
+                        depth--;
+                    } else if (diseaseDepth != -1) {
+                        entry.diseases.add(readText(depth));
+                        depth--;
+                    }
+                    break;
+                case "dbReference":
+                    if (organismDepth != -1) {
+                        if (hasAttribute("type") && "NCBI Taxonomy".equals(getAttribute("type"))) {
+                            entry.taxid = getAttribute("id");
+                        }
+                    } else if (depth == 1) {
+                        dbReference = new DbReference(reader.getAttributeValue(null, "type"), getAttribute("id"));
+                        entry.dbReferences.add(dbReference);
+                    }
+                    break;
+                case "property":
+                    if (dbReference != null) {
+                        dbReference.properties.add(new String[]{reader.getAttributeValue(null, "type"), getAttribute("value")});
+                    }
+                    break;
+                case "molecule":
+                    if (dbReference != null) {
+                        dbReference.molecules.add(getAttribute("id"));
+                    }
+                    break;
+                case "feature":
+                    if (depth == 1 && hasAttribute("type") && "modified residue".equals(getAttribute("type"))) {
+                        modification = getAttribute("description").split(";")[0];
+                        entry.modifications.add(new Object[]{modification, null});
+                    }
+                    break;
+                case "location":
+                    if (modification != null && locationDepth == -1) {
+                        locationDepth = depth;
+                    }
+                    break;
+                case "position":
+                    if (modification != null && locationDepth != -1) {
+                        entry.modifications.add(new Object[]{modification,
+                            Integer.parseInt(getAttribute("position"))});
+                    }
+                    break;
+                case "sequence":
+                    if (depth == 1) {
+                        entry.sequences.add(readText(depth));
+                        depth--;
+                    }
+                    break;
+                default:
+            }
+        }
+
+        throw new XMLStreamException("Unexpected end of the stream in entry " + entry.accession);
+    }
+
+    /**
+     * Read the text of the current element, including the text of its
+     * children, up to its end.
+     */
+    private String readText(int depth) throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        int level = 0;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+                text.append(reader.getText());
+            } else if (event == XMLStreamConstants.START_ELEMENT) {
+                level++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (level == 0) {
+                    return text.toString();
+                }
+                level--;
+            }
+        }
+
+        throw new XMLStreamException("Unexpected end of the stream at depth " + depth);
+    }
+
+    private MoleculeEntry getMoleculeEntry(EntryData entry) {
+        String ac = entry.accession;
+
+        MoleculeEntry uniprotEntry = new MoleculeEntry(ac);
+
+        uniprotEntry.setDataset(entry.dataset);
+
+        // Taxid
+        String organismCommonName = null;
+        String organismScientificName = null;
+        String organismOtherName = null;
+
+        for (String[] organismName : entry.organismNames) {
+            switch (organismName[0]) {
+                case "scientific":
+                    organismScientificName = organismName[1];
+                    break;
+                case "common":
+                    organismCommonName = organismName[1];
+                    break;
+                default:
+                    organismOtherName = organismName[1];
+                    break;
+            }
+        }
+
+        if (null != organismCommonName) {
+            uniprotEntry.setOrganism(organismCommonName);
+        } else if (null != organismScientificName) {
+            uniprotEntry.setOrganism(organismScientificName);
+        } else if (null != organismOtherName) {
+            uniprotEntry.setOrganism(organismOtherName);
+        }
+
+        if (entry.taxid != null) {
+            uniprotEntry.setTaxid(entry.taxid);
+        }
+
+        // GENE
+        for (String geneName : entry.geneNames) {
+            uniprotEntry.addGeneName(geneName);
+        }
+
+        // modified residues
+        HashMap<String, ModifiedResidue> modifiedResidues = new HashMap<>();
+
+        for (Object[] modification : entry.modifications) {
+            String description = (String) modification[0];
+            if (false == modifiedResidues.containsKey(description)) {
+                modifiedResidues.put(description, new ModifiedResidue(description));
+            }
+            if (modification[1] != null) {
+                modifiedResidues.get(description).addPosition(new UniprotPosition((Integer) modification[1]));
+            }
+        }
+
+        uniprotEntry.getModifications().addAll(modifiedResidues.values());
+
+        // Xrefs:
+        for (DbReference dbReference : entry.dbReferences) {
+            if ("Ensembl".equals(dbReference.type)) {
+                addEnsembl(uniprotEntry, dbReference);
+            } else if ("RefSeq".equals(dbReference.type)) {
+                addRefseq(uniprotEntry, dbReference, ac);
+            } else if ("PDB".equals(dbReference.type)) {
+                addPdb(uniprotEntry, dbReference);
+            }
+        }
+
+        // Sequence
+        for (String sequence : entry.sequences) {
+            uniprotEntry.setSequence(sequence.replaceAll("\n", ""));
+        }
+
+        // Diseases
+        for (String disease : entry.diseases) {
+            uniprotEntry.addDisease(disease);
+        }
+
+        return uniprotEntry;
+    }
+
+    private void addEnsembl(MoleculeEntry uniprotEntry, DbReference dbReference) {
+        // transcript ID
+        String id = dbReference.id;
+
+        for (String molecule : dbReference.molecules) {
+            uniprotEntry.addXrefToVarSplice(id, molecule);
+        }
+
+        uniprotEntry.addEnsemblGene(id);
+
+        for (String[] property : dbReference.properties) {
+            if ("gene ID".equals(property[0])) {
+                uniprotEntry.addEnsemblGene(property[1]);
+            }
+        }
+    }
+
+    private void addRefseq(MoleculeEntry uniprotEntry, DbReference dbReference, String ac) {
+        for (String[] property : dbReference.properties) {
+            if ("nucleotide sequence ID".equals(property[0])) {
+
+                String id = property[1];
+                if (dbReference.molecules.size() > 0) {
+                    for (String molecule : dbReference.molecules) {
+                        // If refseq, add also without the version
+                        uniprotEntry.addXrefToVarSplice(id, molecule);
+                        uniprotEntry.addXrefToVarSplice(id.split("\\.")[0], molecule);
+                    }
+                } else {
+                    // If refseq, add also without the version
+                    uniprotEntry.addXrefToVarSplice(id, ac);
+                    uniprotEntry.addXrefToVarSplice(id.split("\\.")[0], ac);
+                }
+
+                uniprotEntry.addRefseq(id);
+            }
+        }
+    }
+
+    private void addPdb(MoleculeEntry uniprotEntry, DbReference dbReference) {
+        String method = null;
+        String chains = null;
+
+        for (String[] property : dbReference.properties) {
+            if ("method".equals(property[0])) {
+                method = property[1];
+            } else if ("chains".equals(property[0])) {
+                chains = property[1];
+            }
+        }
+
+        if (method != null && "Model".equals(method)) {
+            return;
+        }
+
+        if (chains == null) {
+            return;
+        }
+
+        String pdb = dbReference.id;
+
+        uniprotEntry.addPDB(pdb, method);
+
+        for (String chainElement : chains.split(",")) {
+            try {
+                String chainNames = chainElement.split("=")[0];
+                int start = Integer.parseInt(chainElement
+                        .split("=")[1].trim().split("-")[0]);
+                int end = Integer.parseInt(chainElement
+                        .split("=")[1].trim().split("-")[1]
+                        .replace(".", ""));
+                for (String chainName : chainNames.split("/")) {
+                    uniprotEntry.addChain(
+                            pdb,
+                            new ChainMapping(pdb, chainName
+                                    .trim(), start, end),
+                            method);
+                }
+            } catch (ArrayIndexOutOfBoundsException aiobe) {
+                // skip chains that cannot be parsed
+            }
+        }
+    }
+
+}
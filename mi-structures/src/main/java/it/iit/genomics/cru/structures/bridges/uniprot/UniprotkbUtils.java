@@ -16,10 +16,9 @@
 package it.iit.genomics.cru.structures.bridges.uniprot;
 
 import it.iit.genomics.cru.structures.bridges.commons.BridgesRemoteAccessException;
+import it.iit.genomics.cru.structures.bridges.commons.HttpTransport;
 import it.iit.genomics.cru.structures.model.MoleculeEntry;
 import it.iit.genomics.cru.structures.model.ChainMapping;
-import it.iit.genomics.cru.structures.model.ModifiedResidue;
-import it.iit.genomics.cru.structures.model.position.UniprotPosition;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -32,29 +31,21 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
 
 import org.apache.commons.lang.StringUtils;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.client.params.ClientPNames;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.biojava.nbio.core.sequence.ProteinSequence;
 import org.biojava.nbio.core.sequence.io.FastaReaderHelper;
-import org.w3c.dom.DOMException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -79,12 +70,6 @@ public class UniprotkbUtils {
 
     private static final String TAXONOMY_TOOL = "taxonomy";
 
-    /**
-     * Number of time we will wait and retry in case of failure to communicate
-     * with Uniprot
-     */
-    private static int allowedUniprotFailures = 10;
-
     /**
      * Maximum number of query (gene names, uniprot acc.) sent in a single
      * request
@@ -95,6 +80,34 @@ public class UniprotkbUtils {
 
     private static final HashMap<String, UniprotkbUtils> instances = new HashMap<>();
 
+    /**
+     * Maximum number of entries for which the isoform sequences are retrieved
+     * in a single request
+     */
+    private final static int FASTA_BATCH_SIZE = 50;
+
+    /**
+     * Maximum number of concurrent requests for isoform sequences
+     */
+    private final static int FASTA_THREADS = 4;
+
+    private static final ExecutorService fastaExecutor = Executors.newFixedThreadPool(FASTA_THREADS, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "uniprot-fasta");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private static UniprotFastaStore fastaStore = null;
+
+    private static String cacheDir = null;
+
+    private UniprotEntryStore entryStore = null;
+
+    private String entryStoreDir = null;
+
     private UniprotkbUtils(String taxid) {
         this.taxid = taxid;
     }
@@ -104,437 +117,277 @@ public class UniprotkbUtils {
      * @param taxid
      * @return
      */
-    public static UniprotkbUtils getInstance(String taxid) {
+    public static synchronized UniprotkbUtils getInstance(String taxid) {
         if (instances.get(taxid) == null) {
             instances.put(taxid, new UniprotkbUtils(taxid));
         }
         return instances.get(taxid);
     }
 
-    private final String USER_AGENT = "Mozilla/5.0";
-
     private Collection<MoleculeEntry> getUniprotEntriesXML(String location) throws BridgesRemoteAccessException {
-        return getUniprotEntriesXML(location, true);
-    }
-
-    private Collection<MoleculeEntry> getUniprotEntriesXML(String location,
-            boolean waitAndRetryOnFailure) throws BridgesRemoteAccessException {
 
         String url = location + "&format=xml";
 
         ArrayList<MoleculeEntry> uniprotEntries = new ArrayList<>();
-        try {
-            HttpClient client = new DefaultHttpClient();
-            client.getParams().setParameter(
-                    ClientPNames.ALLOW_CIRCULAR_REDIRECTS, Boolean.TRUE);
-            HttpGet request = new HttpGet(url);
 
-            // add request header
-            request.addHeader("User-Agent", USER_AGENT);
+        // isoform sequences are downloaded while the XML is parsed
+        ArrayList<Future<?>> fastaTasks = new ArrayList<>();
 
-            HttpResponse response = client.execute(request);
+        // failed requests are retried by the transport
+        try (InputStream is = HttpTransport.getInstance().get(url)) {
 
-            if (response.getEntity().getContentLength() == 0) {
-                // No result
-                return uniprotEntries;
-            }
-
-            DocumentBuilderFactory dbFactory = DocumentBuilderFactory
-                    .newInstance();
-            DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(new InputSource(response.getEntity()
-                    .getContent()));
-
-            // optional, but recommended
-            // read this -
-            // http://stackoverflow.com/questions/13786607/normalization-in-dom-parsing-with-java-how-does-it-work
-            doc.getDocumentElement().normalize();
-
-            // interaction structure
-            NodeList entryList = doc.getElementsByTagName("entry");
-
-            for (int i = 0; i < entryList.getLength(); i++) {
-
-                Element entryElement = (Element) entryList.item(i);
-
-                
-                String dataset = entryElement.getAttribute("dataset");
-                
-                String ac = entryElement.getElementsByTagName("accession")
-                        .item(0).getFirstChild().getNodeValue();
-
-                MoleculeEntry uniprotEntry = new MoleculeEntry(ac);
-                
-                uniprotEntry.setDataset(dataset);
-
-                // Taxid
-                Element organism = (Element) entryElement.getElementsByTagName(
-                        "organism").item(0);
-
-                String organismCommonName = null;
-                String organismScientificName = null;
-                String organismOtherName = null;
-
-                NodeList organismNames = organism
-                        .getElementsByTagName("name");
-
-                for (int j = 0; j < organismNames.getLength(); j++) {
-
-                    Element reference = (Element) organismNames.item(j);
-                    switch (reference.getAttribute("type")) {
-                        case "scientific":
-                            organismScientificName = reference.getTextContent();
-                            break;
-                        case "common":
-                            organismCommonName = reference.getTextContent();
-                            break;
-                        default:
-                            organismOtherName = reference.getTextContent();
-                            break;
-                    }
-                }
-
-                if (null != organismCommonName) {
-                    uniprotEntry.setOrganism(organismCommonName);
-                } else if (null != organismScientificName) {
-                    uniprotEntry.setOrganism(organismScientificName);
-                } else if (null != organismOtherName) {
-                    uniprotEntry.setOrganism(organismOtherName);
-                }
-
-                NodeList organismReferences = organism
-                        .getElementsByTagName("dbReference");
-
-                for (int j = 0; j < organismReferences.getLength(); j++) {
-                    Element reference = (Element) organismReferences.item(j);
-                    if (reference.hasAttribute("type")
-                            && "NCBI Taxonomy".equals(reference
-                                    .getAttribute("type"))) {
-                        String proteinTaxid = reference.getAttribute("id");
-                        uniprotEntry.setTaxid(proteinTaxid);
-                    }
-                }
-
-                // GENE
-                NodeList geneNames = entryElement.getElementsByTagName("gene");
-
-                for (int j = 0; j < geneNames.getLength(); j++) {
-                    Element gene = (Element) geneNames.item(j);
+            ArrayList<MoleculeEntry> batch = new ArrayList<>();
 
-                    NodeList nameList = gene.getElementsByTagName("name");
-
-                    for (int k = 0; k < nameList.getLength(); k++) {
-                        Element name = (Element) nameList.item(k);
-                        uniprotEntry.addGeneName(name.getFirstChild()
-                                .getNodeValue());
+            try (UniprotXmlParser parser = new UniprotXmlParser(is)) {
+                MoleculeEntry uniprotEntry;
+                while ((uniprotEntry = parser.next()) != null) {
+                    uniprotEntries.add(uniprotEntry);
+                    batch.add(uniprotEntry);
+                    if (batch.size() == FASTA_BATCH_SIZE) {
+                        fastaTasks.add(submitIsoformSequences(batch));
+                        batch = new ArrayList<>();
                     }
                 }
+            } catch (XMLStreamException se) {
+                // Nothing (more) was returned, e.g. an empty response
+                logger.debug("Cannot parse Uniprot result: " + url + ", " + uniprotEntries.size() + " entries read");
+            }
 
-                // modified residues
-                HashMap<String, ModifiedResidue> modifiedResidues = new HashMap<>();
-
-                NodeList features = entryElement
-                        .getElementsByTagName("feature");
-                for (int j = 0; j < features.getLength(); j++) {
-                    Element feature = (Element) features.item(j);
-
-                    if (false == entryElement.equals(feature
-                            .getParentNode())) {
-                        continue;
-                    }
+            if (false == batch.isEmpty()) {
+                fastaTasks.add(submitIsoformSequences(batch));
+            }
 
-                    // ensembl
-                    if (feature.hasAttribute("type")
-                            && "modified residue".equals(feature
-                                    .getAttribute("type"))) {
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            logger.error("Problem with Uniprot: " +  url);
+            throw new BridgesRemoteAccessException("Fail to retrieve data from Uniprot " + location);
+        }
 
-                        String description = feature
-                                .getAttribute("description").split(";")[0];
+        for (Future<?> task : fastaTasks) {
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BridgesRemoteAccessException("Interrupted while retrieving sequences from Uniprot " + location);
+            } catch (ExecutionException e) {
+                logger.error("Cannot retrieve fasta for " + location, e.getCause());
+            }
+        }
 
-                        if (false == modifiedResidues.containsKey(description)) {
-                            modifiedResidues.put(description, new ModifiedResidue(description));
-                        }
+        for (MoleculeEntry entry : uniprotEntries) {
+            addToCache(entry);
+        }
 
-                        NodeList locations = feature
-                                .getElementsByTagName("location");
-                        for (int k = 0; k < locations.getLength(); k++) {
-                            Element loc = (Element) locations.item(k);
-                            NodeList positions = loc
-                                    .getElementsByTagName("position");
-                            for (int l = 0; l < positions.getLength(); l++) {
-                                Element position = (Element) positions.item(l);
-                                modifiedResidues.get(description).addPosition(new UniprotPosition(Integer.parseInt(position.getAttribute("position"))));
-                            }
+        return uniprotEntries;
+    }
 
-                        }
-                    }
+    /**
+     *
+     * @param store local FASTA files used instead of Uniprot to get the
+     * isoform sequences, null to only use Uniprot. The files are indexed in
+     * background.
+     */
+    public static synchronized void setFastaStore(final UniprotFastaStore store) {
+        fastaStore = store;
+
+        if (store != null) {
+            fastaExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    store.buildIndex();
                 }
+            });
+        }
+    }
 
-                uniprotEntry.getModifications().addAll(modifiedResidues.values());
-
-                // Xrefs:
-                NodeList dbReferences = entryElement
-                        .getElementsByTagName("dbReference");
-                for (int j = 0; j < dbReferences.getLength(); j++) {
-                    Element dbReference = (Element) dbReferences.item(j);
-
-                    if (false == entryElement.equals(dbReference
-                            .getParentNode())) {
-                        continue;
-                    }
-
-                    NodeList molecules = dbReference
-                            .getElementsByTagName("molecule");
-
-                    // ensembl
-                    if (dbReference.hasAttribute("type")
-                            && "Ensembl".equals(dbReference
-                                    .getAttribute("type"))) {
-
-                        // transcript ID
-                        String id = dbReference
-                                .getAttribute("id");
-
-                        for (int iMolecule = 0; iMolecule < molecules.getLength(); iMolecule++) {
-                            Element molecule = (Element) molecules.item(iMolecule);
-                            uniprotEntry.addXrefToVarSplice(id, molecule.getAttribute("id"));
-                        }
-
-                        uniprotEntry.addEnsemblGene(id);
-
-                        NodeList properties = dbReference
-                                .getElementsByTagName("property");
-
-                        for (int k = 0; k < properties.getLength(); k++) {
-                            Element property = (Element) properties.item(k);
-
-                            if (property.hasAttribute("type")
-                                    && "gene ID".equals(property
-                                            .getAttribute("type"))) {
-                                uniprotEntry.addEnsemblGene(property
-                                        .getAttribute("value"));
-                            }
-                        }
-                    }
+    private static synchronized UniprotFastaStore getFastaStore() {
+        return fastaStore;
+    }
 
-                    // refseq
-                    if (dbReference.hasAttribute("type")
-                            && "RefSeq"
-                            .equals(dbReference.getAttribute("type"))) {
-                        NodeList properties = dbReference
-                                .getElementsByTagName("property");
-                        for (int k = 0; k < properties.getLength(); k++) {
-                            Element property = (Element) properties.item(k);
-                            if (property.hasAttribute("type")
-                                    && "nucleotide sequence ID".equals(property
-                                            .getAttribute("type"))) {
-
-                                String id = property
-                                        .getAttribute("value");
-                                if (molecules.getLength() > 0) {
-                                    for (int iMolecule = 0; iMolecule < molecules.getLength(); iMolecule++) {
-                                        Element molecule = (Element) molecules.item(iMolecule);
-
-                                        // If refseq, add also without the version                                       
-                                        uniprotEntry.addXrefToVarSplice(id, molecule.getAttribute("id"));
-                                        uniprotEntry.addXrefToVarSplice(id.split("\\.")[0], molecule.getAttribute("id"));
-
-                                    }
-                                } else {
-                                    // If refseq, add also without the version                                       
-                                    uniprotEntry.addXrefToVarSplice(id, ac);
-                                    uniprotEntry.addXrefToVarSplice(id.split("\\.")[0], ac);
-                                }
+    private Future<?> submitIsoformSequences(final Collection<MoleculeEntry> entries) {
+        return fastaExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                addIsoformSequences(entries);
+            }
+        });
+    }
 
-                                uniprotEntry.addRefseq(id);
+    /**
+     * Get the fasta for all varsplices of the entries, from the local store
+     * if available, otherwise with a single Uniprot query.
+     *
+     * @param entries
+     */
+    private void addIsoformSequences(Collection<MoleculeEntry> entries) {
+        HashMap<String, MoleculeEntry> remoteEntries = new HashMap<>();
 
-                            }
-                        }
-                    }
+        UniprotFastaStore store = getFastaStore();
 
-                    /* PDB chains will be imported from the webservice */
-                    // PDB
-                    if (dbReference.hasAttribute("type")
-                            && "PDB".equals(dbReference.getAttribute("type"))) {
-                        NodeList properties = dbReference
-                                .getElementsByTagName("property");
-                        String method = null;
-                        String chains = null;
-
-                        for (int k = 0; k < properties.getLength(); k++) {
-                            Element property = (Element) properties.item(k);
-                            if (property.hasAttribute("type")
-                                    && "method".equals(property
-                                            .getAttribute("type"))) {
-                                method = property.getAttribute("value");
-                            } else if (property.hasAttribute("type")
-                                    && "chains".equals(property
-                                            .getAttribute("type"))) {
-                                chains = property.getAttribute("value");
-                            }
-                        }
+        for (MoleculeEntry uniprotEntry : entries) {
+            LinkedHashMap<String, String> sequences = null;
+            if (store != null) {
+                sequences = store.getSequences(uniprotEntry.getUniprotAc());
+            }
 
-                        if (method != null && "Model".equals(method)) {
-                            continue;
-                        }
+            if (sequences == null) {
+                remoteEntries.put(uniprotEntry.getUniprotAc(), uniprotEntry);
+            } else {
+                addIsoformSequences(uniprotEntry, sequences);
+            }
+        }
 
-                        if (chains == null) {
-                            continue;
-                        }
+        if (remoteEntries.isEmpty()) {
+            return;
+        }
 
-                        String pdb = dbReference.getAttribute("id");
-
-                        uniprotEntry.addPDB(
-                                pdb,
-                                method);
-
-                        for (String chainElement : chains.split(",")) {
-                            try {
-                                String chainNames = chainElement.split("=")[0];
-                                int start = Integer.parseInt(chainElement
-                                        .split("=")[1].trim().split("-")[0]);
-                                int end = Integer.parseInt(chainElement
-                                        .split("=")[1].trim().split("-")[1]
-                                        .replace(".", ""));
-                                for (String chainName : chainNames.split("/")) {
-                                    uniprotEntry.addChain(
-                                            pdb,
-                                            new ChainMapping(pdb, chainName
-                                                    .trim(), start, end),
-                                            method);
-                                }
-                            } catch (ArrayIndexOutOfBoundsException aiobe) {
-                                // IGBLogger.getInstance().warning(
-                                // "Cannot parse chain: " + chainElement
-                                // + ", skip");
-                            }
-                        }
-                    }
+        String fastaQuery;
+        try {
+            fastaQuery = UNIPROT_SERVER + UNIPROT_TOOL + "/?query="
+                    + URLEncoder.encode("accession:" + StringUtils.join(remoteEntries.keySet(), " OR accession:"), "UTF-8")
+                    + "&format=fasta&include=yes";
+        } catch (UnsupportedEncodingException e) {
+            logger.error("cannot get fasta for " + StringUtils.join(remoteEntries.keySet(), ", "), e);
+            return;
+        }
 
-                }
+        try (InputStream is = HttpTransport.getInstance().get(fastaQuery)) {
 
-                // Sequence
-                NodeList sequenceElements = entryElement
-                        .getElementsByTagName("sequence");
+            // isoform sequences of each entry, in the order of the response
+            HashMap<String, LinkedHashMap<String, String>> sequences = new HashMap<>();
 
-                for (int j = 0; j < sequenceElements.getLength(); j++) {
-                    Element sequenceElement = (Element) sequenceElements
-                            .item(j);
+            try {
+                LinkedHashMap<String, ProteinSequence> fasta = FastaReaderHelper.readFastaProteinSequence(is);
 
-                    if (false == sequenceElement.getParentNode().equals(
-                            entryElement)) {
-                        continue;
+                for (ProteinSequence seq : fasta.values()) {
+                    String id = seq.getAccession().getID();
+                    String ac = id.split("-")[0];
+                    if (false == sequences.containsKey(ac)) {
+                        sequences.put(ac, new LinkedHashMap<String, String>());
                     }
-                    String sequence = sequenceElement.getFirstChild()
-                            .getNodeValue().replaceAll("\n", "");
-                    uniprotEntry.setSequence(sequence);
+                    sequences.get(ac).put(id, seq.getSequenceAsString());
                 }
+            } catch (Exception e) {
+                logger.error("Cannot retrieve fasta for : " + StringUtils.join(remoteEntries.keySet(), ", "));
+            }
 
-                // Diseases
-                NodeList diseases = entryElement
-                        .getElementsByTagName("disease");
-
-                for (int j = 0; j < diseases.getLength(); j++) {
-                    Element disease = (Element) diseases.item(j);
-
-                    NodeList nameList = disease.getElementsByTagName("name");
-
-                    for (int k = 0; k < nameList.getLength(); k++) {
-                        Element name = (Element) nameList.item(k);
-                        uniprotEntry.addDisease(name.getFirstChild()
-                                .getNodeValue());
-                    }
+            for (String ac : sequences.keySet()) {
+                if (remoteEntries.containsKey(ac)) {
+                    addIsoformSequences(remoteEntries.get(ac), sequences.get(ac));
                 }
+            }
+        } catch (IOException | IllegalStateException ex) {
+            logger.error(null, ex);
+        }
+    }
 
-                // Get fasta for all varsplice
-                String fastaQuery = "http://www.uniprot.org/uniprot/" + uniprotEntry.getUniprotAc() + ".fasta?include=yes";
-
-                try {
-                    //HttpClient fastaClient = new DefaultHttpClient();
+    /**
+     * The main isoform is the one that has the accession of the entry, or the
+     * first one.
+     */
+    private void addIsoformSequences(MoleculeEntry uniprotEntry, LinkedHashMap<String, String> sequences) {
+        String mainIsoform = null;
 
-                    client.getParams().setParameter(
-                            ClientPNames.ALLOW_CIRCULAR_REDIRECTS, Boolean.TRUE);
-                    HttpGet fastaRequest = new HttpGet(fastaQuery);
+        for (String id : sequences.keySet()) {
+            uniprotEntry.addSequence(id, sequences.get(id));
+            if (mainIsoform == null || id.equals(uniprotEntry.getUniprotAc())) {
+                mainIsoform = id;
+            }
+        }
 
-                    // add request header
-                    request.addHeader("User-Agent", USER_AGENT);
+        if (mainIsoform != null) {
+            uniprotEntry.setMainIsoform(mainIsoform);
+        }
+    }
 
-                    HttpResponse fastaResponse = client.execute(fastaRequest);
+    /**
+     * Directory in which the entries retrieved from Uniprot are stored, null
+     * to keep them only in memory.
+     *
+     * @param directory
+     */
+    public static synchronized void setCacheDir(String directory) {
+        cacheDir = directory;
+    }
 
-                    if (fastaResponse.getEntity().getContentLength() == 0) {
-                        continue;
-                    }
+    private static synchronized String getCacheDir() {
+        return cacheDir;
+    }
 
-                    InputStream is = fastaResponse.getEntity().getContent();
+    private synchronized UniprotEntryStore getEntryStore() {
+        String directory = getCacheDir();
 
-                    try {
-                        LinkedHashMap<String, ProteinSequence> fasta = FastaReaderHelper.readFastaProteinSequence(is);
+        if (directory == null) {
+            entryStore = null;
+        } else if (entryStore == null || false == directory.equals(entryStoreDir)) {
+            entryStore = new UniprotEntryStore(directory, taxid);
+        }
+        entryStoreDir = directory;
 
-                        boolean mainSequence = true;
-                        
-                        for (ProteinSequence seq : fasta.values()) {
-//                            logger.info("Add sequence: " + seq.getAccession().getID() + " : " + seq.getSequenceAsString());
-                            uniprotEntry.addSequence(seq.getAccession().getID(), seq.getSequenceAsString());
-                            if (mainSequence) {
-                                uniprotEntry.setMainIsoform(seq.getAccession().getID());
-                                mainSequence = false;
-                            }
-                        }
-                    } catch (Exception e) {
-                        logger.error("Cannot retrieve fasta for : " +  uniprotEntry.getUniprotAc());
-                    }
-                } catch (IOException | IllegalStateException ex) {
-                    logger.error(null, ex);
-                }
+        return entryStore;
+    }
 
-                uniprotEntries.add(uniprotEntry);
+    private synchronized boolean isCached(String key) {
+        if (cache.containsKey(key)) {
+            return true;
+        }
 
-            }
+        UniprotEntryStore store = getEntryStore();
+        return store != null && store.contains(key);
+    }
 
-        } catch (SAXParseException se) {
-            // Nothing was return
-            // IGBLogger.getInstance()
-            // .error("Uniprot returns empty result: " + url);
-        } catch (IOException | ParserConfigurationException | IllegalStateException | SAXException | DOMException | NumberFormatException e) {
-            if (waitAndRetryOnFailure && allowedUniprotFailures > 0) {
-                try {
-                    allowedUniprotFailures--;
-                    Thread.sleep(5000);
-                    return getUniprotEntriesXML(location, false);
-                } catch (InterruptedException e1) {
-                    logger.error("Fail to retrieve data from " + location);
-                    throw new BridgesRemoteAccessException("Fail to retrieve data from Uniprot " + location);
-                }
-            } else {
-                logger.error("Problem with Uniprot: " +  url);
-                throw new BridgesRemoteAccessException("Fail to retrieve data from Uniprot " + location);
+    private synchronized Collection<MoleculeEntry> getCached(String key) {
+        if (false == cache.containsKey(key)) {
+            UniprotEntryStore store = getEntryStore();
+            if (store != null) {
+                cache.putAll(key, store.get(key));
             }
         }
+        return new ArrayList<>(cache.get(key));
+    }
 
-        for (MoleculeEntry entry : uniprotEntries) {
-            addToCache(entry);
+    private synchronized void addToCache(MoleculeEntry protein) {
+        Collection<String> keys = getCacheKeys(protein);
+
+        for (String key : keys) {
+            cache.put(key, protein);
         }
 
-        return uniprotEntries;
+        UniprotEntryStore store = getEntryStore();
+        if (store != null) {
+            store.put(protein, keys);
+        }
     }
 
-    private void addToCache(MoleculeEntry protein) {
+    /**
+     * Identifiers by which an entry can be retrieved from the cache.
+     *
+     * @param protein
+     * @return
+     */
+    private static Collection<String> getCacheKeys(MoleculeEntry protein) {
+        LinkedHashSet<String> keys = new LinkedHashSet<>();
 
         // add to chache by uniprotAc, gene name, refseq ..
         // Only use the first one. Using synomyms may cause ambiguity.
         String geneName = protein.getGeneName();
 
         if (geneName != null) {
-            cache.put(geneName.toUpperCase(), protein);
+            keys.add(geneName.toUpperCase());
         }
 
         for (String xref : protein.getRefseqs()) {
             // remove version
-            cache.put(xref.toUpperCase().split("\\.")[0], protein);
+            keys.add(xref.toUpperCase().split("\\.")[0]);
+        }
+
+        for (String xref : protein.getEnsemblGenes()) {
+            // remove version
+            keys.add(xref.toUpperCase().split("\\.")[0]);
         }
 
-        cache.put(protein.getUniprotAc(), protein);
+        keys.add(protein.getUniprotAc());
 
+        return keys;
     }
 
     /**
@@ -553,8 +406,8 @@ public class UniprotkbUtils {
 
         try {
             for (String gene : genes) {
-                if (cache.containsKey(gene.toUpperCase())) {
-                    gene2uniprots.putAll(gene, cache.get(gene.toUpperCase()));
+                if (isCached(gene.toUpperCase())) {
+                    gene2uniprots.putAll(gene, getCached(gene.toUpperCase()));
                 } else {
                     genes2get.add(gene);
 
@@ -642,9 +495,9 @@ public class UniprotkbUtils {
 
         try {
             for (String refseq : refSeqs) {
-                if (cache.containsKey(refseq.toUpperCase().split("\\.")[0])) {
+                if (isCached(refseq.toUpperCase().split("\\.")[0])) {
                     refseq2uniprots.putAll(refseq,
-                            cache.get(refseq.toUpperCase().split("\\.")[0]));
+                            getCached(refseq.toUpperCase().split("\\.")[0]));
                 } else {
                     refs2get.add(refseq);
 
@@ -747,10 +600,8 @@ public class UniprotkbUtils {
         try {
 
             for (String ensemblGeneID : ensemblGeneIDs) {
-                if (cache
-                        .containsKey(ensemblGeneID.toUpperCase().split("\\.")[0])) {
-                    ensembl2uniprots.putAll(ensemblGeneID, cache
-                            .get(ensemblGeneID.toUpperCase().split("\\.")[0]));
+                if (isCached(ensemblGeneID.toUpperCase().split("\\.")[0])) {
+                    ensembl2uniprots.putAll(ensemblGeneID, getCached(ensemblGeneID.toUpperCase().split("\\.")[0]));
                 } else {
                     refs2get.add(ensemblGeneID);
 
@@ -879,9 +730,13 @@ public class UniprotkbUtils {
 
         try {
             for (String ref : uniprotAcs) {
-                if (cache.containsKey(ref.toUpperCase())) {
-                    results.put(ref, cache.get(ref.toUpperCase()).iterator()
-                            .next());
+                // the store may know the key but return no entry: get it
+                // from Uniprot in that case
+                Collection<MoleculeEntry> cached = isCached(ref.toUpperCase())
+                        ? getCached(ref.toUpperCase()) : null;
+
+                if (cached != null && false == cached.isEmpty()) {
+                    results.put(ref, cached.iterator().next());
                 } else {
                     ref2get.add(ref);
 
@@ -967,23 +822,19 @@ public class UniprotkbUtils {
                     + "query=complete:yes+AND+("
                     + URLEncoder.encode(name, "UTF-8") + ")&format=tab";
 
-            HttpClient client = new DefaultHttpClient();
-            HttpGet request = new HttpGet(url);
-
-            HttpResponse response = client.execute(request);
+            try (BufferedReader rd = new BufferedReader(new InputStreamReader(
+                    HttpTransport.getInstance().get(url), "UTF-8"))) {
 
-            BufferedReader rd = new BufferedReader(new InputStreamReader(
-                    response.getEntity().getContent()));
+                String line;
 
-            String line;
+                while ((line = rd.readLine()) != null) {
 
-            while ((line = rd.readLine()) != null) {
-
-                if (false == line.startsWith("Taxon")) {
-                    String[] fields = line.split("\t");
-                    if (fields.length >= 3) {
-                        String[] specie = {fields[2], fields[0]};
-                        results.add(specie);
+                    if (false == line.startsWith("Taxon")) {
+                        String[] fields = line.split("\t");
+                        if (fields.length >= 3) {
+                            String[] specie = {fields[2], fields[0]};
+                            results.add(specie);
+                        }
                     }
                 }
             }
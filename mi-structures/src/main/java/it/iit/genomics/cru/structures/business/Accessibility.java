@@ -24,17 +24,23 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.HashMultimap;
 
+import org.biojava.nbio.structure.Atom;
 import org.biojava.nbio.structure.Chain;
 import org.biojava.nbio.structure.Group;
 import org.biojava.nbio.structure.GroupType;
 import org.biojava.nbio.structure.Structure;
 import org.biojava.nbio.structure.StructureImpl;
+import org.biojava.nbio.structure.StructureTools;
 import org.biojava.nbio.structure.asa.AsaCalculator;
 import org.biojava.nbio.structure.asa.GroupAsa;
+import org.biojava.nbio.structure.contact.AtomContact;
+import org.biojava.nbio.structure.contact.Grid;
 
 /**
  *
@@ -46,6 +52,33 @@ public class Accessibility {
     private final static int DEFAULT_N_SPHERE_POINTS = 92; //AsaCalculator.DEFAULT_N_SPHERE_POINTS /4;
     private final static int DEFAULT_NTHREADS = AsaCalculator.DEFAULT_NTHREADS;
 
+    /**
+     * Lower bound of the largest atom radius used by AsaCalculator (tetrahedral
+     * carbon, 1.87).
+     */
+    private final static double MIN_MAX_ATOM_RADIUS = 1.9;
+
+    /**
+     * Add a copy of the chain to a temporary structure: structures are shared
+     * by the StructureCache, their chains must keep their parent.
+     *
+     * @param tmpStructure
+     * @param chain
+     */
+    private static void addChain(Structure tmpStructure, Chain chain) {
+        tmpStructure.addChain((Chain) chain.clone());
+    }
+
+    /**
+     * Parameters of the ASA computation, interfaces computed with other
+     * parameters may differ.
+     *
+     * @return
+     */
+    public static String getAsaParameters() {
+        return "probe" + DEFAULT_PROBE_SIZE + "-points" + DEFAULT_N_SPHERE_POINTS;
+    }
+
     /**
      *
      * @param structure
@@ -86,7 +119,7 @@ public class Accessibility {
 
                 for (Chain cc : structure.getChains()) {
                     if (false == cc.equals(c2)) {
-                        s2.addChain(c2);
+                        addChain(s2, c2);
                     }
                 }
 
@@ -164,7 +197,7 @@ public class Accessibility {
 
                 for (Chain cc : structure.getChains()) {
                     if (false == cc.equals(c2)) {
-                        s2.addChain(c2);
+                        addChain(s2, c2);
                     }
                 }
 
@@ -257,7 +290,7 @@ public class Accessibility {
 
             for (Chain cc : structure.getChains()) {
                 if (false == cc.getChainID().equals(c2.getChainID())) {
-                    s2.addChain(cc);
+                    addChain(s2, cc);
                 }
             }
 
@@ -329,7 +362,7 @@ public class Accessibility {
         for (Chain chain : chains) {
             Structure s2 = new StructureImpl();
 
-            s2.addChain(chain);
+            addChain(s2, chain);
 
             AsaCalculator asa2 = new AsaCalculator(s2,
                     DEFAULT_PROBE_SIZE,
@@ -352,8 +385,8 @@ public class Accessibility {
 
             Structure s2 = new StructureImpl();
 
-            s2.addChain(c1);
-            s2.addChain(c2);
+            addChain(s2, c1);
+            addChain(s2, c2);
 
             AsaCalculator asa2 = new AsaCalculator(s2,
                     DEFAULT_PROBE_SIZE,
@@ -385,6 +418,189 @@ public class Accessibility {
         return contactChains;
     }
 
+    /**
+     * Same result as getFasterContactChains, but the ASA of the complex is
+     * only computed for the residues close to the partner chain: an atom
+     * farther than the sum of the radii plus two probes from the partner
+     * keeps the same ASA in the complex.
+     *
+     * The ASA of the single chains are read from singleChainAccessibilities
+     * (key: chain, value: ASA by residue), and added if missing, so that they
+     * can be reused for other pairs of the same structure.
+     *
+     * @param structure
+     * @param chainNamePairs
+     * @param singleChainAccessibilities
+     * @return
+     */
+    public static HashMultimap<String, String> getInterfaceContactChains(
+            Structure structure, List<String[]> chainNamePairs,
+            Map<String, Map<String, Double>> singleChainAccessibilities) {
+
+        HashMultimap<String, String> contactChains = HashMultimap.create();
+
+        HashMap<String, Chain> name2chain = new HashMap<>();
+
+        for (Chain chain : structure.getChains()) {
+            name2chain.put(chain.getChainID(), chain);
+        }
+
+        // Atoms used by AsaCalculator, by chain
+        ArrayListMultimap<Chain, Atom> chainAtoms = ArrayListMultimap.create();
+
+        double maxRadius = MIN_MAX_ATOM_RADIUS;
+
+        for (Atom atom : StructureTools.getAllNonHAtomArray(structure, false)) {
+            chainAtoms.put(atom.getGroup().getChain(), atom);
+            if (atom.getElement() != null) {
+                maxRadius = Math.max(maxRadius, atom.getElement().getVDWRadius());
+            }
+        }
+
+        double cutoff = 2 * (maxRadius + DEFAULT_PROBE_SIZE);
+
+        for (String[] pair : chainNamePairs) {
+            Chain c1 = name2chain.get(pair[0]);
+            Chain c2 = name2chain.get(pair[1]);
+
+            Chain[][] chainPairs = {{c1, c2}, {c2, c1}};
+
+            for (Chain[] chainPair : chainPairs) {
+                Map<String, Double> singleAccessibility = getSingleChainAccessibility(chainPair[0],
+                        chainAtoms.get(chainPair[0]), singleChainAccessibilities);
+
+                HashMap<String, Double> boundAccessibility = getInterfaceAccessibility(
+                        chainAtoms.get(chainPair[0]), chainAtoms.get(chainPair[1]), cutoff);
+
+                for (String key : boundAccessibility.keySet()) {
+                    Double single = singleAccessibility.get(key);
+
+                    if (single - boundAccessibility.get(key) >= 1) {
+                        contactChains.put(key, chainPair[1].getChainID());
+                    }
+                }
+            }
+        }
+
+        return contactChains;
+    }
+
+    private static Map<String, Double> getSingleChainAccessibility(Chain chain,
+            List<Atom> atoms, Map<String, Map<String, Double>> singleChainAccessibilities) {
+
+        if (false == singleChainAccessibilities.containsKey(chain.getChainID())) {
+            Atom[] atomArray = atoms.toArray(new Atom[atoms.size()]);
+
+            AsaCalculator asa = new AsaCalculator(atomArray,
+                    DEFAULT_PROBE_SIZE,
+                    DEFAULT_N_SPHERE_POINTS,
+                    DEFAULT_NTHREADS);
+
+            singleChainAccessibilities.put(chain.getChainID(),
+                    getGroupAccessibility(atomArray, asa.calculateAsas(), null));
+        }
+
+        return singleChainAccessibilities.get(chain.getChainID());
+    }
+
+    /**
+     * ASA in the complex of the residues of chain1 close to chain2.
+     *
+     * @param atoms1
+     * @param atoms2
+     * @param cutoff
+     * @return
+     */
+    private static HashMap<String, Double> getInterfaceAccessibility(List<Atom> atoms1,
+            List<Atom> atoms2, double cutoff) {
+
+        if (atoms1.isEmpty() || atoms2.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        Atom[] atomArray1 = atoms1.toArray(new Atom[atoms1.size()]);
+        Atom[] atomArray2 = atoms2.toArray(new Atom[atoms2.size()]);
+
+        // 1. residues of chain 1 that can be buried by chain 2
+        Grid grid = new Grid(cutoff);
+        grid.addAtoms(atomArray1, atomArray2);
+
+        HashSet<Group> interfaceGroups = new HashSet<>();
+
+        for (AtomContact contact : grid.getAtomContacts()) {
+            interfaceGroups.add(contact.getPair().getFirst().getGroup());
+        }
+
+        if (interfaceGroups.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        ArrayList<Atom> interfaceAtoms = new ArrayList<>();
+        for (Atom atom : atoms1) {
+            if (interfaceGroups.contains(atom.getGroup())) {
+                interfaceAtoms.add(atom);
+            }
+        }
+
+        // 2. atoms of the complex that can change their ASA
+        Atom[] complexAtoms = new Atom[atomArray1.length + atomArray2.length];
+        System.arraycopy(atomArray1, 0, complexAtoms, 0, atomArray1.length);
+        System.arraycopy(atomArray2, 0, complexAtoms, atomArray1.length, atomArray2.length);
+
+        grid = new Grid(cutoff);
+        grid.addAtoms(interfaceAtoms.toArray(new Atom[interfaceAtoms.size()]), complexAtoms);
+
+        HashSet<Atom> neighbours = new HashSet<>(interfaceAtoms);
+        for (AtomContact contact : grid.getAtomContacts()) {
+            neighbours.add(contact.getPair().getSecond());
+        }
+
+        // keep the order of the complex
+        ArrayList<Atom> environment = new ArrayList<>();
+        for (Atom atom : complexAtoms) {
+            if (neighbours.contains(atom)) {
+                environment.add(atom);
+            }
+        }
+
+        Atom[] environmentArray = environment.toArray(new Atom[environment.size()]);
+
+        AsaCalculator asa = new AsaCalculator(environmentArray,
+                DEFAULT_PROBE_SIZE,
+                DEFAULT_N_SPHERE_POINTS,
+                DEFAULT_NTHREADS);
+
+        return getGroupAccessibility(environmentArray, asa.calculateAsas(), interfaceGroups);
+    }
+
+    /**
+     * Sum the ASA of the atoms by residue.
+     *
+     * @param atoms
+     * @param atomAccessibility
+     * @param groups residues to keep, all if null
+     * @return
+     */
+    private static HashMap<String, Double> getGroupAccessibility(Atom[] atoms,
+            double[] atomAccessibility, Set<Group> groups) {
+        HashMap<String, Double> groupAccessibility = new HashMap<>();
+
+        for (int i = 0; i < atoms.length; i++) {
+            Group g = atoms[i].getGroup();
+
+            if (groups != null && false == groups.contains(g)) {
+                continue;
+            }
+
+            String key = g.getResidueNumber() + ":" + g.getChainId();
+
+            Double asa = groupAccessibility.get(key);
+            groupAccessibility.put(key, asa == null ? atomAccessibility[i] : asa + atomAccessibility[i]);
+        }
+
+        return groupAccessibility;
+    }
+
     /**
      *
      * @param structure
@@ -423,7 +639,7 @@ public class Accessibility {
         for (Chain chain : chains) {
             Structure s2 = new StructureImpl();
 
-            s2.addChain(chain);
+            addChain(s2, chain);
 
             AsaCalculator asa2 = new AsaCalculator(s2,
                     DEFAULT_PROBE_SIZE,
@@ -453,7 +669,7 @@ public class Accessibility {
 
             Structure s2 = new StructureImpl();
 
-            s2.addChain(c1);
+            addChain(s2, c1);
 
             AsaCalculator asa2 = new AsaCalculator(s2,
                     DEFAULT_PROBE_SIZE,
@@ -0,0 +1,278 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.business;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.biojava.nbio.structure.AminoAcid;
+import org.biojava.nbio.structure.Atom;
+import org.biojava.nbio.structure.Group;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * Atoms of a chain that can be part of a contact, stored in primitive arrays
+ * and bucketed in cubic cells. Two atoms closer than the cell size are always
+ * in the same or in adjacent cells, so that looking for the neighbours of an
+ * atom only requires to read the 27 cells around it.
+ *
+ * Atoms are kept in the order of the chain (group, then atom of the group).
+ */
+class AtomGrid {
+
+    /**
+     * Larger than the longest contact distance (5.5), with a margin for the
+     * rounding of the cell indexes.
+     */
+    static final double CELL_SIZE = 6.0;
+
+    static final byte CARBON = 0;
+
+    static final byte NITROGEN = 1;
+
+    static final byte OXYGEN = 2;
+
+    /**
+     * Sulfur of a cysteine, the only one that can form a disulfide bridge.
+     */
+    static final byte CYSTEINE_SULFUR = 3;
+
+    final Group[] groups;
+
+    final String[] residues;
+
+    /**
+     * Index of the first atom of each group, the last value is the number of
+     * atoms.
+     */
+    final int[] groupStarts;
+
+    final double[] x;
+
+    final double[] y;
+
+    final double[] z;
+
+    final byte[] types;
+
+    /**
+     * Group of each atom
+     */
+    final int[] atomGroups;
+
+    private final double minX;
+
+    private final double minY;
+
+    private final double minZ;
+
+    private final int numCellsX;
+
+    private final int numCellsY;
+
+    private final int numCellsZ;
+
+    /**
+     * Atoms sorted by cell, the atoms of cell c are between cellStarts[c] and
+     * cellStarts[c+1].
+     */
+    private final int[] cellAtoms;
+
+    private final int[] cellStarts;
+
+    /**
+     *
+     * @param chainGroups
+     */
+    AtomGrid(List<Group> chainGroups) {
+        groups = chainGroups.toArray(new Group[chainGroups.size()]);
+        residues = new String[groups.length];
+        groupStarts = new int[groups.length + 1];
+
+        int maxAtoms = 0;
+        for (Group group : groups) {
+            maxAtoms += group.getAtoms().size();
+        }
+
+        double[] atomX = new double[maxAtoms];
+        double[] atomY = new double[maxAtoms];
+        double[] atomZ = new double[maxAtoms];
+        byte[] atomTypes = new byte[maxAtoms];
+        int[] groupIndexes = new int[maxAtoms];
+
+        int numAtoms = 0;
+
+        for (int g = 0; g < groups.length; g++) {
+            residues[g] = ((AminoAcid) groups[g]).getAminoType() + "";
+            groupStarts[g] = numAtoms;
+
+            for (Atom atom : groups[g].getAtoms()) {
+                byte type = getType(atom, residues[g]);
+                if (type < 0) {
+                    continue;
+                }
+                atomX[numAtoms] = atom.getX();
+                atomY[numAtoms] = atom.getY();
+                atomZ[numAtoms] = atom.getZ();
+                atomTypes[numAtoms] = type;
+                groupIndexes[numAtoms] = g;
+                numAtoms++;
+            }
+        }
+        groupStarts[groups.length] = numAtoms;
+
+        x = Arrays.copyOf(atomX, numAtoms);
+        y = Arrays.copyOf(atomY, numAtoms);
+        z = Arrays.copyOf(atomZ, numAtoms);
+        types = Arrays.copyOf(atomTypes, numAtoms);
+        atomGroups = Arrays.copyOf(groupIndexes, numAtoms);
+
+        double lowX = Double.MAX_VALUE;
+        double lowY = Double.MAX_VALUE;
+        double lowZ = Double.MAX_VALUE;
+        double highX = -Double.MAX_VALUE;
+        double highY = -Double.MAX_VALUE;
+        double highZ = -Double.MAX_VALUE;
+
+        for (int i = 0; i < numAtoms; i++) {
+            lowX = Math.min(lowX, x[i]);
+            lowY = Math.min(lowY, y[i]);
+            lowZ = Math.min(lowZ, z[i]);
+            highX = Math.max(highX, x[i]);
+            highY = Math.max(highY, y[i]);
+            highZ = Math.max(highZ, z[i]);
+        }
+
+        if (numAtoms == 0) {
+            minX = minY = minZ = 0;
+            numCellsX = numCellsY = numCellsZ = 0;
+            cellAtoms = new int[0];
+            cellStarts = new int[1];
+            return;
+        }
+
+        minX = lowX;
+        minY = lowY;
+        minZ = lowZ;
+        numCellsX = (int) Math.floor((highX - lowX) / CELL_SIZE) + 1;
+        numCellsY = (int) Math.floor((highY - lowY) / CELL_SIZE) + 1;
+        numCellsZ = (int) Math.floor((highZ - lowZ) / CELL_SIZE) + 1;
+
+        // counting sort of the atoms by cell
+        int[] atomCells = new int[numAtoms];
+        cellStarts = new int[numCellsX * numCellsY * numCellsZ + 1];
+
+        for (int i = 0; i < numAtoms; i++) {
+            atomCells[i] = getCell(getCellIndex(x[i], minX, numCellsX),
+                    getCellIndex(y[i], minY, numCellsY),
+                    getCellIndex(z[i], minZ, numCellsZ));
+            cellStarts[atomCells[i] + 1]++;
+        }
+
+        for (int c = 0; c < cellStarts.length - 1; c++) {
+            cellStarts[c + 1] += cellStarts[c];
+        }
+
+        cellAtoms = new int[numAtoms];
+        int[] cellCursors = Arrays.copyOf(cellStarts, cellStarts.length - 1);
+        for (int i = 0; i < numAtoms; i++) {
+            cellAtoms[cellCursors[atomCells[i]]++] = i;
+        }
+    }
+
+    private static byte getType(Atom atom, String residue) {
+        String element = atom.getElement().name();
+
+        if ("C".equals(element)) {
+            return CARBON;
+        }
+        if ("N".equals(element)) {
+            return NITROGEN;
+        }
+        if ("O".equals(element)) {
+            return OXYGEN;
+        }
+        if ("S".equals(element) && "C".equals(residue)) {
+            return CYSTEINE_SULFUR;
+        }
+
+        // cannot be in contact with any other atom
+        return -1;
+    }
+
+    private static int getCellIndex(double coordinate, double min, int numCells) {
+        int index = (int) Math.floor((coordinate - min) / CELL_SIZE);
+        // guard against rounding at the upper bound
+        return Math.min(Math.max(index, 0), numCells - 1);
+    }
+
+    private int getCell(int cellX, int cellY, int cellZ) {
+        return (cellX * numCellsY + cellY) * numCellsZ + cellZ;
+    }
+
+    /**
+     *
+     * @return the number of atoms that can be part of a contact
+     */
+    int getNumberOfAtoms() {
+        return x.length;
+    }
+
+    /**
+     * Add to neighbours the atoms of this grid in the cells around the point,
+     * i.e. all the atoms closer than CELL_SIZE and possibly some more.
+     *
+     * @param pointX
+     * @param pointY
+     * @param pointZ
+     * @param neighbours buffer, should be at least the number of atoms
+     * @return number of atoms in the buffer
+     */
+    int getNeighbours(double pointX, double pointY, double pointZ, int[] neighbours) {
+        if (x.length == 0) {
+            return 0;
+        }
+
+        int cellX = (int) Math.floor((pointX - minX) / CELL_SIZE);
+        int cellY = (int) Math.floor((pointY - minY) / CELL_SIZE);
+        int cellZ = (int) Math.floor((pointZ - minZ) / CELL_SIZE);
+
+        int fromX = Math.max(cellX - 1, 0);
+        int toX = Math.min(cellX + 1, numCellsX - 1);
+        int fromY = Math.max(cellY - 1, 0);
+        int toY = Math.min(cellY + 1, numCellsY - 1);
+        int fromZ = Math.max(cellZ - 1, 0);
+        int toZ = Math.min(cellZ + 1, numCellsZ - 1);
+
+        int numNeighbours = 0;
+
+        for (int i = fromX; i <= toX; i++) {
+            for (int j = fromY; j <= toY; j++) {
+                for (int k = fromZ; k <= toZ; k++) {
+                    int cell = getCell(i, j, k);
+                    for (int a = cellStarts[cell]; a < cellStarts[cell + 1]; a++) {
+                        neighbours[numNeighbours++] = cellAtoms[a];
+                    }
+                }
+            }
+        }
+
+        return numNeighbours;
+    }
+
+}
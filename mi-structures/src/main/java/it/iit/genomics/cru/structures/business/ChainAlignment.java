@@ -0,0 +1,174 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.business;
+
+import it.iit.genomics.cru.structures.alignment.SequenceAligner;
+import it.iit.genomics.cru.structures.alignment.SequenceAlignment;
+
+import java.util.Arrays;
+
+import org.biojava.nbio.structure.Chain;
+import org.biojava.nbio.structure.Group;
+import org.biojava.nbio.structure.GroupType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * Alignment of a Uniprot sequence to the residues of a PDB chain. The
+ * alignment is done once, the residue numbers are stored in an array indexed
+ * by Uniprot position.
+ */
+public class ChainAlignment {
+
+    static final Logger logger = LoggerFactory.getLogger(ChainAlignment.class);
+
+    /**
+     * Value returned for Uniprot positions without residue in the chain.
+     */
+    public static final int NOT_ALIGNED = Integer.MIN_VALUE;
+
+    private final String uniprotSequence;
+
+    private final String atomSequence;
+
+    /**
+     * PDB residue number for each Uniprot position (0-based index)
+     */
+    private final int[] pdbPositions;
+
+    /**
+     *
+     * @param uniprotSequence
+     * @param atomSequence
+     * @param pdbPositions
+     */
+    ChainAlignment(String uniprotSequence, String atomSequence, int[] pdbPositions) {
+        this.uniprotSequence = uniprotSequence;
+        this.atomSequence = atomSequence;
+        this.pdbPositions = pdbPositions;
+    }
+
+    /**
+     * Align the Uniprot sequence to the atom sequence of the chain and keep
+     * the residue number of each aligned amino acid.
+     *
+     * @param structureId
+     * @param chain
+     * @param uniprotSequence
+     * @return
+     */
+    public static ChainAlignment align(String structureId, Chain chain, String uniprotSequence) {
+        return align(structureId, chain, uniprotSequence, chain.getAtomSequence());
+    }
+
+    static ChainAlignment align(String structureId, Chain chain, String uniprotSequence, String atomSequence) {
+
+        int[] positions = new int[uniprotSequence.length()];
+        Arrays.fill(positions, NOT_ALIGNED);
+
+        // Align the protein to the chain
+        SequenceAlignment nw = SequenceAligner.getInstance().align(uniprotSequence, atomSequence);
+
+        String regionAlignedSequence = nw.getAlignmentSeqA();
+        String chainAlignedSequence = nw.getAlignmentSeqB();
+
+        int groupPosition = 0;
+
+        // go to the first AA of the group, skiping non AA
+        for (int chainAAindex = 0; chainAAindex < nw.getStartAlignmentB(); chainAAindex++) {
+
+            Group group = chain.getAtomGroup(groupPosition);
+
+            if (false == GroupType.AMINOACID.equals(group.getType())) {
+                chainAAindex++;
+            }
+            groupPosition++;
+        }
+
+        int uniprotCursor = nw.getStartAlignmentA();
+
+        for (int aaPosition = 0; aaPosition < regionAlignedSequence.length(); aaPosition++) {
+
+            char uniprotAA = regionAlignedSequence.charAt(aaPosition);
+            char pdbAA = chainAlignedSequence.charAt(aaPosition);
+
+            if ('-' == pdbAA) {
+                uniprotCursor++;
+                continue;
+            }
+
+            Group group = chain.getAtomGroup(groupPosition);
+
+            groupPosition++;
+
+            if (GroupType.AMINOACID.equals(group.getType())) {
+
+                int pos = group.getResidueNumber().getSeqNum();
+
+                if ('-' == uniprotAA) {
+                    logger.warn("Position not aligned to uniprot: {} {} {}", new Object[]{structureId, chain.getChainID(), pos});
+                } else if (uniprotCursor < positions.length) {
+                    positions[uniprotCursor] = pos;
+                }
+            }
+
+            if ('-' != uniprotAA) {
+                uniprotCursor++;
+            }
+
+        }
+
+        return new ChainAlignment(uniprotSequence, atomSequence, positions);
+    }
+
+    /**
+     *
+     * @param uniprotPosition
+     *            1-based position on the Uniprot sequence
+     * @return the residue number in the chain, or NOT_ALIGNED
+     */
+    public int getPdbPosition(int uniprotPosition) {
+        if (uniprotPosition < 1 || uniprotPosition > pdbPositions.length) {
+            return NOT_ALIGNED;
+        }
+        return pdbPositions[uniprotPosition - 1];
+    }
+
+    /**
+     * Check that this alignment was computed for these sequences.
+     *
+     * @param uniprotSequence
+     * @param atomSequence
+     * @return
+     */
+    public boolean isAlignmentOf(String uniprotSequence, String atomSequence) {
+        return this.uniprotSequence.equals(uniprotSequence) && this.atomSequence.equals(atomSequence);
+    }
+
+    /**
+     * Approximate heap size, used to limit the size of the cache. The Uniprot
+     * sequence is shared with the protein entry and not counted.
+     *
+     * @return
+     */
+    public long getMemorySize() {
+        return 64 + 16 + 4L * pdbPositions.length + 40 + 2L * atomSequence.length();
+    }
+
+}
@@ -0,0 +1,189 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.business;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.biojava.nbio.structure.Chain;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * Alignments of Uniprot sequences to PDB chains, shared by all the structure
+ * mappers. The least recently used alignments are removed when the cache
+ * exceeds its memory size.
+ */
+public class ChainAlignmentCache {
+
+    /**
+     * Default maximum size of the cache: 32Mb
+     */
+    public static final long DEFAULT_MAX_MEMORY_SIZE = 32L * 1024 * 1024;
+
+    private static ChainAlignmentCache instance = null;
+
+    /**
+     * key = structureId + "#" + chainId + "#" + hash of the Uniprot sequence
+     */
+    private final LinkedHashMap<String, ChainAlignment> alignments = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long maxMemorySize;
+
+    private long memorySize = 0;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    /**
+     *
+     * @param maxMemorySize
+     */
+    public ChainAlignmentCache(long maxMemorySize) {
+        this.maxMemorySize = maxMemorySize;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public static synchronized ChainAlignmentCache getInstance() {
+        if (instance == null) {
+            instance = new ChainAlignmentCache(DEFAULT_MAX_MEMORY_SIZE);
+        }
+        return instance;
+    }
+
+    /**
+     * Get the alignment from the cache, or align the sequence to the chain.
+     *
+     * @param structureId
+     * @param chain
+     * @param uniprotSequence
+     * @return
+     */
+    public ChainAlignment getAlignment(String structureId, Chain chain, String uniprotSequence) {
+
+        String atomSequence = chain.getAtomSequence();
+
+        String key = getKey(structureId, chain.getChainID(), uniprotSequence);
+
+        ChainAlignment alignment = get(key, uniprotSequence, atomSequence);
+
+        if (alignment == null) {
+            // The alignment is done outside of the lock, the same alignment
+            // may be computed twice by concurrent queries.
+            alignment = ChainAlignment.align(structureId, chain, uniprotSequence, atomSequence);
+            put(key, alignment);
+        }
+
+        return alignment;
+    }
+
+    synchronized ChainAlignment get(String key, String uniprotSequence, String atomSequence) {
+        ChainAlignment alignment = alignments.get(key);
+
+        if (alignment != null && alignment.isAlignmentOf(uniprotSequence, atomSequence)) {
+            hits++;
+            return alignment;
+        }
+
+        misses++;
+        return null;
+    }
+
+    synchronized void put(String key, ChainAlignment alignment) {
+        ChainAlignment previous = alignments.put(key, alignment);
+
+        if (previous != null) {
+            memorySize -= previous.getMemorySize();
+        }
+
+        memorySize += alignment.getMemorySize();
+
+        // Remove least recently used, always keep the last one
+        Iterator<Map.Entry<String, ChainAlignment>> iterator = alignments.entrySet().iterator();
+        while (memorySize > maxMemorySize && alignments.size() > 1) {
+            ChainAlignment eldest = iterator.next().getValue();
+            memorySize -= eldest.getMemorySize();
+            iterator.remove();
+        }
+    }
+
+    static String getKey(String structureId, String chainId, String uniprotSequence) {
+        return structureId + "#" + chainId + "#" + uniprotSequence.hashCode();
+    }
+
+    /**
+     *
+     * @param maxMemorySize
+     */
+    public synchronized void setMaxMemorySize(long maxMemorySize) {
+        this.maxMemorySize = maxMemorySize;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public synchronized long getMaxMemorySize() {
+        return maxMemorySize;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public synchronized long getMemorySize() {
+        return memorySize;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public synchronized int size() {
+        return alignments.size();
+    }
+
+    /**
+     *
+     * @return
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     *
+     */
+    public synchronized void clear() {
+        alignments.clear();
+        memorySize = 0;
+    }
+
+}
@@ -0,0 +1,300 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.business;
+
+import it.iit.genomics.cru.structures.business.StructureMapper.MappingType;
+import it.iit.genomics.cru.structures.model.AAPosition;
+import it.iit.genomics.cru.structures.model.InteractionStructure;
+import it.iit.genomics.cru.structures.model.MIGene;
+import it.iit.genomics.cru.structures.model.ModifiedResidue;
+import it.iit.genomics.cru.structures.model.MoleculeEntry;
+import it.iit.genomics.cru.structures.model.Range;
+import it.iit.genomics.cru.structures.model.RangeMerger;
+import it.iit.genomics.cru.structures.model.TranscriptAlignment;
+import it.iit.genomics.cru.structures.model.position.UniprotPosition;
+import it.iit.genomics.cru.structures.model.sequence.UniprotSequence;
+import it.iit.genomics.cru.structures.sources.StructureSource;
+import java.util.Collection;
+import java.util.HashSet;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Mapping of an interaction between a protein (A) and its partner (B) on the
+ * structures of the interaction: the query residues and the interfaces are
+ * searched on the structures, and the residues at the interface are
+ * converted to genomic ranges. Used by the results of the IGB bundle and of
+ * the batch runner.
+ *
+ * map() is not thread safe: the callers map each interaction once, the
+ * getters must only be used after it.
+ */
+public class InteractionMapping {
+
+    private static final Logger logger = LoggerFactory.getLogger(InteractionMapping.class);
+
+    /**
+     * Columns of toTab()
+     */
+    public final static String TAB_HEADER = "uniprot A\tgene A\t\tuniprot B\tgene B"
+            + "\tSelected contact regions A\tSelected contact regions B"
+            + "\tSelected contact AA A\tSelected contact AA B";
+
+    private final MoleculeEntry entryA;
+
+    private final MoleculeEntry entryB;
+
+    private final Collection<AAPosition> queryResiduesA;
+
+    private final Collection<AAPosition> queryResiduesB;
+
+    private final boolean homodimer;
+
+    private final StructureSource structureSource;
+
+    private final StructureMapper structureMapper;
+
+    private final Collection<InteractionStructure> structuresInteraction;
+
+    // Genomic ranges at the interfaces of A and B
+    private final RangeMerger merger = new RangeMerger();
+
+    private final RangeMerger mergerA = new RangeMerger();
+
+    private final RangeMerger mergerB = new RangeMerger();
+
+    private float score = -1;
+
+    /**
+     *
+     * @param entryA
+     * @param queryResiduesA residues of A covered by the selected regions
+     * @param entryB
+     * @param queryResiduesB residues of B covered by the selected regions
+     * @param structureSource
+     * @param structureMapper a new mapper for each interaction
+     * @param structuresInteraction structures of the interaction
+     */
+    public InteractionMapping(MoleculeEntry entryA, Collection<AAPosition> queryResiduesA,
+            MoleculeEntry entryB, Collection<AAPosition> queryResiduesB,
+            StructureSource structureSource, StructureMapper structureMapper,
+            Collection<InteractionStructure> structuresInteraction) {
+        this.entryA = entryA;
+        this.queryResiduesA = queryResiduesA;
+        this.entryB = entryB;
+        this.queryResiduesB = queryResiduesB;
+        this.structureSource = structureSource;
+        this.structureMapper = structureMapper;
+        this.structuresInteraction = structuresInteraction;
+        this.homodimer = entryA.getUniprotAc().equals(entryB.getUniprotAc());
+    }
+
+    /**
+     * Search the query residues and the interfaces on the structures of the
+     * interaction, and get the genomic ranges of the residues at the
+     * interfaces.
+     */
+    public void map() {
+        for (InteractionStructure interactionStructure : structuresInteraction) {
+            try {
+                structureSource.getStructure(interactionStructure.getStructureID());
+            } catch (Exception e) {
+                logger.error("Cannot get PDB structure " + interactionStructure.getStructureID());
+            }
+        }
+
+        // We have the structures, get the residues and interfaces
+        for (InteractionStructure interactionStructure : structuresInteraction) {
+            try {
+                structureMapper.searchStructureResidues(
+                        MappingType.INTERACTION_PROTEINA, entryA,
+                        interactionStructure, queryResiduesA);
+
+                structureMapper.searchInterfaces(MappingType.INTERACTION_PROTEINA, entryA,
+                        entryB, interactionStructure, queryResiduesA);
+
+                if (false == homodimer && entryB.isProtein()) {
+                    structureMapper.searchStructureResidues(
+                            MappingType.INTERACTION_PROTEINB, entryB,
+                            interactionStructure, queryResiduesB);
+
+                    structureMapper.searchInterfaces(MappingType.INTERACTION_PROTEINB, entryB,
+                            entryA, interactionStructure, queryResiduesB);
+                }
+            } catch (Exception e) {
+                logger.error("Cannot get PDB structures ", e);
+            }
+        }
+
+        for (AAPosition aa : structureMapper.getInterfaceAAPositionsA()) {
+            addGenomicPositions(aa.getGenomicPositions(entryB), mergerA);
+        }
+
+        for (AAPosition aa : structureMapper.getInterfaceAAPositionsB()) {
+            addGenomicPositions(aa.getGenomicPositions(entryA), mergerB);
+        }
+
+        /**
+         * Do I need to do it also for residuesB? No: modification is only
+         * molecule B, i.e. the partner of molecule A
+         */
+        if (MoleculeEntry.TAXID_MODIFICATION.equals(entryB.getTaxid())) {
+            for (AAPosition aa : queryResiduesA) {
+                for (ModifiedResidue mod : entryA.getModifications()) {
+                    if (false == mod.getDescription().equals(entryB.getGeneName())) {
+                        continue;
+                    }
+
+                    for (UniprotPosition position : mod.getPositions()) {
+                        if (aa.getStart() <= position.getPosition() && aa.getEnd() >= position.getPosition()) {
+                            addGenomicPositions(aa.getGenomicPositions(position), mergerA);
+                        }
+                    }
+                }
+            }
+        }
+
+        merger.merge(mergerA);
+        merger.merge(mergerB);
+    }
+
+    /**
+     *
+     * @param positions formatted as seq:min-max
+     * @param merger
+     */
+    private static void addGenomicPositions(Collection<String> positions, RangeMerger merger) {
+        for (String pos : positions) {
+            String[] posSplit = pos.split(":");
+            String[] minMax = posSplit[1].split("-");
+            merger.addRange(posSplit[0], new Range(Integer.parseInt(minMax[0]), Integer.parseInt(minMax[1])));
+        }
+    }
+
+    public StructureMapper getStructureMapper() {
+        return structureMapper;
+    }
+
+    /**
+     * @return genomic ranges at the interfaces of A and B
+     */
+    public RangeMerger getRangeMerger() {
+        return merger;
+    }
+
+    /**
+     * Part of the selected residues at the interfaces.
+     *
+     * @return
+     */
+    public float getScore() {
+        if (score > -1) {
+            return score;
+        }
+
+        HashSet<AAPosition> residuesOnProteins = new HashSet<>();
+        HashSet<AAPosition> residuesOnContacts = new HashSet<>();
+
+        residuesOnProteins.addAll(queryResiduesA);
+        residuesOnProteins.addAll(queryResiduesB);
+
+        residuesOnContacts.addAll(structureMapper.getInterfaceAAPositionsA());
+        residuesOnContacts.addAll(structureMapper.getInterfaceAAPositionsB());
+
+        if (residuesOnProteins.isEmpty()) {
+            return 0;
+        }
+
+        score = ((float) residuesOnContacts.size()) / residuesOnProteins.size();
+
+        return score;
+    }
+
+    /**
+     * Uniprot AC and gene of A, an empty column, Uniprot AC and gene of B,
+     * genomic regions at the interface for A and B, and residues at the
+     * interface for A and B (see TAB_HEADER).
+     *
+     * @param genesA genes of A
+     * @param genesB genes of B
+     * @return
+     */
+    public String toTab(Collection<MIGene> genesA, Collection<MIGene> genesB) {
+        HashSet<String> selectedSymsAtInterfaceA = new HashSet<>();
+        HashSet<String> selectedProteinResiduesAtInterfaceA = new HashSet<>();
+
+        HashSet<String> selectedSymsAtInterfaceB = new HashSet<>();
+        HashSet<String> selectedProteinResiduesAtInterfaceB = new HashSet<>();
+
+        addInterfaceResidues(mergerA, entryA, genesA, selectedSymsAtInterfaceA, selectedProteinResiduesAtInterfaceA);
+
+        if (entryB.isProtein()) {
+            addInterfaceResidues(mergerB, entryB, genesB, selectedSymsAtInterfaceB, selectedProteinResiduesAtInterfaceB);
+        }
+
+        return entryA.getUniprotAc() + "\t" + entryA.getGeneName() + "\t"
+                + "\t" + entryB.getUniprotAc() + "\t" + entryB.getGeneName()
+                + "\t"
+                + StringUtils.join(selectedSymsAtInterfaceA, "|") + "\t"
+                + StringUtils.join(selectedSymsAtInterfaceB, "|") + "\t"
+                + StringUtils.join(selectedProteinResiduesAtInterfaceA, "|") + "\t"
+                + StringUtils.join(selectedProteinResiduesAtInterfaceB, "|");
+    }
+
+    private static void addInterfaceResidues(RangeMerger merger, MoleculeEntry entry, Collection<MIGene> genes,
+            Collection<String> syms, Collection<String> residues) {
+        for (String sequence : merger.getSequences()) {
+            for (Range range : merger.getRanges(sequence)) {
+                syms.add(sequence + ":" + range.getMin() + "-" + range.getMax());
+
+                int[] genomicPositions = getPositions(range);
+
+                for (MIGene gene : genes) {
+                    UniprotSequence uniprotSequence = entry.getSequence(gene.getID());
+
+                    for (int aa : gene.getUniprotAAPositions(genomicPositions)) {
+                        if (aa == TranscriptAlignment.NOT_ALIGNED) {
+                            continue;
+                        }
+
+                        if (uniprotSequence == null || aa > uniprotSequence.getSequence().length()) {
+                            logger.error("Pb when assigning AA {} to {}", aa, gene.getID());
+                            continue;
+                        }
+
+                        residues.add(gene.getID() + "," + entry.getVarSpliceAC(gene.getID()) + ":"
+                                + uniprotSequence.getSequence().substring(aa - 1, aa) + aa);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Genomic positions of a range, from min to max (excluded), sorted.
+     */
+    private static int[] getPositions(Range range) {
+        int[] positions = new int[Math.max(0, range.getMax() - range.getMin())];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = range.getMin() + i;
+        }
+        return positions;
+    }
+
+}
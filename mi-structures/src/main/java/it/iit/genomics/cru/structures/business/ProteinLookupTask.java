@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.business;
+
+import com.google.common.collect.HashMultimap;
+import it.iit.genomics.cru.structures.bridges.commons.BridgesRemoteAccessException;
+import it.iit.genomics.cru.structures.bridges.uniprot.UniprotkbUtils;
+import it.iit.genomics.cru.structures.model.MIGene;
+import it.iit.genomics.cru.structures.model.MoleculeEntry;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Get the Uniprot entries of a list of genes, searched by RefSeq ID, Ensembl
+ * ID or gene name. It does not modify the genes: the proteins are associated
+ * by the caller, e.g. with getBestProtein().
+ *
+ * If Uniprot cannot be accessed for one kind of ID, the proteins found with
+ * the others are still returned, and hasFailed() tells the caller.
+ */
+public class ProteinLookupTask implements Callable<HashMultimap<String, MoleculeEntry>> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProteinLookupTask.class);
+
+    private final static String REFSEQ_PATTERN = "[A-Z]{2}\\_[0-9\\.]+";
+
+    private final String taxid;
+
+    private final HashSet<String> searchGeneNames = new HashSet<>();
+    private final HashSet<String> searchRefSeq = new HashSet<>();
+    private final HashSet<String> searchEnsembl = new HashSet<>();
+
+    private volatile boolean failed = false;
+
+    /**
+     *
+     * @param taxid
+     * @param genes
+     */
+    public ProteinLookupTask(String taxid, Collection<MIGene> genes) {
+        this.taxid = taxid;
+
+        for (MIGene gene : genes) {
+            if (gene.getID().matches(REFSEQ_PATTERN)) {
+                searchRefSeq.add(gene.getID());
+            } else if (gene.getID().startsWith("ENS")) {
+                searchEnsembl.add(gene.getID());
+            } else {
+                searchGeneNames.add(gene.getID());
+            }
+        }
+    }
+
+    /**
+     *
+     * @return proteins of each gene ID
+     */
+    @Override
+    public HashMultimap<String, MoleculeEntry> call() {
+        HashMultimap<String, MoleculeEntry> proteins = HashMultimap.create();
+
+        UniprotkbUtils uniprotUtil = UniprotkbUtils.getInstance(taxid);
+
+        if (false == searchRefSeq.isEmpty()) {
+            try {
+                proteins.putAll(uniprotUtil.getUniprotEntriesFromRefSeqs(searchRefSeq));
+            } catch (BridgesRemoteAccessException e) {
+                logger.error("Cannot get the proteins of the RefSeq IDs", e);
+                failed = true;
+            }
+        }
+
+        if (false == searchEnsembl.isEmpty()) {
+            try {
+                proteins.putAll(uniprotUtil.getUniprotEntriesFromEnsembl(searchEnsembl));
+            } catch (BridgesRemoteAccessException e) {
+                logger.error("Cannot get the proteins of the Ensembl IDs", e);
+                failed = true;
+            }
+        }
+
+        if (false == searchGeneNames.isEmpty()) {
+            try {
+                proteins.putAll(uniprotUtil.getUniprotEntriesFromGenes(searchGeneNames));
+            } catch (BridgesRemoteAccessException e) {
+                logger.error("Cannot get the proteins of the gene names", e);
+                failed = true;
+            }
+        }
+
+        return proteins;
+    }
+
+    /**
+     *
+     * @return true if Uniprot could not be accessed for some of the genes
+     */
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    /**
+     * Try to find the best protein, e.g. Swissprot rather than Trembl
+     *
+     * @param proteins
+     * @return the first Swissprot entry, or the first entry, or null
+     */
+    public static MoleculeEntry getBestProtein(Collection<MoleculeEntry> proteins) {
+        MoleculeEntry protein = null;
+
+        for (MoleculeEntry uniprotProtein : proteins) {
+            if (protein == null || (false == protein.isSwissprot() && uniprotProtein.isSwissprot())) {
+                protein = uniprotProtein;
+            }
+        }
+
+        return protein;
+    }
+
+}
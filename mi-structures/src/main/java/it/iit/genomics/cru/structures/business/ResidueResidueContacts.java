@@ -22,7 +22,17 @@ import it.iit.genomics.cru.structures.sources.USERStructureSource;
 
 import java.awt.Dimension;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.swing.JFrame;
 import org.biojava.nbio.structure.AminoAcid;
@@ -87,6 +97,23 @@ public class ResidueResidueContacts {
 
     private final StructureSource structureSource;
 
+    private final int numberOfThreads;
+
+    /**
+     * Threads shared by all the instances, a query uses at most
+     * numberOfThreads of them.
+     */
+    private static final ExecutorService contactExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private int count = 0;
+
+        @Override
+        public synchronized Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "residue-contacts-" + (++count));
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
     /**
      *
      * @param pdbFileName
@@ -94,8 +121,208 @@ public class ResidueResidueContacts {
      * @throws Exception
      */
     public Collection<Contact> getContacts(String pdbFileName) throws Exception {
+        return getContacts(structureSource.getStructure(pdbFileName));
+    }
+
+    /**
+     * Atoms of each chain are bucketed once in a grid, only atoms in
+     * neighbouring cells are compared. The contacts are the same, and in the
+     * same order, as the ones of getContactsAllAtomPairs.
+     *
+     * @param structure
+     * @return
+     * @throws Exception
+     */
+    public Collection<Contact> getContacts(Structure structure) throws Exception {
+
+        final HashMap<Chain, AtomGrid> grids = new HashMap<>();
+
+        final ArrayList<Chain[]> chainPairs = new ArrayList<>();
+
+        for (Chain chainA : structure.getChains()) {
+            for (Chain chainB : structure.getChains()) {
+
+                // calculate only once
+                if (chainA.getChainID().compareTo(chainB.getChainID()) >= 0) {
+                    continue;
+                }
+
+                for (Chain chain : new Chain[]{chainA, chainB}) {
+                    if (false == grids.containsKey(chain)) {
+                        grids.put(chain, new AtomGrid(chain.getAtomGroups()));
+                    }
+                }
+
+                chainPairs.add(new Chain[]{chainA, chainB});
+            }
+        }
+
+        ArrayList<Contact> contacts = new ArrayList<>();
+
+        if (numberOfThreads <= 1 || chainPairs.size() <= 1) {
+            for (Chain[] chainPair : chainPairs) {
+                contacts.addAll(getContacts(chainPair[0], grids.get(chainPair[0]), chainPair[1], grids.get(chainPair[1])));
+            }
+            return contacts;
+        }
+
+        // each task takes the next pair of chains until there is none left,
+        // the contacts are kept in the order of the pairs
+        final AtomicInteger nextPair = new AtomicInteger();
+        final AtomicReferenceArray<List<Contact>> pairContacts = new AtomicReferenceArray<>(chainPairs.size());
+
+        ArrayList<Future<?>> futures = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < Math.min(numberOfThreads, chainPairs.size()); i++) {
+                futures.add(contactExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int pair = nextPair.getAndIncrement(); pair < chainPairs.size(); pair = nextPair.getAndIncrement()) {
+                            Chain[] chainPair = chainPairs.get(pair);
+                            pairContacts.set(pair, getContacts(chainPair[0], grids.get(chainPair[0]),
+                                    chainPair[1], grids.get(chainPair[1])));
+                        }
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        for (int pair = 0; pair < chainPairs.size(); pair++) {
+            contacts.addAll(pairContacts.get(pair));
+        }
+
+        return contacts;
+    }
+
+    private List<Contact> getContacts(Chain chainA, AtomGrid gridA, Chain chainB, AtomGrid gridB) {
+
+        ArrayList<Contact> contacts = new ArrayList<>();
+
+        // For each group of B, the first atoms of A and of B in contact.
+        int[] contactAtomsA = new int[gridB.groups.length];
+        int[] contactAtomsB = new int[gridB.groups.length];
+        Arrays.fill(contactAtomsA, -1);
 
-        Structure structure = structureSource.getStructure(pdbFileName);
+        int[] groupsInContact = new int[gridB.groups.length];
+
+        int[] neighbours = new int[gridB.getNumberOfAtoms()];
+
+        for (int groupA = 0; groupA < gridA.groups.length; groupA++) {
+
+            int numGroupsInContact = 0;
+
+            for (int atomA = gridA.groupStarts[groupA]; atomA < gridA.groupStarts[groupA + 1]; atomA++) {
+                double x = gridA.x[atomA];
+                double y = gridA.y[atomA];
+                double z = gridA.z[atomA];
+                byte typeA = gridA.types[atomA];
+
+                int numNeighbours = gridB.getNeighbours(x, y, z, neighbours);
+
+                for (int n = 0; n < numNeighbours; n++) {
+                    int atomB = neighbours[n];
+                    int groupB = gridB.atomGroups[atomB];
+
+                    // the first atom of A in contact wins, then the first
+                    // atom of B
+                    if (contactAtomsA[groupB] != -1
+                            && (contactAtomsA[groupB] != atomA || contactAtomsB[groupB] < atomB)) {
+                        continue;
+                    }
+
+                    ContactType type = getContactType(typeA, gridB.types[atomB]);
+                    if (ContactType.OTHER.equals(type)) {
+                        continue;
+                    }
+
+                    // same computation as Calc.getDistance
+                    double dx = x - gridB.x[atomB];
+                    double dy = y - gridB.y[atomB];
+                    double dz = z - gridB.z[atomB];
+                    double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+                    if (isContact(type, distance)) {
+                        if (contactAtomsA[groupB] == -1) {
+                            groupsInContact[numGroupsInContact++] = groupB;
+                        }
+                        contactAtomsA[groupB] = atomA;
+                        contactAtomsB[groupB] = atomB;
+                    }
+                }
+            }
+
+            // groups of B in the order of the chain
+            Arrays.sort(groupsInContact, 0, numGroupsInContact);
+
+            Group residueGroupA = gridA.groups[groupA];
+
+            for (int i = 0; i < numGroupsInContact; i++) {
+                int groupB = groupsInContact[i];
+                Group residueGroupB = gridB.groups[groupB];
+
+                int atomA = contactAtomsA[groupB];
+                int atomB = contactAtomsB[groupB];
+
+                ContactType type = getContactType(gridA.types[atomA], gridB.types[atomB]);
+
+                double dx = gridA.x[atomA] - gridB.x[atomB];
+                double dy = gridA.y[atomA] - gridB.y[atomB];
+                double dz = gridA.z[atomA] - gridB.z[atomB];
+                double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+                contacts.add(new Contact(
+                        chainA.getChainID(), chainB.getChainID(), type, distance, residueGroupA.getResidueNumber().toString(),
+                        residueGroupB.getResidueNumber().toString(), gridA.residues[groupA], gridB.residues[groupB],
+                        residueGroupA.getResidueNumber().getSeqNum(), residueGroupB.getResidueNumber().getSeqNum()));
+
+                contactAtomsA[groupB] = -1;
+            }
+        }
+
+        return contacts;
+    }
+
+    private ContactType getContactType(byte typeA, byte typeB) {
+        if (typeA == AtomGrid.CYSTEINE_SULFUR && typeB == AtomGrid.CYSTEINE_SULFUR) {
+            return ContactType.DISULFITE_BRIDGE;
+        }
+
+        if ((typeA == AtomGrid.OXYGEN && typeB == AtomGrid.NITROGEN)
+                || (typeA == AtomGrid.NITROGEN && typeB == AtomGrid.OXYGEN)) {
+            return ContactType.SALT_BRIDGE;
+        }
+
+        if (typeA == AtomGrid.CARBON && typeB == AtomGrid.CARBON) {
+            return ContactType.VAN_DER_WAALS;
+        }
+
+        return ContactType.OTHER;
+    }
+
+    /**
+     * Compare all the atoms of each pair of residues. Reference implementation
+     * for getContacts.
+     *
+     * @param structure
+     * @return
+     */
+    public Collection<Contact> getContactsAllAtomPairs(Structure structure) {
 
         ArrayList<Contact> contacts = new ArrayList<>();
 
@@ -136,8 +363,6 @@ public class ResidueResidueContacts {
                                             groupB.getResidueNumber().toString(), residueA, residueB, groupA.getResidueNumber().getSeqNum(), groupB.getResidueNumber().getSeqNum());
 
                                     contacts.add(contact);
-//									Math.round(distance *100 ) /100 
-//									System.out.println(chainA.getChainID() + " " + chainB.getChainID() + " " + Math.round(distance *100 ) /100 + " " +type);
 
                                     inContact = true;
                                     break;
@@ -160,7 +385,18 @@ public class ResidueResidueContacts {
      * @param structureSource
      */
     public ResidueResidueContacts(StructureSource structureSource) {
+        this(structureSource, 1);
+    }
+
+    /**
+     *
+     * @param structureSource
+     * @param numberOfThreads pairs of chains are processed in parallel if
+     * larger than 1
+     */
+    public ResidueResidueContacts(StructureSource structureSource, int numberOfThreads) {
         this.structureSource = structureSource;
+        this.numberOfThreads = numberOfThreads;
     }
 
     /**
@@ -15,12 +15,12 @@
  */
 package it.iit.genomics.cru.structures.business;
 
-import it.iit.genomics.cru.structures.alignment.SmithWaterman;
 import it.iit.genomics.cru.structures.model.MoleculeEntry;
 import it.iit.genomics.cru.structures.model.AAPosition;
 import it.iit.genomics.cru.structures.model.AAPositionManager;
 import it.iit.genomics.cru.structures.model.ChainMapping;
 import it.iit.genomics.cru.structures.model.InteractionStructure;
+import it.iit.genomics.cru.structures.model.ResidueSet;
 import it.iit.genomics.cru.structures.model.StructureException;
 import it.iit.genomics.cru.structures.model.StructureModel;
 import it.iit.genomics.cru.structures.model.position.UniprotPosition;
@@ -35,8 +35,6 @@ import com.google.common.collect.ArrayListMultimap;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.biojava.nbio.structure.Chain;
-import org.biojava.nbio.structure.Group;
-import org.biojava.nbio.structure.GroupType;
 import org.biojava.nbio.structure.Structure;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -282,7 +280,7 @@ public class StructureMapper {
 
                     for (int pdbPosition : pdbPositions) {
                         search.addStructurePosition(structureID,
-                                pdbPosition + ":" + pdbChain.getChainID());
+                                pdbPosition, pdbChain.getChainID());
 
                         search.addStructure2ProteinPosition(
                                 structureID, pdbPosition,
@@ -298,10 +296,11 @@ public class StructureMapper {
                 search.addNotOnStructure(structureID);
             }
 
-            if (false == search.getPositions(structureID).isEmpty()) {
+            ResidueSet positions = search.getResidues(structureID);
+
+            if (false == positions.isEmpty()) {
                 // Add residue
-                for (String pdbPosition : search
-                        .getPositions(structureID)) {
+                for (String pdbPosition : positions.toStrings()) {
 
                     switch (type) {
                         case INTERACTION_PROTEINA:
@@ -348,18 +347,18 @@ public class StructureMapper {
         // Get residues at interface
         String structureID = miStructure.getStructureID();
 
-        Collection<String> contacts;
+        ResidueSet contacts;
 
         if (proteinB.isLigand()) {
             contacts = structureSource
-                    .getLigandContacts(structureID,
+                    .getLigandContactResidues(structureID,
                             proteinA.getChainNames(structureID),
                             proteinB.getGeneName());
         } else if (proteinA.isLigand()) {
             contacts = null;
             logger.error("strange: protA is a ligand");
         } else {
-            contacts = structureSource.getContacts(structureID,
+            contacts = structureSource.getContactResidues(structureID,
                     proteinA.getChainNames(structureID),
                     proteinB.getChainNames(structureID));
         }
@@ -368,93 +367,72 @@ public class StructureMapper {
             return;
         }
 
+        addInterfaceResidues(type, proteinB, structureID, contacts, residuesA);
+    }
+
+    /**
+     * Mark the residues of the query at the interface. The residues are only
+     * formatted as strings for the ones in contact.
+     *
+     * @param type
+     * @param proteinB
+     * @param structureID
+     * @param contacts residues at the interface
+     * @param residuesA
+     */
+    protected void addInterfaceResidues(MappingType type, MoleculeEntry proteinB,
+            String structureID, ResidueSet contacts, Collection<AAPosition> residuesA) {
+
         for (AAPosition search : residuesA) {
 
-            for (String pdbResidue : search.getPositions(structureID)) {
-                if (contacts.contains(pdbResidue)) {
+            ResidueSet positions = search.getResidues(structureID);
+
+            if (false == contacts.intersects(positions)) {
+                continue;
+            }
+
+            // keys can only be compared within the same chain table
+            boolean sameChains = contacts.getChainTable() == positions.getChainTable();
+
+            for (long residue : positions.getKeys()) {
+                if (sameChains ? contacts.contains(residue) : contacts.contains(positions.format(residue))) {
+                    String pdbResidue = positions.format(residue);
                     interactionStructuresQueryResiduesAtInterfaces.addResidue(
                             structureID, pdbResidue);
                     if (MappingType.INTERACTION_PROTEINA.equals(type)) {
                         interfaceAAPositionsA.add(search);
-                        // interfaceRegionsA.add(search.getDescription());
-                        // interfaceProteinResiduesA.add(search.getUniprotAAPosition(proteinA.getSequence()));
                     } else if (MappingType.INTERACTION_PROTEINB.equals(type)) {
                         interfaceAAPositionsB.add(search);
-                        // interfaceRegionsB.add(search.getDescription());
-                        // interfaceProteinResiduesB.add(search.getUniprotAAPosition(proteinA.getSequence()));
                     } else {
-                        logger.warn("strange: mapping type = {0}", type);
-                        // strange
+                        logger.warn("strange: mapping type = {}", type);
                     }
                     search.addInterfaceStructurePosition(structureID, pdbResidue, proteinB);
                 }
             }
         }
-
     }
 
     private int[] getPdbPositions(String structureId, Chain chain, AAPosition search, MoleculeEntry protein) {
 
         ArrayList<Integer> positions = new ArrayList<>();
 
-        // Align the region to the chain
-        SmithWaterman nw;
-        nw = new SmithWaterman(search.getGene().getUniprotSequence().getSequence(), chain.getAtomSequence());
-
-        String regionAlignedSequence = nw.getAlignmentSeqA();
-        String chainAlignedSequence = nw.getAlignmentSeqB();
-
-        int groupPosition = 0;
+        // The alignment of the protein to the chain is shared by all the
+        // positions and queries
+        ChainAlignment alignment = ChainAlignmentCache.getInstance().getAlignment(structureId, chain,
+                search.getGene().getUniprotSequence().getSequence());
 
-        // go to the first AA of the group, skiping non AA
-        for (int chainAAindex = 0; chainAAindex < nw.getStartAlignmentB(); chainAAindex++) {
+        for (int uniprotPos = search.getStart(); uniprotPos <= search.getEnd(); uniprotPos++) {
 
-            Group group = chain.getAtomGroup(groupPosition);
+            int pos = alignment.getPdbPosition(uniprotPos);
 
-            if (false == GroupType.AMINOACID.equals(group.getType())) {
-                chainAAindex++;
-            }
-            groupPosition++;
-        }
-
-        int uniprotCursor = nw.getStartAlignmentA();
-
-        for (int aaPosition = 0; aaPosition < regionAlignedSequence.length(); aaPosition++) {
-
-            char uniprotAA = regionAlignedSequence.charAt(aaPosition);
-            char pdbAA = chainAlignedSequence.charAt(aaPosition);
-
-            if ('-' == pdbAA) {
-                uniprotCursor++;
+            if (pos == ChainAlignment.NOT_ALIGNED) {
                 continue;
             }
 
-            Group group = chain.getAtomGroup(groupPosition);
-
-            groupPosition++;
-
-            if (GroupType.AMINOACID.equals(group.getType())) {
-
-                Integer pos = group.getResidueNumber().getSeqNum();
-
-                if ('-' == uniprotAA) {
-                    logger.warn("Position not aligned to uniprot: {0} {1} {2}", new Object[]{structureId, chain.getChainID(), pos});
-                } else if (uniprotCursor >= search.getStart() - 1 && uniprotCursor <= search.getEnd() - 1) {
-
-                    // Add residue
-                    positions.add(pos);
-
-                    int uniprotPos = uniprotCursor + 1;
-
-                    search.addPdbToProtein(structureId, pos, chain.getChainID(), new UniprotPosition(uniprotPos));
-                }
-
-            }
-
-            if ('-' != uniprotAA) {
-                uniprotCursor++;
-            }
+            // Add residue
+            positions.add(pos);
 
+            search.addPdbToProtein(structureId, pos, chain.getChainID(), new UniprotPosition(uniprotPos));
         }
 
         return ArrayUtils.toPrimitive(positions.toArray(new Integer[positions
@@ -22,6 +22,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.common.collect.ArrayListMultimap;
 
@@ -35,6 +36,11 @@ import org.slf4j.LoggerFactory;
  * Mapping between the genomic region and the amino acid position of a protein
  * sequence.
  *
+ * A position is shared by the results of a query, which are mapped in
+ * parallel: the positions on the structures are updated under the lock of
+ * the position. They are returned as copies, except the residue sets of
+ * getResidues(), shared read-only snapshots rebuilt after a change.
+ *
  */
 public class AAPosition {
 
@@ -81,12 +87,18 @@ public class AAPosition {
     /**
      *
      */
-    protected final ArrayListMultimap<String, String> structurePositions = ArrayListMultimap.create();
+    protected final HashMap<String, ResidueSet> structurePositions = new HashMap<>();
+
+    /**
+     * Read-only copies of structurePositions, read without lock and rebuilt
+     * after a change of the structure.
+     */
+    private final ConcurrentHashMap<String, ResidueSet> residueSnapshots = new ConcurrentHashMap<>();
 
     /**
      *
      */
-    protected final ArrayListMultimap<String, String> structureInterfaces = ArrayListMultimap.create();
+    protected final HashMap<String, ResidueSet> structureInterfaces = new HashMap<>();
 
     /**
      *
@@ -188,16 +200,37 @@ public class AAPosition {
      * @param structureID
      * @param position
      */
-    public void addStructurePosition(String structureID, String position) {
-        structurePositions.put(structureID, position);
+    public synchronized void addStructurePosition(String structureID, String position) {
+        getResidueSet(structurePositions, structureID).add(position);
+        residueSnapshots.remove(structureID);
+    }
+
+    /**
+     *
+     * @param structureID
+     * @param residueNumber
+     * @param chain
+     */
+    public synchronized void addStructurePosition(String structureID, int residueNumber, String chain) {
+        getResidueSet(structurePositions, structureID).add(residueNumber, chain);
+        residueSnapshots.remove(structureID);
+    }
+
+    private static ResidueSet getResidueSet(HashMap<String, ResidueSet> residues, String structureID) {
+        ResidueSet residueSet = residues.get(structureID);
+        if (residueSet == null) {
+            residueSet = new ResidueSet(ChainTable.getChainTable(structureID));
+            residues.put(structureID, residueSet);
+        }
+        return residueSet;
     }
 
     /**
      *
      * @return
      */
-    public Collection<String> getStructureIDs() {
-        return structurePositions.keySet();
+    public synchronized Collection<String> getStructureIDs() {
+        return new ArrayList<>(structurePositions.keySet());
     }
 
     /**
@@ -205,11 +238,33 @@ public class AAPosition {
      * @param structureID
      * @return
      */
-    public Collection<String> getPositions(String structureID) {
+    public synchronized Collection<String> getPositions(String structureID) {
         if (structurePositions.get(structureID) == null) {
             return Collections.emptyList();
         }
-        return structurePositions.get(structureID);
+        return structurePositions.get(structureID).toStrings();
+    }
+
+    /**
+     *
+     * @param structureID
+     * @return positions in the structure, empty if none. The set is shared
+     * and must not be modified.
+     */
+    public ResidueSet getResidues(String structureID) {
+        ResidueSet residues = residueSnapshots.get(structureID);
+        if (residues != null) {
+            return residues;
+        }
+
+        synchronized (this) {
+            residues = new ResidueSet(ChainTable.getChainTable(structureID));
+            if (structurePositions.get(structureID) != null) {
+                residues.addAll(structurePositions.get(structureID));
+            }
+            residueSnapshots.put(structureID, residues);
+            return residues;
+        }
     }
 
     /**
@@ -217,11 +272,11 @@ public class AAPosition {
      * @param structureID
      * @return
      */
-    public Collection<String> getInterfacePositions(String structureID) {
+    public synchronized Collection<String> getInterfacePositions(String structureID) {
         if (structureInterfaces.get(structureID) == null) {
             return Collections.emptyList();
         }
-        return structureInterfaces.get(structureID);
+        return structureInterfaces.get(structureID).toStrings();
     }
 
     /**
@@ -229,11 +284,11 @@ public class AAPosition {
      * @param partner
      * @return
      */
-    public Collection<String> getInterfacePartnerPositions(MoleculeEntry partner) {
+    public synchronized Collection<String> getInterfacePartnerPositions(MoleculeEntry partner) {
         if (partnerInterfaces.get(partner) == null) {
             return Collections.emptyList();
         }
-        return partnerInterfaces.get(partner);
+        return new ArrayList<>(partnerInterfaces.get(partner));
     }
 
     /**
@@ -241,7 +296,7 @@ public class AAPosition {
      * @param partner
      * @return
      */
-    public Collection<String> getInterfacePartnerAAPositions(MoleculeEntry partner) {
+    public synchronized Collection<String> getInterfacePartnerAAPositions(MoleculeEntry partner) {
         if (partnerInterfaces.get(partner) == null) {
             return Collections.emptyList();
         }
@@ -277,8 +332,8 @@ public class AAPosition {
      * @param position
      * @param partner
      */
-    public void addInterfaceStructurePosition(String structureID, String position, MoleculeEntry partner) {
-        structureInterfaces.put(structureID, position);
+    public synchronized void addInterfaceStructurePosition(String structureID, String position, MoleculeEntry partner) {
+        getResidueSet(structureInterfaces, structureID).add(position);
         partnerInterfaces.put(partner, structureID + ":" + position);
     }
 
@@ -286,8 +341,8 @@ public class AAPosition {
      *
      * @return
      */
-    public Collection<String> getInterfaceStructureIDs() {
-        return structureInterfaces.keySet();
+    public synchronized Collection<String> getInterfaceStructureIDs() {
+        return new ArrayList<>(structureInterfaces.keySet());
     }
 
     /**
@@ -295,11 +350,11 @@ public class AAPosition {
      * @param structureID
      * @return
      */
-    public Collection<String> getInterfaceStructurePositions(String structureID) {
+    public synchronized Collection<String> getInterfaceStructurePositions(String structureID) {
         if (structureInterfaces.get(structureID) == null) {
             return Collections.emptyList();
         }
-        return structureInterfaces.get(structureID);
+        return structureInterfaces.get(structureID).toStrings();
     }
 
     @Override
@@ -358,7 +413,7 @@ public class AAPosition {
      *
      * @param structureID
      */
-    public void addNotOnStructure(String structureID) {
+    public synchronized void addNotOnStructure(String structureID) {
         notOnStructure.add(structureID);
     }
 
@@ -367,7 +422,7 @@ public class AAPosition {
      * @param structureID
      * @return
      */
-    public boolean notOnStructure(String structureID) {
+    public synchronized boolean notOnStructure(String structureID) {
         return notOnStructure.contains(structureID);
     }
 
@@ -410,7 +465,7 @@ public class AAPosition {
      * @param chain
      * @param aa
      */
-    public void addStructure2ProteinPosition(String structureID, int position, String chain, ChainMapping aa) {
+    public synchronized void addStructure2ProteinPosition(String structureID, int position, String chain, ChainMapping aa) {
         structurePosition2AAPositions.put(structureID + ":" + position + ":" + chain, aa);
     }
 
@@ -422,7 +477,7 @@ public class AAPosition {
      *
      * @return
      */
-    public Collection<String> getGenomicPositions() {
+    public synchronized Collection<String> getGenomicPositions() {
 
         HashSet<String> genomePositions = new HashSet<>();
 
@@ -448,7 +503,7 @@ public class AAPosition {
      * @param partner
      * @return
      */
-    public Collection<String> getGenomicPositions(MoleculeEntry partner) {
+    public synchronized Collection<String> getGenomicPositions(MoleculeEntry partner) {
 
         HashSet<String> genomePositions = new HashSet<>();
 
@@ -459,7 +514,7 @@ public class AAPosition {
         return genomePositions;
     }
 
-    private Collection<String> getGenomicPositions(String structurePdbPosition) {
+    private synchronized Collection<String> getGenomicPositions(String structurePdbPosition) {
 
         UniprotPosition uniprotPosition = pdbPos2uniprotPositions.get(structurePdbPosition);
         if (uniprotPosition == null) {
@@ -485,7 +540,7 @@ public class AAPosition {
      * @param chain
      * @param uniprotPos
      */
-    public void addPdbToProtein(String structureId, int pdbPosition, String chain, UniprotPosition uniprotPos) {
+    public synchronized void addPdbToProtein(String structureId, int pdbPosition, String chain, UniprotPosition uniprotPos) {
         String pdbKey = structureId + ":" + pdbPosition + ":" + chain;
         pdbPos2uniprotPositions.put(pdbKey, uniprotPos);
     }
@@ -15,13 +15,14 @@
  */
 package it.iit.genomics.cru.structures.model;
 
-import it.iit.genomics.cru.structures.alignment.SmithWaterman;
-import it.iit.genomics.cru.structures.model.position.TranscriptPosition;
-import it.iit.genomics.cru.structures.model.position.UniprotPosition;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -89,52 +90,111 @@ public class AAPositionManager {
     }
 
     /**
-     * Map the translated sequence to the protein sequence in uniprot. The
-     * result AA positions are 1-based inclusive.
+     * Map several genomic ranges of the same gene. Ranges are sorted and
+     * identical ranges are mapped once. The bounds of all the ranges are
+     * projected on the transcript in one sweep over the exons, and the
+     * alignment of the transcript to the protein is shared by all the ranges.
      *
      * @param gene
-     * @param minPos 0-based inclusve
-     * @param maxPos 0-based inclusve
+     * @param ranges 0-based inclusive
      * @return
      */
-    public Collection<AAPosition> getAAPositions(MIGene gene, int minPos, int maxPos) {
-        ArrayList<AAPosition> aaPositionsLocal = new ArrayList<>();
+    public Collection<AAPosition> getAAPositions(MIGene gene, Collection<Range> ranges) {
+        ArrayList<Range> sortedRanges = new ArrayList<>(ranges);
+
+        Collections.sort(sortedRanges, new Comparator<Range>() {
+            @Override
+            public int compare(Range range1, Range range2) {
+                if (range1.getMin() != range2.getMin()) {
+                    return Integer.compare(range1.getMin(), range2.getMin());
+                }
+                return Integer.compare(range1.getMax(), range2.getMax());
+            }
+        });
 
-        Range targetRange = new Range(minPos, maxPos);
-        Range geneRange;
+        int codingMin = Math.min(gene.getCodingStart(), gene.getCodingEnd());
+        int codingMax = Math.max(gene.getCodingStart(), gene.getCodingEnd());
 
-        if (gene.isForward()) {
-            geneRange = new Range(gene.getCodingStart(), gene.getCodingEnd());
-        } else {
-            geneRange = new Range(gene.getCodingEnd(), gene.getCodingStart());
-        }
+        // coding part of each distinct range
+        int[] mins = new int[sortedRanges.size()];
+        int[] maxs = new int[sortedRanges.size()];
+        int numRanges = 0;
 
-        if (false == targetRange.intersects(geneRange)) {
-            return aaPositionsLocal;
+        Range previous = null;
+
+        for (Range range : sortedRanges) {
+            if (previous != null && previous.getMin() == range.getMin() && previous.getMax() == range.getMax()) {
+                continue;
+            }
+            previous = range;
+
+            if (Math.max(range.getMin(), codingMin) > Math.min(range.getMax(), codingMax)) {
+                continue;
+            }
+
+            mins[numRanges] = Math.max(range.getMin(), codingMin);
+            maxs[numRanges] = Math.min(range.getMax(), codingMax);
+            numRanges++;
         }
 
-        /* 1-based inclusive */
-        if (minPos < Math.min(gene.getCodingStart(), gene.getCodingEnd())) {
-            minPos = Math.min(gene.getCodingStart(), gene.getCodingEnd());
+        LinkedHashSet<AAPosition> positions = new LinkedHashSet<>();
+
+        if (numRanges == 0) {
+            return positions;
         }
 
-        if (maxPos > Math.max(gene.getCodingStart(), gene.getCodingEnd())) {
-            maxPos = Math.max(gene.getCodingStart(), gene.getCodingEnd());
+        int[] bounds = new int[2 * numRanges];
+        System.arraycopy(mins, 0, bounds, 0, numRanges);
+        System.arraycopy(maxs, 0, bounds, numRanges, numRanges);
+        Arrays.sort(bounds);
+
+        int[] transcriptPositions = gene.getTranscriptAAPositions(bounds);
+
+        for (int i = 0; i < numRanges; i++) {
+            int ts = transcriptPositions[Arrays.binarySearch(bounds, gene.isForward() ? mins[i] : maxs[i])];
+            int te = transcriptPositions[Arrays.binarySearch(bounds, gene.isForward() ? maxs[i] : mins[i])];
+            positions.addAll(getAAPositions(gene, mins[i], maxs[i], ts, te));
         }
-        
-        // Should be 1-based
-        // warning, genomic ranges are 1-based exclusive: do not translate the max
-        TranscriptPosition ts = gene.getTranscriptAAPosition(gene.isForward() ? minPos : maxPos);
-        TranscriptPosition te = gene.getTranscriptAAPosition(gene.isForward() ? maxPos : minPos);
 
-        if (ts == null) {
+        return positions;
+    }
+
+    /**
+     * Map the translated sequence to the protein sequence in uniprot. The
+     * result AA positions are 1-based inclusive.
+     *
+     * @param gene
+     * @param minPos 0-based inclusve
+     * @param maxPos 0-based inclusve
+     * @return
+     */
+    public Collection<AAPosition> getAAPositions(MIGene gene, int minPos, int maxPos) {
+        return getAAPositions(gene, Collections.singletonList(new Range(minPos, maxPos)));
+    }
+
+    /**
+     * Map the coding part of a genomic range, whose bounds are already
+     * projected on the transcript.
+     *
+     * @param gene
+     * @param minPos 0-based inclusve
+     * @param maxPos 0-based inclusve
+     * @param ts transcript position of the first base, 1-based, or
+     * MIGene.NOT_IN_EXON
+     * @param te transcript position of the last base, 1-based, or
+     * MIGene.NOT_IN_EXON
+     * @return
+     */
+    private Collection<AAPosition> getAAPositions(MIGene gene, int minPos, int maxPos, int ts, int te) {
+        ArrayList<AAPosition> aaPositionsLocal = new ArrayList<>();
+
+        if (ts == MIGene.NOT_IN_EXON) {
             if (gene.isForward()) {
                 // first exon start > minPos
                 for (MIExon exon : gene.getExons()) {
                     if (minPos <= exon.getStart()) {
                         minPos = exon.getStart();
-                        ts = new TranscriptPosition(exon.getProteinStart());
-                        //            logger.info("--- TS from " + minPos + " to " + ts);
+                        ts = exon.getProteinStart();
                         break;
                     }
                 }
@@ -143,21 +203,21 @@ public class AAPositionManager {
                 for (MIExon exon : gene.getExons()) {
                     if (maxPos >= exon.getEnd()) {
                         maxPos = exon.getEnd();
-                        ts = new TranscriptPosition(exon.getProteinStart());
+                        ts = exon.getProteinStart();
                         break;
                     }
                 }
             }
         }
 
-        if (te == null) {
+        if (te == MIGene.NOT_IN_EXON) {
             if (gene.isForward()) {
                 int lastIndexGene = -1;
                 int lastIndexAA = -1;
                 for (MIExon exon : gene.getExons()) {
                     if (maxPos >= exon.getStart()) {
                         maxPos = lastIndexGene;
-                        te = new TranscriptPosition(lastIndexAA);
+                        te = lastIndexAA;
                         break;
                     }
                     lastIndexGene = exon.getEnd();
@@ -167,120 +227,60 @@ public class AAPositionManager {
                 for (MIExon exon : gene.getExons()) {
                     if (minPos < exon.getEnd()) {
                         minPos = exon.getEnd();
-                        te = new TranscriptPosition(exon.getProteinEnd());
+                        te = exon.getProteinEnd();
                         break;
                     }
                 }
             }
         }
 
-        if (ts == null || te == null) {
-            logger.error( "Null transcript position: {0}/{1}, {2} {3}-{4}", new Object[]{ts, te, gene.getID(), minPos, maxPos});
+        if (ts == MIGene.NOT_IN_EXON || te == MIGene.NOT_IN_EXON) {
+            logger.error("Null transcript position: {}/{}, {} {}-{}", new Object[]{ts, te, gene.getID(), minPos, maxPos});
             return aaPositionsLocal;
         }
 
         // 1-based to 0-based
-        int regionTranscriptStart = ts.getPosition() - 1;
-        int regionTranscriptEnd = te.getPosition() - 1;
+        int regionTranscriptStart = ts - 1;
+        int regionTranscriptEnd = te - 1;
 
         if (null == gene.getTranscriptSequence()) {
             logger.error("No transcript sequence for " + gene.getID());
             return aaPositionsLocal;
         }
         String transcriptSequence = gene.getTranscriptSequence().getSequence();
+        int transcriptLength = transcriptSequence.length();
+
         if (transcriptSequence.startsWith("*")) {
-            transcriptSequence = transcriptSequence.substring(1);
+            transcriptLength--;
             if (regionTranscriptStart == 0) {
                 regionTranscriptStart++;
             }
         }
 
-        if (transcriptSequence.endsWith("*")) {
-            transcriptSequence = transcriptSequence.substring(0, transcriptSequence.length());
+        if (transcriptLength > 0 && transcriptSequence.endsWith("*")) {
             // It should not change anything for the end index, unless we were looking for the last character
-            if (regionTranscriptEnd == transcriptSequence.length() - 1) {
+            if (regionTranscriptEnd == transcriptLength - 1) {
                 regionTranscriptEnd--;
             }
         }
         try {
+            // The alignment is computed once per gene and isoform
+            TranscriptAlignment alignment = gene.getTranscriptAlignment();
 
-            SmithWaterman nw = new SmithWaterman(transcriptSequence, gene.getUniprotSequence().getSequence());
-            if (regionTranscriptStart < 0 || regionTranscriptEnd < 0) {
-                return aaPositionsLocal;
-            }
-
-            int transcriptCursor = nw.getStartAlignmentA();
-            int proteinCursor = nw.getStartAlignmentB();
-
-            Integer startAA = null;
-            Integer endAA = null;
-
-            if (regionTranscriptEnd < transcriptCursor) {
+            if (null == alignment) {
+                logger.error("No alignment between the transcript and the protein of " + gene.getID());
                 return aaPositionsLocal;
             }
 
-            HashMap<UniprotPosition, TranscriptPosition> uniprot2transcriptAA = new HashMap<>();
-            for (int i = 0; i < nw.getAlignmentSeqA().length(); i++) {
-                char transcriptAA = nw.getAlignmentSeqA().charAt(i);
-                char proteinAA = nw.getAlignmentSeqB().charAt(i);
-                if (transcriptCursor >= regionTranscriptStart && startAA == null) {
-                    startAA = proteinCursor + 1;
-                    if (proteinAA == '-') {
-                        logger.warn("Strange, AA aligned to '-'");
-                    }
-                }
-
-                if (transcriptCursor == regionTranscriptEnd && endAA == null) {
-                    endAA = proteinCursor + 1;
-                    if (proteinAA == '-') {
-                        logger.warn("Strange, AA aligned to '-'");
-                    }
-                }
+            int[] uniprotRange = alignment.getUniprotRange(regionTranscriptStart, regionTranscriptEnd);
 
-                if (proteinAA != '-' && transcriptAA != '-') {
-                    uniprot2transcriptAA.put(new UniprotPosition(proteinCursor + 1), new TranscriptPosition(transcriptCursor + 1));
-                }
-
-                if (endAA != null) {
-                    break;
-                }
-                if ('-' != transcriptAA) {
-                    transcriptCursor++;
-                }
-
-                if ('-' != proteinAA) {
-                    proteinCursor++;
-                }
-
-            }
-
-            /**
-             * TODO: Any reason why it should not be rejected? It is out the
-             * loop
-             */
-            if (transcriptCursor == regionTranscriptStart && startAA == null) {
-                startAA = proteinCursor + 1;
-            }
-
-            if (transcriptCursor == regionTranscriptEnd) {
-                endAA = proteinCursor + 1;
-            }
-
-            if (startAA != null) {
-
-                /**
-                 * TODO: Any reason why it should not be rejected?
-                 */
-                if (endAA == null) {
-                    endAA = proteinCursor + 1;
-                }
+            if (uniprotRange != null) {
 
                 /**
                  * TODO: add description
                  */
                 AAPosition position
-                        = getAAPosition(startAA, endAA, minPos, maxPos, gene);
-                gene.addUniprotToTranscriptAA(uniprot2transcriptAA);
+                        = getAAPosition(uniprotRange[0], uniprotRange[1], minPos, maxPos, gene);
                 aaPositionsLocal.add(position);
             }
         } catch (Exception e) {
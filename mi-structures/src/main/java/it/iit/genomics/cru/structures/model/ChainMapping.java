@@ -15,6 +15,8 @@
  */
 package it.iit.genomics.cru.structures.model;
 
+import java.io.Serializable;
+
 /**
  *
  * @author Arnaud Ceol
@@ -22,7 +24,9 @@ package it.iit.genomics.cru.structures.model;
  * Mapping of the chain in a structure to the protein sequence.
  *
  */
-public class ChainMapping {
+public class ChainMapping implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     /**
      *
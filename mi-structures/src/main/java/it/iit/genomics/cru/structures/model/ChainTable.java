@@ -0,0 +1,249 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.model;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Chain names of a structure, each one associated to a small index. There is
+ * one table per structure ID, shared by all the residue sets of the
+ * structure. The registry only keeps weak references: a table is released
+ * with the last residue set that uses it.
+ *
+ * The lookups do not lock: the chains are copied on write, which is cheap
+ * since a structure only has a few chains.
+ */
+public class ChainTable {
+
+    /**
+     * Returned by indexOf for unknown chains.
+     */
+    public static final int UNKNOWN_CHAIN = -1;
+
+    /**
+     * Returned by find for residues of unknown chains. It cannot be a valid
+     * key, since the chain index is limited to 15 bits.
+     */
+    public static final long NOT_FOUND = -1;
+
+    private static final int MAX_CHAINS = 1 << 15;
+
+    private static final ConcurrentHashMap<String, TableReference> tables = new ConcurrentHashMap<>();
+
+    private static final ReferenceQueue<ChainTable> releasedTables = new ReferenceQueue<>();
+
+    private static class TableReference extends WeakReference<ChainTable> {
+
+        private final String structureId;
+
+        TableReference(String structureId, ChainTable table) {
+            super(table, releasedTables);
+            this.structureId = structureId;
+        }
+    }
+
+    /**
+     * Never modified once published, replaced when a chain is added.
+     */
+    private volatile HashMap<String, Integer> indexes = new HashMap<>();
+
+    private volatile String[] chains = new String[0];
+
+    /**
+     *
+     * @param structureId
+     * @return the table of the structure
+     */
+    public static ChainTable getChainTable(String structureId) {
+        removeReleasedTables();
+
+        while (true) {
+            TableReference reference = tables.get(structureId);
+            ChainTable table = reference == null ? null : reference.get();
+
+            if (table != null) {
+                return table;
+            }
+
+            table = new ChainTable();
+            TableReference newReference = new TableReference(structureId, table);
+
+            if (reference == null
+                    ? tables.putIfAbsent(structureId, newReference) == null
+                    : tables.replace(structureId, reference, newReference)) {
+                return table;
+            }
+            // another thread registered a table first, use it
+        }
+    }
+
+    /**
+     * Remove the tables released by the garbage collector.
+     */
+    private static void removeReleasedTables() {
+        Reference<? extends ChainTable> released;
+        while ((released = releasedTables.poll()) != null) {
+            TableReference reference = (TableReference) released;
+            tables.remove(reference.structureId, reference);
+        }
+    }
+
+    /**
+     * Release the table of a structure as the garbage collector does, e.g. in
+     * tests. The residue sets still using it keep it.
+     *
+     * @param structureId
+     */
+    static void release(String structureId) {
+        TableReference reference = tables.get(structureId);
+        if (reference != null) {
+            reference.clear();
+            reference.enqueue();
+        }
+    }
+
+    /**
+     *
+     * @return number of tables in the registry
+     */
+    static int getNumberOfTables() {
+        removeReleasedTables();
+        return tables.size();
+    }
+
+    /**
+     * Index of a chain, it is added to the table if needed.
+     *
+     * @param chain
+     * @return
+     */
+    public int intern(String chain) {
+        Integer index = indexes.get(chain);
+        if (index != null) {
+            return index;
+        }
+
+        synchronized (this) {
+            index = indexes.get(chain);
+            if (index == null) {
+                if (chains.length == MAX_CHAINS) {
+                    throw new IllegalStateException("Too many chains: " + chain);
+                }
+                index = chains.length;
+
+                HashMap<String, Integer> newIndexes = new HashMap<>(indexes);
+                newIndexes.put(chain, index);
+                String[] newChains = Arrays.copyOf(chains, index + 1);
+                newChains[index] = chain;
+
+                // chains first: a published index is always valid
+                chains = newChains;
+                indexes = newIndexes;
+            }
+            return index;
+        }
+    }
+
+    /**
+     *
+     * @param chain
+     * @return index of the chain, or UNKNOWN_CHAIN
+     */
+    public int indexOf(String chain) {
+        Integer index = indexes.get(chain);
+        return index == null ? UNKNOWN_CHAIN : index;
+    }
+
+    /**
+     *
+     * @param index
+     * @return
+     */
+    public String getChain(int index) {
+        return chains[index];
+    }
+
+    /**
+     * Parse a "residueNumber[insertionCode]:chain" residue, e.g. "52A:B", the
+     * chain is added to the table.
+     *
+     * @param residue
+     * @return
+     */
+    public long parse(String residue) {
+        return parse(residue, true);
+    }
+
+    /**
+     * Parse a residue without adding its chain to the table.
+     *
+     * @param residue
+     * @return the key, or NOT_FOUND if the chain is not in the table
+     */
+    public long find(String residue) {
+        return parse(residue, false);
+    }
+
+    private long parse(String residue, boolean internChain) {
+        int separator = residue.indexOf(':');
+        if (separator < 1) {
+            throw new IllegalArgumentException("Not a residue: " + residue);
+        }
+
+        String chain = residue.substring(separator + 1);
+        int chainIndex = internChain ? intern(chain) : indexOf(chain);
+
+        if (chainIndex == UNKNOWN_CHAIN) {
+            return NOT_FOUND;
+        }
+
+        int end = separator;
+        char insertionCode = ResidueKey.NO_INSERTION_CODE;
+
+        if (false == Character.isDigit(residue.charAt(end - 1))) {
+            end--;
+            insertionCode = residue.charAt(end);
+        }
+
+        try {
+            return ResidueKey.pack(chainIndex, Integer.parseInt(residue.substring(0, end)), insertionCode);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a residue: " + residue, e);
+        }
+    }
+
+    /**
+     *
+     * @param key
+     * @return the "residueNumber[insertionCode]:chain" residue
+     */
+    public String format(long key) {
+        StringBuilder residue = new StringBuilder();
+        residue.append(ResidueKey.getResidueNumber(key));
+        if (ResidueKey.getInsertionCode(key) != ResidueKey.NO_INSERTION_CODE) {
+            residue.append(ResidueKey.getInsertionCode(key));
+        }
+        return residue.append(':').append(getChain(ResidueKey.getChainIndex(key))).toString();
+    }
+
+}
@@ -0,0 +1,226 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Intervals of a chromosome, e.g. genes, sorted by start in primitive arrays.
+ * The sorted array is read as an implicit balanced binary tree (the node at
+ * position i has level k if i ends with k bits set to 1, its children are at
+ * i - 2^(k-1) and i + 2^(k-1)), augmented with the maximum end of each
+ * subtree. A search skips the subtrees that end before the region, so that it
+ * takes O(log n + k) for k intervals found, even if a long gene covers most
+ * of the chromosome.
+ *
+ * Intervals are 0-based, end exclusive (as BED features and IGB spans).
+ *
+ * @param <T>
+ */
+public class GeneIntervalIndex<T> {
+
+    private final int[] starts;
+
+    private final int[] ends;
+
+    /**
+     * maxEnds[i] is the maximum end of the intervals of the subtree of node i
+     */
+    private final int[] maxEnds;
+
+    /**
+     * Level of the root, -1 if the index is empty
+     */
+    private final int maxLevel;
+
+    /**
+     * Below this level, the intervals of a subtree are scanned.
+     */
+    private final static int SCAN_LEVEL = 3;
+
+    private final Object[] values;
+
+    /**
+     *
+     * @param starts
+     * @param ends
+     * @param values
+     */
+    public GeneIntervalIndex(int[] starts, int[] ends, List<T> values) {
+        if (starts.length != ends.length || starts.length != values.size()) {
+            throw new IllegalArgumentException("Different number of starts, ends and values");
+        }
+
+        int size = starts.length;
+
+        // sort by start, the position in the input is in the low bits
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = ((long) starts[i] << 32) | i;
+        }
+        Arrays.sort(order);
+
+        this.starts = new int[size];
+        this.ends = new int[size];
+        this.maxEnds = new int[size];
+        this.values = new Object[size];
+
+        for (int i = 0; i < size; i++) {
+            int index = (int) (order[i] & 0xFFFFFFFFL);
+            this.starts[i] = starts[index];
+            this.ends[i] = ends[index];
+            this.values[i] = values.get(index);
+        }
+
+        this.maxLevel = indexMaxEnds();
+    }
+
+    /**
+     * Set the maximum end of each subtree, from the leaves to the root. A node
+     * beyond the last interval has no value: its maximum end is the one of the
+     * last complete subtree before it.
+     *
+     * @return level of the root
+     */
+    private int indexMaxEnds() {
+        int size = starts.length;
+
+        if (size == 0) {
+            return -1;
+        }
+
+        int lastNode = 0;
+        int lastMaxEnd = 0;
+
+        // leaves
+        for (int i = 0; i < size; i += 2) {
+            lastNode = i;
+            maxEnds[i] = ends[i];
+            lastMaxEnd = ends[i];
+        }
+
+        int level = 1;
+
+        for (; 1 << level <= size; level++) {
+            int half = 1 << (level - 1);
+            int step = half << 2;
+
+            for (int i = (half << 1) - 1; i < size; i += step) {
+                int leftMaxEnd = maxEnds[i - half];
+                int rightMaxEnd = i + half < size ? maxEnds[i + half] : lastMaxEnd;
+                maxEnds[i] = Math.max(ends[i], Math.max(leftMaxEnd, rightMaxEnd));
+            }
+
+            // parent of the last node
+            lastNode = ((lastNode >> level) & 1) == 1 ? lastNode - half : lastNode + half;
+            if (lastNode < size) {
+                lastMaxEnd = Math.max(lastMaxEnd, maxEnds[lastNode]);
+            }
+        }
+
+        return level - 1;
+    }
+
+    /**
+     *
+     * @return number of intervals
+     */
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * Intervals overlapping a region. A region of length 0 (e.g. a click in
+     * IGB) is a position: it overlaps the intervals that contain it,
+     * including the ones starting there.
+     *
+     * @param min 0-based
+     * @param max 0-based exclusive
+     * @return values of the intervals, sorted by start
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> getOverlapping(int min, int max) {
+        if (max <= min) {
+            max = min + 1;
+        }
+
+        ArrayList<T> overlapping = new ArrayList<>();
+
+        if (maxLevel < 0) {
+            return overlapping;
+        }
+
+        int size = starts.length;
+
+        // nodes to visit: level, position and whether the left subtree has
+        // already been visited. At most two nodes per level are pending.
+        int[] stackLevels = new int[2 * maxLevel + 2];
+        int[] stackNodes = new int[stackLevels.length];
+        boolean[] stackLeftDone = new boolean[stackLevels.length];
+
+        int top = 0;
+        stackLevels[top] = maxLevel;
+        stackNodes[top] = (1 << maxLevel) - 1;
+        stackLeftDone[top] = false;
+        top++;
+
+        while (top > 0) {
+            top--;
+            int level = stackLevels[top];
+            int node = stackNodes[top];
+
+            if (level <= SCAN_LEVEL) {
+                // small subtree, scan its intervals
+                int first = node >> level << level;
+                int last = Math.min(size, first + (1 << (level + 1)) - 1);
+                for (int i = first; i < last && starts[i] < max; i++) {
+                    if (min < ends[i]) {
+                        overlapping.add((T) values[i]);
+                    }
+                }
+            } else if (false == stackLeftDone[top]) {
+                int left = node - (1 << (level - 1));
+
+                // come back to this node after its left subtree
+                stackLeftDone[top] = true;
+                top++;
+
+                if (left >= size || maxEnds[left] > min) {
+                    stackLevels[top] = level - 1;
+                    stackNodes[top] = left;
+                    stackLeftDone[top] = false;
+                    top++;
+                }
+            } else if (node < size && starts[node] < max) {
+                if (min < ends[node]) {
+                    overlapping.add((T) values[node]);
+                }
+
+                stackLevels[top] = level - 1;
+                stackNodes[top] = node + (1 << (level - 1));
+                stackLeftDone[top] = false;
+                top++;
+            }
+        }
+
+        return overlapping;
+    }
+
+}
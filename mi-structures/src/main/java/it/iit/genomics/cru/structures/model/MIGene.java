@@ -21,15 +21,13 @@ import it.iit.genomics.cru.structures.model.sequence.TranscriptSequence;
 import it.iit.genomics.cru.structures.model.sequence.UniprotSequence;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
-
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,6 +39,11 @@ import org.slf4j.LoggerFactory;
  */
 public class MIGene {
 
+    /**
+     * Value returned for genomic positions outside of the exons.
+     */
+    public static final int NOT_IN_EXON = Integer.MIN_VALUE;
+
     static AtomicInteger nextId = new AtomicInteger();
     private final int uniqueID;
 
@@ -53,16 +56,29 @@ public class MIGene {
     }
 
     /**
-     * AA positions are 1-based inclusive
+     * Alignment of the transcript to the Uniprot sequence, computed once by
+     * the AAPositionManager.
      */
-    protected BiMap<UniprotPosition, TranscriptPosition> uniprot2transcriptAA = HashBiMap.create();
+    protected TranscriptAlignment transcriptAlignment = null;
 
     /**
+     * Get the alignment of the translated transcript to the Uniprot sequence.
+     * It is computed on first call and each time one of the sequences
+     * changes.
      *
-     * @param uniprot2transcriptAA
+     * @return the alignment, or null if one of the sequences is missing
      */
-    public void addUniprotToTranscriptAA(HashMap<UniprotPosition, TranscriptPosition> uniprot2transcriptAA) {
-        this.uniprot2transcriptAA.putAll(uniprot2transcriptAA);
+    public TranscriptAlignment getTranscriptAlignment() {
+        if (transcriptSequence == null || uniprotSequence == null) {
+            return null;
+        }
+
+        if (transcriptAlignment == null
+                || false == transcriptAlignment.isAlignmentOf(transcriptSequence.getSequence(), uniprotSequence.getSequence())) {
+            transcriptAlignment = new TranscriptAlignment(transcriptSequence.getSequence(), uniprotSequence.getSequence());
+        }
+
+        return transcriptAlignment;
     }
 
     /**
@@ -71,7 +87,17 @@ public class MIGene {
      * @return
      */
     public TranscriptPosition getTranscriptAA(UniprotPosition proteinPosition) {
-        return uniprot2transcriptAA.get(proteinPosition);
+        if (transcriptAlignment == null) {
+            return null;
+        }
+
+        int position = transcriptAlignment.getTranscriptPosition(proteinPosition.getPosition());
+
+        if (position == TranscriptAlignment.NOT_ALIGNED) {
+            return null;
+        }
+
+        return new TranscriptPosition(position);
     }
 
     private static final Logger logger = LoggerFactory.getLogger(MIGene.class.getName());
@@ -335,8 +361,11 @@ public class MIGene {
     public UniprotPosition getUniprotAAPosition(int genomicPosition) {
 
         TranscriptPosition transcriptAAPosition = getTranscriptAAPosition(genomicPosition);
-        if (transcriptAAPosition != null) {
-            return uniprot2transcriptAA.inverse().get(transcriptAAPosition);
+        if (transcriptAAPosition != null && transcriptAlignment != null) {
+            int position = transcriptAlignment.getUniprotPosition(transcriptAAPosition.getPosition());
+            if (position != TranscriptAlignment.NOT_ALIGNED) {
+                return new UniprotPosition(position);
+            }
         }
 
         return null;
@@ -351,43 +380,116 @@ public class MIGene {
 
         for (MIExon exon : exons) {
             if (exon.getMin() <= genomicPosition && genomicPosition <= exon.getMax()) {
+                return new TranscriptPosition(getTranscriptAAPosition(exon, genomicPosition));
+            }
+        }
+        return null;
+    }
 
-                // 1-based
-                int proteinPos = exon.getProteinStart();
+    /**
+     * Position in the translated transcript of a genomic position of an exon.
+     *
+     * @param exon
+     * @param genomicPosition
+     * @return 1-based
+     */
+    private int getTranscriptAAPosition(MIExon exon, int genomicPosition) {
+        // 1-based
+        int proteinPos = exon.getProteinStart();
+
+        if (isForward()) {
+            int exonCursor = exon.getStart();
+            if (exon.getNumberOfOverlappingBases() > 0 && genomicPosition - exon.getMin() <= exon.getNumberOfOverlappingBases()) {
+                return proteinPos;
+            } else {
+                if (exon.getNumberOfOverlappingBases() > 0) {
+                    exonCursor += exon.getNumberOfOverlappingBases();
+                    proteinPos++;
+                }
+            }
+            return proteinPos + Math.floorDiv(genomicPosition - exonCursor, 3);
+        } else {
+            int exonCursor = exon.getStart();
 
-                if (isForward()) {
-                    int exonCursor = exon.getStart();
-                    if (exon.getNumberOfOverlappingBases() > 0 && genomicPosition - exon.getMin() <= exon.getNumberOfOverlappingBases()) {
-                        return new TranscriptPosition(proteinPos);
-                    } else {
-                        if (exon.getNumberOfOverlappingBases() > 0) {
-                            exonCursor += exon.getNumberOfOverlappingBases();
-                            proteinPos++;
-                        }
-                    }
-                    proteinPos += Math.floor(((double) genomicPosition - exonCursor) / 3);
-                    return new TranscriptPosition(proteinPos);
-                } else {
-                    int exonCursor = exon.getStart();
-
-                    if (exon.getNumberOfOverlappingBases() > 0 && exon.getMax() - genomicPosition <= exon.getNumberOfOverlappingBases()) {
-                        return new TranscriptPosition(proteinPos);
-                    } else {
-                        if (exon.getNumberOfOverlappingBases() > 0) {
-                            exonCursor -= exon.getNumberOfOverlappingBases();
-                            proteinPos++;
-                        }
-                    }
-                    int prev = proteinPos;
-                    proteinPos += Math.floor(((double) exonCursor - genomicPosition) / 3);
+            if (exon.getNumberOfOverlappingBases() > 0 && exon.getMax() - genomicPosition <= exon.getNumberOfOverlappingBases()) {
+                return proteinPos;
+            } else {
+                if (exon.getNumberOfOverlappingBases() > 0) {
+                    exonCursor -= exon.getNumberOfOverlappingBases();
+                    proteinPos++;
+                }
+            }
+            return proteinPos + Math.floorDiv(exonCursor - genomicPosition, 3);
+        }
+    }
 
-                    double u = ((double) exonCursor - genomicPosition) / 3;
+    /**
+     * Project several genomic positions on the translated transcript, in one
+     * sweep over the exons. Exons of a transcript are not expected to
+     * overlap.
+     *
+     * @param sortedGenomicPositions sorted in ascending order
+     * @return 1-based positions, in the same order, or NOT_IN_EXON
+     */
+    public int[] getTranscriptAAPositions(int[] sortedGenomicPositions) {
+        int[] positions = new int[sortedGenomicPositions.length];
+        Arrays.fill(positions, NOT_IN_EXON);
 
-                    return new TranscriptPosition(proteinPos);
-                }
+        if (exons.isEmpty()) {
+            return positions;
+        }
+
+        MIExon[] sortedExons = exons.toArray(new MIExon[exons.size()]);
+        Arrays.sort(sortedExons, new Comparator<MIExon>() {
+            @Override
+            public int compare(MIExon exon1, MIExon exon2) {
+                return Integer.compare(exon1.getMin(), exon2.getMin());
+            }
+        });
+
+        int exonIndex = 0;
+
+        for (int i = 0; i < sortedGenomicPositions.length; i++) {
+            int genomicPosition = sortedGenomicPositions[i];
+
+            while (exonIndex < sortedExons.length && sortedExons[exonIndex].getMax() < genomicPosition) {
+                exonIndex++;
+            }
+
+            if (exonIndex == sortedExons.length) {
+                break;
+            }
+
+            MIExon exon = sortedExons[exonIndex];
+
+            if (exon.getMin() <= genomicPosition) {
+                positions[i] = getTranscriptAAPosition(exon, genomicPosition);
             }
         }
-        return null;
+
+        return positions;
+    }
+
+    /**
+     * Project several genomic positions on the Uniprot sequence, in one sweep
+     * over the exons.
+     *
+     * @param sortedGenomicPositions sorted in ascending order
+     * @return 1-based positions, in the same order, or
+     * TranscriptAlignment.NOT_ALIGNED
+     */
+    public int[] getUniprotAAPositions(int[] sortedGenomicPositions) {
+        int[] positions = getTranscriptAAPositions(sortedGenomicPositions);
+
+        for (int i = 0; i < positions.length; i++) {
+            if (positions[i] == NOT_IN_EXON || transcriptAlignment == null) {
+                positions[i] = TranscriptAlignment.NOT_ALIGNED;
+            } else {
+                positions[i] = transcriptAlignment.getUniprotPosition(positions[i]);
+            }
+        }
+
+        return positions;
     }
 
     /**
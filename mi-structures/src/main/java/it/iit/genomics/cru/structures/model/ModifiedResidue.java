@@ -16,6 +16,7 @@
 package it.iit.genomics.cru.structures.model;
 
 import it.iit.genomics.cru.structures.model.position.UniprotPosition;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 
@@ -23,7 +24,9 @@ import java.util.Collection;
  *
  * @author Arnaud Ceol
  */
-public class ModifiedResidue {
+public class ModifiedResidue implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     /**
      *
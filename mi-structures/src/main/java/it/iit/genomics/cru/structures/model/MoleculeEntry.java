@@ -17,6 +17,7 @@ package it.iit.genomics.cru.structures.model;
 
 import it.iit.genomics.cru.structures.model.sequence.UniprotSequence;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -38,7 +39,9 @@ import org.slf4j.LoggerFactory;
  * protein requiered for the MI Bundle.
  *
  */
-public class MoleculeEntry implements Comparable<MoleculeEntry> {
+public class MoleculeEntry implements Comparable<MoleculeEntry>, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private final static  Logger logger = LoggerFactory.getLogger(MoleculeEntry.class.getName());
     
@@ -0,0 +1,235 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Merge overlapping ranges, by sequence. Ranges are 0-based and inclusive,
+ * two ranges sharing at least one position are merged.
+ *
+ * Ranges are appended to primitive arrays, and merged all at once (sort and
+ * sweep) the first time they are read.
+ */
+public class RangeMerger {
+
+    private final HashMap<String, SequenceRanges> ranges;
+
+    public RangeMerger() {
+        ranges = new HashMap<>();
+    }
+
+    /**
+     * Ranges of one sequence. Once merged, mins and maxs are both sorted and
+     * ranges do not overlap.
+     */
+    private static class SequenceRanges {
+
+        private int[] mins = new int[4];
+
+        private int[] maxs = new int[4];
+
+        private int size = 0;
+
+        private boolean merged = true;
+
+        void add(int min, int max) {
+            if (size == mins.length) {
+                mins = Arrays.copyOf(mins, size * 2);
+                maxs = Arrays.copyOf(maxs, size * 2);
+            }
+            mins[size] = min;
+            maxs[size] = max;
+            size++;
+            merged = false;
+        }
+
+        void addAll(SequenceRanges other) {
+            other.merge();
+            int newSize = size + other.size;
+            if (newSize > mins.length) {
+                mins = Arrays.copyOf(mins, Math.max(newSize, size * 2));
+                maxs = Arrays.copyOf(maxs, mins.length);
+            }
+            System.arraycopy(other.mins, 0, mins, size, other.size);
+            System.arraycopy(other.maxs, 0, maxs, size, other.size);
+            size = newSize;
+            merged = false;
+        }
+
+        /**
+         * Merged copy of the ranges
+         */
+        SequenceRanges copy() {
+            merge();
+            SequenceRanges copy = new SequenceRanges();
+            copy.mins = Arrays.copyOf(mins, size);
+            copy.maxs = Arrays.copyOf(maxs, size);
+            copy.size = size;
+            return copy;
+        }
+
+        void merge() {
+            if (merged) {
+                return;
+            }
+
+            // sort by min, the position of the range is in the low bits
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = ((long) mins[i] << 32) | i;
+            }
+            Arrays.sort(order);
+
+            int[] sortedMins = new int[size];
+            int[] sortedMaxs = new int[size];
+            int count = 0;
+
+            for (int i = 0; i < size; i++) {
+                int index = (int) (order[i] & 0xFFFFFFFFL);
+                int min = mins[index];
+                int max = maxs[index];
+
+                if (count > 0 && min <= sortedMaxs[count - 1]) {
+                    sortedMaxs[count - 1] = Math.max(sortedMaxs[count - 1], max);
+                } else {
+                    sortedMins[count] = min;
+                    sortedMaxs[count] = max;
+                    count++;
+                }
+            }
+
+            mins = sortedMins;
+            maxs = sortedMaxs;
+            size = count;
+            merged = true;
+        }
+
+        List<Range> getRanges(int from, int to) {
+            ArrayList<Range> result = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                result.add(new Range(mins[i], maxs[i]));
+            }
+            return result;
+        }
+
+        /**
+         * Index of the first range with a min greater or equal to position
+         */
+        int firstFrom(int position) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (mins[middle] < position) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    public synchronized Collection<String> getSequences() {
+        return new ArrayList<>(ranges.keySet());
+    }
+
+    /**
+     *
+     * @param seq
+     * @return merged ranges of the sequence, sorted by position
+     */
+    public synchronized Collection<Range> getRanges(String seq) {
+        SequenceRanges sequenceRanges = ranges.get(seq);
+        if (sequenceRanges == null) {
+            return Collections.emptyList();
+        }
+        sequenceRanges.merge();
+        return sequenceRanges.getRanges(0, sequenceRanges.size);
+    }
+
+    /**
+     * Merged ranges of the sequence that are within a region.
+     *
+     * @param seq
+     * @param min 0-based, inclusive
+     * @param max 0-based, inclusive
+     * @return ranges sorted by position
+     */
+    public synchronized Collection<Range> getRangesWithin(String seq, int min, int max) {
+        SequenceRanges sequenceRanges = ranges.get(seq);
+        if (sequenceRanges == null) {
+            return Collections.emptyList();
+        }
+        sequenceRanges.merge();
+
+        int from = sequenceRanges.firstFrom(min);
+        int to = from;
+        // merged ranges do not overlap: maxs are sorted too
+        while (to < sequenceRanges.size && sequenceRanges.maxs[to] <= max) {
+            to++;
+        }
+        return sequenceRanges.getRanges(from, to);
+    }
+
+    public synchronized void addRange(String seq, Range newRange) {
+        getOrCreate(seq).add(newRange.getMin(), newRange.getMax());
+    }
+
+    /**
+     * Import all range from a second merger
+     * @param merger 
+     */
+    public void merge(RangeMerger merger) {
+        if (merger == this) {
+            return;
+        }
+        // copy the ranges of the other merger first: holding both locks at
+        // once could deadlock with a merge in the other direction
+        HashMap<String, SequenceRanges> otherRanges = new HashMap<>();
+
+        synchronized (merger) {
+            for (Map.Entry<String, SequenceRanges> entry : merger.ranges.entrySet()) {
+                otherRanges.put(entry.getKey(), entry.getValue().copy());
+            }
+        }
+
+        synchronized (this) {
+            for (Map.Entry<String, SequenceRanges> entry : otherRanges.entrySet()) {
+                getOrCreate(entry.getKey()).addAll(entry.getValue());
+            }
+        }
+    }
+
+    private SequenceRanges getOrCreate(String seq) {
+        SequenceRanges sequenceRanges = ranges.get(seq);
+        if (sequenceRanges == null) {
+            sequenceRanges = new SequenceRanges();
+            ranges.put(seq, sequenceRanges);
+        }
+        return sequenceRanges;
+    }
+
+}
@@ -0,0 +1,83 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.model;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Residue of a structure packed in a long: chain index (in the ChainTable of
+ * the structure), insertion code and residue number. It replaces the
+ * "residueNumber:chain" strings, e.g. "52A:B".
+ */
+public final class ResidueKey {
+
+    /**
+     * Insertion code of residues without one.
+     */
+    public static final char NO_INSERTION_CODE = 0;
+
+    private ResidueKey() {
+    }
+
+    /**
+     *
+     * @param chainIndex 0 to 32767
+     * @param residueNumber
+     * @param insertionCode
+     * @return
+     */
+    public static long pack(int chainIndex, int residueNumber, char insertionCode) {
+        return ((long) chainIndex << 48) | ((long) insertionCode << 32) | (residueNumber & 0xFFFFFFFFL);
+    }
+
+    /**
+     *
+     * @param chainIndex
+     * @param residueNumber
+     * @return
+     */
+    public static long pack(int chainIndex, int residueNumber) {
+        return pack(chainIndex, residueNumber, NO_INSERTION_CODE);
+    }
+
+    /**
+     *
+     * @param key
+     * @return
+     */
+    public static int getChainIndex(long key) {
+        return (int) (key >>> 48);
+    }
+
+    /**
+     *
+     * @param key
+     * @return
+     */
+    public static int getResidueNumber(long key) {
+        return (int) key;
+    }
+
+    /**
+     *
+     * @param key
+     * @return
+     */
+    public static char getInsertionCode(long key) {
+        return (char) (key >>> 32);
+    }
+
+}
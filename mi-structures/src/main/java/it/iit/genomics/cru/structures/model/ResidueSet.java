@@ -0,0 +1,306 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+
+/**
+ * @author Arnaud Ceol
+ *
+ * Set of residues of a structure, as one BitSet of residue numbers per chain.
+ * Residues with an insertion code, rare, are kept apart as packed keys.
+ *
+ * Membership tests do not allocate, and the residue strings
+ * ("residueNumber[insertionCode]:chain") are only built on demand.
+ */
+public class ResidueSet {
+
+    private static final BitSet[] NO_CHAINS = new BitSet[0];
+
+    private final ChainTable chains;
+
+    /**
+     * Residue numbers >= 0, by chain index
+     */
+    private BitSet[] positives = NO_CHAINS;
+
+    /**
+     * -(residue numbers) for residue numbers < 0, by chain index
+     */
+    private BitSet[] negatives = NO_CHAINS;
+
+    private HashSet<Long> withInsertionCode = null;
+
+    /**
+     *
+     * @param chains chain table of the structure
+     */
+    public ResidueSet(ChainTable chains) {
+        this.chains = chains;
+    }
+
+    /**
+     *
+     * @return chain table of the structure
+     */
+    public ChainTable getChainTable() {
+        return chains;
+    }
+
+    /**
+     *
+     * @param key
+     */
+    public void add(long key) {
+        if (ResidueKey.getInsertionCode(key) != ResidueKey.NO_INSERTION_CODE) {
+            if (withInsertionCode == null) {
+                withInsertionCode = new HashSet<>();
+            }
+            withInsertionCode.add(key);
+            return;
+        }
+
+        int chainIndex = ResidueKey.getChainIndex(key);
+        int residueNumber = ResidueKey.getResidueNumber(key);
+
+        if (residueNumber >= 0) {
+            positives = ensureChain(positives, chainIndex);
+            positives[chainIndex].set(residueNumber);
+        } else {
+            negatives = ensureChain(negatives, chainIndex);
+            negatives[chainIndex].set(-residueNumber);
+        }
+    }
+
+    /**
+     *
+     * @param residueNumber
+     * @param chain
+     */
+    public void add(int residueNumber, String chain) {
+        add(ResidueKey.pack(chains.intern(chain), residueNumber));
+    }
+
+    /**
+     *
+     * @param residue "residueNumber[insertionCode]:chain"
+     */
+    public void add(String residue) {
+        add(chains.parse(residue));
+    }
+
+    /**
+     * Add all the residues of a second set.
+     *
+     * @param residues
+     */
+    public void addAll(ResidueSet residues) {
+        if (residues.chains != chains) {
+            for (String residue : residues.toStrings()) {
+                add(residue);
+            }
+            return;
+        }
+
+        positives = or(positives, residues.positives);
+        negatives = or(negatives, residues.negatives);
+
+        if (residues.withInsertionCode != null) {
+            if (withInsertionCode == null) {
+                withInsertionCode = new HashSet<>();
+            }
+            withInsertionCode.addAll(residues.withInsertionCode);
+        }
+    }
+
+    /**
+     *
+     * @param key
+     * @return
+     */
+    public boolean contains(long key) {
+        if (ResidueKey.getInsertionCode(key) != ResidueKey.NO_INSERTION_CODE) {
+            return withInsertionCode != null && withInsertionCode.contains(key);
+        }
+
+        int chainIndex = ResidueKey.getChainIndex(key);
+        int residueNumber = ResidueKey.getResidueNumber(key);
+
+        if (residueNumber >= 0) {
+            return chainIndex < positives.length && positives[chainIndex] != null
+                    && positives[chainIndex].get(residueNumber);
+        }
+        return chainIndex < negatives.length && negatives[chainIndex] != null
+                && negatives[chainIndex].get(-residueNumber);
+    }
+
+    /**
+     *
+     * @param residue "residueNumber[insertionCode]:chain"
+     * @return
+     */
+    public boolean contains(String residue) {
+        long key = chains.find(residue);
+        return key != ChainTable.NOT_FOUND && contains(key);
+    }
+
+    /**
+     * Check if two sets of the same structure share at least one residue,
+     * without allocation.
+     *
+     * @param residues
+     * @return
+     */
+    public boolean intersects(ResidueSet residues) {
+        if (residues.chains != chains) {
+            for (String residue : residues.toStrings()) {
+                if (contains(residue)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        if (intersects(positives, residues.positives) || intersects(negatives, residues.negatives)) {
+            return true;
+        }
+
+        if (withInsertionCode != null && residues.withInsertionCode != null) {
+            for (Long key : withInsertionCode) {
+                if (residues.withInsertionCode.contains(key)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     *
+     * @return number of residues
+     */
+    public int size() {
+        int size = withInsertionCode == null ? 0 : withInsertionCode.size();
+        for (BitSet residues : positives) {
+            size += residues == null ? 0 : residues.cardinality();
+        }
+        for (BitSet residues : negatives) {
+            size += residues == null ? 0 : residues.cardinality();
+        }
+        return size;
+    }
+
+    /**
+     *
+     * @return keys of the residues, sorted by chain index
+     */
+    public long[] getKeys() {
+        long[] keys = new long[size()];
+        int k = 0;
+
+        for (int chainIndex = 0; chainIndex < negatives.length; chainIndex++) {
+            if (negatives[chainIndex] != null) {
+                for (int i = negatives[chainIndex].nextSetBit(0); i >= 0; i = negatives[chainIndex].nextSetBit(i + 1)) {
+                    keys[k++] = ResidueKey.pack(chainIndex, -i);
+                }
+            }
+        }
+
+        for (int chainIndex = 0; chainIndex < positives.length; chainIndex++) {
+            if (positives[chainIndex] != null) {
+                for (int i = positives[chainIndex].nextSetBit(0); i >= 0; i = positives[chainIndex].nextSetBit(i + 1)) {
+                    keys[k++] = ResidueKey.pack(chainIndex, i);
+                }
+            }
+        }
+
+        if (withInsertionCode != null) {
+            for (Long key : withInsertionCode) {
+                keys[k++] = key;
+            }
+        }
+
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     *
+     * @param key
+     * @return "residueNumber[insertionCode]:chain"
+     */
+    public String format(long key) {
+        return chains.format(key);
+    }
+
+    /**
+     *
+     * @return residues as "residueNumber[insertionCode]:chain"
+     */
+    public Collection<String> toStrings() {
+        long[] keys = getKeys();
+        ArrayList<String> residues = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            residues.add(chains.format(key));
+        }
+        return residues;
+    }
+
+    private static BitSet[] ensureChain(BitSet[] sets, int chainIndex) {
+        if (chainIndex >= sets.length) {
+            sets = Arrays.copyOf(sets, chainIndex + 1);
+        }
+        if (sets[chainIndex] == null) {
+            sets[chainIndex] = new BitSet();
+        }
+        return sets;
+    }
+
+    private static BitSet[] or(BitSet[] sets, BitSet[] others) {
+        for (int chainIndex = 0; chainIndex < others.length; chainIndex++) {
+            if (others[chainIndex] != null) {
+                sets = ensureChain(sets, chainIndex);
+                sets[chainIndex].or(others[chainIndex]);
+            }
+        }
+        return sets;
+    }
+
+    private static boolean intersects(BitSet[] sets, BitSet[] others) {
+        int length = Math.min(sets.length, others.length);
+        for (int chainIndex = 0; chainIndex < length; chainIndex++) {
+            if (sets[chainIndex] != null && others[chainIndex] != null
+                    && sets[chainIndex].intersects(others[chainIndex])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
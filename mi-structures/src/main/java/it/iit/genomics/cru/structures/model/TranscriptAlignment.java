@@ -0,0 +1,226 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.model;
+
+import it.iit.genomics.cru.structures.alignment.SequenceAligner;
+import it.iit.genomics.cru.structures.alignment.SequenceAlignment;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * Alignment of the translated transcript of a gene to its Uniprot isoform.
+ * The alignment is done once, positions are stored in arrays so that each
+ * lookup is a single read.
+ *
+ * AA positions are 1-based inclusive, cursors are 0-based.
+ */
+public class TranscriptAlignment {
+
+    /**
+     * Value returned for positions without aligned residue.
+     */
+    public static final int NOT_ALIGNED = -1;
+
+    private final String transcriptSequence;
+
+    private final String uniprotSequence;
+
+    /**
+     * Cursors at the first column of the alignment
+     */
+    private final int transcriptStart;
+
+    private final int uniprotStart;
+
+    /**
+     * Cursors after the last column of the alignment
+     */
+    private final int transcriptEnd;
+
+    private final int uniprotEnd;
+
+    /**
+     * For each transcript cursor of the alignment (from transcriptStart), the
+     * Uniprot cursor at the first column where it appears.
+     */
+    private final int[] uniprotCursors;
+
+    /**
+     * Aligned residues (excluding gaps). Index = position - 1.
+     */
+    private final int[] uniprot2transcript;
+
+    private final int[] transcript2uniprot;
+
+    /**
+     *
+     * @param transcriptSequence
+     * @param uniprotSequence
+     */
+    public TranscriptAlignment(String transcriptSequence, String uniprotSequence) {
+        this.transcriptSequence = transcriptSequence;
+        this.uniprotSequence = uniprotSequence;
+
+        String alignedTranscriptSequence = transcriptSequence;
+        if (alignedTranscriptSequence.startsWith("*")) {
+            alignedTranscriptSequence = alignedTranscriptSequence.substring(1);
+        }
+
+        SequenceAlignment nw = SequenceAligner.getInstance().align(alignedTranscriptSequence, uniprotSequence);
+
+        String alignmentA = nw.getAlignmentSeqA();
+        String alignmentB = nw.getAlignmentSeqB();
+
+        transcriptStart = nw.getStartAlignmentA();
+        uniprotStart = nw.getStartAlignmentB();
+
+        uniprot2transcript = newArray(uniprotSequence.length());
+        transcript2uniprot = newArray(alignedTranscriptSequence.length());
+
+        int[] cursors = new int[alignmentA.length()];
+        int numCursors = 0;
+
+        int transcriptCursor = transcriptStart;
+        int proteinCursor = uniprotStart;
+
+        for (int i = 0; i < alignmentA.length(); i++) {
+            char transcriptAA = alignmentA.charAt(i);
+            char proteinAA = alignmentB.charAt(i);
+
+            if (transcriptCursor == transcriptStart + numCursors) {
+                cursors[numCursors++] = proteinCursor;
+            }
+
+            if (proteinAA != '-' && transcriptAA != '-'
+                    && proteinCursor < uniprot2transcript.length
+                    && transcriptCursor < transcript2uniprot.length) {
+                uniprot2transcript[proteinCursor] = transcriptCursor + 1;
+                transcript2uniprot[transcriptCursor] = proteinCursor + 1;
+            }
+
+            if ('-' != transcriptAA) {
+                transcriptCursor++;
+            }
+
+            if ('-' != proteinAA) {
+                proteinCursor++;
+            }
+        }
+
+        uniprotCursors = new int[numCursors];
+        System.arraycopy(cursors, 0, uniprotCursors, 0, numCursors);
+
+        transcriptEnd = transcriptCursor;
+        uniprotEnd = proteinCursor;
+    }
+
+    private static int[] newArray(int length) {
+        int[] array = new int[length];
+        Arrays.fill(array, NOT_ALIGNED);
+        return array;
+    }
+
+    /**
+     * Check that this alignment was computed for these sequences.
+     *
+     * @param transcriptSequence
+     * @param uniprotSequence
+     * @return
+     */
+    public boolean isAlignmentOf(String transcriptSequence, String uniprotSequence) {
+        return this.transcriptSequence.equals(transcriptSequence) && this.uniprotSequence.equals(uniprotSequence);
+    }
+
+    /**
+     *
+     * @param uniprotPosition
+     *            1-based
+     * @return the aligned transcript position, or NOT_ALIGNED
+     */
+    public int getTranscriptPosition(int uniprotPosition) {
+        if (uniprotPosition < 1 || uniprotPosition > uniprot2transcript.length) {
+            return NOT_ALIGNED;
+        }
+        return uniprot2transcript[uniprotPosition - 1];
+    }
+
+    /**
+     *
+     * @param transcriptPosition
+     *            1-based
+     * @return the aligned Uniprot position, or NOT_ALIGNED
+     */
+    public int getUniprotPosition(int transcriptPosition) {
+        if (transcriptPosition < 1 || transcriptPosition > transcript2uniprot.length) {
+            return NOT_ALIGNED;
+        }
+        return transcript2uniprot[transcriptPosition - 1];
+    }
+
+    /**
+     * Project a region of the transcript on the Uniprot sequence. The first
+     * position is the Uniprot position at the first column where the region
+     * starts, the last one the position where it ends or the end of the
+     * alignment.
+     *
+     * @param regionTranscriptStart
+     *            0-based
+     * @param regionTranscriptEnd
+     *            0-based
+     * @return 1-based start and end Uniprot positions, or null if the region
+     *         is not aligned
+     */
+    public int[] getUniprotRange(int regionTranscriptStart, int regionTranscriptEnd) {
+
+        if (regionTranscriptStart < 0 || regionTranscriptEnd < 0) {
+            return null;
+        }
+
+        if (regionTranscriptEnd < transcriptStart) {
+            return null;
+        }
+
+        int lastTranscriptCursor = transcriptStart + uniprotCursors.length - 1;
+
+        int searchStart = Math.max(regionTranscriptStart, transcriptStart);
+
+        if (regionTranscriptEnd <= lastTranscriptCursor) {
+            // The region ends inside the alignment
+            if (regionTranscriptStart > regionTranscriptEnd) {
+                return null;
+            }
+            return new int[]{uniprotCursors[searchStart - transcriptStart] + 1,
+                uniprotCursors[regionTranscriptEnd - transcriptStart] + 1};
+        }
+
+        // The region ends after the alignment
+        int startAA;
+
+        if (searchStart <= lastTranscriptCursor) {
+            startAA = uniprotCursors[searchStart - transcriptStart] + 1;
+        } else if (transcriptEnd == regionTranscriptStart) {
+            startAA = uniprotEnd + 1;
+        } else {
+            return null;
+        }
+
+        return new int[]{startAA, uniprotEnd + 1};
+    }
+
+}
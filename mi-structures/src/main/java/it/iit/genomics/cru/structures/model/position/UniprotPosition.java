@@ -15,12 +15,16 @@
  */
 package it.iit.genomics.cru.structures.model.position;
 
+import java.io.Serializable;
+
 /**
  *
  * @author aceol
  */
-public class UniprotPosition {
-    
+public class UniprotPosition implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
     int position;
 
     /**
@@ -15,12 +15,16 @@
  */
 package it.iit.genomics.cru.structures.model.sequence;
 
+import java.io.Serializable;
+
 /**
  *
  * @author aceol
  */
-public class UniprotSequence {
-    
+public class UniprotSequence implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
     String sequence;
 
     /**
@@ -41,7 +41,8 @@ public class FileStructureSource  extends StructureSource{
      */
     @Override
     protected String getFileName(String structureID) {
-        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+        // the ID is the file name
+        return structureID;
     }
 
     /**
@@ -51,7 +52,7 @@ public class FileStructureSource  extends StructureSource{
      * @throws StructureException
      */
     @Override
-    public Structure getStructure(String fileName) throws StructureException {
+    protected Structure readStructure(String fileName) throws StructureException {
         PDBFileReader pdb = new PDBFileReader();
         try {
             return pdb.getStructure(fileName);
@@ -72,7 +72,7 @@ public class I3DStructureSource extends StructureSource {
      * @throws StructureException
      */
     @Override
-    public Structure getStructure(String structureID)
+    protected Structure readStructure(String structureID)
           throws StructureException   {
 
         QueryType queryType;
@@ -0,0 +1,402 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.sources;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.google.common.collect.HashMultimap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * Interfaces between chains stored on disk, so that the ASA of a structure is
+ * not computed again at each session.
+ *
+ * There is one file per structure in a directory specific to the version of
+ * the format and to the ASA parameters. A file lists the pairs of chains
+ * already computed and, for each chain and partner chain, the residues at
+ * the interface (residue number and insertion code).
+ *
+ * Only the interfaces of the most recently used structures are kept in
+ * memory, the others are read again from their file when needed.
+ */
+public class InterfaceStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(InterfaceStore.class);
+
+    /**
+     * Version of the file format, change it if the format or the computation
+     * of the interfaces change.
+     */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x4D494946;
+
+    private static final String EXTENSION = ".interfaces";
+
+    private static final char NO_INSERTION_CODE = 0;
+
+    /**
+     * Default number of structures kept in memory
+     */
+    public static final int DEFAULT_MAX_STRUCTURES = 100;
+
+    private final File directory;
+
+    private final String asaParameters;
+
+    private final int maxStructures;
+
+    // least recently used first
+    private final LinkedHashMap<String, StoredInterfaces> structures;
+
+    /**
+     * Interfaces of a structure
+     */
+    public static class StoredInterfaces {
+
+        private final HashMultimap<String, String> residues = HashMultimap.create();
+
+        private final HashSet<String> chainPairs = new HashSet<>();
+
+        /**
+         * Key: residue (format pos:Chain, e.g. 125:A), value: chains in
+         * contact
+         *
+         * @return
+         */
+        public HashMultimap<String, String> getResidues() {
+            return residues;
+        }
+
+        /**
+         * Pairs of chains computed (format chainA#chainB)
+         *
+         * @return
+         */
+        public Set<String> getChainPairs() {
+            return chainPairs;
+        }
+    }
+
+    /**
+     *
+     * @param cacheDir
+     * @param asaParameters
+     */
+    public InterfaceStore(String cacheDir, String asaParameters) {
+        this(cacheDir, asaParameters, DEFAULT_MAX_STRUCTURES);
+    }
+
+    /**
+     *
+     * @param cacheDir
+     * @param asaParameters
+     * @param maxStructures number of structures kept in memory
+     */
+    public InterfaceStore(String cacheDir, String asaParameters, final int maxStructures) {
+        this.asaParameters = asaParameters;
+        this.directory = new File(new File(cacheDir, "interfaces-v" + VERSION), asaParameters);
+        this.maxStructures = maxStructures;
+        this.structures = new LinkedHashMap<String, StoredInterfaces>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, StoredInterfaces> eldest) {
+                return size() > maxStructures;
+            }
+        };
+    }
+
+    /**
+     *
+     * @return
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    private File getFile(String structureId) {
+        return new File(directory, structureId + EXTENSION);
+    }
+
+    /**
+     * Load in background the interfaces of the structures, at most the
+     * number of structures kept in memory.
+     *
+     * @param structureIds
+     */
+    public void warmUp(Collection<String> structureIds) {
+        final List<String> ids = new ArrayList<>(structureIds);
+
+        if (ids.size() > maxStructures) {
+            ids.subList(maxStructures, ids.size()).clear();
+        }
+
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "interface-store-warm-up");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                for (String structureId : ids) {
+                    get(structureId);
+                }
+            }
+        });
+
+        executor.shutdown();
+    }
+
+    /**
+     *
+     * @param structureId
+     * @return the stored interfaces, or null if there is none.
+     */
+    public StoredInterfaces get(String structureId) {
+        StoredInterfaces stored = getLoaded(structureId);
+
+        if (stored != null) {
+            return stored;
+        }
+
+        synchronized (this) {
+            stored = getLoaded(structureId);
+            if (stored == null) {
+                stored = read(getFile(structureId));
+                if (stored != null) {
+                    setLoaded(structureId, stored);
+                }
+            }
+        }
+
+        return stored;
+    }
+
+    private StoredInterfaces getLoaded(String structureId) {
+        synchronized (structures) {
+            return structures.get(structureId);
+        }
+    }
+
+    private void setLoaded(String structureId, StoredInterfaces stored) {
+        synchronized (structures) {
+            structures.put(structureId, stored);
+        }
+    }
+
+    /**
+     * Add the interfaces computed for some pairs of chains and write the file
+     * of the structure.
+     *
+     * @param structureId
+     * @param chainPairs format chainA#chainB
+     * @param residues key: residue (format pos:Chain), value: chains in
+     * contact
+     */
+    public synchronized void put(String structureId, Collection<String> chainPairs,
+            HashMultimap<String, String> residues) {
+
+        StoredInterfaces stored = new StoredInterfaces();
+
+        StoredInterfaces previous = get(structureId);
+        if (previous != null) {
+            stored.chainPairs.addAll(previous.chainPairs);
+            stored.residues.putAll(previous.residues);
+        }
+
+        stored.chainPairs.addAll(chainPairs);
+        stored.residues.putAll(residues);
+
+        try {
+            write(getFile(structureId), stored);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Cannot store interfaces of " + structureId, e);
+        }
+
+        setLoaded(structureId, stored);
+    }
+
+    private void write(File file, StoredInterfaces stored) throws IOException {
+
+        // key: chain#partner, value: residues
+        HashMultimap<String, String> residuesByChains = HashMultimap.create();
+
+        for (Map.Entry<String, String> entry : stored.residues.entries()) {
+            String residue = entry.getKey();
+            int separator = residue.indexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Unexpected residue: " + residue);
+            }
+            residuesByChains.put(residue.substring(separator + 1) + "#" + entry.getValue(),
+                    residue.substring(0, separator));
+        }
+
+        if (false == directory.exists() && false == directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+
+        File tmpFile = new File(directory, file.getName() + ".tmp");
+
+        try {
+            writeTmp(tmpFile, stored, residuesByChains);
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            if (tmpFile.exists()) {
+                tmpFile.delete();
+            }
+        }
+    }
+
+    private void writeTmp(File tmpFile, StoredInterfaces stored,
+            HashMultimap<String, String> residuesByChains) throws IOException {
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, asaParameters);
+
+            out.writeInt(stored.chainPairs.size());
+            for (String chainPair : stored.chainPairs) {
+                writeString(out, chainPair);
+            }
+
+            out.writeInt(residuesByChains.keySet().size());
+            for (String chains : residuesByChains.keySet()) {
+                int separator = chains.indexOf('#');
+                writeString(out, chains.substring(0, separator));
+                writeString(out, chains.substring(separator + 1));
+
+                Set<String> residueNumbers = residuesByChains.get(chains);
+                out.writeInt(residueNumbers.size());
+                for (String residueNumber : residueNumbers) {
+                    char insertionCode = residueNumber.charAt(residueNumber.length() - 1);
+                    if (Character.isDigit(insertionCode)) {
+                        out.writeInt(Integer.parseInt(residueNumber));
+                        out.writeChar(NO_INSERTION_CODE);
+                    } else {
+                        out.writeInt(Integer.parseInt(residueNumber.substring(0, residueNumber.length() - 1)));
+                        out.writeChar(insertionCode);
+                    }
+                }
+            }
+        }
+    }
+
+    private StoredInterfaces read(File file) {
+        if (false == file.exists()) {
+            return null;
+        }
+
+        // read with a stream: a mapped file would stay open until it is
+        // garbage collected, and could not be replaced by put on Windows
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || false == asaParameters.equals(readString(in))) {
+                logger.warn("Ignore interfaces stored with another version: " + file);
+                return null;
+            }
+
+            StoredInterfaces stored = new StoredInterfaces();
+
+            int numChainPairs = in.readInt();
+            for (int i = 0; i < numChainPairs; i++) {
+                stored.chainPairs.add(readString(in));
+            }
+
+            int numChains = in.readInt();
+            for (int i = 0; i < numChains; i++) {
+                String chain = readString(in);
+                String partner = readString(in);
+
+                int numResidues = in.readInt();
+                for (int j = 0; j < numResidues; j++) {
+                    int residueNumber = in.readInt();
+                    char insertionCode = in.readChar();
+
+                    String residue = insertionCode == NO_INSERTION_CODE
+                            ? residueNumber + ":" + chain
+                            : residueNumber + "" + insertionCode + ":" + chain;
+
+                    stored.residues.put(residue, partner);
+                }
+            }
+
+            return stored;
+
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Cannot read interfaces from " + file, e);
+            return null;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeShort(value.length());
+        out.writeChars(value);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readShort();
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = in.readChar();
+        }
+        return new String(chars);
+    }
+
+    /**
+     *
+     * @return the structures already loaded
+     */
+    public Set<String> getLoadedStructures() {
+        synchronized (structures) {
+            return new HashSet<>(structures.keySet());
+        }
+    }
+
+}
@@ -15,19 +15,13 @@
  */
 package it.iit.genomics.cru.structures.sources;
 
+import it.iit.genomics.cru.structures.bridges.commons.HttpTransport;
 import it.iit.genomics.cru.structures.sources.StructureManager.StructureSourceType;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import org.biojava.nbio.structure.Structure;
 
@@ -67,7 +61,7 @@ public class PDBStructureSource extends StructureSource {
      * @return
      */
     @Override
-    public Structure getStructure(String structureID) {
+    protected Structure readStructure(String structureID) {
 
         if (isBlackListed(structureID)) {
             System.out.println("Black listed: " + structureID);
@@ -97,13 +91,19 @@ public class PDBStructureSource extends StructureSource {
 
         if (false == downloadedStructures.contains(structureID)) {
 
-            InputStream uStream;
             String path = String.format("%s%s%s/pdb%s.ent.gz", pdbURL,
                     "/data/structures/divided/pdb/", middle, pdbId);
 
+            // the compressed file is cached as is, the reader checks it
             try {
-                URL url = new URL(path);
-                uStream = url.openStream();
+                if (path.startsWith("http")) {
+                    HttpTransport.getInstance().download(path, outputfile);
+                } else {
+                    // FTP mirror
+                    try (InputStream uStream = new URL(path).openStream()) {
+                        HttpTransport.save(uStream, outputfile);
+                    }
+                }
             } catch (IOException e) {
 				// JOptionPane.showMessageDialog(null, "Cannot get PDB file "
                 // + path);
@@ -111,38 +111,6 @@ public class PDBStructureSource extends StructureSource {
                 addToBlackList(structureID);
                 return null;
             }
-
-            try {
-                try (InputStream conn = new GZIPInputStream(uStream)) {
-                    FileOutputStream outPut = new FileOutputStream(outputfile);
-                    GZIPOutputStream gzOutPut = new GZIPOutputStream(outPut);
-                    PrintWriter pw = new PrintWriter(gzOutPut);
-
-                    BufferedReader fileBuffer = new BufferedReader(
-                            new InputStreamReader(conn));
-                    String line;
-                    while ((line = fileBuffer.readLine()) != null) {
-                        pw.println(line);
-                    }
-                    pw.flush();
-                    pw.close();
-
-                    outPut.flush();
-                    outPut.close();
-                }
-                uStream.close();
-
-            } catch (MalformedURLException e) {
-				// JOptionPane.showMessageDialog(null, "Cannot get PDB file " +
-                // path);
-                // logger.error("Cannot get PDB file " + path);
-                return null;
-            } catch (IOException e) {
-				// JOptionPane.showMessageDialog(null, "Cannot get PDB file " +
-                // path);
-                // logger.error("Cannot get PDB file " + path);
-                return null;
-            }
         }
 
         try {
@@ -0,0 +1,304 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.sources;
+
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.biojava.nbio.structure.Structure;
+import org.biojava.nbio.structure.StructureTools;
+
+/**
+ *
+ * @author Arnaud Ceol
+ *
+ * Parsed structures, shared by all the structure sources so that a structure
+ * is not read again for each step of a query. The size of the cache is the
+ * number of atoms of the structures: the least recently used structures are
+ * removed when it exceeds the maximum. Structures are kept by soft
+ * references, and can also be released by the garbage collector, unless they
+ * are pinned (e.g. displayed).
+ */
+public class StructureCache {
+
+    /**
+     * Default maximum number of atoms: 500.000, i.e. around 100 structures
+     * from the PDB.
+     */
+    public static final long DEFAULT_MAX_ATOMS = 500000;
+
+    private static StructureCache instance = null;
+
+    private static class CachedStructure {
+
+        private final SoftReference<Structure> reference;
+
+        /**
+         * Strong reference if the structure is pinned
+         */
+        private Structure pinned = null;
+
+        private final int numAtoms;
+
+        CachedStructure(Structure structure, int numAtoms) {
+            this.reference = new SoftReference<>(structure);
+            this.numAtoms = numAtoms;
+        }
+
+        Structure getStructure() {
+            if (pinned != null) {
+                return pinned;
+            }
+            return reference.get();
+        }
+    }
+
+    private final LinkedHashMap<String, CachedStructure> structures = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Number of pins by key
+     */
+    private final HashMap<String, Integer> pins = new HashMap<>();
+
+    private long maxAtoms;
+
+    private long numAtoms = 0;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    private long evictions = 0;
+
+    /**
+     *
+     * @param maxAtoms
+     */
+    public StructureCache(long maxAtoms) {
+        this.maxAtoms = maxAtoms;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public static synchronized StructureCache getInstance() {
+        if (instance == null) {
+            instance = new StructureCache(DEFAULT_MAX_ATOMS);
+        }
+        return instance;
+    }
+
+    /**
+     *
+     * @param key
+     * @return the structure, or null if it is not in the cache
+     */
+    public synchronized Structure get(String key) {
+        Structure structure = peek(key);
+
+        if (structure != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+
+        return structure;
+    }
+
+    /**
+     * Same as get(), without counting a hit or a miss, e.g. to check the
+     * cache again once the lock to read the structure is taken.
+     *
+     * @param key
+     * @return the structure, or null if it is not in the cache
+     */
+    public synchronized Structure peek(String key) {
+        CachedStructure cached = structures.get(key);
+
+        if (cached != null) {
+            Structure structure = cached.getStructure();
+
+            if (structure != null) {
+                return structure;
+            }
+
+            // released by the garbage collector
+            structures.remove(key);
+            numAtoms -= cached.numAtoms;
+            evictions++;
+        }
+
+        return null;
+    }
+
+    /**
+     *
+     * @param key
+     * @param structure
+     */
+    public void put(String key, Structure structure) {
+        put(key, structure, StructureTools.getNrAtoms(structure));
+    }
+
+    synchronized void put(String key, Structure structure, int structureAtoms) {
+        CachedStructure cached = new CachedStructure(structure, structureAtoms);
+
+        if (pins.containsKey(key)) {
+            cached.pinned = structure;
+        }
+
+        CachedStructure previous = structures.put(key, cached);
+
+        if (previous != null) {
+            numAtoms -= previous.numAtoms;
+        }
+
+        numAtoms += structureAtoms;
+
+        // Remove least recently used, pinned structures and the last one are
+        // kept
+        Iterator<Map.Entry<String, CachedStructure>> iterator = structures.entrySet().iterator();
+        while (numAtoms > maxAtoms && iterator.hasNext()) {
+            Map.Entry<String, CachedStructure> eldest = iterator.next();
+
+            if (eldest.getValue().pinned != null || eldest.getKey().equals(key)) {
+                continue;
+            }
+
+            numAtoms -= eldest.getValue().numAtoms;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Keep the structure in memory until it is unpinned. Pins are counted,
+     * the structure has to be unpinned as many times as it was pinned.
+     *
+     * @param key
+     */
+    public synchronized void pin(String key) {
+        Integer count = pins.get(key);
+        pins.put(key, count == null ? 1 : count + 1);
+
+        CachedStructure cached = structures.get(key);
+        if (cached != null && cached.pinned == null) {
+            cached.pinned = cached.reference.get();
+        }
+    }
+
+    /**
+     *
+     * @param key
+     */
+    public synchronized void unpin(String key) {
+        Integer count = pins.get(key);
+
+        if (count == null) {
+            return;
+        }
+
+        if (count > 1) {
+            pins.put(key, count - 1);
+            return;
+        }
+
+        pins.remove(key);
+
+        CachedStructure cached = structures.get(key);
+        if (cached != null) {
+            cached.pinned = null;
+        }
+    }
+
+    /**
+     *
+     * @param key
+     * @return
+     */
+    public synchronized boolean isPinned(String key) {
+        return pins.containsKey(key);
+    }
+
+    /**
+     *
+     * @param maxAtoms
+     */
+    public synchronized void setMaxAtoms(long maxAtoms) {
+        this.maxAtoms = maxAtoms;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public synchronized long getMaxAtoms() {
+        return maxAtoms;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public synchronized long getNumberOfAtoms() {
+        return numAtoms;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public synchronized int size() {
+        return structures.size();
+    }
+
+    /**
+     *
+     * @return
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     *
+     * @return
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Remove all structures, pins are kept.
+     */
+    public synchronized void clear() {
+        structures.clear();
+        numAtoms = 0;
+    }
+
+}
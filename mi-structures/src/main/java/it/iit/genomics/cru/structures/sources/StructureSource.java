@@ -17,8 +17,11 @@ package it.iit.genomics.cru.structures.sources;
 
 import it.iit.genomics.cru.structures.business.Accessibility;
 import it.iit.genomics.cru.structures.model.ChainMapping;
+import it.iit.genomics.cru.structures.model.ChainTable;
 import it.iit.genomics.cru.structures.model.InteractionStructure;
 import it.iit.genomics.cru.structures.model.ProteinStructure;
+import it.iit.genomics.cru.structures.model.ResidueKey;
+import it.iit.genomics.cru.structures.model.ResidueSet;
 import it.iit.genomics.cru.structures.model.StructureException;
 import it.iit.genomics.cru.structures.sources.StructureManager.StructureSourceType;
 
@@ -29,8 +32,11 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.common.collect.HashMultimap;
 
@@ -68,7 +74,7 @@ public abstract class StructureSource {
     /**
      *
      */
-    protected ArrayList<String> downloadedStructures = new ArrayList<>();
+    protected List<String> downloadedStructures = Collections.synchronizedList(new ArrayList<String>());
 
     /**
      *
@@ -99,6 +105,13 @@ public abstract class StructureSource {
     public void setCacheDir(String cacheDir) {
         this.cacheDir = cacheDir;
         getStructuresFromCache();
+
+        if (cacheDir == null) {
+            interfaceStore = null;
+        } else {
+            interfaceStore = new InterfaceStore(cacheDir, Accessibility.getAsaParameters());
+            interfaceStore.warmUp(downloadedStructures);
+        }
     }
 
     /**
@@ -118,10 +131,10 @@ public abstract class StructureSource {
     protected HashMap<String, HashMultimap<String, String>> interfaces = new HashMap<>();
 
     /**
-     * Key: structureID, value: list of pairs of chains and the residues (format
-     * pos:Chain, e.g. 125:A)
+     * Key: structureID, value: for each pair of chains (chainA#chainB), the
+     * residues of chainA in contact with chainB
      */
-    protected HashMap<String, HashMap<String, Collection<String>>> interfacesByChains = new HashMap<>();
+    protected HashMap<String, HashMap<String, ResidueSet>> interfacesByChains = new HashMap<>();
 
     /**
      * List of interfaces that have already been computed: key: structureID,
@@ -129,10 +142,69 @@ public abstract class StructureSource {
      */
     protected HashMultimap<String, String> interfacesComputed = HashMultimap.create();
 
+    /**
+     * Interfaces computed in previous sessions, null if there is no cache
+     * directory.
+     */
+    protected InterfaceStore interfaceStore = null;
+
+    /**
+     * Structures for which the stored interfaces have been added to
+     * interfaces.
+     */
+    protected final Set<String> storedInterfacesLoaded = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Maximum number of structures for which the ASA of the single chains is
+     * kept in memory
+     */
+    public final static int MAX_CACHED_ACCESSIBILITIES = 100;
+
+    /**
+     * ASA of the residues in the single chains: key: structureID, value: ASA
+     * by residue (format pos:Chain) for each chain. Computed once per chain
+     * and reused for all its pairs. Least recently used first, access is
+     * synchronized on the map.
+     */
+    protected final LinkedHashMap<String, Map<String, Map<String, Double>>> singleChainAccessibilities = new LinkedHashMap<String, Map<String, Map<String, Double>>>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Map<String, Map<String, Double>>> eldest) {
+            return size() > MAX_CACHED_ACCESSIBILITIES;
+        }
+    };
+
     /**
      * List of structure for which no file was found, to be ignored.
      */
-    protected ArrayList<String> blackListedStructured = new ArrayList<>();
+    protected List<String> blackListedStructured = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * Locks of the structure files, so that a structure is read only once
+     * when several results need it at the same time. A fixed number of locks
+     * is shared by all the structures: two structures rarely wait for each
+     * other, and nothing is kept per structure.
+     */
+    private static final Object[] structureLocks = new Object[64];
+
+    static {
+        for (int i = 0; i < structureLocks.length; i++) {
+            structureLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Lock of interfaces, interfacesByChains and interfacesComputed. It is
+     * only held to read or update them, the contacts are computed outside.
+     */
+    private final Object interfacesLock = new Object();
+
+    /**
+     * One lock per structure, so that the contacts of a structure are
+     * computed once when several results need them at the same time.
+     */
+    private final ConcurrentHashMap<String, Object> interfaceLocks = new ConcurrentHashMap<>();
 
     /**
      *
@@ -171,34 +243,18 @@ public abstract class StructureSource {
     public Collection<String> getResiduesAtInterface(String structureId,
             String chainA, String chainB) {
 
-        HashSet<String> residues = new HashSet<>();
+        ResidueSet residues = new ResidueSet(ChainTable.getChainTable(structureId));
         String key = getChainPairKey(chainA, chainB);
 
         /**
          * TODO: sounds strange, check it
          */
-        if (false == interfacesComputed.containsKey(structureId)
-                || false == interfacesComputed.get(structureId).contains(key)) {
-
-            // Residues between any chain
-            HashMultimap<String, String> allResidues = interfaces.get(structureId);
-
-            if (allResidues != null && false == allResidues.keySet().isEmpty()) {
-                for (String residue : allResidues.keySet()) {
-                    String chain = residue.split(":")[1];
-                    for (String contactChain : allResidues.get(residue)) {
-                        if ((chainA.equals(chain) && chainB
-                                .equals(contactChain))
-                                || (chainB.equals(chain) && chainA
-                                .equals(contactChain))) {
-                            residues.add(residue);
-                        }
-                    }
-                }
-            }
+        if (false == isComputed(structureId, key)) {
+            addInterfaceResidues(residues, structureId, chainA, chainB);
+            addInterfaceResidues(residues, structureId, chainB, chainA);
         }
 
-        return residues;
+        return residues.toStrings();
 
     }
 
@@ -213,53 +269,58 @@ public abstract class StructureSource {
      */
     public Collection<String> getContacts(String structureId,
             Collection<String> chainsA, Collection<String> chainsB) {
+        return getContactResidues(structureId, chainsA, chainsB).toStrings();
+    }
+
+    /**
+     * Return all residues from a list of chains in contact with residues in
+     * chains from a second list
+     *
+     * @param structureId
+     * @param chainsA
+     * @param chainsB
+     * @return
+     */
+    public ResidueSet getContactResidues(String structureId,
+            Collection<String> chainsA, Collection<String> chainsB) {
 
-        ArrayList<String[]> chainPairsToCompute = new ArrayList<>();
+        synchronized (getInterfaceLock(structureId)) {
+            loadStoredInterfaces(structureId);
 
-        // Which ones should be computed?
-        for (String chainA : chainsA) {
+            ArrayList<String[]> chainPairsToCompute = new ArrayList<>();
 
-            for (String chainB : chainsB) {
+            // Which ones should be computed?
+            for (String chainA : chainsA) {
 
-                if (chainA.equals(chainB)) {
-                    continue;
-                }
+                for (String chainB : chainsB) {
 
-                String key = getChainPairKey(chainA, chainB);
+                    if (chainA.equals(chainB)) {
+                        continue;
+                    }
 
-                /**
-                 * TODO: sounds strange, check it
-                 */
-                if (false == interfacesComputed.containsKey(structureId)
-                        || false == interfacesComputed.get(structureId)
-                        .contains(key)) {
-                    String[] pair = {chainA, chainB};
-                    chainPairsToCompute.add(pair);
+                    String key = getChainPairKey(chainA, chainB);
+
+                    /**
+                     * TODO: sounds strange, check it
+                     */
+                    if (false == isComputed(structureId, key)) {
+                        String[] pair = {chainA, chainB};
+                        chainPairsToCompute.add(pair);
+                    }
                 }
             }
-        }
 
-        if (chainPairsToCompute.size() > 0) {
-            getInterfaces(structureId, chainPairsToCompute);
+            if (chainPairsToCompute.size() > 0) {
+                getInterfaces(structureId, chainPairsToCompute);
+            }
         }
 
-        HashSet<String> residues = new HashSet<>();
-
-        // Residues between any chain
-        HashMultimap<String, String> allResidues = interfaces.get(structureId);
-
-        if (allResidues != null && false == allResidues.keySet().isEmpty()) {
-            for (String residue : allResidues.keySet()) {
-                String chain = residue.split(":")[1];
-                for (String contactChain : allResidues.get(residue)) {
-                    if ((chainsA.contains(chain) && chainsB
-                            .contains(contactChain))
-                            || (chainsB.contains(chain) && chainsA
-                            .contains(contactChain))) {
+        ResidueSet residues = new ResidueSet(ChainTable.getChainTable(structureId));
 
-                        residues.add(residue);
-                    }
-                }
+        for (String chainA : chainsA) {
+            for (String chainB : chainsB) {
+                addInterfaceResidues(residues, structureId, chainA, chainB);
+                addInterfaceResidues(residues, structureId, chainB, chainA);
             }
         }
 
@@ -275,44 +336,78 @@ public abstract class StructureSource {
      */
     public Collection<String> getLigandContacts(String structureId,
             Collection<String> chainsA, String ligandId) {
+        return getLigandContactResidues(structureId, chainsA, ligandId).toStrings();
+    }
 
-        ArrayList<String[]> chainPairsToCompute = new ArrayList<>();
+    /**
+     *
+     * @param structureId
+     * @param chainsA
+     * @param ligandId
+     * @return
+     */
+    public ResidueSet getLigandContactResidues(String structureId,
+            Collection<String> chainsA, String ligandId) {
 
-        // Which ones should be computed?
-        for (String chainA : chainsA) {
+        synchronized (getInterfaceLock(structureId)) {
+            ArrayList<String[]> chainPairsToCompute = new ArrayList<>();
+
+            // Which ones should be computed?
+            for (String chainA : chainsA) {
 
-            String key = getChainPairKey(chainA, ligandId);
+                String key = getChainPairKey(chainA, ligandId);
+
+                if (false == isComputed(structureId, key)) {
+                    String[] pair = {chainA, ligandId};
+                    chainPairsToCompute.add(pair);
+                }
 
-            if (false == interfacesComputed.containsKey(structureId)
-                    || false == interfacesComputed.get(structureId)
-                    .contains(key)) {
-                String[] pair = {chainA, ligandId};
-                chainPairsToCompute.add(pair);
             }
 
+            if (chainPairsToCompute.size() > 0) {
+                getLigandInterfaces(structureId, chainPairsToCompute);
+            }
         }
 
-        if (chainPairsToCompute.size() > 0) {
-            getLigandInterfaces(structureId, chainPairsToCompute);
+        ResidueSet residues = new ResidueSet(ChainTable.getChainTable(structureId));
+
+        for (String chainA : chainsA) {
+            addInterfaceResidues(residues, structureId, chainA, ligandId);
         }
 
-        HashSet<String> residues = new HashSet<>();
+        return residues;
+    }
 
-        // Residues between any chain
-        HashMultimap<String, String> allResidues = interfaces.get(structureId);
+    private Object getInterfaceLock(String structureId) {
+        Object lock = interfaceLocks.get(structureId);
+        if (lock == null) {
+            interfaceLocks.putIfAbsent(structureId, new Object());
+            lock = interfaceLocks.get(structureId);
+        }
+        return lock;
+    }
 
-        if (allResidues != null && false == allResidues.keySet().isEmpty()) {
-            for (String residue : allResidues.keySet()) {
-                String chain = residue.split(":")[1];
-                for (String contactChain : allResidues.get(residue)) {
-                    if (chainsA.contains(chain) && ligandId.equals(contactChain)) {
-                        residues.add(residue);
-                    }
-                }
-            }
+    private boolean isComputed(String structureId, String chainPairKey) {
+        synchronized (interfacesLock) {
+            return interfacesComputed.containsEntry(structureId, chainPairKey);
         }
+    }
 
-        return residues;
+    /**
+     * Add the residues of chainA in contact with chainB.
+     */
+    private void addInterfaceResidues(ResidueSet residues, String structureId, String chainA, String chainB) {
+        synchronized (interfacesLock) {
+            HashMap<String, ResidueSet> structureInterfaces = interfacesByChains.get(structureId);
+            if (structureInterfaces == null) {
+                return;
+            }
+
+            ResidueSet pairResidues = structureInterfaces.get(getChainPairKey(chainA, chainB));
+            if (pairResidues != null) {
+                residues.addAll(pairResidues);
+            }
+        }
     }
 
     /**
@@ -449,25 +544,52 @@ public abstract class StructureSource {
                 logger.error( "No structure for {0}", structureId);
             }
             
+            Map<String, Map<String, Double>> structureAccessibilities;
+
+            synchronized (singleChainAccessibilities) {
+                structureAccessibilities = singleChainAccessibilities.get(structureId);
+                if (structureAccessibilities == null) {
+                    structureAccessibilities = new ConcurrentHashMap<>();
+                    singleChainAccessibilities.put(structureId, structureAccessibilities);
+                }
+            }
+
             HashMultimap<String, String> accessibilities = Accessibility
-                    .getFasterContactChains(structure,
-                            chainPairs);
+                    .getInterfaceContactChains(structure,
+                            chainPairs, structureAccessibilities);
 
-            addInterfaces(structureId, accessibilities);
+            ArrayList<String> chainPairKeys = new ArrayList<>();
 
             for (String[] pair : chainPairs) {
-                interfacesComputed.put(structureId,
-                        getChainPairKey(pair[0], pair[1]));
+                chainPairKeys.add(getChainPairKey(pair[0], pair[1]));
 //				
 //				interfacesComputed.add(structureId,
 //						getChainPairKey(pair[1], pair[0]));
             }
 
-        } catch (StructureException | NumberFormatException | IOException e) {
+            addInterfaces(structureId, accessibilities, chainPairKeys);
+
+            if (interfaceStore != null) {
+                interfaceStore.put(structureId, chainPairKeys, accessibilities);
+            }
+
+        } catch (StructureException | NumberFormatException e) {
             logger.error( "Cannot extract interfaces from " + structureId, e);
         }
     }
 
+    private void loadStoredInterfaces(String structureId) {
+        if (interfaceStore == null || false == storedInterfacesLoaded.add(structureId)) {
+            return;
+        }
+
+        InterfaceStore.StoredInterfaces stored = interfaceStore.get(structureId);
+
+        if (stored != null) {
+            addInterfaces(structureId, HashMultimap.create(stored.getResidues()), stored.getChainPairs());
+        }
+    }
+
     private void getLigandInterfaces(String structureId, List<String[]> chainPairs) {
 
         try {
@@ -475,46 +597,66 @@ public abstract class StructureSource {
             HashMultimap<String, String> accessibilities = Accessibility
                     .getFasterContactHETATMS(getStructure(structureId),
                             chainPairs);
-            addInterfaces(structureId, accessibilities);
+
+            ArrayList<String> chainPairKeys = new ArrayList<>();
 
             for (String[] pair : chainPairs) {
-                interfacesComputed.put(structureId,
-                        getChainPairKey(pair[0], pair[1]));
+                chainPairKeys.add(getChainPairKey(pair[0], pair[1]));
             }
 
+            addInterfaces(structureId, accessibilities, chainPairKeys);
+
         } catch (StructureException | NumberFormatException | IOException e) {
             logger.error( "Cannot extract ligand interfaces from " + structureId, e);
         }
     }
 
+    /**
+     * Add the residues in contact and mark the pairs of chains as computed.
+     */
+    private void addInterfaces(String structureId,
+            HashMultimap<String, String> accessibilities, Collection<String> chainPairKeys) {
+
+        ChainTable chains = ChainTable.getChainTable(structureId);
+
+        synchronized (interfacesLock) {
+            addInterfaces(structureId, accessibilities, chains);
+            interfacesComputed.putAll(structureId, chainPairKeys);
+        }
+    }
+
     private void addInterfaces(String structureId,
-            HashMultimap<String, String> accessibilities) {
+            HashMultimap<String, String> accessibilities, ChainTable chains) {
 
         if (false == interfaces.containsKey(structureId)) {
-            interfaces.put(structureId, accessibilities);
+            interfaces.put(structureId, HashMultimap.create(accessibilities));
         } else {
             // interfaces.get(structureId).merge(accessibilities);
             interfaces.get(structureId).putAll(accessibilities);
         }
 
+        if (false == interfacesByChains.containsKey(structureId)) {
+            interfacesByChains.put(structureId,
+                    new HashMap<String, ResidueSet>());
+        }
+
+        HashMap<String, ResidueSet> structureInterfaces = interfacesByChains.get(structureId);
+
         for (String position : accessibilities.keySet()) {
+            // format of a position: residueNumber:chain
+            long residue = chains.parse(position);
+            String chainA = chains.getChain(ResidueKey.getChainIndex(residue));
+
             for (String contactChain : accessibilities.get(position)) {
-                // format of a position: residueNumber:chain
-                String chainA = position.split(":")[1];
                 String pair = getChainPairKey(chainA, contactChain);
 
-                if (false == interfacesByChains.containsKey(structureId)) {
-                    interfacesByChains.put(structureId,
-                            new HashMap<String, Collection<String>>());
+                ResidueSet pairResidues = structureInterfaces.get(pair);
+                if (pairResidues == null) {
+                    pairResidues = new ResidueSet(chains);
+                    structureInterfaces.put(pair, pairResidues);
                 }
 
-                if (false == interfacesByChains.get(structureId).containsKey(
-                        pair)) {
-                    interfacesByChains.get(structureId).put(pair,
-                            new HashSet<String>());
-                }
-
-                interfacesByChains.get(structureId).get(pair).add(position);
+                pairResidues.add(residue);
             }
         }
 
@@ -562,11 +704,73 @@ public abstract class StructureSource {
     protected abstract String getFileName(String structureID);
 
     /**
+     * Get the structure from the cache, or read it.
+     *
+     * @param structureID
+     * @return
+     * @throws StructureException
+     */
+    public Structure getStructure(String structureID) throws StructureException {
+        String key = getStructureKey(structureID);
+
+        Structure structure = StructureCache.getInstance().get(key);
+
+        if (structure != null) {
+            return structure;
+        }
+
+        // Read outside of the cache lock, different structures are read in
+        // parallel.
+        synchronized (structureLocks[(key.hashCode() & 0x7fffffff) % structureLocks.length]) {
+            // already counted as a miss
+            structure = StructureCache.getInstance().peek(key);
+
+            if (structure == null) {
+                structure = readStructure(structureID);
+
+                if (structure != null) {
+                    StructureCache.getInstance().put(key, structure);
+                }
+            }
+        }
+
+        return structure;
+    }
+
+    /**
+     * Keep the structure in the cache, e.g. while it can be displayed.
+     *
+     * @param structureID
+     */
+    public void pinStructure(String structureID) {
+        StructureCache.getInstance().pin(getStructureKey(structureID));
+    }
+
+    /**
+     *
+     * @param structureID
+     */
+    public void unpinStructure(String structureID) {
+        StructureCache.getInstance().unpin(getStructureKey(structureID));
+    }
+
+    /**
+     * Key of the structure in the cache, the file is specific to the source.
+     *
+     * @param structureID
+     * @return
+     */
+    protected String getStructureKey(String structureID) {
+        return sourceType + ":" + getFileName(structureID);
+    }
+
+    /**
+     * Read and parse the structure
      *
      * @param structureID
      * @return
      * @throws StructureException
      */
-    public abstract Structure getStructure(String structureID) throws StructureException;
+    protected abstract Structure readStructure(String structureID) throws StructureException;
 
 }
@@ -52,7 +52,7 @@ public class USERStructureSource extends StructureSource {
      * @return
      */
     @Override
-    public Structure getStructure(String structureID) {
+    protected Structure readStructure(String structureID) {
 
         String outputFileName = getFileName(structureID);
 
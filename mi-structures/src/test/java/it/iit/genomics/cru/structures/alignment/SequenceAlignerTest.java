@@ -0,0 +1,188 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.alignment;
+
+import it.iit.genomics.cru.structures.alignment.SequenceAligner.Path;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Arnaud Ceol
+ */
+public class SequenceAlignerTest {
+
+    private static final String AMINO_ACIDS = "ACDEFGHIKLMNPQRSTVWY";
+
+    private static String randomProtein(Random random, int length) {
+        StringBuilder sequence = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sequence.append(AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length())));
+        }
+        return sequence.toString();
+    }
+
+    private static String mutate(Random random, String sequence, double rate) {
+        StringBuilder mutated = new StringBuilder(sequence.length());
+        for (int i = 0; i < sequence.length(); i++) {
+            if (random.nextDouble() >= rate) {
+                mutated.append(sequence.charAt(i));
+            } else if (random.nextBoolean()) {
+                mutated.append(AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length())));
+            } else if (random.nextBoolean()) {
+                mutated.append(sequence.charAt(i)).append(AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length())));
+            }
+        }
+        return mutated.toString();
+    }
+
+    /**
+     * Region of the sequence with missing loops, as the atom sequence of a
+     * chain.
+     */
+    private static String withMissingLoops(Random random, String sequence) {
+        StringBuilder chain = new StringBuilder();
+        int i = random.nextInt(20);
+        while (i < sequence.length()) {
+            int length = 20 + random.nextInt(60);
+            chain.append(sequence, i, Math.min(sequence.length(), i + length));
+            i += length + (random.nextInt(3) == 0 ? 1 + random.nextInt(15) : 0);
+        }
+        return chain.toString();
+    }
+
+    private static void checkAlignment(SequenceAligner aligner, String sequenceA, String sequenceB) {
+        SmithWaterman expected = new SmithWaterman(sequenceA, sequenceB);
+        SequenceAlignment alignment = aligner.align(sequenceA, sequenceB);
+
+        Assert.assertEquals(expected.getScore(), alignment.getScore());
+
+        String alignedA = alignment.getAlignmentSeqA();
+        String alignedB = alignment.getAlignmentSeqB();
+        Assert.assertEquals(alignedA.length(), alignedB.length());
+        Assert.assertTrue(sequenceA.startsWith(alignedA.replace("-", ""), alignment.getStartAlignmentA()));
+        Assert.assertTrue(sequenceB.startsWith(alignedB.replace("-", ""), alignment.getStartAlignmentB()));
+    }
+
+    @Test
+    public void testExact() {
+        SequenceAligner aligner = new SequenceAligner();
+        String sequence = randomProtein(new Random(1), 300);
+
+        SequenceAlignment alignment = aligner.align(sequence, "*" + sequence);
+
+        Assert.assertEquals(sequence, alignment.getAlignmentSeqA());
+        Assert.assertEquals(0, alignment.getStartAlignmentA());
+        Assert.assertEquals(0, alignment.getStartAlignmentB());
+        Assert.assertEquals(new SmithWaterman(sequence, sequence).getScore(), alignment.getScore());
+        Assert.assertEquals(1, aligner.getCount(Path.EXACT));
+    }
+
+    @Test
+    public void testSubstring() {
+        SequenceAligner aligner = new SequenceAligner();
+        String sequence = randomProtein(new Random(2), 300);
+        String region = sequence.substring(40, 250);
+
+        SequenceAlignment alignment = aligner.align(sequence, region);
+        Assert.assertEquals(region, alignment.getAlignmentSeqA());
+        Assert.assertEquals(region, alignment.getAlignmentSeqB());
+        Assert.assertEquals(40, alignment.getStartAlignmentA());
+        Assert.assertEquals(0, alignment.getStartAlignmentB());
+
+        alignment = aligner.align(region, sequence);
+        Assert.assertEquals(0, alignment.getStartAlignmentA());
+        Assert.assertEquals(40, alignment.getStartAlignmentB());
+
+        Assert.assertEquals(2, aligner.getCount(Path.SUBSTRING));
+    }
+
+    @Test
+    public void testBanded() {
+        SequenceAligner aligner = new SequenceAligner();
+        Random random = new Random(3);
+
+        for (int t = 0; t < 50; t++) {
+            String sequence = randomProtein(random, 500 + random.nextInt(1000));
+            checkAlignment(aligner, sequence, mutate(random, withMissingLoops(random, sequence), 0.02));
+        }
+
+        Assert.assertEquals(50, aligner.getCount(Path.BANDED));
+        Assert.assertEquals(0, aligner.getCount(Path.FULL));
+    }
+
+    @Test
+    public void testFull() {
+        SequenceAligner aligner = new SequenceAligner();
+        Random random = new Random(4);
+
+        checkAlignment(aligner, randomProtein(random, 300), randomProtein(random, 200));
+        checkAlignment(aligner, "", "ACDEF");
+
+        Assert.assertEquals(2, aligner.getCount(Path.FULL));
+
+        aligner.resetCounts();
+        Assert.assertEquals(0, aligner.getCount(Path.FULL));
+    }
+
+    @Test
+    public void testCountsSince() {
+        SequenceAligner aligner = new SequenceAligner();
+        String sequence = randomProtein(new Random(6), 100);
+
+        aligner.align(sequence, sequence);
+        SequenceAligner.Counts before = aligner.getCounts();
+
+        aligner.align(sequence, sequence);
+        aligner.align(sequence, sequence.substring(10));
+
+        SequenceAligner.Counts query = aligner.getCounts().since(before);
+        Assert.assertEquals(1, query.get(Path.EXACT));
+        Assert.assertEquals(1, query.get(Path.SUBSTRING));
+        Assert.assertEquals(0, query.get(Path.FULL));
+        Assert.assertEquals(2, aligner.getCount(Path.EXACT));
+    }
+
+    @Test
+    public void testSameScoreAsSmithWaterman() {
+        SequenceAligner aligner = new SequenceAligner();
+        Random random = new Random(5);
+
+        for (int t = 0; t < 500; t++) {
+            String sequenceA = randomProtein(random, random.nextInt(600));
+            String sequenceB;
+            switch (t % 4) {
+                case 0:
+                    sequenceB = randomProtein(random, random.nextInt(300));
+                    break;
+                case 1:
+                    sequenceB = mutate(random, sequenceA, 0.05);
+                    break;
+                case 2:
+                    sequenceB = withMissingLoops(random, sequenceA);
+                    break;
+                default:
+                    // insertion of a domain
+                    int middle = sequenceA.length() / 2;
+                    sequenceB = sequenceA.substring(0, middle) + randomProtein(random, random.nextInt(200))
+                            + sequenceA.substring(middle);
+                    break;
+            }
+            checkAlignment(aligner, sequenceA, sequenceB);
+            checkAlignment(aligner, sequenceB, sequenceA);
+        }
+    }
+}
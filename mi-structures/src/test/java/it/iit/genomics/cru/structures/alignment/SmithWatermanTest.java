@@ -0,0 +1,230 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.alignment;
+
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Arnaud Ceol
+ */
+public class SmithWatermanTest {
+
+    private static final String AMINO_ACIDS = "ACDEFGHIKLMNPQRSTVWY";
+
+    private static String randomProtein(Random random, int length) {
+        StringBuilder sequence = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sequence.append(AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length())));
+        }
+        return sequence.toString();
+    }
+
+    private static String mutate(Random random, String sequence, double rate) {
+        StringBuilder mutated = new StringBuilder(sequence.length());
+        for (int i = 0; i < sequence.length(); i++) {
+            if (random.nextDouble() >= rate) {
+                mutated.append(sequence.charAt(i));
+            } else if (random.nextBoolean()) {
+                mutated.append(AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length())));
+            } else if (random.nextBoolean()) {
+                mutated.append(sequence.charAt(i)).append(AMINO_ACIDS.charAt(random.nextInt(AMINO_ACIDS.length())));
+            }
+        }
+        return mutated.toString();
+    }
+
+    /**
+     * Score of an alignment, recomputed from the aligned sequences.
+     */
+    private static int score(String alignedA, String alignedB) {
+        int[][] substitution = new Blosum50().score;
+        int score = 0;
+        for (int i = 0; i < alignedA.length(); i++) {
+            char a = alignedA.charAt(i);
+            char b = alignedB.charAt(i);
+            score += a == '-' || b == '-' ? -8 : substitution[a][b];
+        }
+        return score;
+    }
+
+    private static void checkAlignment(String sequenceA, String sequenceB) {
+        SmithWatermanItuDK expected = new SmithWatermanItuDK(sequenceA, sequenceB);
+        SmithWaterman alignment = new SmithWaterman(sequenceA, sequenceB);
+
+        Assert.assertEquals(expected.getScore(), alignment.getScore());
+
+        String alignedA = alignment.getAlignmentSeqA();
+        String alignedB = alignment.getAlignmentSeqB();
+
+        Assert.assertEquals(alignedA.length(), alignedB.length());
+        Assert.assertEquals(alignment.getScore(), score(alignedA, alignedB));
+
+        String residuesA = alignedA.replace("-", "");
+        String residuesB = alignedB.replace("-", "");
+        Assert.assertTrue(sequenceA.startsWith(residuesA, alignment.getStartAlignmentA()));
+        Assert.assertTrue(sequenceB.startsWith(residuesB, alignment.getStartAlignmentB()));
+    }
+
+    @Test
+    public void testDurbinExample() {
+        SmithWaterman alignment = new SmithWaterman("HEAGAWGHEE", "PAWHEAE");
+
+        Assert.assertEquals(28, alignment.getScore());
+        Assert.assertEquals("AWGHE", alignment.getAlignmentSeqA());
+        Assert.assertEquals("AW-HE", alignment.getAlignmentSeqB());
+        Assert.assertEquals(4, alignment.getStartAlignmentA());
+        Assert.assertEquals(1, alignment.getStartAlignmentB());
+    }
+
+    @Test
+    public void testSameAsItuDK() {
+        Random random = new Random(5);
+
+        for (int t = 0; t < 500; t++) {
+            String sequenceA = randomProtein(random, random.nextInt(300));
+            String sequenceB;
+            switch (t % 3) {
+                case 0:
+                    sequenceB = randomProtein(random, random.nextInt(300));
+                    break;
+                case 1:
+                    sequenceB = mutate(random, sequenceA, 0.2);
+                    break;
+                default:
+                    sequenceB = randomProtein(random, random.nextInt(20))
+                            + mutate(random, sequenceA, 0.05)
+                            + randomProtein(random, random.nextInt(20));
+                    break;
+            }
+            checkAlignment(sequenceA, sequenceB);
+            checkAlignment(sequenceB, sequenceA);
+        }
+    }
+
+    /**
+     * Low complexity sequences have many alignments with the best score: the
+     * end is the same as the one of SmithWatermanItuDK, the start is the
+     * latest one in seq1, then in seq2.
+     */
+    @Test
+    public void testTies() {
+        Random random = new Random(3);
+        String[] alphabets = {"AW", "GGGA", "AAG"};
+
+        for (int t = 0; t < 3000; t++) {
+            String alphabet = alphabets[t % alphabets.length];
+            String sequenceA = randomSequence(random, alphabet, 1 + random.nextInt(40));
+            String sequenceB = randomSequence(random, alphabet, 1 + random.nextInt(40));
+
+            SmithWatermanItuDK expected = new SmithWatermanItuDK(sequenceA, sequenceB);
+            SmithWaterman alignment = new SmithWaterman(sequenceA, sequenceB);
+
+            Assert.assertEquals(expected.getScore(), alignment.getScore());
+
+            if (alignment.getScore() == 0) {
+                continue;
+            }
+
+            Assert.assertEquals(getEnd(expected.getStartAlignmentA(), expected.getAlignmentSeqA()),
+                    getEnd(alignment.getStartAlignmentA(), alignment.getAlignmentSeqA()));
+            Assert.assertEquals(getEnd(expected.getStartAlignmentB(), expected.getAlignmentSeqB()),
+                    getEnd(alignment.getStartAlignmentB(), alignment.getAlignmentSeqB()));
+
+            Assert.assertTrue(alignment.getStartAlignmentA() >= expected.getStartAlignmentA());
+            if (alignment.getStartAlignmentA() == expected.getStartAlignmentA()) {
+                Assert.assertTrue(alignment.getStartAlignmentB() >= expected.getStartAlignmentB());
+            }
+
+            Assert.assertEquals(alignment.getScore(),
+                    score(alignment.getAlignmentSeqA(), alignment.getAlignmentSeqB()));
+        }
+    }
+
+    /**
+     * Two alignments of AWGHE with the same score: the first end in seq1 is
+     * kept.
+     */
+    @Test
+    public void testTiedEnds() {
+        SmithWaterman alignment = new SmithWaterman("AWGHEPPPPAWGHE", "AWGHE");
+        SmithWatermanItuDK expected = new SmithWatermanItuDK("AWGHEPPPPAWGHE", "AWGHE");
+
+        Assert.assertEquals(expected.getScore(), alignment.getScore());
+        Assert.assertEquals(0, alignment.getStartAlignmentA());
+        Assert.assertEquals(expected.getStartAlignmentA(), alignment.getStartAlignmentA());
+        Assert.assertEquals(5, getEnd(alignment.getStartAlignmentA(), alignment.getAlignmentSeqA()));
+    }
+
+    private static String randomSequence(Random random, String alphabet, int length) {
+        StringBuilder sequence = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sequence.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sequence.toString();
+    }
+
+    /**
+     * End of an alignment, exclusive.
+     */
+    private static int getEnd(int start, String aligned) {
+        return start + aligned.replace("-", "").length();
+    }
+
+    @Test
+    public void testLongSequences() {
+        Random random = new Random(7);
+        String sequenceA = randomProtein(random, 3000);
+        checkAlignment(sequenceA, mutate(random, sequenceA, 0.1));
+    }
+
+    @Test
+    public void testIdentical() {
+        Random random = new Random(11);
+        String sequence = randomProtein(random, 1000);
+
+        SmithWaterman alignment = new SmithWaterman(sequence, sequence);
+
+        Assert.assertEquals(sequence, alignment.getAlignmentSeqA());
+        Assert.assertEquals(sequence, alignment.getAlignmentSeqB());
+        Assert.assertEquals(0, alignment.getStartAlignmentA());
+        Assert.assertEquals(0, alignment.getStartAlignmentB());
+    }
+
+    @Test
+    public void testNoAlignment() {
+        SmithWaterman empty = new SmithWaterman("", "ACDEF");
+        Assert.assertEquals(0, empty.getScore());
+        Assert.assertEquals("", empty.getAlignmentSeqA());
+        Assert.assertEquals("", empty.getAlignmentSeqB());
+
+        // only negative scores between W and D
+        SmithWaterman negative = new SmithWaterman("WWW", "DDD");
+        Assert.assertEquals(0, negative.getScore());
+        Assert.assertEquals("", negative.getAlignmentSeqA());
+    }
+
+    @Test
+    public void testStrip() {
+        SmithWaterman alignment = new SmithWaterman("*heagawghee", "PAW-HEAE");
+
+        Assert.assertEquals(28, alignment.getScore());
+        Assert.assertEquals("awghe", alignment.getAlignmentSeqA());
+        // positions are on the sequence without the other characters
+        Assert.assertEquals(4, alignment.getStartAlignmentA());
+    }
+}
@@ -0,0 +1,146 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.batch;
+
+import it.iit.genomics.cru.structures.model.MIExon;
+import it.iit.genomics.cru.structures.model.MIGene;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Arnaud Ceol
+ */
+public class BatchReadersTest {
+
+    @Test
+    public void testBed() throws Exception {
+        String bed = "track name=test\n"
+                + "chr1\t100\t101\trs1\n"
+                + "chr2\t200\t210\n"
+                + "chr3\tx\t10\n";
+
+        List<GenomicRegion> regions = RegionReader.readBed(new BufferedReader(new StringReader(bed)));
+
+        Assert.assertEquals(2, regions.size());
+        Assert.assertEquals("rs1", regions.get(0).getId());
+        Assert.assertEquals(100, regions.get(0).getMin());
+        Assert.assertEquals(101, regions.get(0).getMax());
+        Assert.assertEquals(100, regions.get(0).toRange().getMax());
+        Assert.assertEquals("chr2:200-210", regions.get(1).getId());
+    }
+
+    @Test
+    public void testVcf() throws Exception {
+        String vcf = "##fileformat=VCFv4.2\n"
+                + "#CHROM\tPOS\tID\tREF\tALT\n"
+                + "1\t101\trs1\tA\tG\n"
+                + "1\t201\t.\tACG\tA\n";
+
+        List<GenomicRegion> regions = RegionReader.readVcf(new BufferedReader(new StringReader(vcf)));
+
+        Assert.assertEquals(2, regions.size());
+        Assert.assertEquals("rs1", regions.get(0).getId());
+        Assert.assertEquals(100, regions.get(0).getMin());
+        Assert.assertEquals(101, regions.get(0).getMax());
+        Assert.assertEquals("1:201:ACG>A", regions.get(1).getId());
+        Assert.assertEquals(200, regions.get(1).getMin());
+        Assert.assertEquals(203, regions.get(1).getMax());
+    }
+
+    @Test
+    public void testGenePred() throws Exception {
+        // refGene with bin column: forward gene, reverse gene and non coding
+        String genePred = "0\tNM_1.2\tchr1\t+\t100\t200\t110\t190\t2\t100,150,\t120,200,\t0\tGENE1\n"
+                + "0\tNM_2\tchr1\t-\t300\t400\t300\t400\t2\t300,350,\t320,400,\t0\tGENE2\n"
+                + "0\tNR_3\tchr1\t+\t500\t600\t600\t600\t1\t500,\t600,\t0\tGENE3\n";
+
+        List<MIGene> genes = GenePredReader.read(new BufferedReader(new StringReader(genePred)));
+
+        Assert.assertEquals(2, genes.size());
+
+        MIGene forward = genes.get(0);
+        Assert.assertTrue(forward.isForward());
+        Assert.assertEquals("GENE1", forward.getName());
+        Assert.assertEquals(100, forward.getMin());
+        Assert.assertEquals(199, forward.getMax());
+        Assert.assertEquals(2, forward.getExons().size());
+
+        // coding parts: 110-119 (10 bases) and 150-189 (40 bases)
+        MIExon first = forward.getExons().get(0);
+        Assert.assertEquals(110, first.getStart());
+        Assert.assertEquals(119, first.getEnd());
+        Assert.assertEquals(1, first.getProteinStart());
+        Assert.assertEquals(4, first.getProteinEnd());
+
+        MIExon second = forward.getExons().get(1);
+        Assert.assertEquals(150, second.getStart());
+        Assert.assertEquals(2, second.getNumberOfOverlappingBases());
+        Assert.assertEquals(4, second.getProteinStart());
+        Assert.assertEquals(17, second.getProteinEnd());
+        Assert.assertEquals(110, forward.getCodingStart());
+        Assert.assertEquals(189, forward.getCodingEnd());
+
+        // exons follow the strand
+        MIGene reverse = genes.get(1);
+        Assert.assertFalse(reverse.isForward());
+        Assert.assertEquals(399, reverse.getExons().get(0).getStart());
+        Assert.assertEquals(350, reverse.getExons().get(0).getEnd());
+        Assert.assertEquals(319, reverse.getExons().get(1).getStart());
+        Assert.assertEquals(300, reverse.getExons().get(1).getEnd());
+        Assert.assertEquals(399, reverse.getCodingStart());
+        Assert.assertEquals(300, reverse.getCodingEnd());
+
+        // without bin column
+        List<MIGene> noBin = GenePredReader.read(new BufferedReader(new StringReader(
+                "NM_1\tchr1\t+\t100\t200\t110\t190\t1\t100,\t200,\n")));
+        Assert.assertEquals(1, noBin.size());
+        Assert.assertEquals("NM_1", noBin.get(0).getName());
+    }
+
+    @Test
+    public void testGenomeSequence() throws Exception {
+        File directory = Files.createTempDirectory("genome").toFile();
+        File fasta = new File(directory, "genome.fa");
+
+        // 4 bases per line
+        String chr1 = "ACGTACGTAA";
+        Files.write(fasta.toPath(), (">chr1\nACGT\nACGT\nAA\n>chr2\nGGGG\n").getBytes("UTF-8"));
+        Files.write(new File(directory, "genome.fa.fai").toPath(),
+                ("chr1\t10\t6\t4\t5\nchr2\t4\t25\t4\t5\n").getBytes("UTF-8"));
+
+        try (GenomeSequence genome = new GenomeSequence(fasta)) {
+            for (int min = 0; min < chr1.length(); min++) {
+                for (int max = min; max <= chr1.length(); max++) {
+                    Assert.assertEquals(chr1.substring(min, max), genome.getResidues("chr1", min, max));
+                }
+            }
+
+            Assert.assertEquals("TTACG", genome.getResidues("1", 10, 5));
+            Assert.assertEquals("GGGG", genome.getResidues("chr2", 0, 4));
+            Assert.assertNull(genome.getResidues("chr3", 0, 4));
+        } finally {
+            new File(directory, "genome.fa.fai").delete();
+            fasta.delete();
+            directory.delete();
+        }
+    }
+
+}
@@ -0,0 +1,293 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.bridges.commons;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Arnaud Ceol
+ */
+public class HttpTransportTest {
+
+    private static final int MAX_PER_HOST = 2;
+
+    private HttpServer server;
+
+    private HttpTransport transport;
+
+    private final AtomicInteger unavailable = new AtomicInteger();
+
+    private final AtomicInteger busy = new AtomicInteger();
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+
+        server.createContext("/text", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                send(exchange, 200, "hello".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+
+        server.createContext("/gzip", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                if (acceptEncoding == null || false == acceptEncoding.contains("gzip")) {
+                    send(exchange, 406, new byte[0]);
+                    return;
+                }
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders(200, 0);
+                try (OutputStream os = new GZIPOutputStream(exchange.getResponseBody())) {
+                    os.write("compressed".getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        });
+
+        // unavailable twice, then OK
+        server.createContext("/unstable", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (unavailable.incrementAndGet() <= 2) {
+                    send(exchange, 503, new byte[0]);
+                } else {
+                    send(exchange, 200, "back".getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        });
+
+        // always unavailable, retry in 2 seconds
+        server.createContext("/busy", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                busy.incrementAndGet();
+                exchange.getResponseHeaders().add("Retry-After", "2");
+                send(exchange, 503, new byte[0]);
+            }
+        });
+
+        server.createContext("/missing", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                unavailable.incrementAndGet();
+                send(exchange, 404, new byte[0]);
+            }
+        });
+
+        server.createContext("/slow", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int current = running.incrementAndGet();
+                synchronized (maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), current));
+                }
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                send(exchange, 200, "slow".getBytes(StandardCharsets.UTF_8));
+            }
+        });
+
+        server.start();
+
+        transport = new HttpTransport(1000, 1000, MAX_PER_HOST, 3, 10);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private String getUrl(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    @Test
+    public void testGetString() throws Exception {
+        assertEquals("hello", transport.getString(getUrl("/text"), null));
+        assertEquals(1, transport.getMetrics(getUrl("/text")).getNumberOfRequests());
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        assertEquals("compressed", transport.getString(getUrl("/gzip"), null));
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        assertEquals("back", transport.getString(getUrl("/unstable"), null));
+
+        HostMetrics metrics = transport.getMetrics(getUrl("/unstable"));
+        assertEquals(1, metrics.getNumberOfRequests());
+        assertEquals(2, metrics.getNumberOfRetries());
+        assertEquals(0, metrics.getNumberOfFailures());
+    }
+
+    /**
+     * The host is not blocked while a request waits to be retried.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRetryReleasesHost() throws Exception {
+        final HttpTransport singleTransport = new HttpTransport(1000, 1000, 1, 3, 10);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws IOException {
+                    return singleTransport.getString(getUrl("/busy"), null);
+                }
+            });
+
+            while (busy.get() == 0) {
+                Thread.sleep(10);
+            }
+
+            // the only connection to the host is available before the retry
+            assertEquals("hello", singleTransport.getString(getUrl("/text"), null));
+            assertEquals(1, busy.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testNoRetryOnClientError() throws Exception {
+        try {
+            transport.getString(getUrl("/missing"), null);
+            fail("404 expected");
+        } catch (HttpStatusException e) {
+            assertEquals(404, e.getStatusCode());
+        }
+
+        assertEquals(1, unavailable.get());
+        assertEquals(1, transport.getMetrics(getUrl("/missing")).getNumberOfFailures());
+    }
+
+    @Test
+    public void testMaxPerHost() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        ArrayList<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            results.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws IOException {
+                    return transport.getString(getUrl("/slow"), null);
+                }
+            }));
+        }
+
+        for (Future<String> result : results) {
+            assertEquals("slow", result.get());
+        }
+
+        executor.shutdown();
+
+        assertTrue(maxRunning.get() <= MAX_PER_HOST);
+        assertEquals(16, transport.getMetrics(getUrl("/slow")).getNumberOfRequests());
+    }
+
+    @Test
+    public void testDownload() throws Exception {
+        File directory = Files.createTempDirectory("transport").toFile();
+        File file = new File(directory, "sub/text.txt");
+
+        transport.download(getUrl("/text"), file);
+
+        assertEquals("hello", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        assertEquals(1, directory.listFiles()[0].listFiles().length);
+
+        file.delete();
+        file.getParentFile().delete();
+        directory.delete();
+    }
+
+    @Test
+    public void testHostTimeout() throws Exception {
+        ArrayList<InputStream> open = new ArrayList<>();
+        for (int i = 0; i < MAX_PER_HOST; i++) {
+            open.add(transport.get(getUrl("/text")));
+        }
+
+        try {
+            transport.get(getUrl("/text"));
+            fail("no connection should be available");
+        } catch (SocketTimeoutException e) {
+            // expected
+        } finally {
+            for (InputStream is : open) {
+                is.close();
+            }
+        }
+
+        transport.get(getUrl("/text")).close();
+    }
+
+    @Test
+    public void testStreamReleasesHost() throws Exception {
+        for (int i = 0; i < 3 * MAX_PER_HOST; i++) {
+            try (InputStream is = transport.get(getUrl("/text"))) {
+                assertEquals('h', is.read());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.bridges.eppic;
+
+import it.iit.genomics.cru.structures.bridges.eppic.client.EppicJaxbClient;
+import it.iit.genomics.cru.structures.bridges.eppic.model.EppicAnalysis;
+import it.iit.genomics.cru.structures.bridges.eppic.model.EppicAnalysisList;
+import it.iit.genomics.cru.structures.bridges.eppic.model.Interface;
+import it.iit.genomics.cru.structures.bridges.eppic.model.InterfaceCluster;
+import it.iit.genomics.cru.structures.bridges.eppic.model.InterfaceScore;
+import it.iit.genomics.cru.structures.bridges.eppic.model.Residue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Arnaud Ceol
+ */
+public class EppicInterfaceTableTest {
+
+    private String getCacheDir() throws IOException {
+        File dir = Files.createTempDirectory("eppic").toFile();
+        dir.deleteOnExit();
+        return dir.getAbsolutePath() + File.separator;
+    }
+
+    private Residue createResidue(int number, int side, double bsaPercentage) {
+        Residue residue = new Residue();
+        residue.setPdbResidueNumber(number);
+        residue.setSide(side);
+        residue.setBsaPercentage(bsaPercentage);
+        return residue;
+    }
+
+    private Interface createInterface(String chain1, String chain2, String call, Residue... residues) {
+        InterfaceScore score = new InterfaceScore();
+        score.setMethod(Interface.METHOD_EPPIC);
+        score.setCallName(call);
+
+        Interface eppicInterface = new Interface();
+        eppicInterface.setChain1(chain1);
+        eppicInterface.setChain2(chain2);
+        eppicInterface.getInterfaceScores().add(score);
+        eppicInterface.getResidues().addAll(Arrays.asList(residues));
+        return eppicInterface;
+    }
+
+    private EppicAnalysisList createAnalysis() {
+        InterfaceCluster cluster1 = new InterfaceCluster();
+        cluster1.getInterfaces().add(createInterface("A", "B", "bio",
+                createResidue(10, 1, 0.9), createResidue(11, 1, 0.5), createResidue(42, 2, 0.8)));
+
+        InterfaceCluster cluster2 = new InterfaceCluster();
+        cluster2.getInterfaces().add(createInterface("A", "C", "xtal", createResidue(20, 2, 0.99)));
+        cluster2.getInterfaces().add(createInterface("B", "C", null));
+
+        EppicAnalysis analysis = new EppicAnalysis();
+        analysis.setPdbCode("1ABC");
+        analysis.getInterfaceClusters().add(cluster1);
+        analysis.getInterfaceClusters().add(cluster2);
+
+        EppicAnalysisList list = new EppicAnalysisList();
+        list.getEppicAnalysis().add(analysis);
+        return list;
+    }
+
+    private void assertTable(EppicInterfaceTable table) {
+        assertEquals(3, table.size());
+
+        assertEquals("A", table.getChain1(0));
+        assertEquals("B", table.getChain2(0));
+        assertTrue(table.isBio(0));
+        assertEquals(Arrays.asList("10:A", "42:B"), table.getCoreResidues(0));
+
+        assertEquals(EppicInterfaceTable.CALL_XTAL, table.getCall(1));
+        assertEquals(Arrays.asList("20:C"), table.getCoreResidues(1));
+
+        assertEquals(EppicInterfaceTable.CALL_NONE, table.getCall(2));
+        assertTrue(table.getCoreResidues(2).isEmpty());
+    }
+
+    /**
+     * Only the core residues are kept.
+     */
+    @Test
+    public void testCreate() {
+        assertTable(EppicInterfaceTable.create(createAnalysis()));
+        assertEquals(0, EppicInterfaceTable.empty().size());
+    }
+
+    /**
+     * Tables are read back from disk.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testWriteRead() throws IOException {
+        File file = new File(getCacheDir(), "1ABC.interfaces");
+
+        assertNull(EppicInterfaceTable.read(file));
+
+        EppicInterfaceTable.create(createAnalysis()).write(file);
+        assertTable(EppicInterfaceTable.read(file));
+
+        EppicInterfaceTable.empty().write(file);
+        assertEquals(0, EppicInterfaceTable.read(file).size());
+    }
+
+    /**
+     * A table stored on disk is used without parsing the EPPIC analysis, and
+     * kept in memory afterwards.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testClientCache() throws IOException {
+        String localPath = getCacheDir();
+        File file = new File(localPath + "1ABC.interfaces-v" + EppicInterfaceTable.VERSION);
+        EppicInterfaceTable.create(createAnalysis()).write(file);
+
+        EppicJaxbClient client = new EppicJaxbClient(localPath);
+
+        EppicInterfaceTable table = client.getInterfaceTable("1ABC");
+        assertTable(table);
+
+        assertTrue(file.delete());
+        assertFalse(file.exists());
+        assertSame(table, client.getInterfaceTable("1ABC"));
+    }
+}
@@ -0,0 +1,414 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.bridges.pdb;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import it.iit.genomics.cru.structures.bridges.pdb.model.Ligand;
+import it.iit.genomics.cru.structures.bridges.pdb.model.MoleculeDescription;
+import it.iit.genomics.cru.structures.bridges.pdb.model.Polymer;
+import it.iit.genomics.cru.structures.bridges.pdb.model.StructureID;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Arnaud Ceol
+ */
+public class PDBWSClientTest {
+
+    private static final String DESCRIBE_MOL = "<?xml version='1.0' standalone='no' ?>"
+            + "<molDescription>"
+            + "<structureId id=\"4HHB\">"
+            + "<polymer entityNr=\"1\" length=\"141\" type=\"protein\" weight=\"15150.5\">"
+            + "<chain id=\"A\" /><chain id=\"C\" />"
+            + "<Taxonomy name=\"Homo sapiens\" id=\"9606\" />"
+            + "<macroMolecule name=\"Hemoglobin subunit alpha\"><accession id=\"P69905\" /></macroMolecule>"
+            + "<polymerDescription description=\"HEMOGLOBIN (DEOXY) (ALPHA CHAIN)\" />"
+            + "</polymer>"
+            + "<polymer entityNr=\"2\" length=\"146\" type=\"protein\" weight=\"15890.4\">"
+            + "<chain id=\"B\" /><chain id=\"D\" />"
+            + "<Taxonomy name=\"Homo sapiens\" id=\"9606\" />"
+            + "<macroMolecule name=\"Hemoglobin subunit beta\"><accession id=\"P68871\" /></macroMolecule>"
+            + "</polymer>"
+            + "</structureId>"
+            + "<structureId id=\"1K1K\">"
+            + "<polymer entityNr=\"1\" length=\"10\" type=\"dna\" weight=\"3000.0\"><chain id=\"A\" /></polymer>"
+            + "</structureId>"
+            + "</molDescription>";
+
+    private static final String LIGAND_INFO = "<?xml version='1.0' standalone='no' ?>"
+            + "<structureId id=\"4HHB\"><ligandInfo>"
+            + "<ligand structureId=\"4HHB\" chemicalID=\"HEM\" type=\"non-polymer\" molecularWeight=\"616.487\">"
+            + "<chemicalName>PROTOPORPHYRIN IX CONTAINING FE</chemicalName>"
+            + "<formula>C34 H32 FE N4 O4</formula>"
+            + "<InChIKey>KABFMIBPWCXCRK-RGGAHWMASA-L</InChIKey>"
+            + "<InChI>InChI=1S/C34H34N4O4.Fe</InChI>"
+            + "<smiles>Cc1c2n3c(c1CCC(=O)O)</smiles>"
+            + "</ligand>"
+            + "<ligand structureId=\"4HHB\" chemicalID=\"PO4\" type=\"non-polymer\" molecularWeight=\"94.971\">"
+            + "<chemicalName>PHOSPHATE ION</chemicalName>"
+            + "</ligand>"
+            + "</ligandInfo></structureId>";
+
+    private HttpServer server;
+
+    /**
+     * Number of PDB IDs of each describeMol request
+     */
+    private final List<Integer> describeMolSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+    /**
+     * Requests with more PDB IDs are rejected with the HTTP error 414
+     */
+    private volatile int maxIds = Integer.MAX_VALUE;
+
+    @Before
+    public void setUp() throws IOException {
+        PDBWSClient.setCacheDir(null);
+        PDBWSClient.resetBatchSize();
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getRawPath();
+                String query = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), "UTF-8");
+                List<String> ids = Arrays.asList(query.substring(query.indexOf('=') + 1).split(","));
+
+                boolean describeMol = path.endsWith("describeMol");
+                if (describeMol) {
+                    describeMolSizes.add(ids.size());
+                }
+
+                if (ids.size() > maxIds) {
+                    exchange.sendResponseHeaders(414, -1);
+                    exchange.close();
+                    return;
+                }
+
+                // the PDB rejects a request with an invalid ID
+                if (ids.contains("BAD1")) {
+                    exchange.sendResponseHeaders(400, -1);
+                    exchange.close();
+                    return;
+                }
+
+                StringBuilder xml = new StringBuilder("<?xml version='1.0' standalone='no' ?>");
+                if (describeMol) {
+                    xml.append("<molDescription>");
+                    for (String id : ids) {
+                        xml.append("<structureId id=\"").append(id).append("\">")
+                                .append("<polymer entityNr=\"1\" length=\"10\" type=\"protein\" weight=\"1000.0\"><chain id=\"A\" /></polymer>")
+                                .append("</structureId>");
+                    }
+                    xml.append("</molDescription>");
+                } else {
+                    xml.append("<structureId><ligandInfo>");
+                    for (String id : ids) {
+                        xml.append("<ligand structureId=\"").append(id).append("\" chemicalID=\"HEM\" type=\"non-polymer\" molecularWeight=\"616.487\">")
+                                .append("<chemicalName>").append(id).append("</chemicalName>")
+                                .append("</ligand>");
+                    }
+                    xml.append("</ligandInfo></structureId>");
+                }
+
+                byte[] bytes = xml.toString().getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, bytes.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(bytes);
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        PDBWSClient.resetBatchSize();
+    }
+
+    private PDBWSClient getClient() {
+        return new PDBWSClient("http://localhost:" + server.getAddress().getPort() + "/pdb/rest/");
+    }
+
+    private static List<String> getPdbIds(int number) {
+        ArrayList<String> ids = new ArrayList<>();
+        for (int i = 0; i < number; i++) {
+            ids.add(String.format("%dX%02d", 1 + i / 100, i % 100));
+        }
+        return ids;
+    }
+
+    private static void assertDescriptions(List<String> expected, MoleculeDescription description) {
+        assertEquals(expected.size(), description.getStructureId().size());
+        Iterator<StructureID> structureIds = description.getStructureId().iterator();
+        for (String id : expected) {
+            assertEquals(id, structureIds.next().getId());
+        }
+    }
+
+    private String getCacheDir() throws IOException {
+        File dir = Files.createTempDirectory("pdb").toFile();
+        dir.deleteOnExit();
+        return dir.getAbsolutePath();
+    }
+
+    private ByteArrayInputStream toStream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * describeMol answer with several structures and polymers
+     */
+    @Test
+    public void testParseMoleculeDescription() {
+        MoleculeDescription description = new PDBWSClient().parseMoleculeDescription(toStream(DESCRIBE_MOL));
+
+        assertEquals(2, description.getStructureId().size());
+
+        StructureID hemoglobin = description.getStructureId().iterator().next();
+        assertEquals("4HHB", hemoglobin.getId());
+        assertEquals(2, hemoglobin.getPolymers().size());
+
+        Polymer alpha = hemoglobin.getPolymers().get(0);
+        assertEquals(1, alpha.getEntityNr());
+        assertEquals(141, alpha.getLength());
+        assertEquals("protein", alpha.getType());
+        assertEquals(15150.5, alpha.getWeight(), 0.001);
+        assertEquals(2, alpha.getChains().size());
+        assertEquals("C", alpha.getChains().get(1).getId());
+        assertEquals("9606", alpha.getTaxonomy().getId());
+        assertEquals("P69905", alpha.getMacromolecule().getAccession().get(0));
+        assertEquals("HEMOGLOBIN (DEOXY) (ALPHA CHAIN)", alpha.getPolymerDescription().getDescription());
+
+        Polymer beta = hemoglobin.getPolymers().get(1);
+        assertNull(beta.getPolymerDescription());
+        assertEquals("P68871", beta.getMacromolecule().getAccession().get(0));
+    }
+
+    /**
+     * ligandInfo answer
+     */
+    @Test
+    public void testParseLigands() {
+        Collection<Ligand> ligands = new PDBWSClient().parseLigands(toStream(LIGAND_INFO));
+
+        assertEquals(2, ligands.size());
+
+        Ligand heme = ligands.iterator().next();
+        assertEquals("4HHB", heme.getStructureId());
+        assertEquals("HEM", heme.getChemicalId());
+        assertEquals(616.487, heme.getMolecularWeight(), 0.001);
+        assertEquals("PROTOPORPHYRIN IX CONTAINING FE", heme.getChemicalName());
+        assertEquals("C34 H32 FE N4 O4", heme.getFormula());
+        assertEquals("KABFMIBPWCXCRK-RGGAHWMASA-L", heme.getInChIKey());
+        assertEquals("Cc1c2n3c(c1CCC(=O)O)", heme.getSmiles());
+    }
+
+    /**
+     * An invalid answer gives the structures parsed so far.
+     */
+    @Test
+    public void testParseInvalid() {
+        String truncated = DESCRIBE_MOL.substring(0, DESCRIBE_MOL.indexOf("<structureId id=\"1K1K\">") + 30);
+        MoleculeDescription description = new PDBWSClient().parseMoleculeDescription(toStream(truncated));
+        assertEquals(0, description.getStructureId().size());
+    }
+
+    /**
+     * Descriptions, missing descriptions and ligands are read back by another
+     * store.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testStore() throws IOException {
+        String cacheDir = getCacheDir();
+
+        PDBWSClient client = new PDBWSClient();
+        MoleculeDescription description = client.parseMoleculeDescription(toStream(DESCRIBE_MOL));
+
+        PDBDescriptionStore store = new PDBDescriptionStore(cacheDir);
+        store.putDescription("4HHB", description.getStructureId().iterator().next());
+        store.putDescription("9XXX", null);
+        store.putLigands("4HHB", new ArrayList<>(client.parseLigands(toStream(LIGAND_INFO))));
+        store.putLigands("1K1K", new ArrayList<Ligand>());
+
+        PDBDescriptionStore other = new PDBDescriptionStore(cacheDir);
+
+        PDBDescriptionStore.Stored<StructureID> stored = other.getDescription("4HHB");
+        assertNotNull(stored);
+        assertEquals(2, stored.getValue().getPolymers().size());
+        assertEquals("D", stored.getValue().getPolymers().get(1).getChains().get(1).getId());
+
+        stored = other.getDescription("9XXX");
+        assertNotNull(stored);
+        assertNull(stored.getValue());
+
+        assertNull(other.getDescription("1K1K"));
+
+        assertEquals(2, other.getLigands("4HHB").size());
+        assertEquals("PHOSPHATE ION", other.getLigands("4HHB").get(1).getChemicalName());
+        assertEquals(0, other.getLigands("1K1K").size());
+        assertNull(other.getLigands("9XXX"));
+    }
+
+    /**
+     * Entries older than the time to live are ignored.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testExpired() throws IOException {
+        String cacheDir = getCacheDir();
+
+        new PDBDescriptionStore(cacheDir).putDescription("9XXX", null);
+
+        PDBDescriptionStore store = new PDBDescriptionStore(cacheDir, 60000);
+        assertNotNull(store.getDescription("9XXX"));
+
+        for (File file : new File(cacheDir, "pdb-ws-v1").listFiles()) {
+            file.setLastModified(System.currentTimeMillis() - 120000);
+        }
+        assertNull(store.getDescription("9XXX"));
+    }
+
+    /**
+     * The PDB IDs are sent in batches, and the answers are returned in the
+     * order of the PDB IDs.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testLookupBatches() throws Exception {
+        List<String> ids = getPdbIds(20);
+
+        PDBWSClient.PDBLookup lookup = getClient().lookup(ids, true, true);
+
+        // 4 concurrent requests of 5 IDs
+        assertEquals(4, describeMolSizes.size());
+        for (int size : describeMolSizes) {
+            assertEquals(5, size);
+        }
+
+        assertDescriptions(ids, lookup.getDescription());
+
+        assertEquals(20, lookup.getLigands().size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(ids.get(i), lookup.getLigands().get(i).getStructureId());
+        }
+
+        assertEquals(PDBWSClient.MAX_BATCH_SIZE, PDBWSClient.getBatchSize());
+    }
+
+    /**
+     * A request rejected as too large is split, and the next requests are
+     * smaller.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSplitTooLarge() throws Exception {
+        maxIds = 10;
+        List<String> ids = getPdbIds(80);
+
+        MoleculeDescription description = getClient().getDescription(ids);
+
+        assertDescriptions(ids, description);
+        // reduced to 10, and possibly increased by the requests of 10 IDs
+        assertTrue(PDBWSClient.getBatchSize() >= 10);
+        assertTrue(PDBWSClient.getBatchSize() < 20);
+        for (int size : describeMolSizes) {
+            assertTrue(size == 20 || size <= 10);
+        }
+
+        describeMolSizes.clear();
+        getClient().getDescription(getPdbIds(40));
+        for (int size : describeMolSizes) {
+            assertTrue(size <= 10);
+        }
+    }
+
+    /**
+     * Once the requests succeed again, the batch size grows back to its
+     * maximum.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGrowBatchSize() throws Exception {
+        maxIds = 10;
+        getClient().getDescription(getPdbIds(80));
+        assertTrue(PDBWSClient.getBatchSize() < PDBWSClient.MAX_BATCH_SIZE);
+
+        maxIds = Integer.MAX_VALUE;
+        List<String> ids = getPdbIds(4 * PDBWSClient.MAX_BATCH_SIZE);
+        for (int i = 0; i < 10 && PDBWSClient.getBatchSize() < PDBWSClient.MAX_BATCH_SIZE; i++) {
+            assertDescriptions(ids, getClient().getDescription(ids));
+        }
+
+        assertEquals(PDBWSClient.MAX_BATCH_SIZE, PDBWSClient.getBatchSize());
+
+        describeMolSizes.clear();
+        getClient().getDescription(ids);
+        for (int size : describeMolSizes) {
+            assertEquals(PDBWSClient.MAX_BATCH_SIZE, size);
+        }
+    }
+
+    /**
+     * An invalid PDB ID is skipped, and does not reduce the size of the next
+     * requests.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBadRequest() throws Exception {
+        List<String> ids = getPdbIds(20);
+        ids.set(7, "BAD1");
+
+        PDBWSClient.PDBLookup lookup = getClient().lookup(ids, true, true);
+
+        ArrayList<String> expected = new ArrayList<>(ids);
+        expected.remove("BAD1");
+        assertDescriptions(expected, lookup.getDescription());
+        assertEquals(19, lookup.getLigands().size());
+
+        assertEquals(PDBWSClient.MAX_BATCH_SIZE, PDBWSClient.getBatchSize());
+    }
+}
@@ -0,0 +1,234 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.bridges.psicquic;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import it.iit.genomics.cru.structures.bridges.commons.BridgesRemoteAccessException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author Arnaud Ceol
+ */
+public class PsicquicBatchTest {
+
+    private HttpServer server;
+
+    private final List<String> mitab = new ArrayList<>();
+
+    private final List<String> queries = Collections.synchronizedList(new ArrayList<String>());
+
+    private static String getLine(String ac1, String ac2, String type, String pmid) {
+        return "uniprotkb:" + ac1 + "\tuniprotkb:" + ac2 + "\t-\t-\t-\t-\t"
+                + "psi-mi:\"MI:0018\"(two hybrid)\t-\tpubmed:" + pmid + "\ttaxid:9606\ttaxid:9606\t"
+                + "psi-mi:\"MI:0915\"(" + type + ")\tpsi-mi:\"MI:0469\"(IntAct)\tintact:EBI-1\t-";
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        // a hub with more interactions than a page
+        for (int i = 0; i < PsicquicUtils.PAGE_SIZE + 100; i++) {
+            mitab.add(getLine("P04637", String.format("Q%05d", i), "physical association", "1"));
+        }
+        mitab.add(getLine("P04637", "O15151-2", "association", "2"));
+        mitab.add(getLine("O15151", "P12345", "physical association", "3"));
+        mitab.add(getLine("O15151", "O15151", "physical association", "4"));
+        // Q99999 is only an alternative id of the first interactor
+        mitab.add(getLine("P11111", "P22222", "physical association", "5").replaceFirst("\t-\t", "\tuniprotkb:Q99999\t"));
+        mitab.add("ensembl:ENSG0001\tuniprotkb:O15151\t-\t-\t-\t-\t-\t-\t-\t-\t-\t-\t-\t-\t-");
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/psicquic/webservices/current/search/query/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getRawPath();
+                queries.add(URLDecoder.decode(path.substring(path.lastIndexOf('/') + 1), "UTF-8"));
+
+                HashMap<String, String> parameters = new HashMap<>();
+                for (String parameter : exchange.getRequestURI().getRawQuery().split("&")) {
+                    parameters.put(parameter.split("=")[0], parameter.split("=")[1]);
+                }
+                int first = Integer.parseInt(parameters.get("firstResult"));
+                int max = Integer.parseInt(parameters.get("maxResults"));
+
+                StringBuilder page = new StringBuilder();
+                for (int i = first; i < Math.min(mitab.size(), first + max); i++) {
+                    page.append(mitab.get(i)).append("\n");
+                }
+
+                byte[] bytes = page.toString().getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, bytes.length == 0 ? -1 : bytes.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(bytes);
+                }
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/psicquic/webservices/current/search/";
+    }
+
+    /**
+     * Interactions of several proteins with one query, read page by page.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBatch() throws Exception {
+        HashMap<String, InteractionManager> interactions = new HashMap<>();
+        interactions.put("P04637", new InteractionManager());
+        interactions.put("O15151", new InteractionManager());
+
+        PsicquicUtils.getInstance().getInteractors(getUrl(), interactions);
+
+        // two pages for a single query
+        assertEquals(2, queries.size());
+        assertTrue(queries.get(0).startsWith("identifier:("));
+        assertTrue(queries.get(0).contains("P04637") && queries.get(0).contains("O15151"));
+
+        InteractionManager p53 = interactions.get("P04637");
+        assertEquals(PsicquicUtils.PAGE_SIZE + 101, p53.getInteractions().size());
+
+        InteractionManager o15151 = interactions.get("O15151");
+        // P04637, P12345 and itself
+        assertEquals(3, o15151.getInteractions().size());
+        assertTrue(o15151.getInteractors().contains("P04637"));
+
+        for (Interaction interaction : o15151.getInteractions()) {
+            if (interaction.getKey().equals(new Interaction("P04637", "O15151").getKey())) {
+                assertEquals("[association]", interaction.getInteractionTypes().toString());
+                assertEquals("[2]", interaction.getBibRefs().toString());
+            }
+        }
+    }
+
+    /**
+     * An interaction matched by an alternative id is kept with several ids
+     * in the same query.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testBatchAlternativeId() throws Exception {
+        HashMap<String, InteractionManager> interactions = new HashMap<>();
+        interactions.put("P04637", new InteractionManager());
+        interactions.put("Q99999", new InteractionManager());
+
+        PsicquicUtils.getInstance().getInteractors(getUrl(), interactions);
+
+        assertEquals(1, interactions.get("Q99999").getInteractions().size());
+        assertTrue(interactions.get("Q99999").getInteractors().contains("P22222"));
+        assertEquals(PsicquicUtils.PAGE_SIZE + 101, interactions.get("P04637").getInteractions().size());
+    }
+
+    /**
+     * The interactions of a single protein.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSingle() throws Exception {
+        assertEquals(PsicquicUtils.PAGE_SIZE + 104, PsicquicUtils.getInstance().getInteractors(getUrl(), "P04637").size());
+    }
+
+    /**
+     * Several servers at once: the one that cannot be reached is ignored.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testFanOut() throws Exception {
+        String deadUrl;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            deadUrl = "http://localhost:" + socket.getLocalPort() + "/psicquic/webservices/current/search/";
+        }
+
+        HashMap<String, InteractionManager> interactions = new HashMap<>();
+        interactions.put("P04637", new InteractionManager());
+        interactions.put("O15151", new InteractionManager());
+
+        List<String> answered = PsicquicUtils.getInstance().getInteractors(Arrays.asList(deadUrl, getUrl()), interactions, 10000);
+
+        assertEquals(Collections.singletonList(getUrl()), answered);
+        assertEquals(PsicquicUtils.PAGE_SIZE + 101, interactions.get("P04637").getInteractions().size());
+        assertEquals(3, interactions.get("O15151").getInteractions().size());
+
+        PsicquicServerStats deadStats = PsicquicUtils.getInstance().getServerStats(deadUrl);
+        assertEquals(1, deadStats.getNumberOfFailures());
+        assertFalse(deadStats.isOpen());
+        assertEquals(0, PsicquicUtils.getInstance().getServerStats(getUrl()).getNumberOfFailures());
+    }
+
+    /**
+     * A query interrupted during the trial of a skipped server does not keep
+     * the server skipped.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInterruptedTrial() throws Exception {
+        PsicquicServerStats stats = PsicquicUtils.getInstance().getServerStats(getUrl());
+
+        // failures long ago: the next query is a trial
+        for (int i = 0; i < PsicquicServerStats.FAILURE_THRESHOLD; i++) {
+            stats.recordFailure(0);
+        }
+        assertTrue(stats.isOpen());
+
+        HashMap<String, InteractionManager> interactions = new HashMap<>();
+        interactions.put("P04637", new InteractionManager());
+
+        Thread.currentThread().interrupt();
+        try {
+            PsicquicUtils.getInstance().getInteractors(Collections.singletonList(getUrl()), interactions, 10000);
+            fail("The query should be interrupted");
+        } catch (BridgesRemoteAccessException e) {
+            // expected
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertEquals(PsicquicServerStats.FAILURE_THRESHOLD, stats.getNumberOfFailures());
+        assertTrue(stats.allowRequest());
+    }
+
+}
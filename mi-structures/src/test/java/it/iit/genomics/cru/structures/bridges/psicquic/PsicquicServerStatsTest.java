@@ -0,0 +1,112 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.bridges.psicquic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Arnaud Ceol
+ */
+public class PsicquicServerStatsTest {
+
+    @Test
+    public void testOpenAfterConsecutiveFailures() {
+        PsicquicServerStats stats = new PsicquicServerStats("http://server/");
+
+        for (int i = 1; i < PsicquicServerStats.FAILURE_THRESHOLD; i++) {
+            assertFalse(stats.recordFailure(1000));
+            assertTrue(stats.allowRequest(1000));
+        }
+
+        assertTrue(stats.recordFailure(1000));
+        assertTrue(stats.isOpen());
+        assertFalse(stats.allowRequest(1000 + PsicquicServerStats.OPEN_DURATION - 1));
+    }
+
+    @Test
+    public void testSuccessResetsFailures() {
+        PsicquicServerStats stats = new PsicquicServerStats("http://server/");
+
+        for (int i = 0; i < 10; i++) {
+            stats.recordFailure(1000);
+            stats.recordSuccess(100);
+        }
+
+        assertFalse(stats.isOpen());
+        assertEquals(20, stats.getNumberOfQueries());
+        assertEquals(10, stats.getNumberOfFailures());
+    }
+
+    @Test
+    public void testSingleTrialAfterOpenDuration() {
+        PsicquicServerStats stats = new PsicquicServerStats("http://server/");
+
+        for (int i = 0; i < PsicquicServerStats.FAILURE_THRESHOLD; i++) {
+            stats.recordFailure(0);
+        }
+
+        long later = PsicquicServerStats.OPEN_DURATION;
+
+        assertTrue(stats.allowRequest(later));
+        // only one trial at a time
+        assertFalse(stats.allowRequest(later));
+
+        // a failed trial opens the circuit again
+        assertTrue(stats.recordFailure(later));
+        assertFalse(stats.allowRequest(later + 1));
+
+        assertTrue(stats.allowRequest(2 * later));
+        stats.recordSuccess(100);
+        assertFalse(stats.isOpen());
+        assertTrue(stats.allowRequest(2 * later));
+    }
+
+    @Test
+    public void testCancelledTrial() {
+        PsicquicServerStats stats = new PsicquicServerStats("http://server/");
+
+        for (int i = 0; i < PsicquicServerStats.FAILURE_THRESHOLD; i++) {
+            stats.recordFailure(0);
+        }
+
+        long later = PsicquicServerStats.OPEN_DURATION;
+
+        assertTrue(stats.allowRequest(later));
+        assertFalse(stats.allowRequest(later));
+
+        // the query was cancelled: the next one is a new trial
+        stats.cancelTrial();
+        assertTrue(stats.isOpen());
+        assertTrue(stats.allowRequest(later));
+    }
+
+    @Test
+    public void testAverageLatency() {
+        PsicquicServerStats stats = new PsicquicServerStats("http://server/");
+
+        stats.recordSuccess(100);
+        assertEquals(100, stats.getAverageLatency(), 0.001);
+
+        stats.recordFailure(0);
+        stats.recordSuccess(200);
+        assertEquals(130, stats.getAverageLatency(), 0.001);
+    }
+
+}
@@ -0,0 +1,162 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.bridges.uniprot;
+
+import it.iit.genomics.cru.structures.model.ChainMapping;
+import it.iit.genomics.cru.structures.model.MoleculeEntry;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Arnaud Ceol
+ */
+public class UniprotEntryStoreTest {
+
+    private String getCacheDir() throws IOException {
+        File dir = Files.createTempDirectory("uniprot").toFile();
+        dir.deleteOnExit();
+        return dir.getAbsolutePath();
+    }
+
+    private MoleculeEntry createEntry(String ac, String gene) {
+        MoleculeEntry entry = new MoleculeEntry(ac);
+        entry.setTaxid("9606");
+        entry.addGeneName(gene);
+        entry.addRefseq("NM_000546.5");
+        entry.addXrefToVarSplice("NM_000546", ac + "-2");
+        entry.addSequence(ac, "MEEPQSDPSV");
+        entry.addSequence(ac + "-2", "MEEPQ");
+        entry.setMainIsoform(ac);
+        entry.addChain("1AIE", new ChainMapping("1AIE", "A", 2, 6), "X-ray");
+        entry.setSequence("MEEPQSDPSV");
+        return entry;
+    }
+
+    /**
+     * Entries are read back by another store.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testPutGet() throws IOException {
+        String cacheDir = getCacheDir();
+
+        UniprotEntryStore store = new UniprotEntryStore(cacheDir, "9606");
+        store.put(createEntry("P04637", "TP53"), Arrays.asList("TP53", "NM_000546", "P04637"));
+        store.put(createEntry("Q00001", "TP53"), Arrays.asList("TP53", "Q00001"));
+
+        UniprotEntryStore other = new UniprotEntryStore(cacheDir, "9606");
+        assertEquals(2, other.size());
+        assertTrue(other.contains("NM_000546"));
+        assertFalse(other.contains("NM_000547"));
+        assertEquals(2, other.get("TP53").size());
+
+        MoleculeEntry entry = other.get("NM_000546").iterator().next();
+        assertEquals("P04637", entry.getUniprotAc());
+        assertEquals("[TP53]", entry.getGeneNames().toString());
+        assertEquals("P04637-2", entry.getVarSpliceAC("NM_000546"));
+        assertEquals("MEEPQ", entry.getSequence("NM_000546").getSequence());
+        assertEquals("EEPQ", entry.getChains("1AIE").iterator().next().getSequence());
+        assertEquals("X-ray", entry.getPdbMethod("1AIE"));
+
+        // other species
+        assertFalse(new UniprotEntryStore(cacheDir, "10090").contains("TP53"));
+    }
+
+    /**
+     * A new version of an entry replaces the previous one, and its old
+     * identifiers.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testReplace() throws IOException {
+        String cacheDir = getCacheDir();
+
+        UniprotEntryStore store = new UniprotEntryStore(cacheDir, "9606");
+        store.put(createEntry("P04637", "TP53"), Arrays.asList("TP53", "P04637"));
+        store.put(createEntry("P04637", "P53"), Arrays.asList("P53", "P04637"));
+
+        for (UniprotEntryStore s : Arrays.asList(store, new UniprotEntryStore(cacheDir, "9606"))) {
+            assertEquals(1, s.size());
+            assertFalse(s.contains("TP53"));
+            Collection<MoleculeEntry> entries = s.get("P04637");
+            assertEquals(1, entries.size());
+            assertEquals("P53", entries.iterator().next().getGeneName());
+        }
+    }
+
+    /**
+     * Entries older than the time to live are ignored, and removed from the
+     * file.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTtl() throws Exception {
+        String cacheDir = getCacheDir();
+
+        UniprotEntryStore store = new UniprotEntryStore(cacheDir, "9606", 50);
+        store.put(createEntry("P04637", "TP53"), Arrays.asList("TP53", "P04637"));
+        assertTrue(store.contains("TP53"));
+
+        Thread.sleep(100);
+
+        assertFalse(store.contains("TP53"));
+        assertTrue(store.get("TP53").isEmpty());
+
+        UniprotEntryStore other = new UniprotEntryStore(cacheDir, "9606", 50);
+        assertEquals(0, other.size());
+        assertEquals(8, other.getFile().length());
+    }
+
+    /**
+     * An interrupted write does not lose the previous entries.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testTruncated() throws IOException {
+        String cacheDir = getCacheDir();
+
+        UniprotEntryStore store = new UniprotEntryStore(cacheDir, "9606");
+        store.put(createEntry("P04637", "TP53"), Arrays.asList("TP53", "P04637"));
+        long length = store.getFile().length();
+        store.put(createEntry("Q00001", "MDM2"), Arrays.asList("MDM2", "Q00001"));
+
+        try (RandomAccessFile raf = new RandomAccessFile(store.getFile(), "rw")) {
+            raf.setLength(raf.length() - 10);
+        }
+
+        UniprotEntryStore other = new UniprotEntryStore(cacheDir, "9606");
+        assertEquals(1, other.size());
+        assertTrue(other.contains("TP53"));
+        assertEquals(length, other.getFile().length());
+
+        other.put(createEntry("Q00001", "MDM2"), Arrays.asList("MDM2", "Q00001"));
+        assertEquals(2, new UniprotEntryStore(cacheDir, "9606").size());
+    }
+
+}
@@ -0,0 +1,188 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.bridges.uniprot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ *
+ * @author Arnaud Ceol
+ */
+public class UniprotFastaStoreTest {
+
+    private static final String SPROT = ">sp|P04637|P53_HUMAN Cellular tumor antigen p53 OS=Homo sapiens OX=9606 GN=TP53 PE=1 SV=4\n"
+            + "MEEPQSDPSVEPPLSQETFSDLWKLLPENNVLSPLPSQAMDDLMLSPDDIEQWFTEDPGP\n"
+            + "DEAPRMPEAAPPVAPAPAAPTPAAPAPAPSWPLSSSVPSQKTYQGSYGFRLGFLHSGTAK\n"
+            + ">sp|P99999|CYC_HUMAN Cytochrome c OS=Homo sapiens OX=9606 GN=CYCS PE=1 SV=2\n"
+            + "MGDVEKGKKIFVQKCAQCHTVEKGGKHKTG";
+
+    private static final String VARSPLIC = ">sp|P04637-2|P53_HUMAN Isoform 2 of Cellular tumor antigen p53 OS=Homo sapiens OX=9606 GN=TP53\r\n"
+            + "MEEPQSDPSVEPPLSQETFSDLWKLLPENNVLSPLPSQAMDDLMLSPDDIEQWFTEDPGP\r\n"
+            + ">sp|P04637-3|P53_HUMAN Isoform 3 of Cellular tumor antigen p53 OS=Homo sapiens OX=9606 GN=TP53\r\n"
+            + "MEEPQSDPSV\r\n";
+
+    private File createStore() throws IOException {
+        File dir = Files.createTempDirectory("fasta").toFile();
+        dir.deleteOnExit();
+
+        File sprot = new File(dir, "uniprot_sprot.fasta");
+        Files.write(sprot.toPath(), SPROT.getBytes(StandardCharsets.US_ASCII));
+        sprot.deleteOnExit();
+
+        File varsplic = new File(dir, "uniprot_sprot_varsplic.fasta");
+        Files.write(varsplic.toPath(), VARSPLIC.getBytes(StandardCharsets.US_ASCII));
+        varsplic.deleteOnExit();
+
+        return dir;
+    }
+
+    /**
+     * Isoforms are read from all the files of the directory.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testGetSequences() throws IOException {
+        UniprotFastaStore store = new UniprotFastaStore(createStore().getAbsolutePath());
+
+        LinkedHashMap<String, String> sequences = store.getSequences("P04637");
+        assertEquals("[P04637, P04637-2, P04637-3]", sequences.keySet().toString());
+        assertEquals(120, sequences.get("P04637").length());
+        assertEquals(60, sequences.get("P04637-2").length());
+        assertEquals("MEEPQSDPSV", sequences.get("P04637-3"));
+
+        assertEquals("MGDVEKGKKIFVQKCAQCHTVEKGGKHKTG", store.getSequences("P99999").get("P99999"));
+
+        assertNull(store.getSequences("Q6FHK3"));
+    }
+
+    /**
+     * A single FASTA file.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testSingleFile() throws IOException {
+        File dir = createStore();
+        UniprotFastaStore store = new UniprotFastaStore(new File(dir, "uniprot_sprot_varsplic.fasta").getAbsolutePath());
+
+        assertEquals("[P04637-2, P04637-3]", store.getSequences("P04637").keySet().toString());
+        assertNull(store.getSequences("P99999"));
+    }
+
+    /**
+     * Entries in random order in two files, isoforms in the second one.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testManyEntries() throws IOException {
+        File dir = Files.createTempDirectory("fasta").toFile();
+        dir.deleteOnExit();
+
+        int numEntries = 5000;
+        ArrayList<Integer> order = new ArrayList<>();
+        for (int i = 0; i < numEntries; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(3));
+
+        StringBuilder sprot = new StringBuilder();
+        StringBuilder varsplic = new StringBuilder();
+        for (int i : order) {
+            sprot.append(">sp|Q").append(10000 + i).append("|TEST Entry\n").append(getSequence(i)).append('\n');
+            if (i % 3 == 0) {
+                varsplic.append(">sp|Q").append(10000 + i).append("-2|TEST Isoform 2\nM\n");
+            }
+        }
+
+        File sprotFile = new File(dir, "a.fasta");
+        Files.write(sprotFile.toPath(), sprot.toString().getBytes(StandardCharsets.US_ASCII));
+        sprotFile.deleteOnExit();
+
+        File varsplicFile = new File(dir, "b.fasta");
+        Files.write(varsplicFile.toPath(), varsplic.toString().getBytes(StandardCharsets.US_ASCII));
+        varsplicFile.deleteOnExit();
+
+        UniprotFastaStore store = new UniprotFastaStore(dir.getAbsolutePath());
+
+        for (int i = 0; i < numEntries; i++) {
+            String ac = "Q" + (10000 + i);
+            LinkedHashMap<String, String> sequences = store.getSequences(ac);
+            if (i % 3 == 0) {
+                assertEquals("[" + ac + ", " + ac + "-2]", sequences.keySet().toString());
+            } else {
+                assertEquals("[" + ac + "]", sequences.keySet().toString());
+            }
+            assertEquals(getSequence(i), sequences.get(ac));
+        }
+
+        assertNull(store.getSequences("Q9"));
+    }
+
+    private static String getSequence(int i) {
+        return "M" + Integer.toString(i, 20).toUpperCase().replace('0', 'W').replace('1', 'Y');
+    }
+
+    /**
+     * The threads that need a sequence while the index is built wait for it.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentFirstUse() throws Exception {
+        final UniprotFastaStore store = new UniprotFastaStore(createStore().getAbsolutePath());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        ArrayList<Future<LinkedHashMap<String, String>>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            futures.add(executor.submit(new Callable<LinkedHashMap<String, String>>() {
+                @Override
+                public LinkedHashMap<String, String> call() {
+                    return store.getSequences("P04637");
+                }
+            }));
+        }
+
+        for (Future<LinkedHashMap<String, String>> future : futures) {
+            assertEquals("[P04637, P04637-2, P04637-3]", future.get().keySet().toString());
+        }
+
+        executor.shutdown();
+    }
+
+    @Test
+    public void testGetAccession() {
+        assertEquals("P04637-2", UniprotFastaStore.getAccession("sp|P04637-2|P53_HUMAN Isoform 2"));
+        assertEquals("P04637", UniprotFastaStore.getAccession("P04637 some description"));
+    }
+
+}
@@ -0,0 +1,402 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.bridges.uniprot;
+
+import it.iit.genomics.cru.structures.model.ChainMapping;
+import it.iit.genomics.cru.structures.model.ModifiedResidue;
+import it.iit.genomics.cru.structures.model.MoleculeEntry;
+import it.iit.genomics.cru.structures.model.position.UniprotPosition;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLStreamException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ *
+ * @author Arnaud Ceol
+ */
+public class UniprotXmlParserTest {
+
+    private static final String ENTRIES = "/uniprot/entries.xml";
+
+    private byte[] getFixture() throws IOException {
+        try (InputStream is = getClass().getResourceAsStream(ENTRIES)) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                os.write(buffer, 0, n);
+            }
+            return os.toByteArray();
+        }
+    }
+
+    private List<MoleculeEntry> parse(byte[] xml) throws XMLStreamException {
+        ArrayList<MoleculeEntry> entries = new ArrayList<>();
+        try (UniprotXmlParser parser = new UniprotXmlParser(new ByteArrayInputStream(xml))) {
+            MoleculeEntry entry;
+            while ((entry = parser.next()) != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * The streaming parser returns the same entries as the DOM parser it
+     * replaced.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testParity() throws Exception {
+        byte[] xml = getFixture();
+
+        List<MoleculeEntry> expected = parseDom(xml);
+        List<MoleculeEntry> entries = parse(xml);
+
+        assertEquals(3, expected.size());
+        assertEquals(expected.size(), entries.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(describe(expected.get(i)), describe(entries.get(i)));
+        }
+    }
+
+    /**
+     * Check a few fields explicitly, so that the parity test cannot pass on
+     * two empty entries.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testFields() throws Exception {
+        List<MoleculeEntry> entries = parse(getFixture());
+
+        MoleculeEntry p53 = entries.get(0);
+        assertEquals("P04637", p53.getUniprotAc());
+        assertEquals("Swiss-Prot", p53.getDataset());
+        assertEquals("9606", p53.getTaxid());
+        assertEquals("Human", p53.getOrganism());
+        assertEquals("[TP53, P53]", p53.getGeneNames().toString());
+        assertEquals("[NM_000546.5, NM_001126112.2, NM_001276695.1]", p53.getRefseqs().toString());
+        assertEquals("P04637-2", p53.getVarSpliceAC("NM_001126112"));
+        assertEquals("P04637", p53.getVarSpliceAC("NM_001276695"));
+        assertEquals("P04637-2", p53.getVarSpliceAC("ENST00000420246"));
+        assertEquals("[1A1U, 1AIE, 3XYZ]", new TreeSet<>(p53.getPdbs()).toString());
+        assertEquals(3, p53.getChains("1AIE").size());
+        assertEquals(1, p53.getChains("3XYZ").size());
+        assertEquals("[Li-Fraumeni syndrome, Esophageal cancer]", p53.getDiseases().toString());
+        assertEquals(60, p53.getSequence(null).getSequence().length());
+
+        MoleculeEntry trembl = entries.get(1);
+        assertEquals("9606", trembl.getTaxid());
+        assertEquals("Homo sapiens", trembl.getOrganism());
+
+        assertEquals("MGDVEKGKKIFVQKCAQCHTVEKGGKHKTG", entries.get(2).getSequence(null).getSequence());
+    }
+
+    /**
+     * Entries read before a parsing error are returned.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testTruncated() throws Exception {
+        String xml = new String(getFixture(), "UTF-8");
+        byte[] truncated = xml.substring(0, xml.indexOf("<accession>P99999")).getBytes("UTF-8");
+
+        try (UniprotXmlParser parser = new UniprotXmlParser(new ByteArrayInputStream(truncated))) {
+            assertEquals("P04637", parser.next().getUniprotAc());
+            assertEquals("Q6FHK3", parser.next().getUniprotAc());
+            parser.next();
+            fail("The third entry is truncated");
+        } catch (XMLStreamException e) {
+            // expected
+        }
+    }
+
+    /**
+     * No entry in the result.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testEmpty() throws Exception {
+        byte[] xml = "<?xml version=\"1.0\"?><uniprot xmlns=\"http://uniprot.org/uniprot\"/>".getBytes("UTF-8");
+        try (UniprotXmlParser parser = new UniprotXmlParser(new ByteArrayInputStream(xml))) {
+            assertNull(parser.next());
+        }
+    }
+
+    private String describe(MoleculeEntry entry) {
+        StringBuilder description = new StringBuilder();
+        description.append(entry.getUniprotAc()).append("\n");
+        description.append(entry.getDataset()).append("\n");
+        description.append(entry.getTaxid()).append("\n");
+        description.append(entry.getOrganism()).append("\n");
+        description.append(entry.getGeneNames()).append("\n");
+        description.append(entry.getRefseqs()).append("\n");
+        description.append(entry.getEnsemblGenes()).append("\n");
+        description.append(entry.getDiseases()).append("\n");
+
+        for (String pdb : new TreeSet<>(entry.getPdbs())) {
+            description.append(pdb).append(" ").append(entry.getPdbMethod(pdb));
+            for (ChainMapping chain : entry.getChains(pdb)) {
+                description.append(" ").append(chain.getChain()).append("=").append(chain.getStart())
+                        .append("-").append(chain.getEnd()).append(":").append(chain.getSequence());
+            }
+            description.append("\n");
+        }
+
+        for (ModifiedResidue modification : entry.getModifications()) {
+            description.append(modification.getDescription()).append(" ").append(modification.getPositions()).append("\n");
+        }
+
+        for (String xref : entry.getRefseqs()) {
+            description.append(xref).append(" ").append(entry.getVarSpliceAC(xref)).append(" ")
+                    .append(entry.getVarSpliceAC(xref.split("\\.")[0])).append("\n");
+        }
+
+        for (String xref : entry.getEnsemblGenes()) {
+            description.append(xref).append(" ").append(entry.getVarSpliceAC(xref)).append("\n");
+        }
+
+        description.append(entry.getSequence(null));
+
+        return description.toString();
+    }
+
+    /**
+     * The DOM parser formerly used by UniprotkbUtils, kept as reference.
+     */
+    private List<MoleculeEntry> parseDom(byte[] xml) throws Exception {
+        ArrayList<MoleculeEntry> uniprotEntries = new ArrayList<>();
+
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(xml));
+        doc.getDocumentElement().normalize();
+
+        NodeList entryList = doc.getElementsByTagName("entry");
+
+        for (int i = 0; i < entryList.getLength(); i++) {
+            Element entryElement = (Element) entryList.item(i);
+
+            String ac = entryElement.getElementsByTagName("accession")
+                    .item(0).getFirstChild().getNodeValue();
+
+            MoleculeEntry uniprotEntry = new MoleculeEntry(ac);
+            uniprotEntry.setDataset(entryElement.getAttribute("dataset"));
+
+            Element organism = (Element) entryElement.getElementsByTagName(
+                    "organism").item(0);
+
+            String organismCommonName = null;
+            String organismScientificName = null;
+            String organismOtherName = null;
+
+            NodeList organismNames = organism.getElementsByTagName("name");
+            for (int j = 0; j < organismNames.getLength(); j++) {
+                Element reference = (Element) organismNames.item(j);
+                switch (reference.getAttribute("type")) {
+                    case "scientific":
+                        organismScientificName = reference.getTextContent();
+                        break;
+                    case "common":
+                        organismCommonName = reference.getTextContent();
+                        break;
+                    default:
+                        organismOtherName = reference.getTextContent();
+                        break;
+                }
+            }
+
+            if (null != organismCommonName) {
+                uniprotEntry.setOrganism(organismCommonName);
+            } else if (null != organismScientificName) {
+                uniprotEntry.setOrganism(organismScientificName);
+            } else if (null != organismOtherName) {
+                uniprotEntry.setOrganism(organismOtherName);
+            }
+
+            NodeList organismReferences = organism.getElementsByTagName("dbReference");
+            for (int j = 0; j < organismReferences.getLength(); j++) {
+                Element reference = (Element) organismReferences.item(j);
+                if (reference.hasAttribute("type")
+                        && "NCBI Taxonomy".equals(reference.getAttribute("type"))) {
+                    uniprotEntry.setTaxid(reference.getAttribute("id"));
+                }
+            }
+
+            NodeList geneNames = entryElement.getElementsByTagName("gene");
+            for (int j = 0; j < geneNames.getLength(); j++) {
+                NodeList nameList = ((Element) geneNames.item(j)).getElementsByTagName("name");
+                for (int k = 0; k < nameList.getLength(); k++) {
+                    uniprotEntry.addGeneName(nameList.item(k).getFirstChild().getNodeValue());
+                }
+            }
+
+            HashMap<String, ModifiedResidue> modifiedResidues = new HashMap<>();
+
+            NodeList features = entryElement.getElementsByTagName("feature");
+            for (int j = 0; j < features.getLength(); j++) {
+                Element feature = (Element) features.item(j);
+
+                if (false == entryElement.equals(feature.getParentNode())) {
+                    continue;
+                }
+
+                if (feature.hasAttribute("type")
+                        && "modified residue".equals(feature.getAttribute("type"))) {
+                    String description = feature.getAttribute("description").split(";")[0];
+
+                    if (false == modifiedResidues.containsKey(description)) {
+                        modifiedResidues.put(description, new ModifiedResidue(description));
+                    }
+
+                    NodeList locations = feature.getElementsByTagName("location");
+                    for (int k = 0; k < locations.getLength(); k++) {
+                        NodeList positions = ((Element) locations.item(k)).getElementsByTagName("position");
+                        for (int l = 0; l < positions.getLength(); l++) {
+                            Element position = (Element) positions.item(l);
+                            modifiedResidues.get(description).addPosition(new UniprotPosition(Integer.parseInt(position.getAttribute("position"))));
+                        }
+                    }
+                }
+            }
+
+            uniprotEntry.getModifications().addAll(modifiedResidues.values());
+
+            NodeList dbReferences = entryElement.getElementsByTagName("dbReference");
+            for (int j = 0; j < dbReferences.getLength(); j++) {
+                Element dbReference = (Element) dbReferences.item(j);
+
+                if (false == entryElement.equals(dbReference.getParentNode())) {
+                    continue;
+                }
+
+                NodeList molecules = dbReference.getElementsByTagName("molecule");
+                NodeList properties = dbReference.getElementsByTagName("property");
+
+                if ("Ensembl".equals(dbReference.getAttribute("type"))) {
+                    String id = dbReference.getAttribute("id");
+
+                    for (int m = 0; m < molecules.getLength(); m++) {
+                        uniprotEntry.addXrefToVarSplice(id, ((Element) molecules.item(m)).getAttribute("id"));
+                    }
+
+                    uniprotEntry.addEnsemblGene(id);
+
+                    for (int k = 0; k < properties.getLength(); k++) {
+                        Element property = (Element) properties.item(k);
+                        if ("gene ID".equals(property.getAttribute("type"))) {
+                            uniprotEntry.addEnsemblGene(property.getAttribute("value"));
+                        }
+                    }
+                }
+
+                if ("RefSeq".equals(dbReference.getAttribute("type"))) {
+                    for (int k = 0; k < properties.getLength(); k++) {
+                        Element property = (Element) properties.item(k);
+                        if ("nucleotide sequence ID".equals(property.getAttribute("type"))) {
+                            String id = property.getAttribute("value");
+                            if (molecules.getLength() > 0) {
+                                for (int m = 0; m < molecules.getLength(); m++) {
+                                    String molecule = ((Element) molecules.item(m)).getAttribute("id");
+                                    uniprotEntry.addXrefToVarSplice(id, molecule);
+                                    uniprotEntry.addXrefToVarSplice(id.split("\\.")[0], molecule);
+                                }
+                            } else {
+                                uniprotEntry.addXrefToVarSplice(id, ac);
+                                uniprotEntry.addXrefToVarSplice(id.split("\\.")[0], ac);
+                            }
+                            uniprotEntry.addRefseq(id);
+                        }
+                    }
+                }
+
+                if ("PDB".equals(dbReference.getAttribute("type"))) {
+                    String method = null;
+                    String chains = null;
+
+                    for (int k = 0; k < properties.getLength(); k++) {
+                        Element property = (Element) properties.item(k);
+                        if ("method".equals(property.getAttribute("type"))) {
+                            method = property.getAttribute("value");
+                        } else if ("chains".equals(property.getAttribute("type"))) {
+                            chains = property.getAttribute("value");
+                        }
+                    }
+
+                    if ("Model".equals(method) || chains == null) {
+                        continue;
+                    }
+
+                    String pdb = dbReference.getAttribute("id");
+                    uniprotEntry.addPDB(pdb, method);
+
+                    for (String chainElement : chains.split(",")) {
+                        try {
+                            String chainNames = chainElement.split("=")[0];
+                            int start = Integer.parseInt(chainElement.split("=")[1].trim().split("-")[0]);
+                            int end = Integer.parseInt(chainElement.split("=")[1].trim().split("-")[1].replace(".", ""));
+                            for (String chainName : chainNames.split("/")) {
+                                uniprotEntry.addChain(pdb, new ChainMapping(pdb, chainName.trim(), start, end), method);
+                            }
+                        } catch (ArrayIndexOutOfBoundsException aiobe) {
+                            // skip
+                        }
+                    }
+                }
+            }
+
+            NodeList sequenceElements = entryElement.getElementsByTagName("sequence");
+            for (int j = 0; j < sequenceElements.getLength(); j++) {
+                Element sequenceElement = (Element) sequenceElements.item(j);
+                if (false == sequenceElement.getParentNode().equals(entryElement)) {
+                    continue;
+                }
+                uniprotEntry.setSequence(sequenceElement.getFirstChild().getNodeValue().replaceAll("\n", ""));
+            }
+
+            NodeList diseases = entryElement.getElementsByTagName("disease");
+            for (int j = 0; j < diseases.getLength(); j++) {
+                NodeList nameList = ((Element) diseases.item(j)).getElementsByTagName("name");
+                for (int k = 0; k < nameList.getLength(); k++) {
+                    uniprotEntry.addDisease(nameList.item(k).getFirstChild().getNodeValue());
+                }
+            }
+
+            uniprotEntries.add(uniprotEntry);
+        }
+
+        return uniprotEntries;
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.business;
+
+import com.google.common.collect.HashMultimap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.biojava.nbio.structure.Atom;
+import org.biojava.nbio.structure.Chain;
+import org.biojava.nbio.structure.Group;
+import org.biojava.nbio.structure.ResidueNumber;
+import org.biojava.nbio.structure.Structure;
+import org.biojava.nbio.structure.io.FileParsingParameters;
+import org.biojava.nbio.structure.io.PDBFileParser;
+import org.biojava.nbio.structure.io.mmcif.ChemCompGroupFactory;
+import org.biojava.nbio.structure.io.mmcif.ReducedChemCompProvider;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ *
+ * @author Arnaud Ceol
+ */
+public class AccessibilityTest {
+
+    /**
+     * Two chains in contact (A, B) and a ligand bound to chain A, see
+     * FixtureGenerator in mi-benchmarks.
+     */
+    private static final String DIMER_PDB = "/pdb/dimer.pdb";
+
+    private Structure readStructure(String resource) throws IOException {
+        ChemCompGroupFactory.setChemCompProvider(new ReducedChemCompProvider());
+
+        FileParsingParameters params = new FileParsingParameters();
+        params.setAlignSeqRes(false);
+
+        PDBFileParser parser = new PDBFileParser();
+        parser.setFileParsingParameters(params);
+
+        try (InputStream is = getClass().getResourceAsStream(resource)) {
+            assertNotNull(resource, is);
+            return parser.parsePDBFile(is);
+        }
+    }
+
+    private Chain getChain(Structure structure, String chainId) {
+        for (Chain chain : structure.getChains()) {
+            if (chainId.equals(chain.getChainID())) {
+                return chain;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Add a copy of a chain, translated along x, e.g. to put a third chain on
+     * the other side of chain A.
+     */
+    private void addTranslatedChain(Structure structure, String chainId, String newChainId, double dx) {
+        Chain chain = (Chain) getChain(structure, chainId).clone();
+        chain.setId(newChainId);
+        chain.setName(newChainId);
+
+        for (Group group : chain.getAtomGroups()) {
+            ResidueNumber number = group.getResidueNumber();
+            group.setResidueNumber(new ResidueNumber(newChainId, number.getSeqNum(), number.getInsCode()));
+
+            for (Atom atom : group.getAtoms()) {
+                atom.setX(atom.getX() + dx);
+            }
+        }
+
+        structure.addChain(chain);
+    }
+
+    /**
+     * Both methods must find the same residues, in contact with the same
+     * chains.
+     */
+    private void assertSameContactChains(Structure structure, List<String[]> chainPairs) throws Exception {
+        HashMultimap<String, String> expected = Accessibility.getFasterContactChains(structure, chainPairs);
+        assertFalse(expected.isEmpty());
+
+        HashMultimap<String, String> result = Accessibility.getInterfaceContactChains(structure, chainPairs,
+                new HashMap<String, Map<String, Double>>());
+
+        assertEquals(expected.keySet(), result.keySet());
+        assertEquals(expected, result);
+    }
+
+    /**
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInterfaceContactChainsDimer() throws Exception {
+        Structure structure = readStructure(DIMER_PDB);
+
+        List<String[]> chainPairs = new ArrayList<>();
+        chainPairs.add(new String[]{"A", "B"});
+
+        assertSameContactChains(structure, chainPairs);
+    }
+
+    /**
+     * Chain A between B and a copy of B (X): A is in contact with both, B and
+     * X are not in contact.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testInterfaceContactChainsMultiChain() throws Exception {
+        Structure structure = readStructure(DIMER_PDB);
+
+        addTranslatedChain(structure, "B", "X", -52);
+
+        List<String[]> chainPairs = Arrays.asList(new String[]{"A", "B"},
+                new String[]{"A", "X"}, new String[]{"B", "X"});
+
+        assertSameContactChains(structure, chainPairs);
+
+        HashMultimap<String, String> result = Accessibility.getInterfaceContactChains(structure, chainPairs,
+                new HashMap<String, Map<String, Double>>());
+
+        boolean contactAX = false;
+        for (String residue : result.keySet()) {
+            if (residue.endsWith(":A") && result.get(residue).contains("X")) {
+                contactAX = true;
+            }
+            assertFalse(residue, residue.endsWith(":B") && result.get(residue).contains("X"));
+        }
+        assertTrue(contactAX);
+    }
+
+}
@@ -0,0 +1,95 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.business;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ *
+ * @author Arnaud Ceol
+ */
+public class ChainAlignmentCacheTest {
+
+    private static ChainAlignment createAlignment(String uniprotSequence, String atomSequence) {
+        int[] positions = new int[uniprotSequence.length()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = i + 10;
+        }
+        return new ChainAlignment(uniprotSequence, atomSequence, positions);
+    }
+
+    @Test
+    public void testGetPdbPosition() {
+        ChainAlignment alignment = createAlignment("MKV", "MKV");
+
+        assertEquals(10, alignment.getPdbPosition(1));
+        assertEquals(12, alignment.getPdbPosition(3));
+        assertEquals(ChainAlignment.NOT_ALIGNED, alignment.getPdbPosition(0));
+        assertEquals(ChainAlignment.NOT_ALIGNED, alignment.getPdbPosition(4));
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        ChainAlignmentCache cache = new ChainAlignmentCache(ChainAlignmentCache.DEFAULT_MAX_MEMORY_SIZE);
+
+        String key = ChainAlignmentCache.getKey("1abc", "A", "MKV");
+
+        assertNull(cache.get(key, "MKV", "MKV"));
+
+        ChainAlignment alignment = createAlignment("MKV", "MKV");
+        cache.put(key, alignment);
+
+        assertSame(alignment, cache.get(key, "MKV", "MKV"));
+
+        // Same key, different chain content (e.g. a user structure replaced)
+        assertNull(cache.get(key, "MKV", "MKL"));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testEviction() {
+        ChainAlignment alignment = createAlignment("MKVLAAGIVG", "MKVLAAGIVG");
+
+        // Room for two alignments only
+        ChainAlignmentCache cache = new ChainAlignmentCache(2 * alignment.getMemorySize());
+
+        String key1 = ChainAlignmentCache.getKey("1abc", "A", "MKVLAAGIVG");
+        String key2 = ChainAlignmentCache.getKey("1abc", "B", "MKVLAAGIVG");
+        String key3 = ChainAlignmentCache.getKey("1abc", "C", "MKVLAAGIVG");
+
+        cache.put(key1, alignment);
+        cache.put(key2, createAlignment("MKVLAAGIVG", "MKVLAAGIVG"));
+
+        // key1 becomes the most recently used
+        assertNotNull(cache.get(key1, "MKVLAAGIVG", "MKVLAAGIVG"));
+
+        cache.put(key3, createAlignment("MKVLAAGIVG", "MKVLAAGIVG"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(key1, "MKVLAAGIVG", "MKVLAAGIVG"));
+        assertNull(cache.get(key2, "MKVLAAGIVG", "MKVLAAGIVG"));
+        assertNotNull(cache.get(key3, "MKVLAAGIVG", "MKVLAAGIVG"));
+        assertEquals(2 * alignment.getMemorySize(), cache.getMemorySize());
+    }
+
+}
@@ -32,7 +32,7 @@ public class MockStructureSource extends StructureSource {
     }
 
     @Override
-    public Structure getStructure(String structureID) throws StructureException {
+    protected Structure readStructure(String structureID) throws StructureException {
  
         String outputFileName = getFileName(structureID);
 
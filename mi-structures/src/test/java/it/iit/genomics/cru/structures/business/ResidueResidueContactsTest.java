@@ -0,0 +1,116 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.business;
+
+import it.iit.genomics.cru.structures.model.Contact;
+import java.util.ArrayList;
+import java.util.Random;
+import org.biojava.nbio.structure.AminoAcidImpl;
+import org.biojava.nbio.structure.AtomImpl;
+import org.biojava.nbio.structure.ChainImpl;
+import org.biojava.nbio.structure.Element;
+import org.biojava.nbio.structure.ResidueNumber;
+import org.biojava.nbio.structure.Structure;
+import org.biojava.nbio.structure.StructureImpl;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Test;
+
+/**
+ *
+ * @author Arnaud Ceol
+ */
+public class ResidueResidueContactsTest {
+
+    private static final char[] AMINO_TYPES = {'A', 'C', 'G', 'K', 'L', 'S'};
+
+    private static final Element[] ELEMENTS = {Element.C, Element.N, Element.O, Element.S, Element.H};
+
+    private Structure getRandomStructure(long seed, int numChains, int numResidues) {
+        Random random = new Random(seed);
+
+        Structure structure = new StructureImpl();
+
+        for (int c = 0; c < numChains; c++) {
+            String chainId = String.valueOf((char) ('A' + c));
+            ChainImpl chain = new ChainImpl();
+            chain.setId(chainId);
+            chain.setName(chainId);
+
+            for (int r = 0; r < numResidues; r++) {
+                AminoAcidImpl group = new AminoAcidImpl();
+                group.setAminoType(AMINO_TYPES[random.nextInt(AMINO_TYPES.length)]);
+                group.setResidueNumber(new ResidueNumber(chainId, r + 1, null));
+
+                for (int a = 0; a < 6; a++) {
+                    AtomImpl atom = new AtomImpl();
+                    atom.setName("A" + a);
+                    atom.setElement(ELEMENTS[random.nextInt(ELEMENTS.length)]);
+                    atom.setX(random.nextDouble() * 30);
+                    atom.setY(random.nextDouble() * 30);
+                    atom.setZ(random.nextDouble() * 30);
+                    group.addAtom(atom);
+                }
+                chain.addGroup(group);
+            }
+            structure.addChain(chain);
+        }
+
+        return structure;
+    }
+
+    private void assertSameContacts(ArrayList<Contact> expected, ArrayList<Contact> result) {
+        assertEquals(expected, result);
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getDistance(), result.get(i).getDistance(), 0);
+        }
+    }
+
+    /**
+     * The grid gives the same contacts as the comparison of all atoms.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGetContacts() throws Exception {
+        ResidueResidueContacts instance = new ResidueResidueContacts(null);
+
+        for (long seed = 0; seed < 5; seed++) {
+            Structure structure = getRandomStructure(seed, 3, 60);
+
+            ArrayList<Contact> expected = new ArrayList<>(instance.getContactsAllAtomPairs(structure));
+            assertFalse(expected.isEmpty());
+
+            assertSameContacts(expected, new ArrayList<>(instance.getContacts(structure)));
+        }
+    }
+
+    /**
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testGetContactsParallel() throws Exception {
+        ResidueResidueContacts instance = new ResidueResidueContacts(null, 4);
+
+        Structure structure = getRandomStructure(42, 4, 40);
+
+        assertSameContacts(new ArrayList<>(instance.getContactsAllAtomPairs(structure)),
+                new ArrayList<>(instance.getContacts(structure)));
+    }
+
+}
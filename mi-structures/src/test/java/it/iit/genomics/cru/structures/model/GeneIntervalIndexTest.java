@@ -0,0 +1,144 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Arnaud Ceol
+ */
+public class GeneIntervalIndexTest {
+
+    @Test
+    public void testOverlapping() {
+        int[] starts = {500, 100, 300, 0, 1000};
+        int[] ends = {600, 200, 2000, 50, 1100};
+        List<String> genes = Arrays.asList("E", "B", "C", "A", "F");
+
+        GeneIntervalIndex<String> index = new GeneIntervalIndex<>(starts, ends, genes);
+
+        Assert.assertEquals(5, index.size());
+        Assert.assertEquals(Arrays.asList("B", "C", "E"), index.getOverlapping(150, 550));
+        Assert.assertEquals(Arrays.asList("C", "F"), index.getOverlapping(1050, 1060));
+        // end exclusive
+        Assert.assertEquals(Arrays.asList("A"), index.getOverlapping(0, 100));
+        Assert.assertTrue(index.getOverlapping(50, 100).isEmpty());
+        Assert.assertTrue(index.getOverlapping(2000, 3000).isEmpty());
+        // position
+        Assert.assertEquals(Arrays.asList("B"), index.getOverlapping(100, 100));
+        Assert.assertEquals(Arrays.asList("C", "E"), index.getOverlapping(500, 500));
+        Assert.assertTrue(index.getOverlapping(50, 50).isEmpty());
+    }
+
+    @Test
+    public void testSameAsLinearScan() {
+        Random random = new Random(42);
+
+        int size = 2000;
+        int[] starts = new int[size];
+        int[] ends = new int[size];
+        List<Integer> genes = new ArrayList<>();
+
+        for (int i = 0; i < size; i++) {
+            starts[i] = random.nextInt(1000000);
+            ends[i] = starts[i] + 1 + random.nextInt(random.nextBoolean() ? 1000 : 50000);
+            genes.add(i);
+        }
+
+        GeneIntervalIndex<Integer> index = new GeneIntervalIndex<>(starts, ends, genes);
+
+        for (int q = 0; q < 500; q++) {
+            int min = random.nextInt(1000000);
+            int max = min + 1 + random.nextInt(10000);
+
+            ArrayList<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                if (starts[i] < max && min < ends[i]) {
+                    expected.add(i);
+                }
+            }
+
+            List<Integer> found = new ArrayList<>(index.getOverlapping(min, max));
+            Collections.sort(found);
+
+            Assert.assertEquals(expected, found);
+        }
+    }
+
+    /**
+     * A long gene (e.g. DMD) over many small ones, for indexes of all sizes,
+     * including the ones that are not a complete tree.
+     */
+    @Test
+    public void testLongGene() {
+        Random random = new Random(7);
+
+        for (int size = 0; size < 300; size++) {
+            int[] starts = new int[size];
+            int[] ends = new int[size];
+            List<Integer> genes = new ArrayList<>();
+
+            for (int i = 0; i < size; i++) {
+                if (i == size / 3) {
+                    starts[i] = 1000;
+                    ends[i] = 2000000;
+                } else {
+                    starts[i] = random.nextInt(3000000);
+                    ends[i] = starts[i] + 1 + random.nextInt(5000);
+                }
+                genes.add(i);
+            }
+
+            GeneIntervalIndex<Integer> index = new GeneIntervalIndex<>(starts, ends, genes);
+
+            for (int q = 0; q < 50; q++) {
+                int min = random.nextInt(3000000);
+                int max = min + random.nextInt(20000);
+
+                ArrayList<Integer> expected = new ArrayList<>();
+                for (int i = 0; i < size; i++) {
+                    if (starts[i] < Math.max(max, min + 1) && min < ends[i]) {
+                        expected.add(i);
+                    }
+                }
+
+                List<Integer> found = index.getOverlapping(min, max);
+
+                // sorted by start
+                for (int i = 1; i < found.size(); i++) {
+                    Assert.assertTrue(starts[found.get(i - 1)] <= starts[found.get(i)]);
+                }
+
+                found = new ArrayList<>(found);
+                Collections.sort(found);
+
+                Assert.assertEquals(expected, found);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSizeMismatch() {
+        new GeneIntervalIndex<>(new int[]{1}, new int[]{2, 3}, Arrays.asList("A"));
+    }
+
+}
@@ -0,0 +1,95 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.model;
+
+import it.iit.genomics.cru.structures.model.position.TranscriptPosition;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Arnaud Ceol
+ */
+public class MIGeneTest {
+
+    /**
+     * Gene with non overlapping exons, numbered along the transcript
+     */
+    private static MIGene createGene(Random random, boolean forward) {
+        int numExons = 1 + random.nextInt(10);
+        int[] mins = new int[numExons];
+        int[] maxs = new int[numExons];
+
+        int cursor = 1000;
+        for (int i = 0; i < numExons; i++) {
+            mins[i] = cursor + random.nextInt(500);
+            maxs[i] = mins[i] + random.nextInt(300);
+            cursor = maxs[i] + 1;
+        }
+
+        MIGene gene = forward
+                ? new MIGene("G", "G", "1", mins[0], maxs[numExons - 1], true)
+                : new MIGene("G", "G", "1", maxs[numExons - 1], mins[0], false);
+
+        int proteinStart = 1;
+        for (int e = 0; e < numExons; e++) {
+            int i = forward ? e : numExons - 1 - e;
+            MIExon exon = forward ? new MIExon(mins[i], maxs[i]) : new MIExon(maxs[i], mins[i]);
+            exon.setProteinStart(proteinStart);
+            exon.setNumberOfOverlappingBases(random.nextInt(3));
+            proteinStart += (maxs[i] - mins[i] + 1) / 3;
+            exon.setProteinEnd(proteinStart);
+            gene.getExons().add(exon);
+        }
+
+        return gene;
+    }
+
+    @Test
+    public void testTranscriptAAPositions() {
+        Random random = new Random(3);
+
+        for (int g = 0; g < 50; g++) {
+            MIGene gene = createGene(random, g % 2 == 0);
+
+            int[] positions = new int[gene.getMax() - gene.getMin() + 21];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = gene.getMin() - 10 + i;
+            }
+
+            int[] transcriptPositions = gene.getTranscriptAAPositions(positions);
+
+            for (int i = 0; i < positions.length; i++) {
+                TranscriptPosition expected = gene.getTranscriptAAPosition(positions[i]);
+                if (expected == null) {
+                    Assert.assertEquals(MIGene.NOT_IN_EXON, transcriptPositions[i]);
+                } else {
+                    Assert.assertEquals(expected.getPosition(), transcriptPositions[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUniprotAAPositionsWithoutAlignment() {
+        MIGene gene = createGene(new Random(5), true);
+
+        for (int position : gene.getUniprotAAPositions(new int[]{gene.getMin(), gene.getMax()})) {
+            Assert.assertEquals(TranscriptAlignment.NOT_ALIGNED, position);
+        }
+    }
+
+}
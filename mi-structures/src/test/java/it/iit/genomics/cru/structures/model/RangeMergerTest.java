@@ -0,0 +1,125 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Arnaud Ceol
+ */
+public class RangeMergerTest {
+
+    @Test
+    public void testMerge() {
+        RangeMerger merger = new RangeMerger();
+        merger.addRange("1", new Range(10, 20));
+        merger.addRange("1", new Range(30, 40));
+        // bridges both ranges
+        merger.addRange("1", new Range(20, 30));
+        // adjacent, not overlapping
+        merger.addRange("1", new Range(41, 45));
+        merger.addRange("2", new Range(5, 1));
+
+        Assert.assertEquals(Arrays.asList(new Range(10, 40), new Range(41, 45)),
+                new ArrayList<>(merger.getRanges("1")));
+        Assert.assertEquals(Arrays.asList(new Range(1, 5)), new ArrayList<>(merger.getRanges("2")));
+        Assert.assertTrue(merger.getRanges("3").isEmpty());
+    }
+
+    @Test
+    public void testRangesWithin() {
+        RangeMerger merger = new RangeMerger();
+        merger.addRange("1", new Range(10, 20));
+        merger.addRange("1", new Range(30, 40));
+        merger.addRange("1", new Range(50, 60));
+
+        Assert.assertEquals(Arrays.asList(new Range(30, 40)),
+                new ArrayList<>(merger.getRangesWithin("1", 25, 59)));
+        Assert.assertEquals(Arrays.asList(new Range(10, 20), new Range(30, 40), new Range(50, 60)),
+                new ArrayList<>(merger.getRangesWithin("1", 10, 60)));
+        Assert.assertTrue(merger.getRangesWithin("1", 11, 29).isEmpty());
+        Assert.assertTrue(merger.getRangesWithin("2", 0, 100).isEmpty());
+    }
+
+    @Test
+    public void testSameAsPositions() {
+        Random random = new Random(7);
+
+        RangeMerger merger = new RangeMerger();
+        RangeMerger other = new RangeMerger();
+        BitSet positions = new BitSet();
+
+        for (int i = 0; i < 1000; i++) {
+            int min = random.nextInt(100000);
+            int max = min + random.nextInt(200);
+            (i % 2 == 0 ? merger : other).addRange("1", new Range(min, max));
+            // two positions per base, so that adjacent ranges stay apart
+            positions.set(2 * min, 2 * max + 1);
+        }
+
+        merger.merge(other);
+
+        List<Range> expected = new ArrayList<>();
+        for (int i = positions.nextSetBit(0); i >= 0; i = positions.nextSetBit(positions.nextClearBit(i))) {
+            expected.add(new Range(i / 2, (positions.nextClearBit(i) - 1) / 2));
+        }
+
+        Assert.assertEquals(expected, new ArrayList<>(merger.getRanges("1")));
+    }
+
+    @Test
+    public void testMergeBothWays() throws Exception {
+        final RangeMerger merger1 = new RangeMerger();
+        final RangeMerger merger2 = new RangeMerger();
+        merger1.addRange("1", new Range(10, 20));
+        merger2.addRange("1", new Range(15, 30));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        ArrayList<Future<?>> futures = new ArrayList<>();
+        for (final RangeMerger[] pair : new RangeMerger[][]{{merger1, merger2}, {merger2, merger1}}) {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        pair[0].merge(pair[1]);
+                    }
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            // would time out on a deadlock
+            future.get(30, TimeUnit.SECONDS);
+        }
+
+        executor.shutdown();
+
+        Assert.assertEquals(Arrays.asList(new Range(10, 30)), new ArrayList<>(merger1.getRanges("1")));
+        Assert.assertEquals(Arrays.asList(new Range(10, 30)), new ArrayList<>(merger2.getRanges("1")));
+    }
+
+}
@@ -0,0 +1,168 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.model;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Arnaud Ceol
+ */
+public class ResidueSetTest {
+
+    @Test
+    public void testResidueKey() {
+        long key = ResidueKey.pack(3, -12, 'A');
+        Assert.assertEquals(3, ResidueKey.getChainIndex(key));
+        Assert.assertEquals(-12, ResidueKey.getResidueNumber(key));
+        Assert.assertEquals('A', ResidueKey.getInsertionCode(key));
+    }
+
+    @Test
+    public void testParseAndFormat() {
+        ChainTable chains = new ChainTable();
+
+        for (String residue : Arrays.asList("125:A", "52A:B", "-3:A", "0:CA", "7:B")) {
+            Assert.assertEquals(residue, chains.format(chains.parse(residue)));
+        }
+
+        Assert.assertEquals(ChainTable.NOT_FOUND, chains.find("12:Z"));
+        Assert.assertEquals(ChainTable.UNKNOWN_CHAIN, chains.indexOf("Z"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotAResidue() {
+        new ChainTable().parse("A12:A");
+    }
+
+    @Test
+    public void testContains() {
+        ChainTable chains = new ChainTable();
+        ResidueSet residues = new ResidueSet(chains);
+
+        residues.add("125:A");
+        residues.add("52A:B");
+        residues.add("-3:A");
+        residues.add(7, "B");
+
+        Assert.assertEquals(4, residues.size());
+        Assert.assertTrue(residues.contains("125:A"));
+        Assert.assertTrue(residues.contains("52A:B"));
+        Assert.assertTrue(residues.contains("-3:A"));
+        Assert.assertTrue(residues.contains(ResidueKey.pack(chains.indexOf("B"), 7)));
+        Assert.assertFalse(residues.contains("125:B"));
+        Assert.assertFalse(residues.contains("52:B"));
+        Assert.assertFalse(residues.contains("3:A"));
+        Assert.assertFalse(residues.contains("125:Z"));
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("125:A", "52A:B", "-3:A", "7:B")),
+                new HashSet<>(residues.toStrings()));
+    }
+
+    @Test
+    public void testAddAllAndIntersects() {
+        ChainTable chains = new ChainTable();
+        ResidueSet interfaceA = new ResidueSet(chains);
+        interfaceA.add("10:A");
+        interfaceA.add("11:A");
+
+        ResidueSet interfaceB = new ResidueSet(chains);
+        interfaceB.add("20:B");
+        interfaceB.add("21A:B");
+
+        ResidueSet query = new ResidueSet(chains);
+        query.add("21A:B");
+
+        Assert.assertFalse(interfaceA.intersects(query));
+        Assert.assertTrue(interfaceB.intersects(query));
+
+        interfaceA.addAll(interfaceB);
+        Assert.assertEquals(4, interfaceA.size());
+        Assert.assertTrue(interfaceA.intersects(query));
+
+        // sets of different structures are compared by residue
+        ResidueSet other = new ResidueSet(new ChainTable());
+        other.add("20:B");
+        Assert.assertTrue(interfaceA.intersects(other));
+        other.addAll(interfaceA);
+        Assert.assertEquals(4, other.size());
+    }
+
+    @Test
+    public void testChainTableRegistry() {
+        ResidueSet residues = new ResidueSet(ChainTable.getChainTable("1abc"));
+        residues.add("12:A");
+
+        // shared as long as a set uses it
+        Assert.assertSame(residues.getChainTable(), ChainTable.getChainTable("1abc"));
+
+        int numberOfTables = ChainTable.getNumberOfTables();
+
+        for (int i = 0; i < 100; i++) {
+            ChainTable.getChainTable("tmp" + i).intern("A");
+        }
+
+        // released tables are removed from the registry
+        for (int i = 0; i < 100; i++) {
+            ChainTable.release("tmp" + i);
+        }
+        Assert.assertTrue(ChainTable.getNumberOfTables() <= numberOfTables);
+
+        Assert.assertSame(residues.getChainTable(), ChainTable.getChainTable("1abc"));
+        Assert.assertTrue(residues.contains("12:A"));
+
+        // a released table is replaced, the sets using it still work
+        ChainTable.release("1abc");
+        Assert.assertNotSame(residues.getChainTable(), ChainTable.getChainTable("1abc"));
+        Assert.assertTrue(residues.contains("12:A"));
+    }
+
+    @Test
+    public void testChainTableConcurrentIntern() throws InterruptedException {
+        final ChainTable chains = new ChainTable();
+        final AtomicInteger errors = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 200; i++) {
+                        String chain = "C" + i;
+                        if (false == chain.equals(chains.getChain(chains.intern(chain)))) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(0, errors.get());
+
+        for (int i = 0; i < 200; i++) {
+            Assert.assertEquals("C" + i, chains.getChain(chains.indexOf("C" + i)));
+        }
+    }
+
+}
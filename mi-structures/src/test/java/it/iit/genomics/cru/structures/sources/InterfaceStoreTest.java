@@ -0,0 +1,115 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.sources;
+
+import com.google.common.collect.HashMultimap;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+
+/**
+ *
+ * @author Arnaud Ceol
+ */
+public class InterfaceStoreTest {
+
+    private String getCacheDir() throws IOException {
+        File dir = Files.createTempDirectory("interfaces").toFile();
+        dir.deleteOnExit();
+        return dir.getAbsolutePath();
+    }
+
+    /**
+     * Interfaces are read back by another store.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testPutGet() throws IOException {
+        String cacheDir = getCacheDir();
+
+        HashMultimap<String, String> residues = HashMultimap.create();
+        residues.put("125:A", "B");
+        residues.put("126A:A", "B");
+        residues.put("-3:B", "A");
+        residues.put("40:B", "A");
+        residues.put("40:B", "C");
+
+        InterfaceStore store = new InterfaceStore(cacheDir, "probe1.4-points92");
+        store.put("1abc", Arrays.asList("A#B", "B#C"), residues);
+
+        HashMultimap<String, String> moreResidues = HashMultimap.create();
+        moreResidues.put("7:C", "D");
+        store.put("1abc", Arrays.asList("C#D"), moreResidues);
+
+        InterfaceStore.StoredInterfaces stored = new InterfaceStore(cacheDir, "probe1.4-points92").get("1abc");
+
+        residues.putAll(moreResidues);
+        assertEquals(residues, stored.getResidues());
+        assertEquals(3, stored.getChainPairs().size());
+        assertEquals(true, stored.getChainPairs().contains("C#D"));
+
+        assertNull(store.get("2abc"));
+    }
+
+    /**
+     * Only the most recently used structures are kept in memory, the others
+     * are read again from their file.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testMaxStructures() throws IOException {
+        String cacheDir = getCacheDir();
+
+        HashMultimap<String, String> residues = HashMultimap.create();
+        residues.put("125:A", "B");
+
+        InterfaceStore store = new InterfaceStore(cacheDir, "probe1.4-points92", 2);
+        store.put("1abc", Arrays.asList("A#B"), residues);
+        store.put("2abc", Arrays.asList("A#B"), residues);
+        store.get("1abc");
+        store.put("3abc", Arrays.asList("A#B"), residues);
+
+        assertEquals(new HashSet<>(Arrays.asList("1abc", "3abc")), store.getLoadedStructures());
+
+        assertEquals(residues, store.get("2abc").getResidues());
+        assertEquals(2, store.getLoadedStructures().size());
+    }
+
+    /**
+     * Interfaces computed with other parameters are ignored.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testOtherParameters() throws IOException {
+        String cacheDir = getCacheDir();
+
+        HashMultimap<String, String> residues = HashMultimap.create();
+        residues.put("125:A", "B");
+
+        new InterfaceStore(cacheDir, "probe1.4-points92").put("1abc", Arrays.asList("A#B"), residues);
+
+        assertNull(new InterfaceStore(cacheDir, "probe1.5-points92").get("1abc"));
+    }
+
+}
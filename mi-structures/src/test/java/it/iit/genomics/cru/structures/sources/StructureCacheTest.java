@@ -0,0 +1,114 @@
+/* 
+ * Copyright 2015 Fondazione Istituto Italiano di Tecnologia.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.iit.genomics.cru.structures.sources;
+
+import org.biojava.nbio.structure.Structure;
+import org.biojava.nbio.structure.StructureImpl;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ *
+ * @author Arnaud Ceol
+ */
+public class StructureCacheTest {
+
+    /**
+     * Test of get method, of class StructureCache.
+     */
+    @Test
+    public void testGet() {
+        StructureCache cache = new StructureCache(1000);
+
+        Structure structure = new StructureImpl();
+        cache.put("PDB:1abc", structure, 100);
+
+        assertSame(structure, cache.get("PDB:1abc"));
+        assertNull(cache.get("PDB:2abc"));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(100, cache.getNumberOfAtoms());
+    }
+
+    /**
+     * peek does not change the statistics.
+     */
+    @Test
+    public void testPeek() {
+        StructureCache cache = new StructureCache(1000);
+
+        Structure structure = new StructureImpl();
+        cache.put("PDB:1abc", structure, 100);
+
+        assertSame(structure, cache.peek("PDB:1abc"));
+        assertNull(cache.peek("PDB:2abc"));
+
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    /**
+     * The least recently used structures are removed first.
+     */
+    @Test
+    public void testEviction() {
+        StructureCache cache = new StructureCache(1000);
+
+        cache.put("1", new StructureImpl(), 400);
+        cache.put("2", new StructureImpl(), 400);
+
+        // 1 is now more recent than 2
+        cache.get("1");
+
+        cache.put("3", new StructureImpl(), 400);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("2"));
+        assertEquals(1, cache.getEvictions());
+        assertEquals(800, cache.getNumberOfAtoms());
+    }
+
+    /**
+     * Pinned structures are not removed.
+     */
+    @Test
+    public void testPin() {
+        StructureCache cache = new StructureCache(1000);
+
+        Structure structure = new StructureImpl();
+        cache.put("1", structure, 600);
+        cache.pin("1");
+        cache.pin("1");
+
+        cache.put("2", new StructureImpl(), 600);
+
+        // pinned and last structures are kept
+        assertEquals(2, cache.size());
+
+        cache.unpin("1");
+        cache.put("3", new StructureImpl(), 600);
+        assertNull(cache.get("2"));
+        assertSame(structure, cache.get("1"));
+
+        cache.unpin("1");
+        cache.put("4", new StructureImpl(), 600);
+        assertNull(cache.get("1"));
+    }
+
+}